@@ -1,5 +1,6 @@
 package ca.tokenizing_parser.tokenizer;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Set;
@@ -18,18 +19,25 @@ public class AutoKeyHashMap<E> {
 	/** The {@link HashMap} to be used. */
 	private HashMap<String, E>	_autoKeyHashMap	= null;
 
+	/** The reverse index of the {@link HashMap}, from each value to the key referencing it. */
+	private HashMap<E, String>	_keyIndex		= null;
+
 	/** The count of the last inputed value */
 	private int					_valueCount		= 0;
 
 	/** The specified prefix for each key */
 	private String				_keyPrefix		= null;
 
+	/** The canonical key of each id that was asked for, so equal keys are the same instance. */
+	private String[]			_keyCache		= new String[0];
+
 	/**
 	 * Constructor that sets up the wrapped {@link HashMap} for use, there will be no key prefix
 	 * used.
 	 */
 	public AutoKeyHashMap() {
 		_autoKeyHashMap = new HashMap<String, E>();
+		_keyIndex = new HashMap<E, String>();
 		_keyPrefix = "";
 	}
 
@@ -41,6 +49,7 @@ public class AutoKeyHashMap<E> {
 	 */
 	public AutoKeyHashMap( String keyPrefix ) {
 		_autoKeyHashMap = new HashMap<String, E>();
+		_keyIndex = new HashMap<E, String>();
 		_keyPrefix = keyPrefix;
 	}
 
@@ -58,6 +67,7 @@ public class AutoKeyHashMap<E> {
 	 */
 	public void setKeyPrefix( String keyPrefix ) {
 		_keyPrefix = keyPrefix;
+		_keyCache = new String[0];
 	}
 
 	/**
@@ -77,16 +87,78 @@ public class AutoKeyHashMap<E> {
 	 * @return key that is used to reference the specified value
 	 */
 	public String getKey( E value ) {
+		return _keyIndex.get( value );
+	}
+
+	/**
+	 * Gets the numeric id of the specified key, which is the auto incremented part of the key that
+	 * follows the key's prefix. Only a key exactly as it was given out belongs to this
+	 * {@link AutoKeyHashMap}, so a key with a leading zero (ie: a key glued to the digits that
+	 * followed it, such as :l012) or with an id that was never given out has no id.
+	 *
+	 * @param key the key to acquire the numeric id from
+	 * @return the numeric id of the key; -1 if the key does not belong to this
+	 *         {@link AutoKeyHashMap}
+	 */
+	public int getKeyId( String key ) {
+
+		// The key must start with the prefix and have at least one digit
+		if( key == null || !key.startsWith( _keyPrefix ) || key.length() == _keyPrefix.length() ) {
+			return -1;
+		}
+
+		// A canonical key has no leading zero (unless the id is 0)
+		int start = _keyPrefix.length();
+		if( key.charAt( start ) == '0' && key.length() > start + 1 ) {
+			return -1;
+		}
 
-		String keyId = null;
+		// Parse the digits manually to avoid allocating for the substring
+		int id = 0;
+		for( int i = start; i < key.length(); i++ ) {
 
-		for( String key : getAllKeys() ) {
-			if( getValue( key ).equals( value ) || getValue( key ) == value ) {
-				keyId = key;
+			char digit = key.charAt( i );
+			if( digit < '0' || digit > '9' || id > ( Integer.MAX_VALUE - 9 ) / 10 ) {
+				return -1;
 			}
+			id = id * 10 + ( digit - '0' );
 		}
 
-		return keyId;
+		return id < getValueCount() ? id : -1;
+	}
+
+	/**
+	 * Gets the key that corresponds to the specified numeric id (the key's prefix followed by the
+	 * id). The key is returned even if no value is currently stored under it.
+	 * <p>
+	 * The keys of the ids that have been given out are cached, so repeated calls return the same
+	 * {@link String} instance instead of building a new one each time.
+	 *
+	 * @param id the numeric id of the key
+	 * @return the key for the numeric id
+	 */
+	public String getKeyForId( int id ) {
+
+		// Only the ids given out are cached, so an arbitrary id can't grow the cache
+		if( id < 0 || id >= getValueCount() ) {
+			return _keyPrefix + id;
+		}
+
+		// The cache is read once, as another thread may be replacing it (keys are immutable)
+		String[] keyCache = _keyCache;
+		if( id < keyCache.length && keyCache[id] != null ) {
+			return keyCache[id];
+		}
+
+		// Grow the cache (at least doubling) to fit the id, then add the key to it
+		if( id >= keyCache.length ) {
+			keyCache = Arrays.copyOf( keyCache, Math.max( id + 1, keyCache.length * 2 ) );
+			_keyCache = keyCache;
+		}
+
+		String key = _keyPrefix + id;
+		keyCache[id] = key;
+		return key;
 	}
 
 	/**
@@ -99,25 +171,15 @@ public class AutoKeyHashMap<E> {
 	 */
 	public String addValue( E value ) {
 
-		String keyId = null;
-
 		// Check to see if this value has already been added
-		if( _autoKeyHashMap.containsValue( value ) ) {
+		String keyId = _keyIndex.get( value );
 
-			// Iterate over the key set
-			for( String key : _autoKeyHashMap.keySet() ) {
-
-				// Find the key that was used for the identical value
-				if( _autoKeyHashMap.get( key ).equals( value ) ) {
-					keyId = key;
-				}
-			}
-		}
-		else { // The value hasn't been added before
+		if( keyId == null ) { // The value hasn't been added before
 
 			// Get the next key id for this value, and added it to the hashmap
 			keyId = getNextKey();
 			_autoKeyHashMap.put( keyId, value );
+			_keyIndex.put( value, keyId );
 		}
 
 		return keyId;
@@ -130,7 +192,26 @@ public class AutoKeyHashMap<E> {
 	 * @param key the specified key to be used in the removal of the referenced value
 	 */
 	public void removeValue( String key ) {
-		_autoKeyHashMap.remove( key );
+
+		if( _autoKeyHashMap.containsKey( key ) ) {
+			_keyIndex.remove( _autoKeyHashMap.remove( key ) );
+		}
+	}
+
+	/**
+	 * Removes the values with an id at or above the specified count and winds the auto
+	 * incrementing id back to it, which restores the {@link AutoKeyHashMap} to how it was when it
+	 * had given out that many ids (provided no earlier values were removed since).
+	 * 
+	 * @param valueCount the number of ids to be kept (see {@link AutoKeyHashMap#getValueCount()})
+	 */
+	public void truncate( int valueCount ) {
+
+		for( int id = valueCount; id < _valueCount; id++ ) {
+			removeValue( getKeyForId( id ) );
+		}
+
+		_valueCount = Math.min( _valueCount, Math.max( valueCount, 0 ) );
 	}
 
 	/**
@@ -138,9 +219,20 @@ public class AutoKeyHashMap<E> {
 	 */
 	public void clearAll() {
 		_autoKeyHashMap.clear();
+		_keyIndex.clear();
 		_valueCount = 0;
 	}
 
+	/**
+	 * Creates an empty {@link AutoKeyHashMap} of the same kind, with the same key's prefix, so that
+	 * a map can be rebuilt apart from this one and swapped in for it.
+	 * 
+	 * @return the new empty {@link AutoKeyHashMap}
+	 */
+	AutoKeyHashMap<E> createEmpty() {
+		return new AutoKeyHashMap<E>( _keyPrefix );
+	}
+
 	/**
 	 * Gets a {@link Set} of all the {@link String} keys in the {@link HashMap}.
 	 */
@@ -164,14 +256,32 @@ public class AutoKeyHashMap<E> {
 		return _autoKeyHashMap.isEmpty();
 	}
 
+	/**
+	 * Gets the number of values stored in the {@link HashMap}.
+	 * 
+	 * @return the number of values stored
+	 */
+	public int getSize() {
+		return _autoKeyHashMap.size();
+	}
+
+	/**
+	 * Gets the number of ids that have been given out since the {@link AutoKeyHashMap} was last
+	 * cleared, which is one more than the largest id (removed values included).
+	 * 
+	 * @return the number of ids given out
+	 */
+	public int getValueCount() {
+		return _valueCount;
+	}
+
 	/**
 	 * Acquires the next unique key for this {@link AutoKeyHashMap}.
 	 * 
 	 * @return the next unique key
 	 */
 	private String getNextKey() {
-		String key = _keyPrefix + _valueCount;
 		_valueCount++;
-		return key;
+		return getKeyForId( _valueCount - 1 );
 	}
 }
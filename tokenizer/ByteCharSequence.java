@@ -0,0 +1,206 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link CharSequence} view of UTF-8 bytes, where each byte is one character (ie: the bytes are
+ * viewed as Latin-1). The ASCII characters of the view are exactly the ASCII characters of the
+ * UTF-8 input, and the bytes of a multi-byte UTF-8 sequence are never ASCII, so the view can be
+ * scanned for ASCII delimiters (quotes, slashes, spacing) without decoding it. The parts of the
+ * view that hold multi-byte sequences are decoded with
+ * {@link ByteCharSequence#decode(CharSequence, int, int, StringBuilder)} as they are needed.
+ *
+ * @author Kevin Jalbert
+ */
+class ByteCharSequence implements CharSequence {
+
+	/** The backing array of the bytes, or null if the bytes are in a direct {@link ByteBuffer}. */
+	private final byte[]		_array;
+
+	/** The {@link ByteBuffer} of the bytes. */
+	private final ByteBuffer	_buffer;
+
+	/** The offset of the first byte within the array or {@link ByteBuffer}. */
+	private final int			_offset;
+
+	/** The number of bytes of the view. */
+	private final int			_length;
+
+	/**
+	 * Instantiates a new {@link ByteCharSequence} of the remaining bytes of the {@link ByteBuffer}.
+	 * The position of the {@link ByteBuffer} is not changed.
+	 *
+	 * @param buffer the {@link ByteBuffer} of UTF-8 bytes
+	 */
+	ByteCharSequence( ByteBuffer buffer ) {
+		this( buffer, buffer.position(), buffer.remaining() );
+	}
+
+	/**
+	 * Instantiates a new {@link ByteCharSequence} of a range of the {@link ByteBuffer}.
+	 *
+	 * @param buffer the {@link ByteBuffer} of UTF-8 bytes
+	 * @param offset the index of the first byte within the {@link ByteBuffer}
+	 * @param length the number of bytes
+	 */
+	private ByteCharSequence( ByteBuffer buffer, int offset, int length ) {
+
+		_buffer = buffer;
+		_length = length;
+
+		// Read heap buffers through their array, which avoids the bounds checks of the buffer
+		if( buffer.hasArray() ) {
+			_array = buffer.array();
+			_offset = buffer.arrayOffset() + offset;
+		}
+		else {
+			_array = null;
+			_offset = offset;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int length() {
+		return _length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The character is the unsigned value of the byte.
+	 */
+	@Override
+	public char charAt( int index ) {
+
+		if( index < 0 || index >= _length ) {
+			throw new IndexOutOfBoundsException( "Index: " + index + ", Length: " + _length );
+		}
+
+		if( _array != null ) {
+			return (char) ( _array[_offset + index] & 0xFF );
+		}
+
+		return (char) ( _buffer.get( _offset + index ) & 0xFF );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public CharSequence subSequence( int start, int end ) {
+
+		if( start < 0 || end > _length || start > end ) {
+			throw new IndexOutOfBoundsException( "Range: " + start + "-" + end );
+		}
+
+		StringBuilder chars = new StringBuilder( end - start );
+		for( int i = start; i < end; i++ ) {
+			chars.append( charAt( i ) );
+		}
+
+		return chars;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The bytes are decoded as UTF-8.
+	 */
+	@Override
+	public String toString() {
+
+		StringBuilder chars = new StringBuilder( _length );
+		decode( this, 0, _length, chars );
+
+		return chars.toString();
+	}
+
+	/**
+	 * Checks to see if a range of the characters are all ASCII, in which case they need no decoding.
+	 *
+	 * @param chars the characters
+	 * @param start the start of the range
+	 * @param end the end (exclusive) of the range
+	 * @return true if all the characters in the range are ASCII
+	 */
+	static boolean isAscii( CharSequence chars, int start, int end ) {
+
+		for( int i = start; i < end; i++ ) {
+			if( chars.charAt( i ) >= 0x80 ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decodes a range of UTF-8 bytes (each held as one character, see {@link ByteCharSequence}) and
+	 * appends the decoded characters. The ASCII bytes are copied as they are, and the multi-byte
+	 * sequences are validated as they are decoded.
+	 *
+	 * @param bytes the bytes, one per character
+	 * @param start the start of the range
+	 * @param end the end (exclusive) of the range
+	 * @param output the {@link StringBuilder} to append the decoded characters to
+	 * @throws IllegalArgumentException if the bytes are not well-formed UTF-8
+	 */
+	static void decode( CharSequence bytes, int start, int end, StringBuilder output ) {
+
+		int i = start;
+		while( i < end ) {
+
+			int lead = bytes.charAt( i );
+			if( lead < 0x80 ) { // ASCII
+				output.append( (char) lead );
+				i++;
+				continue;
+			}
+
+			// Find the length and the smallest and largest second byte of the sequence
+			int length = 0;
+			int low = 0x80;
+			int high = 0xBF;
+			if( lead >= 0xC2 && lead <= 0xDF ) {
+				length = 2;
+			}
+			else if( lead >= 0xE0 && lead <= 0xEF ) {
+				length = 3;
+				low = lead == 0xE0 ? 0xA0 : 0x80; // No overlong encodings
+				high = lead == 0xED ? 0x9F : 0xBF; // No surrogates
+			}
+			else if( lead >= 0xF0 && lead <= 0xF4 ) {
+				length = 4;
+				low = lead == 0xF0 ? 0x90 : 0x80; // No overlong encodings
+				high = lead == 0xF4 ? 0x8F : 0xBF; // Nothing above U+10FFFF
+			}
+			else {
+				throw new IllegalArgumentException( "Malformed UTF-8 input: invalid lead byte 0x"
+						+ Integer.toHexString( lead ) );
+			}
+
+			if( i + length > end ) {
+				throw new IllegalArgumentException( "Malformed UTF-8 input: truncated sequence" );
+			}
+
+			// Validate and gather the continuation bytes
+			int codePoint = lead & ( 0x7F >> length );
+			for( int j = 1; j < length; j++ ) {
+
+				int next = bytes.charAt( i + j );
+				if( next < ( j == 1 ? low : 0x80 ) || next > ( j == 1 ? high : 0xBF ) ) {
+					throw new IllegalArgumentException( "Malformed UTF-8 input: invalid byte 0x"
+							+ Integer.toHexString( next ) + " in a sequence" );
+				}
+
+				codePoint = ( codePoint << 6 ) | ( next & 0x3F );
+			}
+
+			output.appendCodePoint( codePoint );
+			i += length;
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * An {@link AutoKeyHashMap} of {@link String} values whose keys are derived from the content of
+ * the values instead of being handed out in order. The key of a value is the key's prefix followed
+ * by 16 hexadecimal digits of a 64-bit hash of the prefix and the value (the first 8 bytes of its
+ * SHA-256 digest), so any number of {@link HashedAutoKeyHashMap}s on different threads, processes
+ * or machines give a value the same key without coordinating, and their tokenized inputs can be
+ * compared and merged directly.
+ * <p>
+ * A collision (two values with the same hash) is detected when the second value is added, and is
+ * resolved by hashing the value again with an increasing salt till a free key is found. As the
+ * keys are 64-bit, a collision is not expected to happen in practice; the number that were
+ * resolved can be checked with {@link HashedAutoKeyHashMap#getCollisionCount()}, since a resolved
+ * value only keeps its key across maps that saw the colliding values in the same order.
+ * <p>
+ * The numeric ids (see {@link AutoKeyHashMap#getKeyId(String)}) are still dense and given out in
+ * the order the values were added, so they can index the token ids of a {@link TokenTable}, but
+ * unlike the keys they are local to this {@link HashedAutoKeyHashMap}.
+ *
+ * @author Kevin Jalbert
+ */
+public class HashedAutoKeyHashMap extends AutoKeyHashMap<String> {
+
+	/** The number of hexadecimal digits of a key (after the prefix). */
+	public final static int					_KEY_DIGITS	= 16;
+
+	/** The UTF-8 {@link Charset} used to hash the values. */
+	private final static Charset			_UTF8		= Charset.forName( "UTF-8" );
+
+	/** The hexadecimal digits of the keys. */
+	private final static char[]				_HEX		= "0123456789abcdef".toCharArray();
+
+	/** The values, indexed by their key (in the order they were added). */
+	private LinkedHashMap<String, String>	_values		= new LinkedHashMap<String, String>();
+
+	/** The keys, indexed by their value. */
+	private HashMap<String, String>			_keys		= new HashMap<String, String>();
+
+	/** The numeric ids, indexed by their key. */
+	private HashMap<String, Integer>		_ids		= new HashMap<String, Integer>();
+
+	/** The keys, indexed by their numeric id; null where the value was removed. */
+	private ArrayList<String>				_idKeys		= new ArrayList<String>();
+
+	/** The number of collisions that were resolved. */
+	private int								_collisions	= 0;
+
+	/** The SHA-256 {@link MessageDigest} of the keys. */
+	private MessageDigest					_digest		= null;
+
+	/**
+	 * Constructor that sets up the {@link HashedAutoKeyHashMap} for use, the specified key's
+	 * prefix will be used and is hashed with each value (so the same value gets a different key in
+	 * each category).
+	 *
+	 * @param keyPrefix the key's prefix to be prepended to each key
+	 */
+	public HashedAutoKeyHashMap( String keyPrefix ) {
+		super( keyPrefix );
+
+		try {
+			_digest = MessageDigest.getInstance( "SHA-256" );
+		}
+		catch( NoSuchAlgorithmException e ) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getValue( String key ) {
+		return _values.get( key );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getKey( String value ) {
+		return _keys.get( value );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The numeric id is the local one of the value, as the hexadecimal part of the key doesn't fit
+	 * in an <code>int</code>.
+	 */
+	@Override
+	public int getKeyId( String key ) {
+
+		Integer id = key == null ? null : _ids.get( key );
+		return id == null ? -1 : id.intValue();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The key can only be found for an id that was given out and whose value wasn't removed.
+	 *
+	 * @return the key for the numeric id; null if there is none
+	 */
+	@Override
+	public String getKeyForId( int id ) {
+		return id < 0 || id >= _idKeys.size() ? null : _idKeys.get( id );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The key is derived from the value (see {@link HashedAutoKeyHashMap}).
+	 */
+	@Override
+	public String addValue( String value ) {
+
+		// Check to see if this value has already been added
+		String key = _keys.get( value );
+
+		if( key == null ) { // The value hasn't been added before
+
+			// Salt the hash till the key isn't taken by another value
+			key = getContentKey( value, 0 );
+			for( int salt = 1; _values.containsKey( key ); salt++ ) {
+				key = getContentKey( value, salt );
+				_collisions++;
+			}
+
+			_values.put( key, value );
+			_keys.put( value, key );
+			_ids.put( key, Integer.valueOf( _idKeys.size() ) );
+			_idKeys.add( key );
+		}
+
+		return key;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void removeValue( String key ) {
+
+		String value = _values.remove( key );
+		if( value != null ) {
+			_keys.remove( value );
+			_idKeys.set( _ids.remove( key ).intValue(), null );
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void truncate( int valueCount ) {
+
+		for( int id = _idKeys.size() - 1; id >= Math.max( valueCount, 0 ); id-- ) {
+
+			String key = _idKeys.remove( id );
+			if( key != null ) {
+				_keys.remove( _values.remove( key ) );
+				_ids.remove( key );
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The count of resolved collisions is reset as well.
+	 */
+	@Override
+	public void clearAll() {
+		_values.clear();
+		_keys.clear();
+		_ids.clear();
+		_idKeys.clear();
+		_collisions = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	AutoKeyHashMap<String> createEmpty() {
+		return new HashedAutoKeyHashMap( getKeyPrefix() );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Set<String> getAllKeys() {
+		return _values.keySet();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Collection<String> getAllValues() {
+		return _values.values();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return _values.isEmpty();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getSize() {
+		return _values.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getValueCount() {
+		return _idKeys.size();
+	}
+
+	/**
+	 * Gets the number of hash collisions that were resolved by salting since the
+	 * {@link HashedAutoKeyHashMap} was last cleared. When it isn't 0, the keys of the colliding
+	 * values depend on the order they were added in.
+	 *
+	 * @return the number of resolved collisions
+	 */
+	public int getCollisionCount() {
+		return _collisions;
+	}
+
+	/**
+	 * Computes the content-derived key of a value: the key's prefix followed by the hexadecimal
+	 * digits of the first 8 bytes of the SHA-256 digest of the prefix, the value and the salt (if
+	 * any).
+	 *
+	 * @param value the value to derive the key from
+	 * @param salt the salt of the hash; 0 for the unsalted hash
+	 * @return the key of the value
+	 */
+	private String getContentKey( String value, int salt ) {
+
+		String prefix = getKeyPrefix();
+		_digest.update( prefix.getBytes( _UTF8 ) );
+		_digest.update( (byte) 0 );
+		_digest.update( value.getBytes( _UTF8 ) );
+		if( salt != 0 ) {
+			_digest.update( (byte) 0 );
+			_digest.update( (byte) ( salt >>> 24 ) );
+			_digest.update( (byte) ( salt >>> 16 ) );
+			_digest.update( (byte) ( salt >>> 8 ) );
+			_digest.update( (byte) salt );
+		}
+		byte[] digest = _digest.digest();
+
+		char[] key = new char[prefix.length() + _KEY_DIGITS];
+		prefix.getChars( 0, prefix.length(), key, 0 );
+		for( int i = 0; i < _KEY_DIGITS / 2; i++ ) {
+			key[prefix.length() + 2 * i] = _HEX[( digest[i] >>> 4 ) & 0xF];
+			key[prefix.length() + 2 * i + 1] = _HEX[digest[i] & 0xF];
+		}
+
+		return new String( key );
+	}
+}
@@ -0,0 +1,96 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.text.StringCharacterIterator;
+import java.util.ArrayList;
+
+/**
+ * The mutable state of a single tokenization performed by a {@link TokenizerEngine}. A context is
+ * only ever used by one thread at a time, and is reset and reused between tokenizations so that the
+ * {@link TokenizerEngine} itself can remain immutable and be shared.
+ *
+ * @author Kevin Jalbert
+ */
+class LexerContext {
+
+	/** The {@link StringCharacterIterator} used to navigate the input string */
+	StringCharacterIterator	_iter				= new StringCharacterIterator( "" );
+
+	/** The tokenized input of the passed input. */
+	ArrayList<String>		_tokenizedInput		= new ArrayList<String>();
+
+	/** The tokens of the even replacement passes of a batch (see {@link TokenizedBatch}). */
+	ArrayList<String>		_mappedInput		= new ArrayList<String>();
+
+	/** The tokens of the odd replacement passes of a batch (see {@link TokenizedBatch}). */
+	ArrayList<String>		_scratchInput		= new ArrayList<String>();
+
+	/** The token id of each token of the even replacement passes of a batch, or -1 if none. */
+	int[]					_mappedIds			= new int[0];
+
+	/** The token ids of the tokens of the odd replacement passes of a batch. */
+	int[]					_scratchIds			= new int[0];
+
+	/** The identifiers of the literals replaced in the input, which are yet to be counted. */
+	ArrayList<String>		_literalKeys		= new ArrayList<String>();
+
+	/** The identifiers of the comments replaced in the input, which are yet to be counted. */
+	ArrayList<String>		_commentKeys		= new ArrayList<String>();
+
+	/** The end of each literal identifier in the replaced input (when a limit may cut it short). */
+	ArrayList<Integer>		_literalEnds		= new ArrayList<Integer>();
+
+	/** The end of each comment identifier in the replaced input (when a limit may cut it short). */
+	ArrayList<Integer>		_commentEnds		= new ArrayList<Integer>();
+
+	/** The category of each placeholder (or removed value to sketch) yet to be resolved. */
+	ArrayList<Integer>		_pendingCategories	= new ArrayList<Integer>();
+
+	/** The literal or comment value of each placeholder in the input, in the same order. */
+	ArrayList<String>		_pendingValues		= new ArrayList<String>();
+
+	/** The token buffer of the next token to be added. */
+	StringBuilder			_tokenBuffer		= new StringBuilder();
+
+	/** The {@link TokenTable} used to remove the literals and comments when nothing is mapped. */
+	TokenTable				_scratchTable		= null;
+
+	/**
+	 * Resets the context to tokenize a new input, keeping the allocated buffers.
+	 *
+	 * @param input the input {@link String} to be tokenized next
+	 */
+	void reset( String input ) {
+		_iter.setText( input );
+		_tokenizedInput.clear();
+		_tokenBuffer.setLength( 0 );
+	}
+
+	/**
+	 * Makes sure the token id arrays of a batch can hold the ids of the tokenized input (the
+	 * replacement passes never add more tokens than they are given).
+	 */
+	void ensureIdCapacity() {
+
+		int size = _tokenizedInput.size();
+		if( _mappedIds.length < size ) {
+			size = Math.max( size, _mappedIds.length * 2 );
+			_mappedIds = new int[size];
+			_scratchIds = new int[size];
+		}
+	}
+
+	/**
+	 * Gets the {@link TokenTable} used to remove the literals and comments when nothing is mapped,
+	 * creating it the first time it is needed.
+	 *
+	 * @return the scratch {@link TokenTable}
+	 */
+	TokenTable getScratchTable() {
+
+		if( _scratchTable == null ) {
+			_scratchTable = new TokenTable();
+		}
+
+		return _scratchTable;
+	}
+}
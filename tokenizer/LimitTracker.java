@@ -0,0 +1,167 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tracks a single tokenization against its {@link TokenizationLimits}. The deadline and the
+ * cancellation are only looked at every {@link LimitTracker#_CHECK_INTERVAL} checks, so that the
+ * check is cheap enough for the inner loops of the scanning, lexing and mapping.
+ *
+ * @author Kevin Jalbert
+ */
+class LimitTracker {
+
+	/** The number of checks between looking at the clock and the cancellation. */
+	private final static int		_CHECK_INTERVAL	= 1024;
+
+	/** The longest time (in nanoseconds) to wait for a lock before looking for a cancellation. */
+	private final static long		_LOCK_SLICE		= TimeUnit.MILLISECONDS.toNanos( 10 );
+
+	/** The {@link TokenizationLimits} being tracked. */
+	private TokenizationLimits		_limits			= null;
+
+	/** The {@link System#nanoTime()} of the deadline. */
+	private long					_deadline		= 0;
+
+	/** The number of checks left before looking at the clock (the first check looks at it). */
+	private int						_countdown		= 1;
+
+	/** The status if a limit was hit; null while within the limits. */
+	private TokenizationStatus		_status			= null;
+
+	/**
+	 * Instantiates a new {@link LimitTracker}, starting the clock of the timeout.
+	 *
+	 * @param limits the {@link TokenizationLimits} to be tracked
+	 */
+	LimitTracker( TokenizationLimits limits ) {
+		_limits = limits;
+		_deadline = System.nanoTime() + limits.getTimeoutNanos();
+	}
+
+	/**
+	 * Checks to see if the tokenization is to be aborted (ie: the deadline passed or it was
+	 * cancelled). This only looks at the clock every so many calls.
+	 *
+	 * @return true if the tokenization is to be aborted
+	 */
+	boolean check() {
+
+		if( --_countdown > 0 ) {
+			return isAborted();
+		}
+
+		_countdown = _CHECK_INTERVAL;
+		return checkNow();
+	}
+
+	/**
+	 * Checks to see if the tokenization is to be aborted, looking at the clock right away.
+	 *
+	 * @return true if the tokenization is to be aborted
+	 */
+	boolean checkNow() {
+
+		if( !isAborted() ) {
+			if( _limits.isCancelled() ) {
+				_status = TokenizationStatus.CANCELLED;
+			}
+			else if( _limits.getTimeoutNanos() > 0 && System.nanoTime() - _deadline >= 0 ) {
+				_status = TokenizationStatus.DEADLINE;
+			}
+		}
+
+		return isAborted();
+	}
+
+	/**
+	 * Checks to see if the number of tokens has reached the maximum, recording the token limit if
+	 * it has.
+	 *
+	 * @param tokens the number of tokens so far
+	 * @return true if the maximum number of tokens has been reached
+	 */
+	boolean isTokenLimitReached( int tokens ) {
+
+		if( _limits.getMaxTokens() > 0 && tokens >= _limits.getMaxTokens() ) {
+			stop( TokenizationStatus.TOKEN_LIMIT );
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the maximum number of tokens to be lexed.
+	 *
+	 * @return the maximum number of tokens; 0 for no limit
+	 */
+	int getMaxTokens() {
+		return _limits.getMaxTokens();
+	}
+
+	/**
+	 * Records that the tokenization stopped early for the specified reason. An abort is never
+	 * replaced by a limit.
+	 *
+	 * @param status the reason for stopping
+	 */
+	void stop( TokenizationStatus status ) {
+		if( !isAborted() ) {
+			_status = status;
+		}
+	}
+
+	/**
+	 * Forgets the limits that were hit so that the tokenization can start over, keeping the
+	 * deadline and any abort.
+	 */
+	void restart() {
+		if( !isAborted() ) {
+			_status = null;
+		}
+	}
+
+	/**
+	 * Acquires the lock, giving up if the tokenization is aborted while waiting.
+	 *
+	 * @param lock the {@link ReentrantLock} to be acquired
+	 * @return true if the lock was acquired
+	 */
+	boolean lock( ReentrantLock lock ) {
+
+		try {
+			while( !lock.tryLock( _LOCK_SLICE, TimeUnit.NANOSECONDS ) ) {
+				if( checkNow() ) {
+					return false;
+				}
+			}
+		}
+		catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			_status = TokenizationStatus.CANCELLED;
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks to see if the tokenization is to be aborted, as of the last check.
+	 *
+	 * @return true if aborted
+	 */
+	boolean isAborted() {
+		return _status != null && _status.isAborted();
+	}
+
+	/**
+	 * Gets the status of the tokenization.
+	 *
+	 * @return the {@link TokenizationStatus}; {@link TokenizationStatus#COMPLETE} if no limit was hit
+	 */
+	TokenizationStatus getStatus() {
+		return _status == null ? TokenizationStatus.COMPLETE : _status;
+	}
+}
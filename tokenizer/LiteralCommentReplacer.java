@@ -0,0 +1,334 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link LiteralCommentScanner.Handler} that builds the output of
+ * {@link TokenTable#replaceRemoveLiteralsAndComments(String, boolean, boolean)}, replacing the
+ * literals and comments with identifiers from the {@link TokenTable} or removing them.
+ *
+ * @author Kevin Jalbert
+ */
+class LiteralCommentReplacer implements LiteralCommentScanner.Handler {
+
+	/**
+	 * Marks the category of a recorded value that was removed from the output rather than
+	 * replaced with a placeholder, which is only to be sketched (see
+	 * {@link LiteralCommentReplacer#setSketchRemoved(boolean, boolean)}).
+	 */
+	final static int				_REMOVED				= 1 << TokenTable._CATEGORY_BITS;
+
+	/** The output with the literals and comments replaced. */
+	private StringBuilder			_output					= null;
+
+	/** The literal or comment value to be mapped. */
+	private StringBuilder			_value					= new StringBuilder();
+
+	/** The {@link TokenTable} that the literals and comments are mapped with. */
+	private TokenTable				_tokenTable				= null;
+
+	/** The {@link AutoKeyHashMap} of the literal tokens. */
+	private AutoKeyHashMap<String>	_literals				= null;
+
+	/** The {@link AutoKeyHashMap} of the comment tokens. */
+	private AutoKeyHashMap<String>	_comments				= null;
+
+	/** If true the literals are replaced with identifiers, otherwise they are removed. */
+	private boolean					_replaceLiterals		= false;
+
+	/** If true the comments are replaced with identifiers, otherwise they are removed. */
+	private boolean					_replaceComments		= false;
+
+	/** The identifiers of the literals, whose counting is deferred; null to count them now. */
+	private ArrayList<String>		_literalKeys			= null;
+
+	/** The identifiers of the comments, whose counting is deferred; null to count them now. */
+	private ArrayList<String>		_commentKeys			= null;
+
+	/** The end of each deferred literal identifier in the output; null if not recorded. */
+	private ArrayList<Integer>		_literalEnds			= null;
+
+	/** The end of each deferred comment identifier in the output; null if not recorded. */
+	private ArrayList<Integer>		_commentEnds			= null;
+
+	/** If true the removed literals are still sketched (their category is sketch-only). */
+	private boolean					_sketchRemovedLiterals	= false;
+
+	/** If true the removed comments are still sketched (their category is sketch-only). */
+	private boolean					_sketchRemovedComments	= false;
+
+	/** The character standing in for each identifier when there is no {@link TokenTable}. */
+	private char					_placeholder			= 0;
+
+	/** The token category of each placeholder, in the order of the output. */
+	private ArrayList<Integer>		_categories				= null;
+
+	/** The literal or comment value of each placeholder, in the order of the output. */
+	private ArrayList<String>		_values					= null;
+
+	/**
+	 * Instantiates a new {@link LiteralCommentReplacer} for the {@link TokenTable}.
+	 *
+	 * @param tokenTable the {@link TokenTable} to map the literals and comments with
+	 * @param replaceLiterals if toggled the literals will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param replaceComments if toggled the comments will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param capacity the expected length of the output
+	 */
+	LiteralCommentReplacer( TokenTable tokenTable, boolean replaceLiterals,
+			boolean replaceComments, int capacity ) {
+		_output = new StringBuilder( capacity );
+		_tokenTable = tokenTable;
+		_literals = tokenTable.getMap( TokenTable._LITERAL_CATEGORY );
+		_comments = tokenTable.getMap( TokenTable._COMMENT_CATEGORY );
+		_replaceLiterals = replaceLiterals;
+		_replaceComments = replaceComments;
+		_sketchRemovedLiterals = tokenTable.isSketchOnly( TokenTable._LITERAL_CATEGORY );
+		_sketchRemovedComments = tokenTable.isSketchOnly( TokenTable._COMMENT_CATEGORY );
+	}
+
+	/**
+	 * Instantiates a new {@link LiteralCommentReplacer} that replaces each literal and comment with
+	 * the placeholder instead of an identifier, recording its value so that the caller can give it
+	 * an identifier later (without holding the lock of a {@link TokenTable} while scanning).
+	 *
+	 * @param placeholder the character to replace each literal and comment with, which must not
+	 *            occur in the input
+	 * @param categories the {@link ArrayList} that the token category of each placeholder is added
+	 *            to
+	 * @param values the {@link ArrayList} that the value of each placeholder is added to
+	 * @param replaceLiterals if toggled the literals will be replaced with placeholders, otherwise
+	 *            they are removed
+	 * @param replaceComments if toggled the comments will be replaced with placeholders, otherwise
+	 *            they are removed
+	 * @param capacity the expected length of the output
+	 */
+	LiteralCommentReplacer( char placeholder, ArrayList<Integer> categories,
+			ArrayList<String> values, boolean replaceLiterals, boolean replaceComments,
+			int capacity ) {
+		_output = new StringBuilder( capacity );
+		_placeholder = placeholder;
+		_categories = categories;
+		_values = values;
+		_replaceLiterals = replaceLiterals;
+		_replaceComments = replaceComments;
+	}
+
+	/**
+	 * Sets the lists that the identifiers of the literals and comments are added to instead of
+	 * being counted, so the caller can count them once the input is mapped (see
+	 * {@link TokenTable#count(int, ArrayList)}).
+	 *
+	 * @param literalKeys the {@link ArrayList} of the literal identifiers; null to count them now
+	 * @param commentKeys the {@link ArrayList} of the comment identifiers; null to count them now
+	 */
+	void setDeferredKeys( ArrayList<String> literalKeys, ArrayList<String> commentKeys ) {
+		_literalKeys = literalKeys;
+		_commentKeys = commentKeys;
+	}
+
+	/**
+	 * Sets whether the literals and comments that are removed are still recorded, so that the
+	 * caller can sketch them (see {@link TokenTable#isSketchOnly(int)}). Their categories are
+	 * marked with {@link LiteralCommentReplacer#_REMOVED}, and no placeholder is output for them.
+	 * Only used without a {@link TokenTable}, which is otherwise looked at instead.
+	 *
+	 * @param literals if true the removed literals are recorded
+	 * @param comments if true the removed comments are recorded
+	 */
+	void setSketchRemoved( boolean literals, boolean comments ) {
+		_sketchRemovedLiterals = literals;
+		_sketchRemovedComments = comments;
+	}
+
+	/**
+	 * Sets the lists that the position in the output of the end of each deferred identifier is
+	 * added to, in the same order as the identifiers (see
+	 * {@link LiteralCommentReplacer#setDeferredKeys(ArrayList, ArrayList)}).
+	 *
+	 * @param literalEnds the {@link ArrayList} of the ends of the literal identifiers; null if
+	 *            not needed
+	 * @param commentEnds the {@link ArrayList} of the ends of the comment identifiers; null if
+	 *            not needed
+	 */
+	void setKeyEnds( ArrayList<Integer> literalEnds, ArrayList<Integer> commentEnds ) {
+		_literalEnds = literalEnds;
+		_commentEnds = commentEnds;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void code( CharSequence input, int start, int end ) {
+		_output.append( input, start, end );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void literal( char quote, CharSequence content, boolean continued ) {
+
+		if( _replaceLiterals || _sketchRemovedLiterals ) {
+			_value.setLength( 0 );
+			_value.append( quote ).append( content ).append( quote );
+		}
+
+		// If the replace flag is toggled replace with identifier; otherwise remove
+		if( _replaceLiterals ) {
+			_output.append( addValue( TokenTable._LITERAL_CATEGORY, _literals, _value ) );
+		}
+		else {
+			if( _sketchRemovedLiterals ) {
+				sketchRemoved( TokenTable._LITERAL_CATEGORY, _value );
+			}
+			_output.append( quote ).append( quote );
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void lineComment( CharSequence content, boolean continued, boolean endOfInput ) {
+
+		// If the replace flag is toggled replace with identifier; otherwise remove
+		if( _replaceComments ) {
+			_value.setLength( 0 );
+			_value.append( "//" ).append( content );
+
+			if( endOfInput ) {
+				_output.append( addValue( TokenTable._COMMENT_CATEGORY, _comments, _value ) );
+			}
+			else {
+				_value.append( '\n' );
+				_output.append( addValue( TokenTable._COMMENT_CATEGORY, _comments, _value ) );
+				_output.append( '\n' );
+			}
+		}
+		else if( _sketchRemovedComments ) {
+			_value.setLength( 0 );
+			_value.append( "//" ).append( content );
+			if( !endOfInput ) {
+				_value.append( '\n' );
+			}
+			sketchRemoved( TokenTable._COMMENT_CATEGORY, _value );
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void blockComment( CharSequence content, boolean continued ) {
+
+		if( _replaceComments || _sketchRemovedComments ) {
+			_value.setLength( 0 );
+			_value.append( "/*" ).append( content ).append( "*/" );
+		}
+
+		// If the replace flag is toggled replace with identifier; otherwise remove
+		if( _replaceComments ) {
+			_output.append( addValue( TokenTable._COMMENT_CATEGORY, _comments, _value ) );
+		}
+		else {
+			if( _sketchRemovedComments ) {
+				sketchRemoved( TokenTable._COMMENT_CATEGORY, _value );
+			}
+			_output.append( '\n' );
+		}
+	}
+
+	/**
+	 * Gets the output with the literals and comments replaced.
+	 *
+	 * @return the output {@link String}
+	 */
+	String getOutput() {
+		return _output.toString();
+	}
+
+	/**
+	 * Gets the output built so far, which is only ever appended to, so that its beginning can be
+	 * processed while the rest of the input is still being scanned.
+	 *
+	 * @return the {@link CharSequence} of the output so far
+	 */
+	CharSequence getPartialOutput() {
+		return _output;
+	}
+
+	/**
+	 * Adds the value to the {@link AutoKeyHashMap} and counts its identifier, avoiding a
+	 * {@link String} copy of the value if the map stores its values off the heap. Without a
+	 * {@link TokenTable} the value is recorded and the placeholder returned instead.
+	 *
+	 * @param category the token category of the map
+	 * @param map the {@link AutoKeyHashMap} to add the value to
+	 * @param value the characters of the value
+	 * @return the key that is used to index the value, or the placeholder
+	 */
+	private String addValue( int category, AutoKeyHashMap<String> map, StringBuilder value ) {
+
+		// Without a table the value is only recorded, and given its identifier by the caller
+		if( _tokenTable == null ) {
+			_categories.add( category );
+			_values.add( value.toString() );
+			return String.valueOf( _placeholder );
+		}
+
+		// A sketch-only value isn't stored, and is given the identifier of the empty value
+		boolean sketchOnly = _tokenTable.isSketchOnly( category );
+		String key = null;
+		if( sketchOnly ) {
+			key = _tokenTable.getSketchedKey( category );
+		}
+		else if( map instanceof OffHeapAutoKeyHashMap ) {
+			key = ( (OffHeapAutoKeyHashMap) map ).addCharacters( value );
+		}
+		else {
+			key = map.addValue( value.toString() );
+		}
+
+		// A deferred identifier is counted by the caller, who looks its value up again if needed
+		ArrayList<String> deferredKeys = category == TokenTable._LITERAL_CATEGORY ? _literalKeys
+				: _commentKeys;
+		if( deferredKeys != null ) {
+			deferredKeys.add( key );
+
+			// Counting the identifier can't sketch a value that isn't stored, so it is done now
+			if( sketchOnly ) {
+				_tokenTable.sketch( category, value );
+			}
+
+			ArrayList<Integer> keyEnds = category == TokenTable._LITERAL_CATEGORY ? _literalEnds
+					: _commentEnds;
+			if( keyEnds != null ) {
+				keyEnds.add( _output.length() + key.length() );
+			}
+			return key;
+		}
+
+		return _tokenTable.count( category, key, value );
+	}
+
+	/**
+	 * Counts the value of a removed literal or comment in the sketches of its category. Without a
+	 * {@link TokenTable} the value is recorded for the caller to sketch instead.
+	 *
+	 * @param category the token category of the value
+	 * @param value the characters of the value
+	 */
+	private void sketchRemoved( int category, StringBuilder value ) {
+
+		if( _tokenTable == null ) {
+			_categories.add( category | _REMOVED );
+			_values.add( value.toString() );
+		}
+		else {
+			_tokenTable.sketch( category, value );
+		}
+	}
+}
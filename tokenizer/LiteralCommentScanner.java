@@ -0,0 +1,293 @@
+package ca.tokenizing_parser.tokenizer;
+
+/**
+ * Scans Java styled input for the literals and comments, reporting the code between them as well
+ * as each complete literal and comment to a {@link LiteralCommentScanner.Handler}. This is the
+ * state machine behind {@link TokenTable#replaceRemoveLiteralsAndComments(String, boolean, boolean)}.
+ * <p>
+ * A scan can cover just a range of the input and start in any state, which allows a large input to
+ * be scanned in chunks (see {@link ParallelTokenizer}). When a scan starts inside a literal or
+ * comment, the first literal or comment it completes is reported as being continued, as its
+ * beginning belongs to the previous chunk.
+ *
+ * @author Kevin Jalbert
+ */
+class LiteralCommentScanner {
+
+	/** The state of being in code (ie: not inside a literal or comment). */
+	final static int	_CODE			= 0;
+
+	/** The state of being inside a double quote (string) literal. */
+	final static int	_DOUBLE_QUOTE	= 1;
+
+	/** The state of being inside a single quote (character) literal. */
+	final static int	_SINGLE_QUOTE	= 2;
+
+	/** The state of being inside a line comment. */
+	final static int	_LINE_COMMENT	= 3;
+
+	/** The state of being inside a block comment. */
+	final static int	_BLOCK_COMMENT	= 4;
+
+	/** The number of states. */
+	final static int	_STATES			= 5;
+
+	/**
+	 * Receives the code, literals and comments found by a {@link LiteralCommentScanner}, in the
+	 * order they appear within the input.
+	 */
+	interface Handler {
+
+		/**
+		 * Handles a run of code.
+		 *
+		 * @param input the input being scanned
+		 * @param start the start of the code within the input
+		 * @param end the end (exclusive) of the code within the input
+		 */
+		void code( CharSequence input, int start, int end );
+
+		/**
+		 * Handles a complete literal.
+		 *
+		 * @param quote the quote character of the literal
+		 * @param content the content between the quotes
+		 * @param continued if true the literal started before the scanned range
+		 */
+		void literal( char quote, CharSequence content, boolean continued );
+
+		/**
+		 * Handles a complete line comment.
+		 *
+		 * @param content the content after the //
+		 * @param continued if true the comment started before the scanned range
+		 * @param endOfInput if true the comment was ended by the end of the input (not a new line)
+		 */
+		void lineComment( CharSequence content, boolean continued, boolean endOfInput );
+
+		/**
+		 * Handles a complete block comment.
+		 *
+		 * @param content the content between the /* and the closing delimiter
+		 * @param continued if true the comment started before the scanned range
+		 */
+		void blockComment( CharSequence content, boolean continued );
+	}
+
+	/** The content of the literal or comment currently being scanned. */
+	private StringBuilder	_content	= new StringBuilder();
+
+	/** If true the content continues a literal or comment that started before the scan. */
+	private boolean			_continued	= false;
+
+	/** The state at the end of the last scan. */
+	private int				_state		= _CODE;
+
+	/** The position at the end of the last scan. */
+	private int				_position	= 0;
+
+	/** The {@link LimitTracker} checked while scanning; null if there are no limits. */
+	private LimitTracker	_limits		= null;
+
+	/**
+	 * Scans the range of the input starting in the specified state. The scan may end one character
+	 * past the end of the range when a two character delimiter (ie: /*) straddles the end. When the
+	 * scan reaches the end of the input, an unfinished line comment is completed.
+	 *
+	 * @param input the input to be scanned
+	 * @param begin the start of the range to be scanned
+	 * @param end the end (exclusive) of the range to be scanned
+	 * @param state the state at the start of the range
+	 * @param handler the {@link LiteralCommentScanner.Handler} to report to
+	 */
+	void scan( CharSequence input, int begin, int end, int state, Handler handler ) {
+
+		int length = input.length();
+		int position = begin;
+		int codeStart = -1;
+
+		_content.setLength( 0 );
+		_continued = state != _CODE;
+
+		// Keep going till no more characters (or the limits abort the scan)
+		while( position < end && ( _limits == null || !_limits.check() ) ) {
+
+			char token = input.charAt( position );
+
+			// Anything other than code ends the current run of code
+			if( codeStart != -1
+					&& ( token == '\"' || token == '\'' || token == '/' || state != _CODE ) ) {
+				handler.code( input, codeStart, position );
+				codeStart = -1;
+			}
+
+			if( token == '\"' && state != _SINGLE_QUOTE && state != _LINE_COMMENT
+					&& state != _BLOCK_COMMENT ) { // Handle the double quote case
+
+				if( state == _DOUBLE_QUOTE ) { // Inside the double quotes
+
+					if( !isEscaped( input, position ) ) { // If not escaped then exit this quote
+						handler.literal( token, _content, _continued );
+						resetContent();
+						state = _CODE;
+					}
+					else { // In the double quote still; append token to literal
+						_content.append( token );
+					}
+				}
+				else { // Outside double quotes; just entered them
+					state = _DOUBLE_QUOTE;
+				}
+			}
+			else if( token == '\'' && state != _DOUBLE_QUOTE && state != _LINE_COMMENT
+					&& state != _BLOCK_COMMENT ) { // Handle the single quote case
+
+				if( state == _SINGLE_QUOTE ) { // Inside the single quotes
+
+					if( !isEscaped( input, position ) ) { // If not escaped then exit this quote
+						handler.literal( token, _content, _continued );
+						resetContent();
+						state = _CODE;
+					}
+					else { // In the single quote still; append token to literal
+						_content.append( token );
+					}
+				}
+				else { // Outside single quotes; just entered them
+					state = _SINGLE_QUOTE;
+				}
+			}
+			else if( token == '/' && state != _DOUBLE_QUOTE && state != _SINGLE_QUOTE ) { // Handle the start of line/block comment
+
+				if( state == _CODE ) { // Not inside a comment
+
+					char nextToken = position + 1 < length ? input.charAt( position + 1 ) : 0;
+
+					if( nextToken == '/' ) { // The line comment starts
+						state = _LINE_COMMENT;
+						position++;
+					}
+					else if( nextToken == '*' ) { // The block comment starts
+						state = _BLOCK_COMMENT;
+						position++;
+					}
+					// Otherwise it was a false alarm, and the lone '/' is dropped
+				}
+				else { // Inside a comment still; append token to comment
+					_content.append( token );
+				}
+			}
+			else if( token == '\n' && state == _LINE_COMMENT ) { // Handle end of the line comment
+				handler.lineComment( _content, _continued, false );
+				resetContent();
+				state = _CODE;
+			}
+			else if( token == '*' && state == _BLOCK_COMMENT ) { // Handle end of the block comment
+
+				char nextToken = position + 1 < length ? input.charAt( position + 1 ) : 0;
+
+				if( nextToken == '/' ) { // The block comment ends
+					handler.blockComment( _content, _continued );
+					resetContent();
+					state = _CODE;
+					position++;
+				}
+				// Otherwise it was a false alarm, and the lone '*' is dropped
+			}
+			else if( state != _CODE ) { // Inside a literal or comment; append token
+				_content.append( token );
+			}
+			else if( codeStart == -1 ) { // Not inside anything; start a run of code
+				codeStart = position;
+			}
+
+			position++;
+		}
+
+		// Finish the last run of code
+		if( codeStart != -1 ) {
+			handler.code( input, codeStart, Math.min( position, end ) );
+		}
+
+		// Wrap up the possibility that the ending was a line comment
+		if( position >= length && length > 0 && state == _LINE_COMMENT ) {
+			handler.lineComment( _content, _continued, true );
+			resetContent();
+		}
+
+		_state = state;
+		_position = position;
+	}
+
+	/**
+	 * Sets the {@link LimitTracker} that is checked while scanning. A scan that is aborted by the
+	 * limits ends early, without completing the literal or comment it was in.
+	 *
+	 * @param limits the {@link LimitTracker}; null for no limits
+	 */
+	void setLimits( LimitTracker limits ) {
+		_limits = limits;
+	}
+
+	/**
+	 * Gets the state at the end of the last scan.
+	 *
+	 * @return the state at the end of the last scan
+	 */
+	int getState() {
+		return _state;
+	}
+
+	/**
+	 * Gets the position that the last scan ended at (where the next scan should begin).
+	 *
+	 * @return the position at the end of the last scan
+	 */
+	int getPosition() {
+		return _position;
+	}
+
+	/**
+	 * Gets the content of the literal or comment that was unfinished at the end of the last scan.
+	 *
+	 * @return the unfinished content
+	 */
+	CharSequence getContent() {
+		return _content;
+	}
+
+	/**
+	 * Checks to see if the unfinished content at the end of the last scan continues a literal or
+	 * comment that started before the scan (ie: no literal or comment was completed).
+	 *
+	 * @return true if the unfinished content is continued
+	 */
+	boolean isContinued() {
+		return _continued;
+	}
+
+	/**
+	 * Clears the content after a literal or comment is completed.
+	 */
+	private void resetContent() {
+		_content.setLength( 0 );
+		_continued = false;
+	}
+
+	/**
+	 * Checks to see if the quote at the position is escaped, by counting the backslashes before it.
+	 *
+	 * @param input the input being scanned
+	 * @param position the position of the quote
+	 * @return true if the quote is escaped
+	 */
+	private static boolean isEscaped( CharSequence input, int position ) {
+
+		boolean escaped = false;
+		for( int i = position - 1; i >= 0 && input.charAt( i ) == '\\'; i-- ) {
+			escaped = !escaped;
+		}
+
+		return escaped;
+	}
+}
@@ -0,0 +1,246 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * A per-document numbering of identifiers that overlays the global ids of a {@link TokenTable}.
+ * Each identifier of a local category is given a local id in order of first appearance within the
+ * document, starting from 0 for each category, so two documents that only differ in the names of
+ * their identifiers and values of their literals (ie: type-2 clones) have the same local
+ * numbering. The global {@link TokenTable} is left as it is.
+ * <p>
+ * The local ids are kept in an open-addressing hash map from token id (see
+ * {@link TokenTable#getTokenId(String)}) to local id, whose arrays are reused from one document to
+ * the next. A {@link LocalNumbering#reset()} only clears the slots the document touched.
+ * <p>
+ * By default the literals, primitives, objects and comments are numbered locally, while the
+ * keywords and delimiters keep their global ids. A {@link LocalNumbering} is not thread-safe.
+ *
+ * @author Kevin Jalbert
+ * @see TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable,
+ *      LocalNumbering, java.util.ArrayList)
+ */
+public class LocalNumbering {
+
+	/** The initial number of slots of the hash map (a power of two). */
+	private final static int	_INITIAL_CAPACITY	= 256;
+
+	/** The marker of an empty slot (token ids are never negative). */
+	private final static int	_EMPTY				= -1;
+
+	/** The token id held by each slot. */
+	private int[]				_tokenIds			= null;
+
+	/** The local token id held by each slot. */
+	private int[]				_localIds			= null;
+
+	/** The slots that were filled since the last reset, in order of filling. */
+	private int[]				_touched			= null;
+
+	/** The number of filled slots. */
+	private int					_size				= 0;
+
+	/** The next local id of each category. */
+	private int[]				_nextIds			= new int[TokenTable._UNMAPPED_CATEGORY + 1];
+
+	/** If true the category is numbered locally, indexed by category. */
+	private boolean[]			_localCategories	= new boolean[TokenTable._UNMAPPED_CATEGORY + 1];
+
+	/** The cached local identifiers of each category, indexed by category then local id. */
+	private String[][]			_localKeys			= new String[TokenTable._CATEGORY_COUNT][];
+
+	/** The key prefix that the cached local identifiers of each category were built with. */
+	private String[]			_localKeyPrefixes	= new String[TokenTable._CATEGORY_COUNT];
+
+	/**
+	 * Instantiates a new {@link LocalNumbering} that numbers the literals, primitives, objects and
+	 * comments locally.
+	 */
+	public LocalNumbering() {
+
+		_tokenIds = new int[_INITIAL_CAPACITY];
+		_localIds = new int[_INITIAL_CAPACITY];
+		_touched = new int[_INITIAL_CAPACITY / 2];
+		Arrays.fill( _tokenIds, _EMPTY );
+
+		_localCategories[TokenTable._LITERAL_CATEGORY] = true;
+		_localCategories[TokenTable._PRIMITIVE_CATEGORY] = true;
+		_localCategories[TokenTable._OBJECT_CATEGORY] = true;
+		_localCategories[TokenTable._COMMENT_CATEGORY] = true;
+	}
+
+	/**
+	 * Sets whether the category is numbered locally; otherwise its identifiers keep their global
+	 * ids. This should be set before a document is numbered.
+	 *
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @param local if true the category is numbered locally
+	 */
+	public void setLocalCategory( int category, boolean local ) {
+		_localCategories[category] = local;
+	}
+
+	/**
+	 * Checks to see if the category is numbered locally.
+	 *
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @return true if the category is numbered locally
+	 */
+	public boolean isLocalCategory( int category ) {
+		return _localCategories[category];
+	}
+
+	/**
+	 * Gets the number of distinct identifiers numbered since the last reset.
+	 *
+	 * @return the number of identifiers
+	 */
+	public int getSize() {
+		return _size;
+	}
+
+	/**
+	 * Gets the number of local ids given out to the category since the last reset.
+	 *
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @return the number of local ids of the category
+	 */
+	public int getLocalIdCount( int category ) {
+		return _nextIds[category];
+	}
+
+	/**
+	 * Resets the numbering for a new document. Only the slots that were filled since the last reset
+	 * are cleared, so the reset takes time linear to the number of distinct identifiers of the
+	 * document and not to the size of the hash map.
+	 */
+	public void reset() {
+
+		for( int i = 0; i < _size; i++ ) {
+			_tokenIds[_touched[i]] = _EMPTY;
+		}
+
+		_size = 0;
+		Arrays.fill( _nextIds, 0 );
+	}
+
+	/**
+	 * Gets the local token id of the token id, giving it the next local id of its category if it
+	 * is the first appearance within the document. The local token id has the same layout as the
+	 * token id (the category in the low bits, see {@link TokenTable#getTokenId(String)}). The
+	 * token ids of categories that are not numbered locally are returned as they are.
+	 *
+	 * @param tokenId the token id
+	 * @return the local token id
+	 */
+	public int getLocalId( int tokenId ) {
+
+		int category = TokenTable.getCategory( tokenId );
+		if( !_localCategories[category] ) {
+			return tokenId;
+		}
+
+		// Probe linearly from the hashed slot until the token id or an empty slot is found
+		int mask = _tokenIds.length - 1;
+		int slot = hash( tokenId ) & mask;
+		while( _tokenIds[slot] != _EMPTY ) {
+			if( _tokenIds[slot] == tokenId ) {
+				return _localIds[slot];
+			}
+			slot = ( slot + 1 ) & mask;
+		}
+
+		int localId = ( _nextIds[category]++ << TokenTable._CATEGORY_BITS ) | category;
+		_tokenIds[slot] = tokenId;
+		_localIds[slot] = localId;
+		_touched[_size++] = slot;
+
+		// Keep the load factor at most one half
+		if( _size == _touched.length ) {
+			grow();
+		}
+
+		return localId;
+	}
+
+	/**
+	 * Gets the local identifier of the identifier (ie: the second distinct object of the document
+	 * is <code>:o1</code>), see {@link LocalNumbering#getLocalId(int)}. Tokens that are not
+	 * identifiers of the {@link TokenTable}, and identifiers of categories that are not numbered
+	 * locally, are returned as they are.
+	 *
+	 * @param tokenKey the identifier (ie: :o3) or unmapped token
+	 * @param tokenTable the {@link TokenTable} that the identifier belongs to
+	 * @return the local identifier
+	 */
+	public String getLocalKey( String tokenKey, TokenTable tokenTable ) {
+
+		int tokenId = tokenTable.getMappedTokenId( tokenKey );
+		if( tokenId == -1 || !_localCategories[TokenTable.getCategory( tokenId )] ) {
+			return tokenKey;
+		}
+
+		int localId = getLocalId( tokenId );
+		int category = TokenTable.getCategory( localId );
+		int id = TokenTable.getKeyId( localId );
+
+		// The local identifiers repeat from one document to the next, so they are cached
+		String prefix = tokenTable.getMap( category ).getKeyPrefix();
+		String[] localKeys = _localKeys[category];
+		if( localKeys == null || !prefix.equals( _localKeyPrefixes[category] ) ) {
+			localKeys = new String[_INITIAL_CAPACITY];
+			_localKeys[category] = localKeys;
+			_localKeyPrefixes[category] = prefix;
+		}
+		else if( id >= localKeys.length ) {
+			localKeys = Arrays.copyOf( localKeys, Math.max( id + 1, localKeys.length * 2 ) );
+			_localKeys[category] = localKeys;
+		}
+
+		if( localKeys[id] == null ) {
+			localKeys[id] = prefix + id;
+		}
+
+		return localKeys[id];
+	}
+
+	/**
+	 * Doubles the size of the hash map, re-inserting the filled slots.
+	 */
+	private void grow() {
+
+		int[] tokenIds = _tokenIds;
+		int[] localIds = _localIds;
+		int[] touched = _touched;
+
+		_tokenIds = new int[tokenIds.length * 2];
+		_localIds = new int[tokenIds.length * 2];
+		_touched = new int[touched.length * 2];
+		Arrays.fill( _tokenIds, _EMPTY );
+
+		int mask = _tokenIds.length - 1;
+		for( int i = 0; i < _size; i++ ) {
+
+			int slot = hash( tokenIds[touched[i]] ) & mask;
+			while( _tokenIds[slot] != _EMPTY ) {
+				slot = ( slot + 1 ) & mask;
+			}
+
+			_tokenIds[slot] = tokenIds[touched[i]];
+			_localIds[slot] = localIds[touched[i]];
+			_touched[i] = slot;
+		}
+	}
+
+	/**
+	 * Spreads the bits of the token id, since consecutive ids only differ in their high bits.
+	 *
+	 * @param tokenId the token id
+	 * @return the hash of the token id
+	 */
+	private static int hash( int tokenId ) {
+
+		int hash = tokenId * 0x9E3779B9;
+		return hash ^ ( hash >>> 16 );
+	}
+}
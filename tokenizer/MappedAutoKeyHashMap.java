@@ -0,0 +1,546 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An {@link AutoKeyHashMap} of {@link String} values stored in a memory-mapped file, which can be
+ * shared by several processes on the same machine (and by several threads of each). Every process
+ * that maps the same file sees the same values under the same ids, and reads them straight from
+ * the shared pages instead of keeping a private copy.
+ * <p>
+ * The file holds an append-only log of the UTF-8 encoded values, a table from each id to its
+ * value in the log, and an open-addressing hash table of the values. A value is added by appending
+ * it to the log and then claiming an empty slot of the hash table with a compare-and-set, so two
+ * processes adding the same value at once agree on a single id: the one that loses the slot finds
+ * the winner's value in it. The counters of the file are also claimed with atomic operations, so
+ * no lock is held while adding.
+ * <p>
+ * The capacity (number of ids and size of the log) is fixed when the file is created. Values
+ * cannot be removed, since other processes may already be using their ids, so
+ * {@link MappedAutoKeyHashMap#removeValue(String)} and {@link MappedAutoKeyHashMap#clearAll()}
+ * are not supported and {@link MappedAutoKeyHashMap#truncate(int)} keeps the values. An id lost to
+ * a concurrent add of the same value, or by a process that died while adding, is never used.
+ *
+ * @author Kevin Jalbert
+ */
+public class MappedAutoKeyHashMap extends AutoKeyHashMap<String> implements Closeable {
+
+	/** The default number of ids of a new file. */
+	public final static int			_DEFAULT_MAX_VALUES	= 1 << 20;
+
+	/** The default size in bytes of the value log of a new file. */
+	public final static int			_DEFAULT_LOG_SIZE	= 64 * 1024 * 1024;
+
+	/** The magic number that starts the file ("TKMD"). */
+	private final static int		_MAGIC				= 0x544B4D44;
+
+	/** The version of the file format. */
+	private final static int		_VERSION			= 1;
+
+	/** The size in bytes of the file header. */
+	private final static int		_HEADER_SIZE		= 64;
+
+	/** The header offset of the number of ids. */
+	private final static int		_MAX_VALUES_OFFSET	= 8;
+
+	/** The header offset of the number of slots of the hash table. */
+	private final static int		_SLOTS_OFFSET		= 12;
+
+	/** The header offset of the size of the log. */
+	private final static int		_LOG_SIZE_OFFSET	= 16;
+
+	/** The header offset of the number of ids given out. */
+	private final static int		_VALUE_COUNT_OFFSET	= 20;
+
+	/** The header offset of the end of the used part of the log. */
+	private final static int		_LOG_END_OFFSET		= 24;
+
+	/** The size in bytes of the header of a log record (hash, id, length). */
+	private final static int		_RECORD_HEADER_SIZE	= 12;
+
+	/** The UTF-8 {@link Charset} of the values. */
+	private final static Charset	_UTF8				= Charset.forName( "UTF-8" );
+
+	/** The atomic access to the <code>int</code>s of the mapped file. */
+	private final static VarHandle	_INTS				= MethodHandles.byteBufferViewVarHandle(
+																int[].class, ByteOrder
+																		.nativeOrder() );
+
+	/** The {@link FileChannel} of the mapped file. */
+	private FileChannel				_channel			= null;
+
+	/** The mapped file. */
+	private ByteBuffer				_buffer				= null;
+
+	/** The number of ids the file can hold. */
+	private int						_maxValues			= 0;
+
+	/** The number of slots of the hash table (a power of two). */
+	private int						_slotCount			= 0;
+
+	/** The size in bytes of the log. */
+	private int						_logSize			= 0;
+
+	/** The offset of the id table within the file. */
+	private int						_idsStart			= 0;
+
+	/** The offset of the hash table within the file. */
+	private int						_slotsStart			= 0;
+
+	/** The offset of the log within the file. */
+	private int						_logStart			= 0;
+
+	/**
+	 * Maps the file with the default capacity, creating it if it doesn't exist.
+	 *
+	 * @param file the file to be shared
+	 * @param keyPrefix the key's prefix to be prepended to each key
+	 * @throws IOException if the file cannot be created or mapped, or is not a dictionary file
+	 */
+	public MappedAutoKeyHashMap( Path file, String keyPrefix ) throws IOException {
+		this( file, keyPrefix, _DEFAULT_MAX_VALUES, _DEFAULT_LOG_SIZE );
+	}
+
+	/**
+	 * Maps the file, creating it with the specified capacity if it doesn't exist. The capacity of
+	 * an existing file is the one it was created with.
+	 *
+	 * @param file the file to be shared
+	 * @param keyPrefix the key's prefix to be prepended to each key
+	 * @param maxValues the number of ids a new file can hold
+	 * @param logSize the size in bytes of the value log of a new file
+	 * @throws IOException if the file cannot be created or mapped, or is not a dictionary file
+	 */
+	public MappedAutoKeyHashMap( Path file, String keyPrefix, int maxValues, int logSize )
+			throws IOException {
+		super( keyPrefix );
+
+		_channel = FileChannel.open( file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE );
+
+		// The process that finds the file empty lays it out while holding the file lock
+		FileLock lock = _channel.lock();
+		try {
+			if( _channel.size() == 0 ) {
+				create( maxValues, logSize );
+			}
+			else {
+				open();
+			}
+		}
+		catch( IOException e ) {
+			_channel.close();
+			throw e;
+		}
+		finally {
+			if( lock.isValid() ) {
+				lock.release();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The value is decoded from the mapped file into a new {@link String}.
+	 */
+	@Override
+	public String getValue( String key ) {
+
+		int id = getKeyId( key );
+		if( id < 0 || id >= getValueCount() ) {
+			return null;
+		}
+
+		int record = getRecord( id );
+		return record == -1 ? null : decode( record );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getKey( String value ) {
+
+		byte[] bytes = value.getBytes( _UTF8 );
+		int hash = OffHeapAutoKeyHashMap.hash( bytes, bytes.length );
+
+		int mask = _slotCount - 1;
+		for( int slot = hash & mask;; slot = ( slot + 1 ) & mask ) {
+
+			int record = getSlot( slot );
+			if( record == -1 ) {
+				return null;
+			}
+			if( matches( record, bytes, hash ) ) {
+				return getKeyForId( _buffer.getInt( record + 4 ) );
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Safe to call from any thread or process that maps the file.
+	 *
+	 * @throws IllegalStateException if the file has no room left for the value
+	 */
+	@Override
+	public String addValue( String value ) {
+
+		byte[] bytes = value.getBytes( _UTF8 );
+		int hash = OffHeapAutoKeyHashMap.hash( bytes, bytes.length );
+		int record = -1;
+
+		int mask = _slotCount - 1;
+		int slot = hash & mask;
+		for( int probes = 0; probes < _slotCount; probes++ ) {
+
+			int found = getSlot( slot );
+			if( found == -1 ) {
+
+				// Write the value to the log once, before trying to claim a slot for it
+				if( record == -1 ) {
+					record = append( bytes, hash );
+				}
+
+				if( _INTS.compareAndSet( _buffer, _slotsStart + slot * 4, 0, record + 1 ) ) {
+
+					// Publish the id's record, now that the value owns its id
+					int id = _buffer.getInt( record + 4 );
+					_INTS.setVolatile( _buffer, _idsStart + id * 4, record + 1 );
+					return getKeyForId( id );
+				}
+
+				// Another thread or process claimed the slot first; check what it holds
+				found = getSlot( slot );
+			}
+
+			if( matches( found, bytes, hash ) ) {
+				return getKeyForId( _buffer.getInt( found + 4 ) );
+			}
+
+			slot = ( slot + 1 ) & mask;
+		}
+
+		throw new IllegalStateException( "The mapped dictionary is full" );
+	}
+
+	/**
+	 * Not supported, as other processes may be using the id of the value.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void removeValue( String key ) {
+		throw new UnsupportedOperationException( "Values cannot be removed from a mapped "
+				+ "dictionary" );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The values are kept, as other processes may already be using their ids, so a
+	 * {@link TokenTable} that is rolled back keeps the values it added.
+	 */
+	@Override
+	public void truncate( int valueCount ) {
+	}
+
+	/**
+	 * Not supported, as other processes may be using the ids of the values.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void clearAll() {
+		throw new UnsupportedOperationException( "A mapped dictionary cannot be cleared" );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned {@link Set} is a copy of the keys.
+	 */
+	@Override
+	public Set<String> getAllKeys() {
+
+		Set<String> keys = new LinkedHashSet<String>();
+		int valueCount = getValueCount();
+		for( int id = 0; id < valueCount; id++ ) {
+			if( getRecord( id ) != -1 ) {
+				keys.add( getKeyForId( id ) );
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned {@link Collection} is a copy of the values, each decoded from the mapped file.
+	 */
+	@Override
+	public Collection<String> getAllValues() {
+
+		ArrayList<String> values = new ArrayList<String>();
+		int valueCount = getValueCount();
+		for( int id = 0; id < valueCount; id++ ) {
+
+			int record = getRecord( id );
+			if( record != -1 ) {
+				values.add( decode( record ) );
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return getValueCount() == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This counts the ids given out, including the rare ids that were lost (see
+	 * {@link MappedAutoKeyHashMap}).
+	 */
+	@Override
+	public int getSize() {
+		return getValueCount();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getValueCount() {
+		return Math.min( (int) _INTS.getVolatile( _buffer, _VALUE_COUNT_OFFSET ), _maxValues );
+	}
+
+	/**
+	 * Gets the number of ids the file can hold.
+	 *
+	 * @return the maximum number of values
+	 */
+	public int getMaxValues() {
+		return _maxValues;
+	}
+
+	/**
+	 * Gets the number of bytes of the value log that are used.
+	 *
+	 * @return the used size of the log in bytes
+	 */
+	public int getLogUsed() {
+		return Math.min( (int) _INTS.getVolatile( _buffer, _LOG_END_OFFSET ), _logSize );
+	}
+
+	/**
+	 * Closes the {@link FileChannel} of the file. The mapping stays valid till it is garbage
+	 * collected, and the values remain in the file for the other processes.
+	 *
+	 * @throws IOException if the channel cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		_channel.close();
+	}
+
+	/**
+	 * Lays out and maps a new file.
+	 *
+	 * @param maxValues the number of ids the file can hold
+	 * @param logSize the size in bytes of the value log
+	 * @throws IOException if the file cannot be mapped
+	 */
+	private void create( int maxValues, int logSize ) throws IOException {
+
+		if( maxValues < 1 || logSize < 1 ) {
+			throw new IllegalArgumentException( "The capacity must be positive" );
+		}
+
+		// Keep the hash table at most half full (the layout is computed in long, as a capacity
+		// near the int range would overflow)
+		long slotCount = Long.highestOneBit( Math.max( 1, maxValues - 1 ) ) << 2;
+		map( maxValues, slotCount, ( logSize + 7L ) & ~7L );
+
+		_buffer.putInt( 4, _VERSION );
+		_buffer.putInt( _MAX_VALUES_OFFSET, _maxValues );
+		_buffer.putInt( _SLOTS_OFFSET, _slotCount );
+		_buffer.putInt( _LOG_SIZE_OFFSET, _logSize );
+
+		// The magic goes in last, so a half made file is never taken as a dictionary
+		_INTS.setVolatile( _buffer, 0, _MAGIC );
+	}
+
+	/**
+	 * Maps an existing file using the layout in its header.
+	 *
+	 * @throws IOException if the file cannot be mapped or is not a dictionary file
+	 */
+	private void open() throws IOException {
+
+		ByteBuffer header = ByteBuffer.allocate( _HEADER_SIZE ).order( ByteOrder.nativeOrder() );
+		while( header.hasRemaining() && _channel.read( header, header.position() ) >= 0 ) {
+		}
+
+		if( header.getInt( 0 ) != _MAGIC ) {
+			throw new IOException( "Not a mapped dictionary file" );
+		}
+		if( header.getInt( 4 ) != _VERSION ) {
+			throw new IOException( "Unsupported mapped dictionary version" );
+		}
+
+		map( header.getInt( _MAX_VALUES_OFFSET ), header.getInt( _SLOTS_OFFSET ), header
+				.getInt( _LOG_SIZE_OFFSET ) );
+	}
+
+	/**
+	 * Maps the file with the specified layout, which is checked before anything is mapped.
+	 *
+	 * @param maxValues the number of ids the file holds
+	 * @param slotCount the number of slots of the hash table (a power of two)
+	 * @param logSize the size in bytes of the value log
+	 * @throws IOException if the layout is invalid or too large (over 2GB), or the file cannot be
+	 *             mapped
+	 */
+	private void map( long maxValues, long slotCount, long logSize ) throws IOException {
+
+		if( maxValues < 1 || slotCount < 1 || Long.bitCount( slotCount ) != 1 || logSize < 1 ) {
+			throw new IOException( "Invalid mapped dictionary layout" );
+		}
+
+		long slotsStart = _HEADER_SIZE + maxValues * 4;
+		long logStart = ( slotsStart + slotCount * 4 + 7 ) & ~7L;
+		long size = logStart + logSize;
+		if( size > Integer.MAX_VALUE ) {
+			throw new IOException( "The mapped dictionary is too large: " + maxValues
+					+ " values and a " + logSize + " byte log need " + size
+					+ " bytes (at most 2GB)" );
+		}
+
+		_maxValues = (int) maxValues;
+		_slotCount = (int) slotCount;
+		_logSize = (int) logSize;
+		_idsStart = _HEADER_SIZE;
+		_slotsStart = (int) slotsStart;
+		_logStart = (int) logStart;
+
+		_buffer = _channel.map( FileChannel.MapMode.READ_WRITE, 0, size ).order(
+				ByteOrder.nativeOrder() );
+	}
+
+	/**
+	 * Appends a value to the log, giving it the next id.
+	 *
+	 * @param bytes the UTF-8 encoded value
+	 * @param hash the content hash of the value
+	 * @return the offset of the record within the file
+	 * @throws IllegalStateException if the file has no room left
+	 */
+	private int append( byte[] bytes, int hash ) {
+
+		int size = ( _RECORD_HEADER_SIZE + bytes.length + 3 ) & ~3;
+		int end = (int) _INTS.getAndAdd( _buffer, _LOG_END_OFFSET, size );
+		if( end < 0 || end > _logSize - size ) {
+			throw new IllegalStateException( "The log of the mapped dictionary is full" );
+		}
+
+		int id = (int) _INTS.getAndAdd( _buffer, _VALUE_COUNT_OFFSET, 1 );
+		if( id < 0 || id >= _maxValues ) {
+			throw new IllegalStateException( "The mapped dictionary is full" );
+		}
+
+		// The record is written before its slot is claimed, which publishes it
+		int record = _logStart + end;
+		_buffer.putInt( record, hash );
+		_buffer.putInt( record + 4, id );
+		_buffer.putInt( record + 8, bytes.length );
+		for( int i = 0; i < bytes.length; i++ ) {
+			_buffer.put( record + _RECORD_HEADER_SIZE + i, bytes[i] );
+		}
+
+		return record;
+	}
+
+	/**
+	 * Gets the record in a slot of the hash table.
+	 *
+	 * @param slot the index of the slot
+	 * @return the offset of the record within the file; -1 if the slot is empty
+	 */
+	private int getSlot( int slot ) {
+		return (int) _INTS.getVolatile( _buffer, _slotsStart + slot * 4 ) - 1;
+	}
+
+	/**
+	 * Gets the record of an id.
+	 *
+	 * @param id the id of the value
+	 * @return the offset of the record within the file; -1 if the id has no value
+	 */
+	private int getRecord( int id ) {
+		return (int) _INTS.getVolatile( _buffer, _idsStart + id * 4 ) - 1;
+	}
+
+	/**
+	 * Checks to see if the value of a record is equal to the encoded bytes.
+	 *
+	 * @param record the offset of the record within the file
+	 * @param bytes the UTF-8 encoded value
+	 * @param hash the content hash of the value
+	 * @return true if the record holds the value
+	 */
+	private boolean matches( int record, byte[] bytes, int hash ) {
+
+		if( _buffer.getInt( record ) != hash || _buffer.getInt( record + 8 ) != bytes.length ) {
+			return false;
+		}
+
+		int start = record + _RECORD_HEADER_SIZE;
+		for( int i = 0; i < bytes.length; i++ ) {
+			if( _buffer.get( start + i ) != bytes[i] ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decodes the value of a record.
+	 *
+	 * @param record the offset of the record within the file
+	 * @return the decoded value
+	 */
+	private String decode( int record ) {
+
+		byte[] bytes = new byte[_buffer.getInt( record + 8 )];
+		for( int i = 0; i < bytes.length; i++ ) {
+			bytes[i] = _buffer.get( record + _RECORD_HEADER_SIZE + i );
+		}
+
+		return new String( bytes, _UTF8 );
+	}
+}
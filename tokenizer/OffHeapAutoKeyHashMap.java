@@ -0,0 +1,515 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An {@link AutoKeyHashMap} of {@link String} values that stores the values off the heap. Each
+ * value is encoded as UTF-8 into an arena of direct {@link ByteBuffer} chunks, and is referenced by
+ * its (chunk, offset, length) within the arena. Values are deduplicated using a hash of their
+ * content, and are only materialized as {@link String}s when they are acquired.
+ * <p>
+ * This is intended for the large values of a {@link TokenTable} (ie: literals and comments), so
+ * that they don't have to be retained as individual objects on the heap. The keys follow the same
+ * auto incrementing scheme as an {@link AutoKeyHashMap}.
+ *
+ * @author Kevin Jalbert
+ */
+public class OffHeapAutoKeyHashMap extends AutoKeyHashMap<String> {
+
+	/** The default size in bytes of each chunk of the arena. */
+	public final static int			_DEFAULT_CHUNK_SIZE	= 1024 * 1024;
+
+	/** The UTF-8 {@link Charset} used to decode the values. */
+	private final static Charset	_UTF8				= Charset.forName( "UTF-8" );
+
+	/** The slot value of a removed entry in the hash table. */
+	private final static int		_REMOVED			= -1;
+
+	/** The size in bytes of each chunk of the arena. */
+	private int						_chunkSize			= 0;
+
+	/** The chunks of the arena holding the UTF-8 encoded values. */
+	private ArrayList<ByteBuffer>	_chunks				= new ArrayList<ByteBuffer>();
+
+	/** The chunk of each value, indexed by the value's id. */
+	private int[]					_valueChunks		= new int[16];
+
+	/** The offset within the chunk of each value, indexed by the value's id. */
+	private int[]					_valueOffsets		= new int[16];
+
+	/** The encoded length of each value (-1 if removed), indexed by the value's id. */
+	private int[]					_valueLengths		= new int[16];
+
+	/** The content hash of each value, indexed by the value's id. */
+	private int[]					_valueHashes		= new int[16];
+
+	/** The open addressing hash table of the value ids plus one (0 is an empty slot). */
+	private int[]					_slots				= new int[32];
+
+	/** The number of used (including removed) slots of the hash table. */
+	private int						_usedSlots			= 0;
+
+	/** The number of values currently stored. */
+	private int						_size				= 0;
+
+	/** The count of the last inputed value. */
+	private int						_valueCount			= 0;
+
+	/** The scratch buffer used to encode values before they are stored. */
+	private byte[]					_scratch			= new byte[256];
+
+	/**
+	 * Constructor that sets up the arena using the default chunk size, with the specified key's
+	 * prefix.
+	 *
+	 * @param keyPrefix the key's prefix to be prepended to each key
+	 */
+	public OffHeapAutoKeyHashMap( String keyPrefix ) {
+		this( keyPrefix, _DEFAULT_CHUNK_SIZE );
+	}
+
+	/**
+	 * Constructor that sets up the arena using the specified chunk size, with the specified key's
+	 * prefix. Values larger than the chunk size are stored within a chunk of their own.
+	 *
+	 * @param keyPrefix the key's prefix to be prepended to each key
+	 * @param chunkSize the size in bytes of each chunk of the arena
+	 */
+	public OffHeapAutoKeyHashMap( String keyPrefix, int chunkSize ) {
+		super( keyPrefix );
+		_chunkSize = chunkSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The value is decoded from the arena into a new {@link String}.
+	 */
+	@Override
+	public String getValue( String key ) {
+
+		int id = getKeyId( key );
+		if( id < 0 || id >= _valueCount || _valueLengths[id] < 0 ) {
+			return null;
+		}
+
+		return decode( id );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getKey( String value ) {
+
+		int length = encode( value );
+		int id = find( _scratch, length, hash( _scratch, length ) );
+
+		return id == -1 ? null : getKeyForId( id );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String addValue( String value ) {
+		return addCharacters( value );
+	}
+
+	/**
+	 * Adds the characters as a value, see {@link AutoKeyHashMap#addValue(Object)}. The characters
+	 * are encoded directly into the arena, so no {@link String} is needed for the value.
+	 *
+	 * @param value the characters of the value to be stored
+	 * @return the key that is used to index the specified value
+	 */
+	public String addCharacters( CharSequence value ) {
+
+		// Check to see if this value has already been added
+		int length = encode( value );
+		int hash = hash( _scratch, length );
+		int id = find( _scratch, length, hash );
+
+		if( id == -1 ) { // The value hasn't been added before
+
+			// Grow the hash table before it becomes too full
+			if( ( _usedSlots + 1 ) * 4 > _slots.length * 3 ) {
+				rehash();
+			}
+
+			id = _valueCount++;
+			ensureValueCapacity( _valueCount );
+			store( id, length, hash );
+			insertSlot( id, hash );
+			_size++;
+		}
+
+		return getKeyForId( id );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The space of the value within the arena is not reclaimed until the map is cleared.
+	 */
+	@Override
+	public void removeValue( String key ) {
+
+		int id = getKeyId( key );
+		if( id < 0 || id >= _valueCount || _valueLengths[id] < 0 ) {
+			return;
+		}
+
+		// Mark the slot as removed so that probing continues past it
+		int mask = _slots.length - 1;
+		for( int slot = _valueHashes[id] & mask;; slot = ( slot + 1 ) & mask ) {
+			if( _slots[slot] == id + 1 ) {
+				_slots[slot] = _REMOVED;
+				break;
+			}
+		}
+
+		_valueLengths[id] = -1;
+		_size--;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The space of the removed values within the arena is reclaimed, as they were the last to be
+	 * stored.
+	 */
+	@Override
+	public void truncate( int valueCount ) {
+
+		valueCount = Math.max( valueCount, 0 );
+		if( valueCount >= _valueCount ) {
+			return;
+		}
+
+		for( int id = _valueCount - 1; id >= valueCount; id-- ) {
+			removeValue( getKeyForId( id ) );
+		}
+
+		// Wind the arena back to where the first removed value was stored
+		int chunk = _valueChunks[valueCount];
+		while( _chunks.size() > chunk + 1 ) {
+			_chunks.remove( _chunks.size() - 1 );
+		}
+		_chunks.get( chunk ).position( _valueOffsets[valueCount] );
+
+		_valueCount = valueCount;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The chunks of the arena are released.
+	 */
+	@Override
+	public void clearAll() {
+		_chunks.clear();
+		Arrays.fill( _slots, 0 );
+		_usedSlots = 0;
+		_size = 0;
+		_valueCount = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	AutoKeyHashMap<String> createEmpty() {
+		return new OffHeapAutoKeyHashMap( getKeyPrefix(), _chunkSize );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned {@link Set} is a copy of the keys.
+	 */
+	@Override
+	public Set<String> getAllKeys() {
+
+		Set<String> keys = new LinkedHashSet<String>();
+		for( int id = 0; id < _valueCount; id++ ) {
+			if( _valueLengths[id] >= 0 ) {
+				keys.add( getKeyForId( id ) );
+			}
+		}
+
+		return keys;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned {@link Collection} is a copy of the values, each decoded from the arena.
+	 */
+	@Override
+	public Collection<String> getAllValues() {
+
+		ArrayList<String> values = new ArrayList<String>( _size );
+		for( int id = 0; id < _valueCount; id++ ) {
+			if( _valueLengths[id] >= 0 ) {
+				values.add( decode( id ) );
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getSize() {
+		return _size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getValueCount() {
+		return _valueCount;
+	}
+
+	/**
+	 * Gets the number of bytes of the arena that are allocated off the heap.
+	 *
+	 * @return the allocated size of the arena in bytes
+	 */
+	public long getArenaSize() {
+
+		long size = 0;
+		for( ByteBuffer chunk : _chunks ) {
+			size += chunk.capacity();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Decodes the value with the specified id from the arena.
+	 *
+	 * @param id the id of the value
+	 * @return the decoded value
+	 */
+	private String decode( int id ) {
+
+		byte[] bytes = new byte[_valueLengths[id]];
+		ByteBuffer chunk = _chunks.get( _valueChunks[id] ).duplicate();
+		chunk.position( _valueOffsets[id] );
+		chunk.get( bytes );
+
+		return new String( bytes, _UTF8 );
+	}
+
+	/**
+	 * Encodes the characters as UTF-8 into the scratch buffer. Unpaired surrogates are encoded as
+	 * '?', matching {@link String#getBytes(Charset)}.
+	 *
+	 * @param value the characters to be encoded
+	 * @return the encoded length in bytes
+	 */
+	private int encode( CharSequence value ) {
+
+		int length = 0;
+		for( int i = 0; i < value.length(); i++ ) {
+
+			// Make sure there is room for the largest encoding of a character
+			if( length + 4 > _scratch.length ) {
+				_scratch = Arrays.copyOf( _scratch, _scratch.length * 2 );
+			}
+
+			char character = value.charAt( i );
+			if( character < 0x80 ) {
+				_scratch[length++] = (byte) character;
+			}
+			else if( character < 0x800 ) {
+				_scratch[length++] = (byte) ( 0xC0 | ( character >> 6 ) );
+				_scratch[length++] = (byte) ( 0x80 | ( character & 0x3F ) );
+			}
+			else if( Character.isHighSurrogate( character ) && i + 1 < value.length()
+					&& Character.isLowSurrogate( value.charAt( i + 1 ) ) ) {
+				int codePoint = Character.toCodePoint( character, value.charAt( ++i ) );
+				_scratch[length++] = (byte) ( 0xF0 | ( codePoint >> 18 ) );
+				_scratch[length++] = (byte) ( 0x80 | ( ( codePoint >> 12 ) & 0x3F ) );
+				_scratch[length++] = (byte) ( 0x80 | ( ( codePoint >> 6 ) & 0x3F ) );
+				_scratch[length++] = (byte) ( 0x80 | ( codePoint & 0x3F ) );
+			}
+			else if( Character.isSurrogate( character ) ) {
+				_scratch[length++] = '?';
+			}
+			else {
+				_scratch[length++] = (byte) ( 0xE0 | ( character >> 12 ) );
+				_scratch[length++] = (byte) ( 0x80 | ( ( character >> 6 ) & 0x3F ) );
+				_scratch[length++] = (byte) ( 0x80 | ( character & 0x3F ) );
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Computes the content hash of the encoded bytes.
+	 *
+	 * @param bytes the encoded bytes
+	 * @param length the number of bytes to hash
+	 * @return the content hash
+	 */
+	static int hash( byte[] bytes, int length ) {
+
+		int hash = 0x811C9DC5;
+		for( int i = 0; i < length; i++ ) {
+			hash = ( hash ^ bytes[i] ) * 0x01000193;
+		}
+
+		// Spread the bits so that the low bits are usable as a slot index
+		return hash ^ ( hash >>> 16 );
+	}
+
+	/**
+	 * Finds the id of the stored value that is equal to the encoded bytes.
+	 *
+	 * @param bytes the encoded bytes
+	 * @param length the number of encoded bytes
+	 * @param hash the content hash of the encoded bytes
+	 * @return the id of the equal value; -1 if there is none
+	 */
+	private int find( byte[] bytes, int length, int hash ) {
+
+		int mask = _slots.length - 1;
+		for( int slot = hash & mask; _slots[slot] != 0; slot = ( slot + 1 ) & mask ) {
+
+			int id = _slots[slot] - 1;
+			if( id >= 0 && _valueHashes[id] == hash && _valueLengths[id] == length
+					&& matches( id, bytes, length ) ) {
+				return id;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Checks to see if the stored value is equal to the encoded bytes.
+	 *
+	 * @param id the id of the stored value
+	 * @param bytes the encoded bytes
+	 * @param length the number of encoded bytes
+	 * @return true if the stored value is equal to the bytes
+	 */
+	private boolean matches( int id, byte[] bytes, int length ) {
+
+		ByteBuffer chunk = _chunks.get( _valueChunks[id] );
+		int offset = _valueOffsets[id];
+		for( int i = 0; i < length; i++ ) {
+			if( chunk.get( offset + i ) != bytes[i] ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Copies the encoded scratch bytes into the arena as the value with the specified id.
+	 *
+	 * @param id the id of the value
+	 * @param length the number of encoded bytes
+	 * @param hash the content hash of the encoded bytes
+	 */
+	private void store( int id, int length, int hash ) {
+
+		// Start a new chunk if the value doesn't fit within the current one
+		ByteBuffer chunk = _chunks.isEmpty() ? null : _chunks.get( _chunks.size() - 1 );
+		if( chunk == null || chunk.remaining() < length ) {
+			chunk = ByteBuffer.allocateDirect( Math.max( _chunkSize, length ) );
+			_chunks.add( chunk );
+		}
+
+		_valueChunks[id] = _chunks.size() - 1;
+		_valueOffsets[id] = chunk.position();
+		_valueLengths[id] = length;
+		_valueHashes[id] = hash;
+		chunk.put( _scratch, 0, length );
+	}
+
+	/**
+	 * Inserts the id into the hash table.
+	 *
+	 * @param id the id of the value
+	 * @param hash the content hash of the value
+	 */
+	private void insertSlot( int id, int hash ) {
+
+		int mask = _slots.length - 1;
+		int slot = hash & mask;
+		while( _slots[slot] != 0 ) {
+			slot = ( slot + 1 ) & mask;
+		}
+
+		_slots[slot] = id + 1;
+		_usedSlots++;
+	}
+
+	/**
+	 * Rebuilds the hash table without the removed slots, doubling it if it is more than half full.
+	 */
+	private void rehash() {
+
+		int capacity = _slots.length;
+		if( _size * 2 >= capacity ) {
+			capacity *= 2;
+		}
+
+		_slots = new int[capacity];
+		_usedSlots = 0;
+		int mask = capacity - 1;
+		for( int id = 0; id < _valueCount; id++ ) {
+
+			if( _valueLengths[id] >= 0 ) {
+
+				int slot = _valueHashes[id] & mask;
+				while( _slots[slot] != 0 ) {
+					slot = ( slot + 1 ) & mask;
+				}
+				_slots[slot] = id + 1;
+				_usedSlots++;
+			}
+		}
+	}
+
+	/**
+	 * Makes sure the arrays indexed by the value ids can hold the specified number of values.
+	 *
+	 * @param capacity the required capacity
+	 */
+	private void ensureValueCapacity( int capacity ) {
+
+		if( capacity > _valueLengths.length ) {
+
+			int newCapacity = Math.max( capacity, _valueLengths.length * 2 );
+			_valueChunks = Arrays.copyOf( _valueChunks, newCapacity );
+			_valueOffsets = Arrays.copyOf( _valueOffsets, newCapacity );
+			_valueLengths = Arrays.copyOf( _valueLengths, newCapacity );
+			_valueHashes = Arrays.copyOf( _valueHashes, newCapacity );
+		}
+	}
+}
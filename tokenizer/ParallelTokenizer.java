@@ -0,0 +1,883 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import ca.tokenizing_parser.tokenizer.languages.LanguageKeywords;
+
+/**
+ * Tokenizes a single large input using several threads, producing exactly the same output (and the
+ * same {@link TokenTable} identifier assignment order) as
+ * {@link TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable)}.
+ * <p>
+ * The input is split into chunks, and each chunk is scanned for its literals and comments in
+ * parallel, once for each state it could start in (code, a literal, or a comment). The true
+ * starting state of each chunk is then resolved in order from the end of the chunk before, and
+ * the other scans of the chunk are cancelled; a chunk is only rescanned when a two character
+ * delimiter straddles the chunk boundary. All of this happens before the {@link TokenTable} is
+ * locked. The chosen scans are then stitched together in order, and as soon as enough of the
+ * replaced input is stitched, it is split at a spacing delimiter and the piece is lexed in
+ * parallel while the stitching goes on.
+ * <p>
+ * The tokens are then split again where no mapping pass looks across (after a plain delimiter),
+ * and each piece is mapped in parallel with a scratch {@link TokenTable}. Only the merging of the
+ * pieces into the {@link TokenTable}, which assigns the identifiers in order of appearance, is
+ * sequential. The {@link TokenTable} is locked for the stitching and for the merging, but not in
+ * between.
+ * <p>
+ * The caller never waits on a task that no thread has started, it runs such a task itself, so
+ * the {@link ExecutorService} may be one that the caller is running on.
+ *
+ * @author Kevin Jalbert
+ */
+public class ParallelTokenizer {
+
+	/** The default number of characters in each chunk. */
+	public final static int			_DEFAULT_CHUNK_SIZE	= 1 << 20;
+
+	/** The {@link TokenizerEngine} that performs the tokenization of each chunk. */
+	private final TokenizerEngine	_engine;
+
+	/** The {@link ExecutorService} that runs the tasks of each chunk. */
+	private final ExecutorService	_executor;
+
+	/** The number of characters in each chunk. */
+	private final int				_chunkSize;
+
+	/**
+	 * The spacing delimiters that are not part of any larger delimiter, which are safe places to
+	 * split the lexing of the input at. Empty if the language looks ahead more than one character.
+	 */
+	private final String			_splitCharacters;
+
+	/**
+	 * Instantiates a new {@link ParallelTokenizer} using the default chunk size.
+	 *
+	 * @param engine the {@link TokenizerEngine} that performs the tokenization
+	 * @param executor the {@link ExecutorService} that runs the tasks of each chunk
+	 */
+	public ParallelTokenizer( TokenizerEngine engine, ExecutorService executor ) {
+		this( engine, executor, _DEFAULT_CHUNK_SIZE );
+	}
+
+	/**
+	 * Instantiates a new {@link ParallelTokenizer}. Inputs that are no larger than a single chunk
+	 * are tokenized sequentially by the {@link TokenizerEngine}.
+	 *
+	 * @param engine the {@link TokenizerEngine} that performs the tokenization
+	 * @param executor the {@link ExecutorService} that runs the tasks of each chunk
+	 * @param chunkSize the number of characters in each chunk (at least 2)
+	 */
+	public ParallelTokenizer( TokenizerEngine engine, ExecutorService executor, int chunkSize ) {
+
+		if( chunkSize < 2 ) {
+			throw new IllegalArgumentException( "The chunk size must be at least 2" );
+		}
+
+		_engine = engine;
+		_executor = executor;
+		_chunkSize = chunkSize;
+		_splitCharacters = findSplitCharacters( engine.getLanguage() );
+	}
+
+	/**
+	 * Gets the {@link TokenizerEngine} that performs the tokenization.
+	 *
+	 * @return the {@link TokenizerEngine} in use
+	 */
+	public TokenizerEngine getEngine() {
+		return _engine;
+	}
+
+	/**
+	 * Gets the number of characters in each chunk.
+	 *
+	 * @return the chunk size
+	 */
+	public int getChunkSize() {
+		return _chunkSize;
+	}
+
+	/**
+	 * Tokenize the input to produce an {@link ArrayList} of identifiers that map to corresponding
+	 * tokens, using the specified {@link TokenTable}. The {@link TokenTable} is locked while the
+	 * chunks are stitched and while the mapped pieces are merged.
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input
+	 * @see TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable)
+	 */
+	public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable ) {
+
+		// Small inputs are not worth splitting
+		if( input.length() <= _chunkSize ) {
+			return _engine.tokenizeInputWithMapping( input, keepLiterals, keepComments,
+					tokenTable );
+		}
+
+		ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+		try {
+
+			List<ChunkScan> scans = resolve( input, scan( input, tasks ) );
+			while( true ) {
+
+				// Stitch the chunks, lexing the replaced input in pieces as it is stitched
+				ArrayList<String> literalKeys = new ArrayList<String>();
+				ArrayList<String> commentKeys = new ArrayList<String>();
+				ArrayList<FutureTask<ArrayList<String>>> pieces =
+						new ArrayList<FutureTask<ArrayList<String>>>();
+				int generation = 0;
+
+				tokenTable.getLock().lock();
+				try {
+					generation = tokenTable.getGeneration();
+
+					LiteralCommentReplacer replacer = new LiteralCommentReplacer( tokenTable,
+							keepLiterals, keepComments, input.length() );
+					replacer.setDeferredKeys( literalKeys, commentKeys );
+					stitch( input, scans, replacer, pieces, tasks );
+				}
+				finally {
+					tokenTable.getLock().unlock();
+				}
+
+				// Join the lexed pieces, then map them in pieces of their own
+				ArrayList<String> tokenizedInput = join( pieces );
+				ArrayList<Integer> bounds = findMapBounds( tokenizedInput, pieces );
+				ArrayList<FutureTask<PieceMap>> maps = map( tokenizedInput, bounds, tokenTable,
+						tasks );
+
+				// A piece that fails (ie: a digit ending the input) is left to the sequential
+				// mapping, so that the exception and the table are as they would be for it
+				boolean failed = maps.size() <= 1;
+				for( int i = maps.size() - 1; i >= 0 && !failed; i-- ) {
+					failed = getResult( maps.get( i ) )._failure != null;
+				}
+
+				tokenTable.getLock().lock();
+				try {
+
+					// Start over if the identifiers of the stitched input are no longer valid
+					if( tokenTable.getGeneration() != generation ) {
+						continue;
+					}
+
+					tokenTable.startDocument();
+					tokenTable.count( TokenTable._LITERAL_CATEGORY, literalKeys );
+					tokenTable.count( TokenTable._COMMENT_CATEGORY, commentKeys );
+
+					if( failed ) {
+						return _engine.mapTokens( tokenizedInput, tokenTable );
+					}
+
+					// Merge the mapped pieces in order
+					ArrayList<String> output = new ArrayList<String>( tokenizedInput.size() );
+					for( FutureTask<PieceMap> map : maps ) {
+						PieceMap piece = getResult( map );
+						tokenTable.addMapped( piece._scratchTable, piece._mappedInput, output );
+					}
+
+					return output;
+				}
+				finally {
+					tokenTable.getLock().unlock();
+				}
+			}
+		}
+		finally {
+			cancel( tasks );
+		}
+	}
+
+	/**
+	 * Replace all the literals and comments in the input {@link String} with identifiers from the
+	 * {@link TokenTable}, see
+	 * {@link TokenTable#replaceRemoveLiteralsAndComments(String, boolean, boolean)}, by scanning
+	 * its chunks in parallel and stitching them together. The {@link TokenTable} is locked while
+	 * the chunks are stitched.
+	 *
+	 * @param input the input {@link String} to have all the literals and comments replaced with
+	 *            identifiers
+	 * @param replaceLiterals if toggled the literals will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param replaceComments if toggled the comments will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param tokenTable the {@link TokenTable} to map the literals and comments with
+	 * @return the input {@link String} with identifiers replacing all the literals and comments
+	 */
+	public String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+			boolean replaceComments, TokenTable tokenTable ) {
+
+		// Small inputs are not worth splitting
+		if( input.length() <= _chunkSize ) {
+			tokenTable.getLock().lock();
+			try {
+				return tokenTable.replaceRemoveLiteralsAndComments( input, replaceLiterals,
+						replaceComments );
+			}
+			finally {
+				tokenTable.getLock().unlock();
+			}
+		}
+
+		ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+		try {
+
+			List<ChunkScan> scans = resolve( input, scan( input, tasks ) );
+
+			tokenTable.getLock().lock();
+			try {
+				LiteralCommentReplacer replacer = new LiteralCommentReplacer( tokenTable,
+						replaceLiterals, replaceComments, input.length() );
+				stitch( input, scans, replacer, null, tasks );
+
+				return replacer.getOutput();
+			}
+			finally {
+				tokenTable.getLock().unlock();
+			}
+		}
+		finally {
+			cancel( tasks );
+		}
+	}
+
+	/**
+	 * Starts the speculative scans of each chunk, one for each state that the chunk could start in
+	 * (the first chunk only starts in code). The scans that start in code are started first, as
+	 * most chunks start in code.
+	 *
+	 * @param input the input being tokenized
+	 * @param tasks the {@link List} of the started tasks, which the scans are added to
+	 * @return the {@link List} of the scans, indexed by chunk and then by starting state
+	 */
+	private List<List<FutureTask<ChunkScan>>> scan( String input, List<Future<?>> tasks ) {
+
+		int chunks = ( input.length() + _chunkSize - 1 ) / _chunkSize;
+		List<List<FutureTask<ChunkScan>>> scans =
+				new ArrayList<List<FutureTask<ChunkScan>>>( chunks );
+		for( int i = 0; i < chunks; i++ ) {
+
+			int begin = i * _chunkSize;
+			int end = Math.min( begin + _chunkSize, input.length() );
+			List<FutureTask<ChunkScan>> states =
+					new ArrayList<FutureTask<ChunkScan>>( LiteralCommentScanner._STATES );
+			states.add( submit( new ChunkScan( input, begin, end, LiteralCommentScanner._CODE ),
+					tasks ) );
+			scans.add( states );
+		}
+
+		// The chunks after the first may start inside a literal or comment as well
+		for( int state = LiteralCommentScanner._CODE + 1; state < LiteralCommentScanner._STATES;
+				state++ ) {
+			for( int i = 1; i < chunks; i++ ) {
+
+				int begin = i * _chunkSize;
+				int end = Math.min( begin + _chunkSize, input.length() );
+				scans.get( i ).add( submit( new ChunkScan( input, begin, end, state ), tasks ) );
+			}
+		}
+
+		return scans;
+	}
+
+	/**
+	 * Resolves the true starting state of each chunk in order, from the state at the end of the
+	 * chunk before, picking the speculative scan that starts in that state and cancelling the rest.
+	 * A chunk that starts past its boundary (a two character delimiter straddles it) is rescanned
+	 * from its true start. Nothing is mapped, so the {@link TokenTable} is not locked.
+	 *
+	 * @param input the input being tokenized
+	 * @param scans the speculative scans of each chunk, indexed by starting state
+	 * @return the {@link List} of the scan of each chunk in order; null for a chunk that the chunk
+	 *         before consumed
+	 */
+	private List<ChunkScan> resolve( String input, List<List<FutureTask<ChunkScan>>> scans ) {
+
+		List<ChunkScan> resolved = new ArrayList<ChunkScan>( scans.size() );
+		int state = LiteralCommentScanner._CODE;
+		int position = 0;
+
+		for( int i = 0; i < scans.size(); i++ ) {
+
+			int begin = i * _chunkSize;
+			int end = Math.min( begin + _chunkSize, input.length() );
+			List<FutureTask<ChunkScan>> states = scans.get( i );
+
+			// Use the speculative scan if it lines up, otherwise rescan from the true position
+			ChunkScan scan = null;
+			FutureTask<ChunkScan> speculation = null;
+			if( position == begin ) {
+				speculation = states.get( state );
+				scan = getResult( speculation );
+			}
+			else if( position < end ) {
+				scan = new ChunkScan( input, position, end, state );
+				scan.call();
+			}
+
+			// The scans of the other states are no longer needed
+			for( FutureTask<ChunkScan> other : states ) {
+				if( other != speculation ) {
+					other.cancel( false );
+				}
+			}
+
+			resolved.add( scan );
+			if( scan != null ) {
+				state = scan._exitState;
+				position = scan._exitPosition;
+			}
+		}
+
+		return resolved;
+	}
+
+	/**
+	 * Stitches the resolved scans of the chunks together in order, replaying them to a
+	 * {@link LiteralCommentReplacer}. The caller must hold the lock of the {@link TokenTable} of
+	 * the {@link LiteralCommentReplacer}.
+	 *
+	 * @param input the input being tokenized
+	 * @param scans the resolved scan of each chunk (see {@link #resolve(String, List)})
+	 * @param replacer the {@link LiteralCommentReplacer} that builds the replaced input
+	 * @param pieces the {@link List} that the lexing of each piece of the replaced input is added
+	 *            to; null if the replaced input isn't lexed
+	 * @param tasks the {@link List} of the started tasks, which the lexing is added to
+	 */
+	private void stitch( String input, List<ChunkScan> scans, LiteralCommentReplacer replacer,
+			List<FutureTask<ArrayList<String>>> pieces, List<Future<?>> tasks ) {
+
+		// The content of a literal or comment that spans chunks
+		StringBuilder carried = new StringBuilder();
+		int lexed = 0;
+
+		for( ChunkScan scan : scans ) {
+
+			// The previous chunk already consumed this chunk
+			if( scan == null ) {
+				continue;
+			}
+
+			scan.replay( input, carried, replacer );
+
+			// Carry the unfinished literal or comment into the next chunk
+			if( scan._exitState == LiteralCommentScanner._CODE ) {
+				carried.setLength( 0 );
+			}
+			else {
+				if( !scan._exitContinued ) {
+					carried.setLength( 0 );
+				}
+				carried.append( scan._exitContent );
+			}
+
+			// Lex the pieces of the replaced input that are complete
+			if( pieces != null ) {
+				lexed = lexPieces( replacer.getPartialOutput(), lexed, false, pieces, tasks );
+			}
+		}
+
+		if( pieces != null ) {
+			lexPieces( replacer.getPartialOutput(), lexed, true, pieces, tasks );
+		}
+	}
+
+	/**
+	 * Starts the lexing of the pieces of the replaced input that are complete, splitting it at
+	 * spacing delimiters about a chunk apart (the lexer never looks past such a delimiter).
+	 *
+	 * @param output the replaced input so far
+	 * @param begin the start of the replaced input that has yet to be lexed
+	 * @param done if true the replaced input is complete, so the rest of it is lexed as well
+	 * @param pieces the {@link List} that the lexing of each piece is added to
+	 * @param tasks the {@link List} of the started tasks, which the lexing is added to
+	 * @return the start of the replaced input that has yet to be lexed
+	 */
+	private int lexPieces( CharSequence output, int begin, boolean done,
+			List<FutureTask<ArrayList<String>>> pieces, List<Future<?>> tasks ) {
+
+		while( output.length() - begin > _chunkSize ) {
+
+			int end = findSplit( output, begin + _chunkSize );
+			if( end == -1 ) {
+				break;
+			}
+
+			pieces.add( submit( new PieceLex( output.subSequence( begin, end ).toString() ),
+					tasks ) );
+			begin = end;
+		}
+
+		// An empty input is lexed as well, to match the sequential output
+		if( done && ( begin < output.length() || pieces.isEmpty() ) ) {
+			pieces.add( submit( new PieceLex( output.subSequence( begin, output.length() )
+					.toString() ), tasks ) );
+			begin = output.length();
+		}
+
+		return begin;
+	}
+
+	/**
+	 * Joins the tokens of the lexed pieces in order.
+	 *
+	 * @param pieces the lexing of each piece of the replaced input
+	 * @return the {@link ArrayList} of {@link String} tokens, in order
+	 */
+	private ArrayList<String> join( List<FutureTask<ArrayList<String>>> pieces ) {
+
+		int size = 0;
+		for( FutureTask<ArrayList<String>> piece : pieces ) {
+			size += getResult( piece ).size();
+		}
+
+		ArrayList<String> tokenizedInput = new ArrayList<String>( size );
+		for( FutureTask<ArrayList<String>> piece : pieces ) {
+			tokenizedInput.addAll( getResult( piece ) );
+		}
+
+		return tokenizedInput;
+	}
+
+	/**
+	 * Finds where to split the tokens into pieces that can be mapped apart. A piece ends at the
+	 * first plain delimiter (not a method call, a decimal point or a spacing delimiter) at or after
+	 * the end of each lexed piece, as no mapping pass joins such a delimiter with the tokens around
+	 * it, nor looks past it.
+	 *
+	 * @param tokenizedInput the tokens of the replaced input
+	 * @param pieces the lexing of each piece of the replaced input
+	 * @return the {@link ArrayList} of the (exclusive) end of each piece, in order
+	 */
+	private ArrayList<Integer> findMapBounds( ArrayList<String> tokenizedInput,
+			List<FutureTask<ArrayList<String>>> pieces ) {
+
+		LanguageKeywords language = _engine.getLanguage();
+		ArrayList<Integer> bounds = new ArrayList<Integer>( pieces.size() );
+
+		int end = 0;
+		for( FutureTask<ArrayList<String>> piece : pieces ) {
+
+			end += getResult( piece ).size();
+			int bound = Math.max( end, bounds.isEmpty() ? 1 : bounds.get( bounds.size() - 1 ) + 1 );
+			while( bound < tokenizedInput.size() ) {
+
+				String token = tokenizedInput.get( bound - 1 );
+				if( language.isDelimiter( token ) && !language.isMethodCall( token )
+						&& !token.equals( "." ) ) {
+					break;
+				}
+				bound++;
+			}
+
+			if( bound < tokenizedInput.size() ) {
+				bounds.add( bound );
+			}
+		}
+		bounds.add( tokenizedInput.size() );
+
+		return bounds;
+	}
+
+	/**
+	 * Starts the mapping of each piece of the tokens with a scratch {@link TokenTable}. There is
+	 * no mapping to start if the tokens are a single piece, or if they can't be told apart from the
+	 * scratch identifiers (the language has no split characters).
+	 *
+	 * @param tokenizedInput the tokens of the replaced input
+	 * @param bounds the (exclusive) end of each piece
+	 * @param tokenTable the {@link TokenTable} that the pieces are to be merged into
+	 * @param tasks the {@link List} of the started tasks, which the mapping is added to
+	 * @return the {@link ArrayList} of the mapping of each piece, in order
+	 */
+	private ArrayList<FutureTask<PieceMap>> map( ArrayList<String> tokenizedInput,
+			ArrayList<Integer> bounds, TokenTable tokenTable, List<Future<?>> tasks ) {
+
+		ArrayList<FutureTask<PieceMap>> maps = new ArrayList<FutureTask<PieceMap>>();
+		if( bounds.size() <= 1 || _splitCharacters.length() == 0 ) {
+			return maps;
+		}
+
+		int begin = 0;
+		for( int end : bounds ) {
+			maps.add( submit( new PieceMap( tokenizedInput.subList( begin, end ), tokenTable ),
+					tasks ) );
+			begin = end;
+		}
+
+		return maps;
+	}
+
+	/**
+	 * Finds the next safe position to split the lexing of the input at, starting from the
+	 * specified position.
+	 *
+	 * @param input the input to be split
+	 * @param from the position to start looking from
+	 * @return the position of the split; -1 if there is none (yet)
+	 */
+	private int findSplit( CharSequence input, int from ) {
+
+		if( _splitCharacters.length() == 0 ) {
+			return -1;
+		}
+
+		for( int i = from; i < input.length(); i++ ) {
+			if( _splitCharacters.indexOf( input.charAt( i ) ) != -1 ) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Finds the single character spacing delimiters that are not part of any larger delimiter. The
+	 * lexer never looks past such a character, so the input can be lexed in pieces split at them.
+	 * Only languages that look ahead one character are split, as a longer look ahead can step back
+	 * over the end of the input.
+	 *
+	 * @param language the {@link LanguageKeywords} of the input
+	 * @return the {@link String} of split characters
+	 */
+	private static String findSplitCharacters( LanguageKeywords language ) {
+
+		StringBuilder splitCharacters = new StringBuilder();
+		if( language.getLookAheadNumber() > 1 ) {
+			return splitCharacters.toString();
+		}
+
+		for( int i = 0; i < language.getDelimiterCount(); i++ ) {
+
+			String delimiter = language.getDelimiter( i );
+			if( delimiter.length() != 1 || !language.isSpaceDelimiter( delimiter ) ) {
+				continue;
+			}
+
+			// Make sure no larger delimiter contains the character
+			boolean contained = false;
+			for( int j = 0; j < language.getDelimiterCount() && !contained; j++ ) {
+				String other = language.getDelimiter( j );
+				contained = other.length() > 1 && other.indexOf( delimiter.charAt( 0 ) ) != -1;
+			}
+
+			if( !contained ) {
+				splitCharacters.append( delimiter );
+			}
+		}
+
+		return splitCharacters.toString();
+	}
+
+	/**
+	 * Starts a task on the {@link ExecutorService}.
+	 *
+	 * @param task the task to be run
+	 * @param tasks the {@link List} of the started tasks, which the task is added to
+	 * @return the {@link FutureTask} of the task
+	 */
+	private <T> FutureTask<T> submit( Callable<T> task, List<Future<?>> tasks ) {
+
+		FutureTask<T> future = new FutureTask<T>( task );
+		tasks.add( future );
+		_executor.execute( future );
+
+		return future;
+	}
+
+	/**
+	 * Cancels the tasks that have yet to start (ie: the scans of chunks that were consumed by the
+	 * previous chunk, or everything after a failure).
+	 *
+	 * @param tasks the {@link List} of the started tasks
+	 */
+	private static void cancel( List<Future<?>> tasks ) {
+		for( Future<?> task : tasks ) {
+			task.cancel( false );
+		}
+	}
+
+	/**
+	 * Waits for the result of a task, rethrowing any failure of the task. A task that no thread
+	 * has started yet is run on this thread, so the wait never depends on a free thread of the
+	 * {@link ExecutorService} (the tasks themselves never wait).
+	 *
+	 * @param future the {@link FutureTask} of the task
+	 * @return the result of the task
+	 */
+	private static <T> T getResult( FutureTask<T> future ) {
+
+		future.run();
+		try {
+			return future.get();
+		}
+		catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException( "Interrupted while tokenizing", e );
+		}
+		catch( ExecutionException e ) {
+			if( e.getCause() instanceof RuntimeException ) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * Lexes a piece of the replaced input using the {@link LexerContext} of the running thread.
+	 */
+	private class PieceLex implements Callable<ArrayList<String>> {
+
+		/** The piece of the input to be lexed. */
+		private final String	_piece;
+
+		/**
+		 * Instantiates a new {@link PieceLex}.
+		 *
+		 * @param piece the piece of the input to be lexed
+		 */
+		PieceLex( String piece ) {
+			_piece = piece;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ArrayList<String> call() {
+
+			LexerContext context = _engine.getContext();
+			_engine.tokenize( context, _piece );
+
+			return new ArrayList<String>( context._tokenizedInput );
+		}
+	}
+
+	/**
+	 * Maps a piece of the tokens with a scratch {@link TokenTable}, to be merged into the
+	 * {@link TokenTable} afterwards (see {@link TokenTable#addMapped(TokenTable, ArrayList,
+	 * ArrayList)}).
+	 */
+	private class PieceMap implements Callable<PieceMap> {
+
+		/** The tokens of the piece. */
+		private final List<String>	_piece;
+
+		/** The scratch {@link TokenTable} of the piece. */
+		private final TokenTable	_scratchTable;
+
+		/** The tokens of the piece as mapped with the scratch {@link TokenTable}. */
+		private ArrayList<String>	_mappedInput	= null;
+
+		/** The failure of the mapping; null if it succeeded. */
+		private RuntimeException	_failure		= null;
+
+		/**
+		 * Instantiates a new {@link PieceMap}.
+		 *
+		 * @param piece the tokens of the piece
+		 * @param tokenTable the {@link TokenTable} that the piece is to be merged into
+		 */
+		PieceMap( List<String> piece, TokenTable tokenTable ) {
+			_piece = piece;
+			_scratchTable = new TokenTable( tokenTable, _splitCharacters.charAt( 0 ) );
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public PieceMap call() {
+
+			try {
+				_mappedInput = _engine.mapTokens( new ArrayList<String>( _piece ), _scratchTable );
+			}
+			catch( RuntimeException e ) {
+				_failure = e;
+			}
+
+			return this;
+		}
+	}
+
+	/**
+	 * Scans a chunk of the input starting in a given state, recording what was found so it can be
+	 * replayed to a {@link LiteralCommentReplacer} once the true starting state is known.
+	 */
+	private static class ChunkScan implements Callable<ChunkScan>, LiteralCommentScanner.Handler {
+
+		/** The event of a run of code. */
+		private final static int		_CODE_EVENT			= 0;
+
+		/** The event of a literal. */
+		private final static int		_LITERAL_EVENT		= 1;
+
+		/** The event of a line comment. */
+		private final static int		_LINE_COMMENT_EVENT	= 2;
+
+		/** The event of a block comment. */
+		private final static int		_BLOCK_COMMENT_EVENT	= 3;
+
+		/** The input being scanned. */
+		private final String			_input;
+
+		/** The start of the chunk. */
+		private final int				_begin;
+
+		/** The end (exclusive) of the chunk. */
+		private final int				_end;
+
+		/** The state at the start of the chunk. */
+		private final int				_state;
+
+		/** The type of each event, in order. */
+		private ArrayList<Integer>		_types				= new ArrayList<Integer>();
+
+		/** The code range, or the quote and flags, of each event. */
+		private ArrayList<int[]>		_values				= new ArrayList<int[]>();
+
+		/** The content of each literal or comment event. */
+		private ArrayList<String>		_contents			= new ArrayList<String>();
+
+		/** The state at the end of the chunk. */
+		private int						_exitState			= LiteralCommentScanner._CODE;
+
+		/** The position at the end of the chunk. */
+		private int						_exitPosition		= 0;
+
+		/** The unfinished content at the end of the chunk. */
+		private String					_exitContent		= "";
+
+		/** If true the unfinished content continues from before the chunk. */
+		private boolean					_exitContinued		= false;
+
+		/**
+		 * Instantiates a new {@link ChunkScan}.
+		 *
+		 * @param input the input being scanned
+		 * @param begin the start of the chunk
+		 * @param end the end (exclusive) of the chunk
+		 * @param state the state at the start of the chunk
+		 */
+		ChunkScan( String input, int begin, int end, int state ) {
+			_input = input;
+			_begin = begin;
+			_end = end;
+			_state = state;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ChunkScan call() {
+
+			LiteralCommentScanner scanner = new LiteralCommentScanner();
+			scanner.scan( _input, _begin, _end, _state, this );
+
+			_exitState = scanner.getState();
+			_exitPosition = scanner.getPosition();
+			_exitContent = scanner.getContent().toString();
+			_exitContinued = scanner.isContinued();
+
+			return this;
+		}
+
+		/**
+		 * Replays the recorded events to the {@link LiteralCommentReplacer}, prefixing the first
+		 * literal or comment with the content carried from the previous chunks if it is continued.
+		 *
+		 * @param input the input being scanned
+		 * @param carried the content carried from the previous chunks
+		 * @param replacer the {@link LiteralCommentReplacer} to replay to
+		 */
+		void replay( String input, CharSequence carried, LiteralCommentReplacer replacer ) {
+
+			for( int i = 0; i < _types.size(); i++ ) {
+
+				int type = _types.get( i );
+				int[] values = _values.get( i );
+
+				if( type == _CODE_EVENT ) {
+					replacer.code( input, values[ 0 ], values[ 1 ] );
+					continue;
+				}
+
+				// Join the continued content with the content carried from the previous chunks
+				CharSequence content = _contents.get( i );
+				if( values[ 1 ] != 0 ) {
+					content = new StringBuilder( carried ).append( content );
+				}
+
+				if( type == _LITERAL_EVENT ) {
+					replacer.literal( (char) values[ 0 ], content, false );
+				}
+				else if( type == _LINE_COMMENT_EVENT ) {
+					replacer.lineComment( content, false, values[ 2 ] != 0 );
+				}
+				else {
+					replacer.blockComment( content, false );
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void code( CharSequence input, int start, int end ) {
+			record( _CODE_EVENT, new int[] { start, end }, null );
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void literal( char quote, CharSequence content, boolean continued ) {
+			record( _LITERAL_EVENT, new int[] { quote, continued ? 1 : 0 }, content );
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void lineComment( CharSequence content, boolean continued, boolean endOfInput ) {
+			record( _LINE_COMMENT_EVENT, new int[] { 0, continued ? 1 : 0, endOfInput ? 1 : 0 },
+					content );
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void blockComment( CharSequence content, boolean continued ) {
+			record( _BLOCK_COMMENT_EVENT, new int[] { 0, continued ? 1 : 0 }, content );
+		}
+
+		/**
+		 * Records an event.
+		 *
+		 * @param type the type of the event
+		 * @param values the code range, or the quote and flags, of the event
+		 * @param content the content of the literal or comment; null for code
+		 */
+		private void record( int type, int[] values, CharSequence content ) {
+			_types.add( type );
+			_values.add( values );
+			_contents.add( content == null ? null : content.toString() );
+		}
+	}
+}
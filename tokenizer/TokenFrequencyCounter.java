@@ -0,0 +1,406 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.Arrays;
+
+/**
+ * Counts the term frequency (the number of occurrences) and the document frequency (the number of
+ * documents it occurs in) of each identifier of a {@link TokenTable}, per category. The counts are
+ * kept in growable primitive arrays indexed by the numeric key id, and are updated by the
+ * {@link TokenTable} as it maps tokens, so no second pass over the output is needed.
+ * <p>
+ * Each mapping call of a {@link TokenizerEngine} is counted as one document. The counter is guarded
+ * by the lock of its {@link TokenTable}, see {@link TokenTable#getLock()}.
+ *
+ * @author Kevin Jalbert
+ * @see TokenTable#setCountFrequencies(boolean)
+ */
+public class TokenFrequencyCounter {
+
+	/** The initial number of ids of each category. */
+	private final static int	_INITIAL_CAPACITY	= 64;
+
+	/** The term frequency of each id, indexed by category then id. */
+	private long[][]			_termFrequencies	= new long[TokenTable._CATEGORY_COUNT][];
+
+	/** The document frequency of each id, indexed by category then id. */
+	private int[][]				_documentFrequencies	= new int[TokenTable._CATEGORY_COUNT][];
+
+	/** The last document each id was counted in, indexed by category then id. */
+	private int[][]				_lastDocuments		= new int[TokenTable._CATEGORY_COUNT][];
+
+	/** The number of documents counted (also the stamp of the current document). */
+	private int					_documents			= 0;
+
+	/** The token ids counted since the journal was started; null if it isn't being kept. */
+	private int[]				_journal			= null;
+
+	/** The previous last document of each journaled count; -1 if the document was already seen. */
+	private int[]				_journalDocuments	= null;
+
+	/** The number of journaled counts. */
+	private int					_journalSize		= 0;
+
+	/** The number of documents when the journal was started. */
+	private int					_journalStart		= 0;
+
+	/**
+	 * Instantiates a new, empty {@link TokenFrequencyCounter}.
+	 */
+	public TokenFrequencyCounter() {
+		clear();
+	}
+
+	/**
+	 * Starts counting a new document.
+	 */
+	public void startDocument() {
+		_documents++;
+	}
+
+	/**
+	 * Gets the number of documents that have been counted.
+	 *
+	 * @return the number of documents
+	 */
+	public int getDocumentCount() {
+		return _documents;
+	}
+
+	/**
+	 * Counts an occurrence of the identifier within the current document.
+	 *
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @param id the numeric key id of the identifier
+	 */
+	public void count( int category, int id ) {
+
+		// Counts made before any document was started belong to the first document
+		if( _documents == 0 ) {
+			startDocument();
+		}
+
+		long[] termFrequencies = _termFrequencies[category];
+		if( id >= termFrequencies.length ) {
+			grow( category, id );
+			termFrequencies = _termFrequencies[category];
+		}
+
+		termFrequencies[id]++;
+
+		// The first occurrence within the document also counts the document
+		int[] lastDocuments = _lastDocuments[category];
+		int previous = -1;
+		if( lastDocuments[id] != _documents ) {
+			previous = lastDocuments[id];
+			lastDocuments[id] = _documents;
+			_documentFrequencies[category][id]++;
+		}
+
+		if( _journal != null ) {
+			journal( ( id << TokenTable._CATEGORY_BITS ) | category, previous );
+		}
+	}
+
+	/**
+	 * Gets the term frequency (the number of occurrences) of the identifier.
+	 *
+	 * @param category the token category
+	 * @param id the numeric key id of the identifier
+	 * @return the term frequency
+	 */
+	public long getTermFrequency( int category, int id ) {
+
+		long[] termFrequencies = _termFrequencies[category];
+		return id < termFrequencies.length ? termFrequencies[id] : 0;
+	}
+
+	/**
+	 * Gets the document frequency (the number of documents it occurs in) of the identifier.
+	 *
+	 * @param category the token category
+	 * @param id the numeric key id of the identifier
+	 * @return the document frequency
+	 */
+	public int getDocumentFrequency( int category, int id ) {
+
+		int[] documentFrequencies = _documentFrequencies[category];
+		return id < documentFrequencies.length ? documentFrequencies[id] : 0;
+	}
+
+	/**
+	 * Gets the ids of the category with the highest term frequencies, in descending order of
+	 * frequency (ties go to the lower id). Ids that never occurred are not included.
+	 *
+	 * @param category the token category
+	 * @param k the number of ids to be acquired
+	 * @return the ids with the highest term frequencies (at most k)
+	 */
+	public int[] getTopTermFrequencies( int category, int k ) {
+
+		long[] termFrequencies = _termFrequencies[category];
+		return getTop( termFrequencies, null, k );
+	}
+
+	/**
+	 * Gets the ids of the category with the highest document frequencies, in descending order of
+	 * frequency (ties go to the lower id). Ids that never occurred are not included.
+	 *
+	 * @param category the token category
+	 * @param k the number of ids to be acquired
+	 * @return the ids with the highest document frequencies (at most k)
+	 */
+	public int[] getTopDocumentFrequencies( int category, int k ) {
+		return getTop( null, _documentFrequencies[category], k );
+	}
+
+	/**
+	 * Clears all the counts.
+	 */
+	public void clear() {
+
+		for( int category = 0; category < TokenTable._CATEGORY_COUNT; category++ ) {
+			_termFrequencies[category] = new long[_INITIAL_CAPACITY];
+			_documentFrequencies[category] = new int[_INITIAL_CAPACITY];
+			_lastDocuments[category] = new int[_INITIAL_CAPACITY];
+		}
+
+		_documents = 0;
+		_journalSize = 0;
+		_journalStart = 0;
+	}
+
+	/**
+	 * Moves the counts of the category to the new ids of a compaction, see
+	 * {@link TokenTable#compact(boolean)}. The counts of the ids that have no new id are dropped.
+	 *
+	 * @param category the token category
+	 * @param remap the remap array from the old ids to the new ids (-1 for no new id)
+	 */
+	void remap( int category, int[] remap ) {
+
+		long[] termFrequencies = _termFrequencies[category];
+		int[] documentFrequencies = _documentFrequencies[category];
+		int[] lastDocuments = _lastDocuments[category];
+
+		int capacity = termFrequencies.length;
+		_termFrequencies[category] = new long[capacity];
+		_documentFrequencies[category] = new int[capacity];
+		_lastDocuments[category] = new int[capacity];
+
+		// Only an id that was never counted can be moved past the capacity, and it has no counts
+		for( int id = 0; id < remap.length && id < capacity; id++ ) {
+			if( remap[id] != -1 && remap[id] < capacity ) {
+				_termFrequencies[category][remap[id]] = termFrequencies[id];
+				_documentFrequencies[category][remap[id]] = documentFrequencies[id];
+				_lastDocuments[category][remap[id]] = lastDocuments[id];
+			}
+		}
+	}
+
+	/**
+	 * Starts a journal of the counts, so that they can be undone by
+	 * {@link TokenFrequencyCounter#rollback()}.
+	 */
+	void startJournal() {
+
+		if( _journal == null ) {
+			_journal = new int[_INITIAL_CAPACITY];
+			_journalDocuments = new int[_INITIAL_CAPACITY];
+		}
+
+		_journalSize = 0;
+		_journalStart = _documents;
+	}
+
+	/**
+	 * Stops the journal, keeping the counts.
+	 */
+	void commit() {
+		_journal = null;
+		_journalDocuments = null;
+		_journalSize = 0;
+	}
+
+	/**
+	 * Undoes the counts (and documents) since the journal was started, then stops the journal.
+	 */
+	void rollback() {
+
+		if( _journal == null ) {
+			return;
+		}
+
+		rollback( 0 );
+		_documents = _journalStart;
+		commit();
+	}
+
+	/**
+	 * Undoes the counts made since the journal held the specified number of counts (see
+	 * {@link TokenFrequencyCounter#getJournalSize()}), keeping the documents and the journal.
+	 *
+	 * @param journalSize the number of counts of the journal to be kept
+	 */
+	void rollback( int journalSize ) {
+
+		if( _journal == null ) {
+			return;
+		}
+
+		for( int i = _journalSize - 1; i >= journalSize; i-- ) {
+
+			int category = TokenTable.getCategory( _journal[i] );
+			int id = TokenTable.getKeyId( _journal[i] );
+
+			_termFrequencies[category][id]--;
+			if( _journalDocuments[i] != -1 ) {
+				_lastDocuments[category][id] = _journalDocuments[i];
+				_documentFrequencies[category][id]--;
+			}
+		}
+
+		_journalSize = Math.min( _journalSize, journalSize );
+	}
+
+	/**
+	 * Gets the number of counts in the journal.
+	 *
+	 * @return the number of journaled counts; 0 if there is no journal
+	 */
+	int getJournalSize() {
+		return _journalSize;
+	}
+
+	/**
+	 * Records a count in the journal.
+	 *
+	 * @param tokenId the token id that was counted
+	 * @param previous the previous last document of the id; -1 if the document was already seen
+	 */
+	private void journal( int tokenId, int previous ) {
+
+		if( _journalSize == _journal.length ) {
+			_journal = Arrays.copyOf( _journal, _journalSize * 2 );
+			_journalDocuments = Arrays.copyOf( _journalDocuments, _journalSize * 2 );
+		}
+
+		_journal[_journalSize] = tokenId;
+		_journalDocuments[_journalSize] = previous;
+		_journalSize++;
+	}
+
+	/**
+	 * Grows the arrays of the category to hold the id.
+	 *
+	 * @param category the token category
+	 * @param id the id that must fit
+	 */
+	private void grow( int category, int id ) {
+
+		int capacity = _termFrequencies[category].length;
+		while( capacity <= id ) {
+			capacity *= 2;
+		}
+
+		_termFrequencies[category] = Arrays.copyOf( _termFrequencies[category], capacity );
+		_documentFrequencies[category] = Arrays.copyOf( _documentFrequencies[category], capacity );
+		_lastDocuments[category] = Arrays.copyOf( _lastDocuments[category], capacity );
+	}
+
+	/**
+	 * Gets the ids with the highest counts using a min-heap of size k, which takes O(n log k).
+	 *
+	 * @param longCounts the counts if they are longs; otherwise null
+	 * @param intCounts the counts if they are ints; otherwise null
+	 * @param k the number of ids to be acquired
+	 * @return the ids with the highest counts, in descending order of count
+	 */
+	private static int[] getTop( long[] longCounts, int[] intCounts, int k ) {
+
+		int length = longCounts != null ? longCounts.length : intCounts.length;
+		int[] heap = new int[Math.max( 0, Math.min( k, length ) )];
+		int size = 0;
+
+		for( int id = 0; id < length && heap.length > 0; id++ ) {
+
+			long count = longCounts != null ? longCounts[id] : intCounts[id];
+			if( count == 0 ) {
+				continue;
+			}
+
+			if( size < heap.length ) { // Fill the heap, sifting the new id up
+				int i = size++;
+				while( i > 0 && isLower( longCounts, intCounts, id, heap[( i - 1 ) / 2] ) ) {
+					heap[i] = heap[( i - 1 ) / 2];
+					i = ( i - 1 ) / 2;
+				}
+				heap[i] = id;
+			}
+			else if( isLower( longCounts, intCounts, heap[0], id ) ) { // Replace the lowest
+
+				int i = 0;
+				while( true ) {
+					int child = 2 * i + 1;
+					if( child >= size ) {
+						break;
+					}
+					if( child + 1 < size
+							&& isLower( longCounts, intCounts, heap[child + 1], heap[child] ) ) {
+						child++;
+					}
+					if( !isLower( longCounts, intCounts, heap[child], id ) ) {
+						break;
+					}
+					heap[i] = heap[child];
+					i = child;
+				}
+				heap[i] = id;
+			}
+		}
+
+		// Pop the heap from the lowest, filling the result from the back
+		int[] top = new int[size];
+		for( int end = size - 1; end >= 0; end-- ) {
+
+			top[end] = heap[0];
+			int last = heap[end];
+			int i = 0;
+			while( true ) {
+				int child = 2 * i + 1;
+				if( child >= end ) {
+					break;
+				}
+				if( child + 1 < end
+						&& isLower( longCounts, intCounts, heap[child + 1], heap[child] ) ) {
+					child++;
+				}
+				if( !isLower( longCounts, intCounts, heap[child], last ) ) {
+					break;
+				}
+				heap[i] = heap[child];
+				i = child;
+			}
+			heap[i] = last;
+		}
+
+		return top;
+	}
+
+	/**
+	 * Checks to see if the first id ranks lower than the second (a lower count, or an equal count
+	 * and a higher id).
+	 *
+	 * @param longCounts the counts if they are longs; otherwise null
+	 * @param intCounts the counts if they are ints; otherwise null
+	 * @param first the first id
+	 * @param second the second id
+	 * @return true if the first id ranks lower
+	 */
+	private static boolean isLower( long[] longCounts, int[] intCounts, int first, int second ) {
+
+		long firstCount = longCounts != null ? longCounts[first] : intCounts[first];
+		long secondCount = longCounts != null ? longCounts[second] : intCounts[second];
+
+		return firstCount < secondCount || ( firstCount == secondCount && first > second );
+	}
+}
@@ -1,12 +1,22 @@
 package ca.tokenizing_parser.tokenizer;
 
-import java.text.CharacterIterator;
-import java.text.StringCharacterIterator;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ListIterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
 import ca.tokenizing_parser.tokenizer.languages.LanguageKeywords;
+import ca.tokenizing_parser.tokenizer.stats.CountMinSketch;
+import ca.tokenizing_parser.tokenizer.stats.SpaceSavingSketch;
 
 /**
  * This class is used to transform tokens into identifiers through a mapping process. Identical
@@ -48,6 +58,49 @@ public class TokenTable {
 	/** The constant to reference to the delimiter {@link AutoKeyHashMap} */
 	public final static String		_DELIMITERS	= ":d";
 
+	/** The category of a literal token id (see {@link TokenTable#getTokenId(String)}). */
+	public final static int			_LITERAL_CATEGORY	= 0;
+
+	/** The category of a primitive token id (see {@link TokenTable#getTokenId(String)}). */
+	public final static int			_PRIMITIVE_CATEGORY	= 1;
+
+	/** The category of an object token id (see {@link TokenTable#getTokenId(String)}). */
+	public final static int			_OBJECT_CATEGORY	= 2;
+
+	/** The category of a comment token id (see {@link TokenTable#getTokenId(String)}). */
+	public final static int			_COMMENT_CATEGORY	= 3;
+
+	/** The category of a keyword token id (see {@link TokenTable#getTokenId(String)}). */
+	public final static int			_KEYWORD_CATEGORY	= 4;
+
+	/** The category of a delimiter token id (see {@link TokenTable#getTokenId(String)}). */
+	public final static int			_DELIMITER_CATEGORY	= 5;
+
+	/** The category of a token that was left unmapped by the mapping process. */
+	public final static int			_UNMAPPED_CATEGORY	= 6;
+
+	/** The number of categories that have an {@link AutoKeyHashMap} (all but the unmapped). */
+	public final static int			_CATEGORY_COUNT		= 6;
+
+	/** The number of low bits of a token id that hold the category. */
+	public final static int			_CATEGORY_BITS		= 3;
+
+	/** The mask to acquire the category from a token id. */
+	public final static int			_CATEGORY_MASK		= ( 1 << _CATEGORY_BITS ) - 1;
+
+	/** The categories whose identifiers are given to the lexed tokens by the mapping passes. */
+	private final static int[]		_MAPPED_CATEGORIES	= { _PRIMITIVE_CATEGORY,
+			_OBJECT_CATEGORY, _KEYWORD_CATEGORY, _DELIMITER_CATEGORY };
+
+	/** The value that every value of a sketch-only category is stored as (see setSketches). */
+	private final static String		_SKETCHED_VALUE		= "";
+
+	/** The UTF-8 {@link Charset} of the values written by {@link TokenTable#write(DataOutput)}. */
+	private final static Charset	_UTF8				= Charset.forName( "UTF-8" );
+
+	/** The source of the unique sequence numbers of the {@link TokenTable}s. */
+	private final static AtomicLong	_SEQUENCES			= new AtomicLong();
+
 	/** The {@link AutoKeyHashMap} of the literal tokens. */
 	private AutoKeyHashMap<String>	_literals	= null;
 
@@ -66,6 +119,39 @@ public class TokenTable {
 	/** The {@link AutoKeyHashMap} of the delimiter tokens. */
 	private AutoKeyHashMap<String>	_delimiter	= null;
 
+	/** The {@link AutoKeyHashMap} of the tokens that were left unmapped, used for token ids. */
+	private AutoKeyHashMap<String>	_unmapped	= null;
+
+	/** The {@link LanguageKeywords} whose keywords and delimiters have fixed identifiers. */
+	private LanguageKeywords		_language		= null;
+
+	/** The keyword identifiers, indexed by the fixed ids of the {@link LanguageKeywords}. */
+	private String[]				_keywordKeys	= null;
+
+	/** The delimiter identifiers, indexed by the fixed ids of the {@link LanguageKeywords}. */
+	private String[]				_delimiterKeys	= null;
+
+	/** The frequency counts of the identifiers; null if they aren't being counted. */
+	private TokenFrequencyCounter	_frequencies	= null;
+
+	/** The sketch of the most frequent values of each category; null until one is set. */
+	private SpaceSavingSketch[]		_topValueSketches	= null;
+
+	/** The sketch of the approximate value frequencies of each category; null until one is set. */
+	private CountMinSketch[]		_frequencySketches	= null;
+
+	/** If true the values of the category are only sketched, not stored; null until set. */
+	private boolean[]				_sketchOnly			= null;
+
+	/** The lock held while an input is being mapped by a {@link TokenizerEngine}. */
+	private final ReentrantLock		_lock			= new ReentrantLock();
+
+	/** The unique sequence number of this {@link TokenTable}, which orders the locks of merges. */
+	private final long				_sequence		= _SEQUENCES.getAndIncrement();
+
+	/** The number of times the identifiers given out were renumbered or discarded. */
+	private int						_generation		= 0;
+
 	/**
 	 * Instantiates a new token table with the default key prefixes for each category of identifier.
 	 * To change the prefix values acquire the specific {@link AutoKeyHashMap} then change it using
@@ -90,6 +176,298 @@ public class TokenTable {
 		_comments = new AutoKeyHashMap<String>( _COMMENTS );
 		_keywords = new AutoKeyHashMap<String>( _KEYWORDS );
 		_delimiter = new AutoKeyHashMap<String>( _DELIMITERS );
+		_unmapped = new AutoKeyHashMap<String>();
+	}
+
+	/**
+	 * Instantiates a new token table with the default key prefixes, where the keywords and
+	 * delimiters of the {@link LanguageKeywords} are given fixed identifiers (see
+	 * {@link TokenTable#setLanguage(LanguageKeywords)}).
+	 * 
+	 * @param language the {@link LanguageKeywords} to give fixed identifiers
+	 */
+	public TokenTable( LanguageKeywords language ) {
+		this();
+		setLanguage( language );
+	}
+
+	/**
+	 * Instantiates a new token table with the default key prefixes, where the keywords and
+	 * delimiters of the {@link LanguageKeywords} are given fixed identifiers. The literals and
+	 * comments can optionally be stored off the heap using {@link OffHeapAutoKeyHashMap}s, which
+	 * is useful when there are many large literals and comments (ie: license headers).
+	 * 
+	 * @param language the {@link LanguageKeywords} to give fixed identifiers
+	 * @param offHeapLiteralsAndComments if true the literals and comments are stored off the heap
+	 */
+	public TokenTable( LanguageKeywords language, boolean offHeapLiteralsAndComments ) {
+		this( language );
+
+		if( offHeapLiteralsAndComments ) {
+			_literals = new OffHeapAutoKeyHashMap( _LITERALS );
+			_comments = new OffHeapAutoKeyHashMap( _COMMENTS );
+		}
+	}
+
+	/**
+	 * Instantiates a new token table with the default key prefixes, whose literals, primitives,
+	 * objects and comments are stored in {@link MappedAutoKeyHashMap} files of the directory. Every
+	 * process on the machine that creates its {@link TokenTable} on the same directory shares the
+	 * same values under the same identifiers, and the keywords and delimiters of the
+	 * {@link LanguageKeywords} agree as their identifiers are fixed. The unmapped tokens stay
+	 * private to this {@link TokenTable}.
+	 * <p>
+	 * The shared values cannot be removed, so {@link TokenTable#clearAll()} is not supported and a
+	 * tokenization that is rolled back (see {@link TokenizerEngine}) keeps the values it added.
+	 *
+	 * @param language the {@link LanguageKeywords} to give fixed identifiers
+	 * @param sharedDirectory the directory of the shared dictionary files
+	 * @throws IOException if the dictionary files cannot be created or mapped
+	 */
+	public TokenTable( LanguageKeywords language, Path sharedDirectory ) throws IOException {
+		this( language );
+
+		Files.createDirectories( sharedDirectory );
+		_literals = new MappedAutoKeyHashMap( sharedDirectory.resolve( "literals.dict" ),
+				_LITERALS );
+		_primitives = new MappedAutoKeyHashMap( sharedDirectory.resolve( "primitives.dict" ),
+				_PRIMITIVES );
+		_objects = new MappedAutoKeyHashMap( sharedDirectory.resolve( "objects.dict" ), _OBJECTS );
+		_comments = new MappedAutoKeyHashMap( sharedDirectory.resolve( "comments.dict" ),
+				_COMMENTS );
+	}
+
+	/**
+	 * Instantiates a new scratch token table for mapping a piece of an input apart from the
+	 * specified {@link TokenTable} (see {@link TokenTable#addMapped(TokenTable, ArrayList,
+	 * ArrayList)}). Its primitive, object, keyword and delimiter prefixes are those of the
+	 * {@link TokenTable} preceded by the marker, which must be a spacing delimiter so that no lexed
+	 * token can be mistaken for one of its identifiers, and it is bound to the same
+	 * {@link LanguageKeywords}.
+	 * 
+	 * @param tokenTable the {@link TokenTable} that the mapped tokens are to be added to
+	 * @param marker the character that precedes each prefix
+	 */
+	TokenTable( TokenTable tokenTable, char marker ) {
+		this();
+
+		for( int category : _MAPPED_CATEGORIES ) {
+			AutoKeyHashMap<String> map = tokenTable.getMap( category );
+			getMap( category ).setKeyPrefix( marker + map.getKeyPrefix() );
+		}
+		setLanguage( tokenTable._language );
+	}
+
+	/**
+	 * Sets the {@link LanguageKeywords} whose keywords and delimiters are given fixed identifiers.
+	 * The keyword and delimiter {@link AutoKeyHashMap}s are cleared and filled in the order of the
+	 * language's fixed ids, so <code>:k0</code> always refers to the same keyword no matter which
+	 * inputs were mapped. The replacement of keywords and delimiters for this language then becomes
+	 * a direct array index instead of interning each occurrence.
+	 * 
+	 * @param language the {@link LanguageKeywords} to give fixed identifiers, or null to have the
+	 *            keywords and delimiters interned in order of first appearance
+	 */
+	public void setLanguage( LanguageKeywords language ) {
+		_language = language;
+		assignLanguageKeys();
+	}
+
+	/**
+	 * Gets the {@link LanguageKeywords} whose keywords and delimiters have fixed identifiers.
+	 * 
+	 * @return the {@link LanguageKeywords} with fixed identifiers; null if there is none
+	 */
+	public LanguageKeywords getLanguage() {
+		return _language;
+	}
+
+	/**
+	 * Sets whether the literals, primitives, objects and comments are given content-derived
+	 * identifiers (see {@link HashedAutoKeyHashMap}) instead of auto incremented ones. With
+	 * content-derived identifiers, {@link TokenTable}s on any number of threads or machines map the
+	 * same token to the same identifier without sharing anything, so their tokenized inputs can be
+	 * compared and merged directly; bind the same {@link LanguageKeywords} to each (see
+	 * {@link TokenTable#setLanguage(LanguageKeywords)}) so the keywords and delimiters agree as well.
+	 * The token ids (see {@link TokenTable#getTokenId(String)}) remain local to each
+	 * {@link TokenTable}.
+	 * <p>
+	 * The {@link AutoKeyHashMap}s of the four categories are replaced, which discards their values.
+	 *
+	 * @param contentKeys if true the identifiers are derived from the content of the tokens,
+	 *            otherwise they are auto incremented
+	 */
+	public void setContentKeys( boolean contentKeys ) {
+		_generation++;
+		if( contentKeys ) {
+			_literals = new HashedAutoKeyHashMap( _LITERALS );
+			_primitives = new HashedAutoKeyHashMap( _PRIMITIVES );
+			_objects = new HashedAutoKeyHashMap( _OBJECTS );
+			_comments = new HashedAutoKeyHashMap( _COMMENTS );
+		}
+		else {
+			_literals = new AutoKeyHashMap<String>( _LITERALS );
+			_primitives = new AutoKeyHashMap<String>( _PRIMITIVES );
+			_objects = new AutoKeyHashMap<String>( _OBJECTS );
+			_comments = new AutoKeyHashMap<String>( _COMMENTS );
+		}
+
+		if( _frequencies != null ) {
+			_frequencies.clear();
+		}
+	}
+
+	/**
+	 * Checks to see if the literals, primitives, objects and comments are given content-derived
+	 * identifiers.
+	 *
+	 * @return true if the identifiers are derived from the content of the tokens
+	 */
+	public boolean isContentKeys() {
+		return _literals instanceof HashedAutoKeyHashMap;
+	}
+
+	/**
+	 * Sets whether the term and document frequencies of the identifiers are counted as the tokens
+	 * are mapped (see {@link TokenFrequencyCounter}). Each mapping call of a
+	 * {@link TokenizerEngine} is counted as one document. Turning the counting off discards the
+	 * counts.
+	 * 
+	 * @param countFrequencies if true the frequencies are counted
+	 */
+	public void setCountFrequencies( boolean countFrequencies ) {
+		if( countFrequencies && _frequencies == null ) {
+			_frequencies = new TokenFrequencyCounter();
+		}
+		else if( !countFrequencies ) {
+			_frequencies = null;
+		}
+	}
+
+	/**
+	 * Gets the {@link TokenFrequencyCounter} of the identifiers of this {@link TokenTable}.
+	 * 
+	 * @return the {@link TokenFrequencyCounter}; null if the frequencies aren't being counted
+	 */
+	public TokenFrequencyCounter getFrequencyCounter() {
+		return _frequencies;
+	}
+
+	/**
+	 * Sets the sketches that the values of the category are counted in as the tokens are mapped,
+	 * which give the most frequent values and the approximate frequency of any value in a fixed
+	 * amount of memory (unlike {@link TokenFrequencyCounter}, which counts every id). The same
+	 * sketch can be shared by several {@link TokenTable}s (ie: one per thread or shard), or each
+	 * can have its own to be merged later. The counts are not rolled back when a mapping is
+	 * aborted by its limits.
+	 * 
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @param topValues the {@link SpaceSavingSketch} of the most frequent values; null for none
+	 * @param frequencies the {@link CountMinSketch} of the value frequencies; null for none
+	 */
+	public void setSketches( int category, SpaceSavingSketch topValues,
+			CountMinSketch frequencies ) {
+		setSketches( category, topValues, frequencies, false );
+	}
+
+	/**
+	 * Sets the sketches that the values of the category are counted in, see
+	 * {@link TokenTable#setSketches(int, SpaceSavingSketch, CountMinSketch)}, optionally without
+	 * storing the values at all, so that the memory of the category stays fixed however many
+	 * distinct values there are.
+	 * <p>
+	 * The values of a sketch-only category are counted in the sketches as they are scanned or
+	 * lexed, and every one of them is given the identifier of the empty value (ie: :o0 if it is
+	 * the first value of the category), which is the only value stored. A sketch-only literal or
+	 * comment is counted in the sketches even when it is removed rather than kept. A value may be
+	 * counted again when a tokenization starts over because the {@link TokenTable} was compacted
+	 * or cleared in the middle of it. Only the literal, primitive, object and comment categories
+	 * can be sketch-only.
+	 * 
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @param topValues the {@link SpaceSavingSketch} of the most frequent values; null for none
+	 * @param frequencies the {@link CountMinSketch} of the value frequencies; null for none
+	 * @param sketchOnly if true the values of the category are sketched but not stored
+	 * @throws IllegalArgumentException if a keyword or delimiter category is to be sketch-only
+	 */
+	public void setSketches( int category, SpaceSavingSketch topValues,
+			CountMinSketch frequencies, boolean sketchOnly ) {
+
+		if( sketchOnly
+				&& ( category == _KEYWORD_CATEGORY || category == _DELIMITER_CATEGORY ) ) {
+			throw new IllegalArgumentException( "The keywords and delimiters are always stored" );
+		}
+
+		_lock.lock();
+		try {
+			if( _topValueSketches == null ) {
+				_topValueSketches = new SpaceSavingSketch[_CATEGORY_COUNT];
+				_frequencySketches = new CountMinSketch[_CATEGORY_COUNT];
+				_sketchOnly = new boolean[_CATEGORY_COUNT];
+			}
+
+			_topValueSketches[category] = topValues;
+			_frequencySketches[category] = frequencies;
+			_sketchOnly[category] = sketchOnly;
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the sketch of the most frequent values of the category.
+	 * 
+	 * @param category the token category
+	 * @return the {@link SpaceSavingSketch}; null if none is set
+	 */
+	public SpaceSavingSketch getTopValuesSketch( int category ) {
+		return _topValueSketches == null ? null : _topValueSketches[category];
+	}
+
+	/**
+	 * Gets the sketch of the approximate value frequencies of the category.
+	 * 
+	 * @param category the token category
+	 * @return the {@link CountMinSketch}; null if none is set
+	 */
+	public CountMinSketch getFrequencySketch( int category ) {
+		return _frequencySketches == null ? null : _frequencySketches[category];
+	}
+
+	/**
+	 * Checks to see if the values of the category are only sketched, not stored (see
+	 * {@link TokenTable#setSketches(int, SpaceSavingSketch, CountMinSketch, boolean)}).
+	 * 
+	 * @param category the token category
+	 * @return true if the category is sketch-only
+	 */
+	public boolean isSketchOnly( int category ) {
+		return _sketchOnly != null && category < _CATEGORY_COUNT && _sketchOnly[category];
+	}
+
+	/**
+	 * Gets the lock that is held while an input is being mapped with this {@link TokenTable} by a
+	 * {@link TokenizerEngine}. The {@link TokenTable} itself is not thread-safe, so any other
+	 * modification of a shared {@link TokenTable} should hold this lock as well.
+	 * 
+	 * @return the lock of this {@link TokenTable}
+	 */
+	public ReentrantLock getLock() {
+		return _lock;
+	}
+
+	/**
+	 * Gets the generation of the identifiers, which changes whenever the identifiers that were
+	 * given out are renumbered or discarded (see {@link TokenTable#compact(boolean)} and
+	 * {@link TokenTable#clearAll()}). A {@link TokenizerEngine} that releases the lock between
+	 * replacing the literals and comments and mapping the rest checks that it hasn't changed. The
+	 * caller must hold the lock.
+	 * 
+	 * @return the generation of the identifiers
+	 */
+	int getGeneration() {
+		return _generation;
 	}
 
 	/**
@@ -150,7 +528,7 @@ public class TokenTable {
 
 		// Check to see if the token table is completely empty, if so return an empty string
 		if( _literals.isEmpty() && _primitives.isEmpty() && _objects.isEmpty()
-				&& _comments.isEmpty() && _keywords.isEmpty() ) {
+				&& _comments.isEmpty() && ( _language != null || _keywords.isEmpty() ) ) {
 			return "";
 		}
 
@@ -180,58 +558,994 @@ public class TokenTable {
 		for( String key : _keywords.getAllKeys() ) {
 			output.append( String.format( "Key  %s	Value  %s\n", key, _keywords.getValue( key ) ) );
 		}
-
-		output.append( "\n----------DELIMITER TOKEN TABLE----------\n" );
-		for( String key : _delimiter.getAllKeys() ) {
-			output.append( String.format( "Key  %s	Value  %s\n", key, _delimiter.getValue( key ) ) );
+
+		output.append( "\n----------DELIMITER TOKEN TABLE----------\n" );
+		for( String key : _delimiter.getAllKeys() ) {
+			output.append( String.format( "Key  %s	Value  %s\n", key, _delimiter.getValue( key ) ) );
+		}
+
+		return output.toString().trim();
+	}
+
+	/**
+	 * Gets the specified {@link AutoKeyHashMap} that the token key belongs too.
+	 * 
+	 * @param tokenKey the token key that the {@link AutoKeyHashMap} corresponds too
+	 * @return the correct {@link AutoKeyHashMap} based on the token key; null if token key didn't
+	 *         match any maps
+	 */
+	public AutoKeyHashMap<String> getMap( String tokenKey ) {
+
+		// Return the correct map
+		if( tokenKey.contains( _LITERALS ) ) {
+			return _literals;
+		}
+		else if( tokenKey.contains( _PRIMITIVES ) ) {
+			return _primitives;
+		}
+		else if( tokenKey.contains( _OBJECTS ) ) {
+			return _objects;
+		}
+		else if( tokenKey.contains( _COMMENTS ) ) {
+			return _comments;
+		}
+		else if( tokenKey.contains( _KEYWORDS ) ) {
+			return _keywords;
+		}
+		else if( tokenKey.contains( _DELIMITERS ) ) {
+			return _delimiter;
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the {@link AutoKeyHashMap} of the specified token category.
+	 *
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @return the {@link AutoKeyHashMap} of the category; null if the category has no map
+	 */
+	public AutoKeyHashMap<String> getMap( int category ) {
+
+		switch( category ) {
+			case _LITERAL_CATEGORY:
+				return _literals;
+			case _PRIMITIVE_CATEGORY:
+				return _primitives;
+			case _OBJECT_CATEGORY:
+				return _objects;
+			case _COMMENT_CATEGORY:
+				return _comments;
+			case _KEYWORD_CATEGORY:
+				return _keywords;
+			case _DELIMITER_CATEGORY:
+				return _delimiter;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Gets the compact integer id of the token key. The low {@link TokenTable#_CATEGORY_BITS} bits
+	 * hold the token category, while the remaining bits hold the numeric id of the key within its
+	 * {@link AutoKeyHashMap}. Identical token keys always produce the same token id, which allows a
+	 * tokenized input to be stored and compared as an <code>int</code> array.
+	 * <p>
+	 * Tokens that were left unmapped (ie: they didn't match any category) are given an id of the
+	 * {@link TokenTable#_UNMAPPED_CATEGORY} so that they can still be represented.
+	 *
+	 * @param tokenKey the token key (ie: :k3) or unmapped token
+	 * @return the token id of the token key
+	 */
+	public int getTokenId( String tokenKey ) {
+
+		int tokenId = getMappedTokenId( tokenKey );
+
+		// The token isn't a key of any map, so keep track of it as an unmapped token
+		if( tokenId == -1 ) {
+			int id = _unmapped.getKeyId( _unmapped.addValue( tokenKey ) );
+			tokenId = ( id << _CATEGORY_BITS ) | _UNMAPPED_CATEGORY;
+		}
+
+		return tokenId;
+	}
+
+	/**
+	 * Gets the token id of the token key (see {@link TokenTable#getTokenId(String)}), without
+	 * keeping track of unmapped tokens.
+	 *
+	 * @param tokenKey the token key (ie: :k3) or unmapped token
+	 * @return the token id of the token key; -1 if it isn't a key of any map
+	 */
+	int getMappedTokenId( String tokenKey ) {
+
+		// Find the map and category that the token key belongs to
+		AutoKeyHashMap<String> map = getMap( tokenKey );
+
+		for( int category = _LITERAL_CATEGORY; category <= _DELIMITER_CATEGORY && map != null;
+				category++ ) {
+			if( getMap( category ) == map ) {
+				int id = map.getKeyId( tokenKey );
+				return id == -1 ? -1 : ( id << _CATEGORY_BITS ) | category;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Gets the token key that corresponds to the token id (the reverse of
+	 * {@link TokenTable#getTokenId(String)}).
+	 *
+	 * @param tokenId the token id
+	 * @return the token key of the token id (or the original token if it was unmapped)
+	 */
+	public String getTokenKey( int tokenId ) {
+
+		int category = getCategory( tokenId );
+		int id = getKeyId( tokenId );
+
+		if( category == _UNMAPPED_CATEGORY ) {
+			return _unmapped.getValue( _unmapped.getKeyForId( id ) );
+		}
+
+		AutoKeyHashMap<String> map = getMap( category );
+		return map == null ? null : map.getKeyForId( id );
+	}
+
+	/**
+	 * Converts the tokenized input (that has been mapped into identifiers) into an array of token
+	 * ids, see {@link TokenTable#getTokenId(String)}.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} identifiers
+	 * @return the array of token ids in the same order as the tokenized input
+	 */
+	public int[] getTokenIds( ArrayList<String> tokenizedInput ) {
+
+		int[] tokenIds = new int[tokenizedInput.size()];
+		for( int i = 0; i < tokenIds.length; i++ ) {
+			tokenIds[i] = getTokenId( tokenizedInput.get( i ) );
+		}
+
+		return tokenIds;
+	}
+
+	/**
+	 * Gets the token category from the token id.
+	 *
+	 * @param tokenId the token id
+	 * @return the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 */
+	public static int getCategory( int tokenId ) {
+		return tokenId & _CATEGORY_MASK;
+	}
+
+	/**
+	 * Gets the numeric key id (within the category's {@link AutoKeyHashMap}) from the token id.
+	 *
+	 * @param tokenId the token id
+	 * @return the numeric id of the key
+	 */
+	public static int getKeyId( int tokenId ) {
+		return tokenId >>> _CATEGORY_BITS;
+	}
+
+	/**
+	 * Clear all the {@link AutoKeyHashMap} being used in this {@link TokenTable}.
+	 */
+	public void clearAll() {
+		_generation++;
+		_literals.clearAll();
+		_primitives.clearAll();
+		_objects.clearAll();
+		_comments.clearAll();
+		_keywords.clearAll();
+		_delimiter.clearAll();
+		_unmapped.clearAll();
+		assignLanguageKeys();
+
+		if( _frequencies != null ) {
+			_frequencies.clear();
+		}
+	}
+
+	/**
+	 * Starts a new document of the frequency counts, if the frequencies are being counted.
+	 */
+	void startDocument() {
+		if( _frequencies != null ) {
+			_frequencies.startDocument();
+		}
+	}
+
+	/**
+	 * Counts an occurrence of the identifier, if the frequencies are being counted.
+	 * 
+	 * @param category the token category of the identifier
+	 * @param key the identifier (ie: :o3)
+	 * @return the identifier
+	 */
+	String count( int category, String key ) {
+
+		if( _frequencies != null ) {
+			_frequencies.count( category, getMap( category ).getKeyId( key ) );
+		}
+
+		// The value is looked up only when it is sketched (the heap maps return it as stored); a
+		// sketch-only value isn't stored, so it was sketched where its characters were at hand
+		if( _topValueSketches != null && !isSketchOnly( category ) ) {
+			sketch( category, getMap( category ).getValue( key ) );
+		}
+
+		return key;
+	}
+
+	/**
+	 * Counts an occurrence of the identifier, see {@link TokenTable#count(int, String)}, where the
+	 * characters of its value are at hand (so they don't need to be looked up for the sketches).
+	 * 
+	 * @param category the token category of the identifier
+	 * @param key the identifier (ie: :l3)
+	 * @param value the characters of the identifier's value
+	 * @return the identifier
+	 */
+	String count( int category, String key, CharSequence value ) {
+
+		if( _frequencies != null ) {
+			_frequencies.count( category, getMap( category ).getKeyId( key ) );
+		}
+
+		if( _topValueSketches != null ) {
+			sketch( category, value );
+		}
+
+		return key;
+	}
+
+	/**
+	 * Adds the value to the {@link AutoKeyHashMap} of its category, see
+	 * {@link AutoKeyHashMap#addValue(Object)}, unless the category is sketch-only (see
+	 * {@link TokenTable#setSketches(int, SpaceSavingSketch, CountMinSketch, boolean)}), in which
+	 * case the value isn't stored and the identifier of the empty value is returned. The caller
+	 * must hold the lock.
+	 * 
+	 * @param category the token category of the value
+	 * @param value the value to be added
+	 * @return the identifier of the value
+	 */
+	String addValue( int category, String value ) {
+
+		if( isSketchOnly( category ) ) {
+			return getSketchedKey( category );
+		}
+
+		return getMap( category ).addValue( value );
+	}
+
+	/**
+	 * Gets the identifier that every value of a sketch-only category is given, adding the empty
+	 * value if it isn't there yet. The caller must hold the lock.
+	 * 
+	 * @param category the sketch-only token category
+	 * @return the identifier of the empty value
+	 */
+	String getSketchedKey( int category ) {
+		return getMap( category ).addValue( _SKETCHED_VALUE );
+	}
+
+	/**
+	 * Adds the value to the {@link AutoKeyHashMap} of its category and counts its identifier.
+	 * 
+	 * @param category the token category of the value
+	 * @param value the value to be added
+	 * @return the identifier of the value
+	 */
+	private String addCounted( int category, String value ) {
+		return count( category, addValue( category, value ), value );
+	}
+
+	/**
+	 * Counts an occurrence of each identifier, see {@link TokenTable#count(int, String)}, in order.
+	 * 
+	 * @param category the token category of the identifiers
+	 * @param keys the identifiers (ie: the literals of an input whose counting was deferred)
+	 */
+	void count( int category, ArrayList<String> keys ) {
+		for( String key : keys ) {
+			count( category, key );
+		}
+	}
+
+	/**
+	 * Adds the tokens of a piece of an input that were mapped with a scratch {@link TokenTable}
+	 * (see {@link TokenTable#TokenTable(TokenTable, char)}) to the output, replacing each scratch
+	 * identifier with the identifier of its value in this {@link TokenTable} and counting it. The
+	 * values are added in the order of their scratch ids, which is their order of first
+	 * appearance, so adding the pieces of an input in order gives the same identifiers as mapping
+	 * the whole input with this {@link TokenTable}, provided that no mapping pass looked across
+	 * the end of a piece. The caller must hold the lock.
+	 * 
+	 * @param scratchTable the scratch {@link TokenTable} that the piece was mapped with
+	 * @param mappedInput the tokens of the piece as mapped with the scratch {@link TokenTable}
+	 * @param output the {@link ArrayList} that the identifiers are added to
+	 */
+	void addMapped( TokenTable scratchTable, ArrayList<String> mappedInput,
+			ArrayList<String> output ) {
+
+		char marker = scratchTable._primitives.getKeyPrefix().charAt( 0 );
+		String[][] keys = new String[_CATEGORY_COUNT][];
+		String[][] values = new String[_CATEGORY_COUNT][];
+
+		for( String token : mappedInput ) {
+
+			// A token without the marker was passed through by the mapping (ie: a literal)
+			String key = null;
+			if( token.length() > 0 && token.charAt( 0 ) == marker ) {
+				for( int i = 0; i < _MAPPED_CATEGORIES.length && key == null; i++ ) {
+
+					int category = _MAPPED_CATEGORIES[i];
+					AutoKeyHashMap<String> scratchMap = scratchTable.getMap( category );
+					int id = scratchMap.getKeyId( token );
+					if( id == -1 ) {
+						continue;
+					}
+
+					// Each value is added to this table the first time it is seen in the piece
+					if( keys[category] == null ) {
+						keys[category] = new String[scratchMap.getValueCount()];
+						values[category] = new String[keys[category].length];
+					}
+					if( keys[category][id] == null ) {
+						values[category][id] = scratchMap.getValue( token );
+						keys[category][id] = addValue( category, values[category][id] );
+					}
+
+					key = count( category, keys[category][id], values[category][id] );
+				}
+			}
+
+			output.add( key == null ? token : key );
+		}
+	}
+
+	/**
+	 * Counts the value in the sketches of its category, if any are set. The caller must hold the
+	 * lock.
+	 * 
+	 * @param category the token category of the value
+	 * @param value the characters of the value
+	 */
+	void sketch( int category, CharSequence value ) {
+
+		if( _topValueSketches == null ) {
+			return;
+		}
+
+		SpaceSavingSketch topValues = _topValueSketches[category];
+		if( topValues != null ) {
+			topValues.add( value );
+		}
+
+		CountMinSketch frequencies = _frequencySketches[category];
+		if( frequencies != null ) {
+			frequencies.add( value );
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the number of ids given out by each category (including the unmapped
+	 * tokens), which the {@link TokenTable} can be rolled back to as long as no values are removed
+	 * in between. The lock (see {@link TokenTable#getLock()}) must be held until the snapshot is
+	 * rolled back to or committed.
+	 *
+	 * @return the snapshot of the id counts, indexed by category
+	 */
+	public int[] snapshot() {
+
+		int[] valueCounts = new int[_UNMAPPED_CATEGORY + 1];
+		for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+			valueCounts[category] = getIdMap( category ).getValueCount();
+		}
+
+		// Journal the frequency counts so that they are rolled back as well
+		if( _frequencies != null ) {
+			_frequencies.startJournal();
+		}
+
+		return valueCounts;
+	}
+
+	/**
+	 * Takes a snapshot of the number of ids given out by each category, like
+	 * {@link TokenTable#snapshot()}, part way into the current snapshot. Rolling back to it keeps
+	 * the journal of the frequency counts going, so the {@link TokenTable} can be rolled back
+	 * further (or committed) afterwards.
+	 *
+	 * @return the snapshot of the id counts, indexed by category, followed by the number of
+	 *         journaled frequency counts
+	 */
+	int[] mark() {
+
+		int[] valueCounts = new int[_UNMAPPED_CATEGORY + 2];
+		for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+			valueCounts[category] = getIdMap( category ).getValueCount();
+		}
+		valueCounts[_UNMAPPED_CATEGORY + 1] = _frequencies != null ? _frequencies.getJournalSize()
+				: 0;
+
+		return valueCounts;
+	}
+
+	/**
+	 * Rolls the {@link TokenTable} back to a snapshot, removing every value that was added since.
+	 * Rolling back to a {@link TokenTable#snapshot()} ends the journal of the frequency counts,
+	 * while rolling back to a {@link TokenTable#mark()} keeps it going.
+	 *
+	 * @param valueCounts the snapshot from {@link TokenTable#snapshot()} or
+	 *            {@link TokenTable#mark()}
+	 */
+	public void rollback( int[] valueCounts ) {
+		for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+			getIdMap( category ).truncate( valueCounts[category] );
+		}
+
+		if( _frequencies != null && valueCounts.length > _UNMAPPED_CATEGORY + 1 ) {
+			_frequencies.rollback( valueCounts[_UNMAPPED_CATEGORY + 1] );
+		}
+		else if( _frequencies != null ) {
+			_frequencies.rollback();
+		}
+	}
+
+	/**
+	 * Keeps everything that was added since the last snapshot, which stops the journal of the
+	 * frequency counts.
+	 */
+	public void commit() {
+		if( _frequencies != null ) {
+			_frequencies.commit();
+		}
+	}
+
+	/**
+	 * Merges another {@link TokenTable} into this one, category by category. Each value of the
+	 * other {@link TokenTable} is added to this one in the order of its id, so the values this
+	 * {@link TokenTable} already holds keep their ids and new values are appended. The merge runs
+	 * in time linear to the size of the other {@link TokenTable}, and leaves it unchanged.
+	 * <p>
+	 * The returned {@link TokenTableRemap} maps the ids of the other {@link TokenTable} to the ids
+	 * of this one, so token streams built against the other {@link TokenTable} can be rewritten
+	 * without being tokenized again. Both {@link TokenTable}s are locked for the merge.
+	 *
+	 * @param other the {@link TokenTable} to be merged into this one
+	 * @return the {@link TokenTableRemap} from the ids of the other {@link TokenTable} to this one
+	 */
+	public TokenTableRemap merge( TokenTable other ) {
+
+		if( other == this ) {
+			throw new IllegalArgumentException( "A TokenTable cannot be merged into itself" );
+		}
+
+		// Lock the tables in a consistent order so that opposing merges can't deadlock (the
+		// sequence numbers are unique, unlike the identity hash codes)
+		boolean thisFirst = _sequence < other._sequence;
+		ReentrantLock first = thisFirst ? _lock : other._lock;
+		ReentrantLock second = thisFirst ? other._lock : _lock;
+
+		first.lock();
+		second.lock();
+		try {
+
+			int[][] remaps = new int[_UNMAPPED_CATEGORY + 1][];
+			for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+				remaps[category] = mergeMap( other.getIdMap( category ), getIdMap( category ) );
+			}
+
+			return new TokenTableRemap( remaps, this );
+		}
+		finally {
+			second.unlock();
+			first.unlock();
+		}
+	}
+
+	/**
+	 * Adds the values of the source {@link AutoKeyHashMap} to the target in the order of their ids.
+	 *
+	 * @param source the {@link AutoKeyHashMap} whose values are added
+	 * @param target the {@link AutoKeyHashMap} that the values are added to
+	 * @return the remap array from the ids of the source to the ids of the target (-1 for the ids
+	 *         whose values were removed)
+	 */
+	private static int[] mergeMap( AutoKeyHashMap<String> source, AutoKeyHashMap<String> target ) {
+
+		int[] remap = new int[source.getValueCount()];
+		for( int id = 0; id < remap.length; id++ ) {
+
+			String value = source.getValue( source.getKeyForId( id ) );
+			remap[id] = value == null ? -1 : target.getKeyId( target.addValue( value ) );
+		}
+
+		return remap;
+	}
+
+	/**
+	 * Compacts the {@link TokenTable} by renumbering the values of each category densely, which
+	 * closes the holes left by removed values (see {@link AutoKeyHashMap#removeValue(String)}). The
+	 * values keep the order of their ids, unless ordering by frequency is asked for, in which case
+	 * the values with the highest term frequencies are given the smallest ids (the values that were
+	 * never counted follow in the order of their ids). The keywords and delimiters keep their fixed
+	 * ids when a {@link LanguageKeywords} is bound.
+	 * <p>
+	 * The returned {@link TokenTableRemap} maps the old ids to the new ones, so token streams built
+	 * before the compaction can be rewritten in bulk. The frequency counts are moved to the new ids.
+	 * The compaction is one linear pass over the values of each category (plus sorting the counted
+	 * ids when ordering by frequency). The {@link TokenTable} is only locked while the values are
+	 * taken and while the compacted {@link AutoKeyHashMap}s are swapped in (which replaces them,
+	 * as {@link TokenTable#setContentKeys(boolean)} does), so mappings go on while the maps are
+	 * rebuilt. The values added in the meantime are given the ids after the compacted ones, and
+	 * the compaction starts over if the maps are cleared or a value is removed in the meantime. No
+	 * mapping sees a mix of the old and new ids.
+	 *
+	 * @param byFrequency if true then the values are ordered by descending term frequency
+	 * @return the {@link TokenTableRemap} from the old ids to the new ids of this
+	 *         {@link TokenTable}
+	 * @throws UnsupportedOperationException if a category is backed by a
+	 *             {@link MappedAutoKeyHashMap}, as its ids are shared with other processes
+	 */
+	public TokenTableRemap compact( boolean byFrequency ) {
+
+		while( true ) {
+
+			// Take the values by their old ids and the order of the new ids under a short lock
+			int generation = 0;
+			String[][] values = new String[_UNMAPPED_CATEGORY + 1][];
+			int[][] firsts = new int[_UNMAPPED_CATEGORY + 1][];
+			int[] sizes = new int[_UNMAPPED_CATEGORY + 1];
+			ArrayList<AutoKeyHashMap<String>> maps = new ArrayList<AutoKeyHashMap<String>>();
+
+			_lock.lock();
+			try {
+
+				// Check every map first so that a failure leaves the TokenTable untouched
+				for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+					if( getIdMap( category ) instanceof MappedAutoKeyHashMap ) {
+						throw new UnsupportedOperationException(
+								"A TokenTable backed by shared mapped files cannot be compacted" );
+					}
+				}
+
+				generation = _generation;
+				for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+
+					AutoKeyHashMap<String> map = getIdMap( category );
+					if( isFixed( category ) ) {
+						maps.add( null );
+						continue;
+					}
+					maps.add( map.createEmpty() );
+
+					values[category] = new String[map.getValueCount()];
+					for( int id = 0; id < values[category].length; id++ ) {
+						values[category][id] = map.getValue( map.getKeyForId( id ) );
+					}
+					sizes[category] = map.getSize();
+
+					boolean counted = byFrequency && _frequencies != null
+							&& category < _CATEGORY_COUNT;
+					firsts[category] = counted ? _frequencies.getTopTermFrequencies( category,
+							Integer.MAX_VALUE ) : new int[0];
+				}
+			}
+			finally {
+				_lock.unlock();
+			}
+
+			// Build the compacted maps without the lock
+			int[][] remaps = new int[_UNMAPPED_CATEGORY + 1][];
+			for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+				if( values[category] != null ) {
+					remaps[category] = compactMap( values[category], firsts[category],
+							maps.get( category ) );
+				}
+			}
+
+			// Swap the compacted maps in, adding the values that were added in the meantime
+			_lock.lock();
+			try {
+
+				// Start over if the maps were replaced or cleared, or a value was removed
+				if( _generation != generation || !addNewValues( values, sizes, maps, remaps ) ) {
+					continue;
+				}
+
+				_generation++;
+				for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+
+					// The fixed ids are kept as they are (removed values still lose their ids)
+					AutoKeyHashMap<String> map = getIdMap( category );
+					if( isFixed( category ) ) {
+						remaps[category] = new int[map.getValueCount()];
+						for( int id = 0; id < remaps[category].length; id++ ) {
+							remaps[category][id] =
+									map.getValue( map.getKeyForId( id ) ) == null ? -1 : id;
+						}
+						continue;
+					}
+
+					setIdMap( category, maps.get( category ) );
+					if( _frequencies != null && category < _CATEGORY_COUNT ) {
+						_frequencies.remap( category, remaps[category] );
+					}
+				}
+
+				return new TokenTableRemap( remaps, this );
+			}
+			finally {
+				_lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Checks to see if the ids of the category are fixed by the {@link LanguageKeywords}, so that
+	 * a compaction keeps them as they are.
+	 *
+	 * @param category the token category
+	 * @return true if the category is the keywords or the delimiters of a bound language
+	 */
+	private boolean isFixed( int category ) {
+		return _language != null
+				&& ( category == _KEYWORD_CATEGORY || category == _DELIMITER_CATEGORY );
+	}
+
+	/**
+	 * Adds the values that were added to the {@link AutoKeyHashMap}s of this {@link TokenTable}
+	 * since their values were taken for a compaction to the compacted maps, after the compacted
+	 * values in the order of their ids, and extends the remap arrays to them. The caller must hold
+	 * the lock.
+	 *
+	 * @param values the values that were taken of each category, by their old ids
+	 * @param sizes the number of values that each category held when they were taken
+	 * @param maps the compacted {@link AutoKeyHashMap} of each category
+	 * @param remaps the remap array of each category, which are extended
+	 * @return false if a value was removed in the meantime, so the compaction must start over
+	 */
+	private boolean addNewValues( String[][] values, int[] sizes,
+			ArrayList<AutoKeyHashMap<String>> maps, int[][] remaps ) {
+
+		for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+
+			if( values[category] == null ) {
+				continue;
+			}
+
+			AutoKeyHashMap<String> map = getIdMap( category );
+			int taken = values[category].length;
+			int[] remap = Arrays.copyOf( remaps[category], Math.max( taken,
+					map.getValueCount() ) );
+			Arrays.fill( remap, taken, remap.length, -1 );
+
+			// Every value held now is either one that was taken or a new one
+			int added = 0;
+			for( int id = taken; id < map.getValueCount(); id++ ) {
+				String value = map.getValue( map.getKeyForId( id ) );
+				if( value != null ) {
+					remap[id] = maps.get( category ).getKeyId( maps.get( category ).addValue(
+							value ) );
+					added++;
+				}
+			}
+
+			if( map.getSize() != sizes[category] + added ) {
+				return false;
+			}
+			remaps[category] = remap;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sets the {@link AutoKeyHashMap} that the token ids of the category refer to, see
+	 * {@link TokenTable#getIdMap(int)}.
+	 *
+	 * @param category the token category
+	 * @param map the {@link AutoKeyHashMap} of the category
+	 */
+	private void setIdMap( int category, AutoKeyHashMap<String> map ) {
+
+		switch( category ) {
+			case _LITERAL_CATEGORY:
+				_literals = map;
+				break;
+			case _PRIMITIVE_CATEGORY:
+				_primitives = map;
+				break;
+			case _OBJECT_CATEGORY:
+				_objects = map;
+				break;
+			case _COMMENT_CATEGORY:
+				_comments = map;
+				break;
+			case _KEYWORD_CATEGORY:
+				_keywords = map;
+				break;
+			case _DELIMITER_CATEGORY:
+				_delimiter = map;
+				break;
+			default:
+				_unmapped = map;
+				break;
+		}
+	}
+
+	/**
+	 * Adds the values to an empty {@link AutoKeyHashMap} densely, giving the first ids to the
+	 * values of the specified ids and the rest to the other values in the order of their ids.
+	 *
+	 * @param values the values to be added, by their old ids (null for a removed value)
+	 * @param first the ids whose values are given the first new ids, in order
+	 * @param map the empty {@link AutoKeyHashMap} to add the values to
+	 * @return the remap array from the old ids to the new ids (-1 for the ids whose values were
+	 *         removed)
+	 */
+	private static int[] compactMap( String[] values, int[] first, AutoKeyHashMap<String> map ) {
+
+		// Add the values, first the specified ids then the rest in the order of their ids
+		int[] remap = new int[values.length];
+		Arrays.fill( remap, -1 );
+		for( int id : first ) {
+			if( id < values.length && values[id] != null ) {
+				remap[id] = map.getKeyId( map.addValue( values[id] ) );
+			}
+		}
+		for( int id = 0; id < values.length; id++ ) {
+			if( values[id] != null && remap[id] == -1 ) {
+				remap[id] = map.getKeyId( map.addValue( values[id] ) );
+			}
+		}
+
+		return remap;
+	}
+
+	/**
+	 * Writes the values of every category (the unmapped tokens included) in the order of their
+	 * ids, along with the number of ids each {@link AutoKeyHashMap} has given out, so that
+	 * {@link TokenTable#read(DataInput)} restores the exact id assignment. The frequency counts are
+	 * not written. The {@link TokenTable} is locked while it is written.
+	 *
+	 * @param output the {@link DataOutput} to write to
+	 * @throws IOException if the output cannot be written
+	 */
+	public void write( DataOutput output ) throws IOException {
+
+		_lock.lock();
+		try {
+			for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+
+				AutoKeyHashMap<String> map = getIdMap( category );
+				int valueCount = map.getValueCount();
+				output.writeInt( valueCount );
+				writeValues( map, output, 0, valueCount );
+			}
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the contents of this {@link TokenTable} with the values written by
+	 * {@link TokenTable#write(DataOutput)}, giving each value the id it had, so mapping more
+	 * inputs continues the id assignment exactly where the written {@link TokenTable} stopped.
+	 * The {@link TokenTable} must be bound to the same {@link LanguageKeywords} as the written one
+	 * (if any). The frequency counts are cleared. The {@link TokenTable} is locked while it is
+	 * read.
+	 *
+	 * @param input the {@link DataInput} to read from
+	 * @throws IOException if the input cannot be read, or doesn't match this {@link TokenTable}
+	 */
+	public void read( DataInput input ) throws IOException {
+
+		_lock.lock();
+		try {
+			clearAll();
+
+			for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+
+				AutoKeyHashMap<String> map = getIdMap( category );
+				int valueCount = input.readInt();
+				if( valueCount < 0 ) {
+					throw new IOException( "Invalid value count: " + valueCount );
+				}
+
+				readValues( map, input, 0, valueCount );
+				if( map.getValueCount() != valueCount ) {
+					throw new IOException( "The values don't match the ids of this TokenTable "
+							+ "(ie: a different language)" );
+				}
+			}
+		}
+		finally {
+			_lock.unlock();
 		}
-
-		return output.toString().trim();
 	}
 
 	/**
-	 * Gets the specified {@link AutoKeyHashMap} that the token key belongs too.
-	 * 
-	 * @param tokenKey the token key that the {@link AutoKeyHashMap} corresponds too
-	 * @return the correct {@link AutoKeyHashMap} based on the token key; null if token key didn't
-	 *         match any maps
+	 * Writes the values of every category that were added since the {@link TokenTable} had given
+	 * out the specified number of ids (ie: the counts returned by the last call), so that a log of
+	 * the values can be appended to instead of writing the whole {@link TokenTable} each time.
+	 * Replaying the written blocks in order with {@link TokenTable#readAdded(DataInput)} restores
+	 * the exact id assignment, like {@link TokenTable#read(DataInput)}. The {@link TokenTable} is
+	 * locked while it is written.
+	 *
+	 * @param output the {@link DataOutput} to write to
+	 * @param valueCounts the number of ids of each category that were already written, indexed by
+	 *            category (the unmapped tokens included); all zero for the first block
+	 * @return the number of ids of each category that have been written, for the next block
+	 * @throws IOException if the output cannot be written
 	 */
-	public AutoKeyHashMap<String> getMap( String tokenKey ) {
+	public int[] writeAdded( DataOutput output, int[] valueCounts ) throws IOException {
 
-		// Return the correct map
-		if( tokenKey.contains( _LITERALS ) ) {
-			return _literals;
-		}
-		else if( tokenKey.contains( _PRIMITIVES ) ) {
-			return _primitives;
+		_lock.lock();
+		try {
+			int[] written = new int[_UNMAPPED_CATEGORY + 1];
+			for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+
+				AutoKeyHashMap<String> map = getIdMap( category );
+				int from = Math.min( valueCounts[category], map.getValueCount() );
+				written[category] = map.getValueCount();
+
+				output.writeInt( from );
+				output.writeInt( written[category] );
+				writeValues( map, output, from, written[category] );
+			}
+
+			return written;
 		}
-		else if( tokenKey.contains( _OBJECTS ) ) {
-			return _objects;
+		finally {
+			_lock.unlock();
 		}
-		else if( tokenKey.contains( _COMMENTS ) ) {
-			return _comments;
+	}
+
+	/**
+	 * Adds the values of a block written by {@link TokenTable#writeAdded(DataOutput, int[])},
+	 * giving each value the id it had. The blocks must be read in the order they were written,
+	 * starting from an empty {@link TokenTable} (see {@link TokenTable#clearAll()}) bound to the
+	 * same {@link LanguageKeywords} as the written one (if any). The {@link TokenTable} is locked
+	 * while it is read.
+	 *
+	 * @param input the {@link DataInput} to read from
+	 * @throws IOException if the input cannot be read, or doesn't follow the ids of this
+	 *             {@link TokenTable}
+	 */
+	public void readAdded( DataInput input ) throws IOException {
+
+		_lock.lock();
+		try {
+			for( int category = 0; category <= _UNMAPPED_CATEGORY; category++ ) {
+
+				int from = input.readInt();
+				int to = input.readInt();
+				if( from < 0 || to < from ) {
+					throw new IOException( "Invalid id range: " + from + " to " + to );
+				}
+
+				readValues( getIdMap( category ), input, from, to );
+			}
 		}
-		else if( tokenKey.contains( _KEYWORDS ) ) {
-			return _keywords;
+		finally {
+			_lock.unlock();
 		}
-		else if( tokenKey.contains( _DELIMITERS ) ) {
-			return _delimiter;
+	}
+
+	/**
+	 * Writes the values of a range of ids of the {@link AutoKeyHashMap}, each as a flag of whether
+	 * it is still held (a removed value has none) followed by its UTF-8 length and bytes.
+	 *
+	 * @param map the {@link AutoKeyHashMap} of the values
+	 * @param output the {@link DataOutput} to write to
+	 * @param from the first id to be written
+	 * @param to the id after the last one to be written
+	 * @throws IOException if the output cannot be written
+	 */
+	private static void writeValues( AutoKeyHashMap<String> map, DataOutput output, int from,
+			int to ) throws IOException {
+
+		for( int id = from; id < to; id++ ) {
+
+			String value = map.getValue( map.getKeyForId( id ) );
+			output.writeBoolean( value != null );
+			if( value != null ) {
+				byte[] bytes = value.getBytes( _UTF8 );
+				output.writeInt( bytes.length );
+				output.write( bytes );
+			}
 		}
-		else {
-			return null;
+	}
+
+	/**
+	 * Reads the values written by
+	 * {@link TokenTable#writeValues(AutoKeyHashMap, DataOutput, int, int)} into the
+	 * {@link AutoKeyHashMap}, checking that each value gets the id it was written with (a value
+	 * the map already holds, such as a keyword, must already have it).
+	 *
+	 * @param map the {@link AutoKeyHashMap} of the values
+	 * @param input the {@link DataInput} to read from
+	 * @param from the first id to be read
+	 * @param to the id after the last one to be read
+	 * @throws IOException if the input cannot be read, or doesn't match the ids of the map
+	 */
+	private static void readValues( AutoKeyHashMap<String> map, DataInput input, int from,
+			int to ) throws IOException {
+
+		String hole = null;
+		for( int id = from; id < to; id++ ) {
+
+			int keyId = -1;
+			if( input.readBoolean() ) {
+				byte[] bytes = new byte[input.readInt()];
+				input.readFully( bytes );
+				keyId = map.getKeyId( map.addValue( new String( bytes, _UTF8 ) ) );
+			}
+			else {
+				// Burn the id of a removed value with a value that isn't in the map
+				if( hole == null || map.getKey( hole ) != null ) {
+					hole = "\u0000hole";
+					while( map.getKey( hole ) != null ) {
+						hole += '\u0000';
+					}
+				}
+				String key = map.addValue( hole );
+				keyId = map.getKeyId( key );
+				map.removeValue( key );
+			}
+
+			if( keyId != id ) {
+				throw new IOException( "The values don't match the ids of this TokenTable "
+						+ "(ie: a different language)" );
+			}
 		}
 	}
 
 	/**
-	 * Clear all the {@link AutoKeyHashMap} being used in this {@link TokenTable}.
+	 * Gets the {@link AutoKeyHashMap} that the token ids of the category refer to, which includes
+	 * the map of the unmapped tokens.
+	 *
+	 * @param category the token category
+	 * @return the {@link AutoKeyHashMap} of the category
 	 */
-	public void clearAll() {
-		_literals.clearAll();
-		_primitives.clearAll();
-		_objects.clearAll();
-		_comments.clearAll();
+	private AutoKeyHashMap<String> getIdMap( int category ) {
+		return category == _UNMAPPED_CATEGORY ? _unmapped : getMap( category );
+	}
+
+	/**
+	 * Fills the keyword and delimiter {@link AutoKeyHashMap}s with the fixed ids of the
+	 * {@link LanguageKeywords} (if there is one), and caches the identifiers for each fixed id.
+	 */
+	private void assignLanguageKeys() {
+
 		_keywords.clearAll();
 		_delimiter.clearAll();
+
+		if( _language == null ) {
+			_keywordKeys = null;
+			_delimiterKeys = null;
+			return;
+		}
+
+		// Adding in the order of the fixed ids makes each identifier's id equal its fixed id
+		_keywordKeys = new String[_language.getKeywordCount()];
+		for( int i = 0; i < _keywordKeys.length; i++ ) {
+			_keywordKeys[i] = _keywords.addValue( _language.getKeyword( i ) );
+		}
+
+		_delimiterKeys = new String[_language.getDelimiterCount()];
+		for( int i = 0; i < _delimiterKeys.length; i++ ) {
+			_delimiterKeys[i] = _delimiter.addValue( _language.getDelimiter( i ) );
+		}
 	}
 
 	/**
@@ -252,184 +1566,151 @@ public class TokenTable {
 	 */
 	public String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
 			boolean replaceComments ) {
+		return replaceRemoveLiteralsAndComments( input, replaceLiterals, replaceComments, null );
+	}
 
-		StringCharacterIterator iter = new StringCharacterIterator( input );
-
-		boolean done = false;
-		boolean inDoubleQuote = false;
-		boolean inSingleQuote = false;
-		boolean inLineComment = false;
-		boolean inBlockComment = false;
-		StringBuilder output = new StringBuilder();
-		StringBuilder literal = new StringBuilder();
-		StringBuilder comment = new StringBuilder();
-
-		// Keep going till no more characters
-		while( !done ) {
-
-			char token = iter.current();
-			boolean escaped = false;
-
-			// Handle the token
-			if( token == CharacterIterator.DONE ) { // Handles initial token as ending
-				done = true;
-			}
-			else { // Valid token 
-
-				if( token == '\"' && !inSingleQuote && !inLineComment && !inBlockComment ) { // Handle the double quote case
-
-					if( inDoubleQuote ) { // Inside the double quotes
-
-						// Check to see escape status, then return position
-						int currentPosition = iter.getIndex();
-						while( iter.previous() == '\\' ) {
-							if( escaped ) {
-								escaped = false;
-							}
-							else {
-								escaped = true;
-							}
-						}
-						iter.setIndex( currentPosition );
-
-						if( !escaped ) { // If not escaped then exit this double quote
-
-							// If the replace flag is toggled replace with identifier; otherwise remove
-							if( replaceLiterals ) {
-								output.append( _literals.addValue( "\"" + literal.toString() + "\"" ) );
-							}
-							else {
-								output.append( "\"\"" );
-							}
-							literal.delete( 0, literal.length() );
-							inDoubleQuote = false;
-						}
-						else { // In the double quote still; append token to literal output
-							literal.append( token );
-						}
-
-					}
-					else { // Outside double quotes; just entered them
-						inDoubleQuote = true;
-					}
-				}
-				else if( token == '\'' && !inDoubleQuote && !inLineComment && !inBlockComment ) { // Handle the single quote case
-
-					if( inSingleQuote ) { // Inside the single quotes
-
-						// Check to see escape status, then return position
-						int currentPosition = iter.getIndex();
-						while( iter.previous() == '\\' ) {
-							if( escaped ) {
-								escaped = false;
-							}
-							else {
-								escaped = true;
-							}
-						}
-						iter.setIndex( currentPosition );
-
-						if( !escaped ) { // If not escaped then exit this single quote
-
-							// If the replace flag is toggled replace with identifier; otherwise remove
-							if( replaceLiterals ) {
-								output.append( _literals.addValue( "\'" + literal.toString() + "\'" ) );
-							}
-							else {
-								output.append( "\'\'" );
-							}
-							literal.delete( 0, literal.length() );
-							inSingleQuote = false;
-						}
-						else { // In the single quote still; append token to literal output
-							literal.append( token );
-						}
-					}
-					else { // Outside single quotes; just entered them
-						inSingleQuote = true;
-					}
-				}
-				else if( token == '/' && !inDoubleQuote && !inSingleQuote ) { // Handle the start of line/block comment
+	/**
+	 * Replace all the literals and comments in the input {@link String}, see
+	 * {@link TokenTable#replaceRemoveLiteralsAndComments(String, boolean, boolean)}, stopping early
+	 * if the {@link LimitTracker} aborts.
+	 * 
+	 * @param input the input {@link String} to have all the literals and comments replaced with
+	 *            identifiers
+	 * @param replaceLiterals if toggled the literals will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param replaceComments if toggled the comments will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @return the input {@link String} with identifiers replacing all the literals and comments
+	 */
+	String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+			boolean replaceComments, LimitTracker limits ) {
+		return replaceRemoveLiteralsAndComments( input, replaceLiterals, replaceComments, limits,
+				null, null );
+	}
 
-					if( !inBlockComment && !inLineComment ) { // Not inside a comment
+	/**
+	 * Replace all the literals and comments in the input {@link String}, see
+	 * {@link TokenTable#replaceRemoveLiteralsAndComments(String, boolean, boolean, LimitTracker)},
+	 * where the identifiers of the literals and comments are added to the lists instead of being
+	 * counted (so they can be counted later, see {@link TokenTable#count(int, ArrayList)}).
+	 * 
+	 * @param input the input {@link String} to have all the literals and comments replaced with
+	 *            identifiers
+	 * @param replaceLiterals if toggled the literals will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param replaceComments if toggled the comments will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @param literalKeys the {@link ArrayList} that the literal identifiers are added to; null to
+	 *            count them right away
+	 * @param commentKeys the {@link ArrayList} that the comment identifiers are added to
+	 * @return the input {@link String} with identifiers replacing all the literals and comments
+	 */
+	String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+			boolean replaceComments, LimitTracker limits, ArrayList<String> literalKeys,
+			ArrayList<String> commentKeys ) {
+		return replaceRemoveLiteralsAndComments( input, input.length(), replaceLiterals,
+				replaceComments, limits, literalKeys, commentKeys, null, null );
+	}
 
-						int currentPosition = iter.getIndex();
-						char nextToken = iter.next();
+	/**
+	 * Replace all the literals and comments in the beginning of the input {@link String}, see
+	 * {@link TokenTable#replaceRemoveLiteralsAndComments(String, boolean, boolean, LimitTracker)},
+	 * where the position in the output of the end of each deferred identifier is recorded as
+	 * well. A literal or comment that is unfinished at the specified length is left out, rather
+	 * than a fragment of it being mapped.
+	 * 
+	 * @param input the input {@link String} to have all the literals and comments replaced with
+	 *            identifiers
+	 * @param length the number of characters of the input to be replaced
+	 * @param replaceLiterals if toggled the literals will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param replaceComments if toggled the comments will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @param literalKeys the {@link ArrayList} that the literal identifiers are added to; null to
+	 *            count them right away
+	 * @param commentKeys the {@link ArrayList} that the comment identifiers are added to
+	 * @param literalEnds the {@link ArrayList} that the end of each literal identifier is added
+	 *            to; null if not needed
+	 * @param commentEnds the {@link ArrayList} that the end of each comment identifier is added
+	 *            to; null if not needed
+	 * @return the input {@link String} with identifiers replacing all the literals and comments
+	 */
+	String replaceRemoveLiteralsAndComments( String input, int length, boolean replaceLiterals,
+			boolean replaceComments, LimitTracker limits, ArrayList<String> literalKeys,
+			ArrayList<String> commentKeys, ArrayList<Integer> literalEnds,
+			ArrayList<Integer> commentEnds ) {
+
+		LiteralCommentReplacer replacer = new LiteralCommentReplacer( this, replaceLiterals,
+				replaceComments, length );
+		replacer.setDeferredKeys( literalKeys, commentKeys );
+		replacer.setKeyEnds( literalEnds, commentEnds );
+
+		// Scan the input, replacing the literals and comments as they are found
+		LiteralCommentScanner scanner = new LiteralCommentScanner();
+		scanner.setLimits( limits );
+		scanner.scan( input, 0, length, LiteralCommentScanner._CODE, replacer );
+
+		return replacer.getOutput();
+	}
 
-						if( nextToken == '/' ) { // The line comment starts
-							inLineComment = true;
-						}
-						else if( nextToken == '*' ) { // The block comment starts
-							inBlockComment = true;
-						}
-						else { // Reset back; false alarm
-							iter.setIndex( currentPosition );
-						}
-					}
-					else { // Inside a comment still; append token to comment output
-						comment.append( token );
-					}
-				}
-				else if( token == '\n' && inLineComment ) { // Handle end of the line comment
+	/**
+	 * Replace all the literals and comments in the UTF-8 input with the appropriate identifier from
+	 * the literal and comment {@link AutoKeyHashMap}, see
+	 * {@link TokenTable#replaceRemoveLiteralsAndComments(String, boolean, boolean)}. The input is
+	 * scanned directly as bytes; only the code, literals and comments that hold multi-byte UTF-8
+	 * sequences are decoded (and validated).
+	 * 
+	 * @param input the {@link ByteBuffer} of UTF-8 bytes (from its position to its limit, which
+	 *            are not changed) to have all the literals and comments replaced with identifiers
+	 * @param replaceLiterals if toggled the literals will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param replaceComments if toggled the comments will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @return the decoded input {@link String} with identifiers replacing all the literals and
+	 *         comments
+	 * @throws IllegalArgumentException if the input is not well-formed UTF-8
+	 */
+	public String replaceRemoveLiteralsAndComments( ByteBuffer input, boolean replaceLiterals,
+			boolean replaceComments ) {
+		return replaceRemoveLiteralsAndComments( input, replaceLiterals, replaceComments, null,
+				null );
+	}
 
-					// If the replace flag is toggled replace with identifier; otherwise remove
-					if( replaceComments ) {
-						output.append( _comments.addValue( "//" + comment.toString() + "\n" )
-								+ "\n" );
-					}
-					else {
-						output.append( "" );
-					}
-					comment.delete( 0, comment.length() );
-					inLineComment = false;
-				}
-				else if( token == '*' && inBlockComment ) { // Handle end of the block comment
+	/**
+	 * Replace all the literals and comments in the UTF-8 input, see
+	 * {@link TokenTable#replaceRemoveLiteralsAndComments(ByteBuffer, boolean, boolean)}, where the
+	 * identifiers of the literals and comments are added to the lists instead of being counted.
+	 * 
+	 * @param input the {@link ByteBuffer} of UTF-8 bytes (from its position to its limit, which
+	 *            are not changed) to have all the literals and comments replaced with identifiers
+	 * @param replaceLiterals if toggled the literals will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param replaceComments if toggled the comments will be replaced with identifiers, otherwise
+	 *            they are removed
+	 * @param literalKeys the {@link ArrayList} that the literal identifiers are added to; null to
+	 *            count them right away
+	 * @param commentKeys the {@link ArrayList} that the comment identifiers are added to
+	 * @return the decoded input {@link String} with identifiers replacing all the literals and
+	 *         comments
+	 * @throws IllegalArgumentException if the input is not well-formed UTF-8
+	 */
+	String replaceRemoveLiteralsAndComments( ByteBuffer input, boolean replaceLiterals,
+			boolean replaceComments, ArrayList<String> literalKeys,
+			ArrayList<String> commentKeys ) {
 
-					int currentPosition = iter.getIndex();
-					char nextToken = iter.next();
+		ByteCharSequence bytes = new ByteCharSequence( input );
+		LiteralCommentReplacer replacer = new LiteralCommentReplacer( this, replaceLiterals,
+				replaceComments, bytes.length() );
+		replacer.setDeferredKeys( literalKeys, commentKeys );
 
-					if( nextToken == '/' ) { // The block comment ends
+		// Scan the whole input as bytes, decoding only what is passed to the replacer
+		new LiteralCommentScanner().scan( bytes, 0, bytes.length(), LiteralCommentScanner._CODE,
+				new Utf8DecodingHandler( replacer ) );
 
-						// If the replace flag is toggled replace with identifier; otherwise remove
-						if( replaceComments ) {
-							output.append( _comments.addValue( "/*" + comment.toString() + "*/" ) );
-						}
-						else {
-							output.append( "\n" );
-						}
-						comment.delete( 0, comment.length() );
-						inBlockComment = false;
-					}
-					else { // Reset back; false alarm
-						iter.setIndex( currentPosition );
-					}
-				}
-				else if( inDoubleQuote || inSingleQuote ) { // Inside a literal; append token
-					literal.append( token );
-				}
-				else if( inBlockComment || inLineComment ) { // Inside a comment; append token 
-					comment.append( token );
-				}
-				else { // Not inside anything; append token to output
-					output.append( token );
-				}
-				if( iter.next() == CharacterIterator.DONE ) { // Check to see if the end is next
-					done = true;
-					// Wrap up the possibility that the ending was a line comment
-					if( inLineComment ) {
-
-						// If the replace flag is toggled replace with identifier; otherwise remove
-						if( replaceComments ) {
-							output.append( _comments.addValue( "//" + comment.toString() ) );
-						}
-						else {
-							output.append( "" );
-						}
-					}
-				}
-			}
-		}
-		return output.toString();
+		return replacer.getOutput();
 	}
 
 	/**
@@ -444,15 +1725,53 @@ public class TokenTable {
 	 *         replacing all the primitives
 	 */
 	public ArrayList<String> replacePrimitives( ArrayList<String> tokenizedInput ) {
+		return replacePrimitives( tokenizedInput, null );
+	}
+
+	/**
+	 * Replace all the primitives in the {@link ArrayList} of {@link String} tokens, see
+	 * {@link TokenTable#replacePrimitives(ArrayList, LimitTracker, ArrayList, int[], int[])}, into
+	 * a new {@link ArrayList}.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens to have all the
+	 *            (potentially split up) primitives replaced with identifiers
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @return the tokenizedInput the {@link ArrayList} of {@link String} tokens with identifiers
+	 *         replacing all the primitives
+	 */
+	ArrayList<String> replacePrimitives( ArrayList<String> tokenizedInput, LimitTracker limits ) {
+		return replacePrimitives( tokenizedInput, limits,
+				new ArrayList<String>( tokenizedInput.size() ), null, null );
+	}
+
+	/**
+	 * Replace all the primitives in the {@link ArrayList} of {@link String} tokens, see
+	 * {@link TokenTable#replacePrimitives(ArrayList)}, stopping early if the {@link LimitTracker}
+	 * aborts.
+	 * 
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens to have all the
+	 *            (potentially split up) primitives replaced with identifiers
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @param tempTokenizedInput the {@link ArrayList} that the tokens are added to (it is cleared
+	 *            first), so a caller can reuse it between inputs
+	 * @param tokenIds the token id of each token that is already an identifier (see
+	 *            {@link TokenTable#getTokenId(String)}), or -1; null if the ids aren't kept
+	 * @param tempTokenIds the array that the token id of each added token is written to (or -1
+	 *            for a token that isn't an identifier); null if the ids aren't kept
+	 * @return the tokenizedInput the {@link ArrayList} of {@link String} tokens with identifiers
+	 *         replacing all the primitives
+	 */
+	ArrayList<String> replacePrimitives( ArrayList<String> tokenizedInput, LimitTracker limits,
+			ArrayList<String> tempTokenizedInput, int[] tokenIds, int[] tempTokenIds ) {
 
-		// Acquire a temporary copy of the tokenized input to be filled with the new tokenize input
-		ArrayList<String> tempTokenizedInput = new ArrayList<String>();
+		// Fill the given list with the new tokenized input
+		tempTokenizedInput.clear();
 
 		// Acquire an iterator for the tokenized input
 		ListIterator<String> iter = tokenizedInput.listIterator();
 
-		// Loop for as long as there is more tokens
-		while( iter.hasNext() ) {
+		// Loop for as long as there is more tokens (or the limits abort the mapping)
+		while( iter.hasNext() && ( limits == null || !limits.check() ) ) {
 
 			// Acquire the next token and reset the primitives
 			String token = iter.next();
@@ -476,21 +1795,24 @@ public class TokenTable {
 						primitiveTokenRight = token;
 
 						// Replace the captured primitive with an identifier
-						tempTokenizedInput.add( _primitives.addValue( primitiveTokenLeft + "."
-								+ primitiveTokenRight ) );
+						addKey( tempTokenizedInput, tempTokenIds, _PRIMITIVE_CATEGORY,
+								addCounted( _PRIMITIVE_CATEGORY,
+										primitiveTokenLeft + "." + primitiveTokenRight ) );
 					}
 					else { // Current token didn't match a digit
 
 						// Go back one token then replace the captured primitive with an identifier
 						iter.previous();
-						tempTokenizedInput.add( _primitives.addValue( primitiveTokenLeft + "." ) );
+						addKey( tempTokenizedInput, tempTokenIds, _PRIMITIVE_CATEGORY, addCounted(
+								_PRIMITIVE_CATEGORY, primitiveTokenLeft + "." ) );
 					}
 				}
 				else { // No match on the decimal point
 
 					// Go back one token then replace the captured primitive with an identifier
 					iter.previous();
-					tempTokenizedInput.add( _primitives.addValue( primitiveTokenLeft ) );
+					addKey( tempTokenizedInput, tempTokenIds, _PRIMITIVE_CATEGORY, addCounted(
+							_PRIMITIVE_CATEGORY, primitiveTokenLeft ) );
 				}
 			}
 			else if( token.equals( "." ) ) { // Handles situations such without leading digit (.51)
@@ -504,19 +1826,21 @@ public class TokenTable {
 					primitiveTokenRight = tempToken;
 
 					// Replace the captured primitive with an identifier
-					tempTokenizedInput.add( _primitives.addValue( "." + primitiveTokenRight ) );
+					addKey( tempTokenizedInput, tempTokenIds, _PRIMITIVE_CATEGORY, addCounted(
+							_PRIMITIVE_CATEGORY, "." + primitiveTokenRight ) );
 				}
 				else { // No match on a decimal with trailing digits; keep decimal as a token
 
 					// Go back one token then add the decimal as a token to the tokenized input
 					iter.previous();
-					tempTokenizedInput.add( token );
+					passToken( tempTokenizedInput, tempTokenIds, token, tokenIds,
+							iter.previousIndex() );
 				}
 			}
 			else { // No match on either a digit or a decimal
 
 				// Add the token to the tokenized input
-				tempTokenizedInput.add( token );
+				passToken( tempTokenizedInput, tempTokenIds, token, tokenIds, iter.previousIndex() );
 			}
 		}
 
@@ -539,15 +1863,57 @@ public class TokenTable {
 	 */
 	public ArrayList<String> replaceObjects( ArrayList<String> tokenizedInput,
 			LanguageKeywords language ) {
+		return replaceObjects( tokenizedInput, language, null );
+	}
 
-		// Acquire a temporary copy of the tokenized input to be filled with the new tokenize input
-		ArrayList<String> tempTokenizedInput = new ArrayList<String>();
+	/**
+	 * Replace all the objects in the {@link ArrayList} of {@link String} tokens, see
+	 * {@link TokenTable#replaceObjects(ArrayList, LanguageKeywords, LimitTracker, ArrayList, int[],
+	 * int[])}, into a new {@link ArrayList}.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens to have all the
+	 *            (potentially split up) objects replaced with identifiers
+	 * @param language the {@link LanguageKeywords} to be used when replacing objects
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @return the tokenizedInput the {@link ArrayList} of {@link String} tokens with identifiers
+	 *         replacing all the objects
+	 */
+	ArrayList<String> replaceObjects( ArrayList<String> tokenizedInput, LanguageKeywords language,
+			LimitTracker limits ) {
+		return replaceObjects( tokenizedInput, language, limits,
+				new ArrayList<String>( tokenizedInput.size() ), null, null );
+	}
+
+	/**
+	 * Replace all the objects in the {@link ArrayList} of {@link String} tokens, see
+	 * {@link TokenTable#replaceObjects(ArrayList, LanguageKeywords)}, stopping early if the
+	 * {@link LimitTracker} aborts.
+	 * 
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens to have all the
+	 *            (potentially split up) objects replaced with identifiers
+	 * @param language the {@link LanguageKeywords} to be used when replacing objects
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @param tempTokenizedInput the {@link ArrayList} that the tokens are added to (it is cleared
+	 *            first), so a caller can reuse it between inputs
+	 * @param tokenIds the token id of each token that is already an identifier (see
+	 *            {@link TokenTable#getTokenId(String)}), or -1; null if the ids aren't kept
+	 * @param tempTokenIds the array that the token id of each added token is written to (or -1
+	 *            for a token that isn't an identifier); null if the ids aren't kept
+	 * @return the tokenizedInput the {@link ArrayList} of {@link String} tokens with identifiers
+	 *         replacing all the objects
+	 */
+	ArrayList<String> replaceObjects( ArrayList<String> tokenizedInput, LanguageKeywords language,
+			LimitTracker limits, ArrayList<String> tempTokenizedInput, int[] tokenIds,
+			int[] tempTokenIds ) {
+
+		// Fill the given list with the new tokenized input
+		tempTokenizedInput.clear();
 
 		// Acquire an iterator for the tokenized input
 		ListIterator<String> iter = tokenizedInput.listIterator();
 
-		// Loop for as long as there is more tokens
-		while( iter.hasNext() ) {
+		// Loop for as long as there is more tokens (or the limits abort the mapping)
+		while( iter.hasNext() && ( limits == null || !limits.check() ) ) {
 
 			String token = iter.next();
 			StringBuffer object = new StringBuffer();
@@ -583,7 +1949,8 @@ public class TokenTable {
 							// No more objects; go back a token and replace object with an identifier
 							done = true;
 							iter.previous();
-							tempTokenizedInput.add( _objects.addValue( object.toString() ) );
+							addKey( tempTokenizedInput, tempTokenIds, _OBJECT_CATEGORY,
+									addCounted( _OBJECT_CATEGORY, object.toString() ) );
 						}
 					}
 					else { // Token didn't match method call delimiter
@@ -591,14 +1958,15 @@ public class TokenTable {
 						// No more objects; go back a token and replace object with an identifier
 						done = true;
 						iter.previous();
-						tempTokenizedInput.add( _objects.addValue( object.toString() ) );
+						addKey( tempTokenizedInput, tempTokenIds, _OBJECT_CATEGORY,
+								addCounted( _OBJECT_CATEGORY, object.toString() ) );
 					}
 				}
 			}
 			else { // No match on an object
 
 				// Add the token to the tokenized input
-				tempTokenizedInput.add( token );
+				passToken( tempTokenizedInput, tempTokenIds, token, tokenIds, iter.previousIndex() );
 			}
 		}
 
@@ -609,7 +1977,8 @@ public class TokenTable {
 
 	/**
 	 * Replace all the keywords in the input {@link String} with the appropriate identifier from the
-	 * keyword {@link AutoKeyHashMap}.
+	 * keyword {@link AutoKeyHashMap}. If the language is the one set on this {@link TokenTable} the
+	 * keyword's fixed identifier is used.
 	 * 
 	 * @param input the input {@link String} to have all the keywords replaced with identifiers
 	 * @param language the {@link LanguageKeywords} to be used for replacing keywords
@@ -617,22 +1986,79 @@ public class TokenTable {
 	 */
 	public ArrayList<String> replaceKeywords( ArrayList<String> tokenizedInput,
 			LanguageKeywords language ) {
+		return replaceKeywords( tokenizedInput, language, null );
+	}
+
+	/**
+	 * Replace all the keywords in the {@link ArrayList} of {@link String} tokens, see
+	 * {@link TokenTable#replaceKeywords(ArrayList, LanguageKeywords, LimitTracker, ArrayList, int[],
+	 * int[])}, into a new {@link ArrayList}.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens
+	 * @param language the {@link LanguageKeywords} to be used for replacing keywords
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @return the tokens with identifiers replacing all the keywords
+	 */
+	ArrayList<String> replaceKeywords( ArrayList<String> tokenizedInput, LanguageKeywords language,
+			LimitTracker limits ) {
+		return replaceKeywords( tokenizedInput, language, limits,
+				new ArrayList<String>( tokenizedInput.size() ), null, null );
+	}
 
-		// Copy a temporary copy of the tokenized input
-		ArrayList<String> tempTokenizedInput = new ArrayList<String>();
+	/**
+	 * Replace all the keywords in the {@link ArrayList} of {@link String} tokens, see
+	 * {@link TokenTable#replaceKeywords(ArrayList, LanguageKeywords)}, stopping early if the
+	 * {@link LimitTracker} aborts.
+	 * 
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens
+	 * @param language the {@link LanguageKeywords} to be used for replacing keywords
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @param tempTokenizedInput the {@link ArrayList} that the tokens are added to (it is cleared
+	 *            first), so a caller can reuse it between inputs
+	 * @param tokenIds the token id of each token that is already an identifier (see
+	 *            {@link TokenTable#getTokenId(String)}), or -1; null if the ids aren't kept
+	 * @param tempTokenIds the array that the token id of each added token is written to (or -1
+	 *            for a token that isn't an identifier); null if the ids aren't kept
+	 * @return the tokens with identifiers replacing all the keywords
+	 */
+	ArrayList<String> replaceKeywords( ArrayList<String> tokenizedInput, LanguageKeywords language,
+			LimitTracker limits, ArrayList<String> tempTokenizedInput, int[] tokenIds,
+			int[] tempTokenIds ) {
+
+		// Fill the given list with the new tokenized input
+		tempTokenizedInput.clear();
 
 		ListIterator<String> iter = tokenizedInput.listIterator();
 
-		while( iter.hasNext() ) {
+		while( iter.hasNext() && ( limits == null || !limits.check() ) ) {
 
 			String token = iter.next();
 
+			// If the language has fixed ids then the identifier is found directly
+			if( language == _language ) {
+				int keywordId = language.getKeywordId( token );
+				if( keywordId == -1 ) {
+					passToken( tempTokenizedInput, tempTokenIds, token, tokenIds,
+							iter.previousIndex() );
+				}
+				else { // The identifier's id is the fixed id
+					if( _frequencies != null ) {
+						_frequencies.count( _KEYWORD_CATEGORY, keywordId );
+					}
+					if( _topValueSketches != null ) {
+						sketch( _KEYWORD_CATEGORY, token );
+					}
+					addToken( tempTokenizedInput, tempTokenIds, _keywordKeys[keywordId],
+							( keywordId << _CATEGORY_BITS ) | _KEYWORD_CATEGORY );
+				}
+			}
 			// If the token is a keyword then add it as a keyword
-			if( language.isKeyword( token ) ) {
-				tempTokenizedInput.add( _keywords.addValue( token ) );
+			else if( language.isKeyword( token ) ) {
+				addKey( tempTokenizedInput, tempTokenIds, _KEYWORD_CATEGORY,
+						count( _KEYWORD_CATEGORY, _keywords.addValue( token ) ) );
 			}
 			else {
-				tempTokenizedInput.add( token );
+				passToken( tempTokenizedInput, tempTokenIds, token, tokenIds, iter.previousIndex() );
 			}
 		}
 		tokenizedInput = tempTokenizedInput;
@@ -641,7 +2067,8 @@ public class TokenTable {
 
 	/**
 	 * Replace all the delimiters in the input {@link String} with the appropriate identifier from
-	 * the delimiter {@link AutoKeyHashMap}.
+	 * the delimiter {@link AutoKeyHashMap}. If the language is the one set on this
+	 * {@link TokenTable} the delimiter's fixed identifier is used.
 	 * 
 	 * @param input the input {@link String} to have all the delimiters replaced with identifiers
 	 * @param language the {@link LanguageKeywords} to be used for replacing delimiters
@@ -649,25 +2076,127 @@ public class TokenTable {
 	 */
 	public ArrayList<String> replaceDelimiters( ArrayList<String> tokenizedInput,
 			LanguageKeywords language ) {
+		return replaceDelimiters( tokenizedInput, language, null );
+	}
+
+	/**
+	 * Replace all the delimiters in the {@link ArrayList} of {@link String} tokens, see
+	 * {@link TokenTable#replaceDelimiters(ArrayList, LanguageKeywords, LimitTracker, ArrayList,
+	 * int[], int[])}, into a new {@link ArrayList}.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens
+	 * @param language the {@link LanguageKeywords} to be used for replacing delimiters
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @return the tokens with identifiers replacing all the delimiters
+	 */
+	ArrayList<String> replaceDelimiters( ArrayList<String> tokenizedInput,
+			LanguageKeywords language, LimitTracker limits ) {
+		return replaceDelimiters( tokenizedInput, language, limits,
+				new ArrayList<String>( tokenizedInput.size() ), null, null );
+	}
 
-		// Copy a temporary copy of the tokenized input
-		ArrayList<String> tempTokenizedInput = new ArrayList<String>();
+	/**
+	 * Replace all the delimiters in the {@link ArrayList} of {@link String} tokens, see
+	 * {@link TokenTable#replaceDelimiters(ArrayList, LanguageKeywords)}, stopping early if the
+	 * {@link LimitTracker} aborts.
+	 * 
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens
+	 * @param language the {@link LanguageKeywords} to be used for replacing delimiters
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @param tempTokenizedInput the {@link ArrayList} that the tokens are added to (it is cleared
+	 *            first), so a caller can reuse it between inputs
+	 * @param tokenIds the token id of each token that is already an identifier (see
+	 *            {@link TokenTable#getTokenId(String)}), or -1; null if the ids aren't kept
+	 * @param tempTokenIds the array that the token id of each added token is written to (or -1
+	 *            for a token that isn't an identifier); null if the ids aren't kept
+	 * @return the tokens with identifiers replacing all the delimiters
+	 */
+	ArrayList<String> replaceDelimiters( ArrayList<String> tokenizedInput,
+			LanguageKeywords language, LimitTracker limits, ArrayList<String> tempTokenizedInput,
+			int[] tokenIds, int[] tempTokenIds ) {
+
+		// Fill the given list with the new tokenized input
+		tempTokenizedInput.clear();
 
 		ListIterator<String> iter = tokenizedInput.listIterator();
 
-		while( iter.hasNext() ) {
+		while( iter.hasNext() && ( limits == null || !limits.check() ) ) {
 
 			String token = iter.next();
 
+			// If the language has fixed ids then the identifier is found directly
+			if( language == _language ) {
+				int delimiterId = language.getDelimiterId( token );
+				if( delimiterId == -1 ) {
+					passToken( tempTokenizedInput, tempTokenIds, token, tokenIds,
+							iter.previousIndex() );
+				}
+				else { // The identifier's id is the fixed id
+					if( _frequencies != null ) {
+						_frequencies.count( _DELIMITER_CATEGORY, delimiterId );
+					}
+					if( _topValueSketches != null ) {
+						sketch( _DELIMITER_CATEGORY, token );
+					}
+					addToken( tempTokenizedInput, tempTokenIds, _delimiterKeys[delimiterId],
+							( delimiterId << _CATEGORY_BITS ) | _DELIMITER_CATEGORY );
+				}
+			}
 			// If the token is a delimiter then add it as a keyword
-			if( language.isDelimiter( token ) ) {
-				tempTokenizedInput.add( _delimiter.addValue( token ) );
+			else if( language.isDelimiter( token ) ) {
+				addKey( tempTokenizedInput, tempTokenIds, _DELIMITER_CATEGORY,
+						count( _DELIMITER_CATEGORY, _delimiter.addValue( token ) ) );
 			}
 			else {
-				tempTokenizedInput.add( token );
+				passToken( tempTokenizedInput, tempTokenIds, token, tokenIds, iter.previousIndex() );
 			}
 		}
 		tokenizedInput = tempTokenizedInput;
 		return tokenizedInput;
 	}
+
+	/**
+	 * Adds the identifier of the category to the output of a replacement, writing its token id
+	 * too if the ids are kept.
+	 *
+	 * @param output the {@link ArrayList} of the replaced tokens
+	 * @param outputIds the token ids of the replaced tokens; null if not kept
+	 * @param category the token category of the identifier
+	 * @param key the identifier (ie: :o3)
+	 */
+	private void addKey( ArrayList<String> output, int[] outputIds, int category, String key ) {
+		addToken( output, outputIds, key, outputIds == null ? -1
+				: ( getMap( category ).getKeyId( key ) << _CATEGORY_BITS ) | category );
+	}
+
+	/**
+	 * Adds a token of the input to the output of a replacement unchanged, keeping its token id.
+	 *
+	 * @param output the {@link ArrayList} of the replaced tokens
+	 * @param outputIds the token ids of the replaced tokens; null if not kept
+	 * @param token the token of the input
+	 * @param tokenIds the token ids of the input; null if not kept
+	 * @param index the index of the token in the input
+	 */
+	private static void passToken( ArrayList<String> output, int[] outputIds, String token,
+			int[] tokenIds, int index ) {
+		addToken( output, outputIds, token, tokenIds == null ? -1 : tokenIds[index] );
+	}
+
+	/**
+	 * Adds the token to the output of a replacement, writing its token id too if the ids are kept.
+	 *
+	 * @param output the {@link ArrayList} of the replaced tokens
+	 * @param outputIds the token ids of the replaced tokens; null if not kept
+	 * @param token the token
+	 * @param tokenId the token id of the token; -1 if it isn't an identifier
+	 */
+	private static void addToken( ArrayList<String> output, int[] outputIds, String token,
+			int tokenId ) {
+
+		if( outputIds != null ) {
+			outputIds[output.size()] = tokenId;
+		}
+		output.add( token );
+	}
 }
@@ -0,0 +1,124 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.ArrayList;
+
+/**
+ * The mapping of the ids of one {@link TokenTable} to the ids of another, as produced by
+ * {@link TokenTable#merge(TokenTable)} (or of a {@link TokenTable} to its own ids after
+ * {@link TokenTable#compact(boolean)}). There is a remap array for each category, indexed by the
+ * old numeric key id and holding the new numeric key id (or -1 if the old id had no value).
+ * <p>
+ * Token streams that were built against the old {@link TokenTable} can be rewritten with the remap
+ * instead of being tokenized again.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenTableRemap {
+
+	/** The remap array of each category, including the unmapped category. */
+	private int[][]		_remaps	= null;
+
+	/** The {@link TokenTable} that the new ids belong to. */
+	private TokenTable	_target	= null;
+
+	/**
+	 * Instantiates a new {@link TokenTableRemap}.
+	 *
+	 * @param remaps the remap array of each category, indexed by category
+	 * @param target the {@link TokenTable} that the new ids belong to
+	 */
+	TokenTableRemap( int[][] remaps, TokenTable target ) {
+		_remaps = remaps;
+		_target = target;
+	}
+
+	/**
+	 * Gets the remap array of the category, from the old numeric key id to the new one.
+	 *
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @return the remap array of the category
+	 */
+	public int[] getRemap( int category ) {
+		return _remaps[category];
+	}
+
+	/**
+	 * Gets the {@link TokenTable} that the new ids belong to.
+	 *
+	 * @return the target {@link TokenTable}
+	 */
+	public TokenTable getTarget() {
+		return _target;
+	}
+
+	/**
+	 * Remaps a single token id (see {@link TokenTable#getTokenId(String)}).
+	 *
+	 * @param tokenId the old token id
+	 * @return the new token id; negative if the old id had no value
+	 */
+	public int remapTokenId( int tokenId ) {
+
+		int category = TokenTable.getCategory( tokenId );
+		int id = _remaps[category][TokenTable.getKeyId( tokenId )];
+
+		return ( id << TokenTable._CATEGORY_BITS ) | category;
+	}
+
+	/**
+	 * Rewrites the token ids in place, in a single pass over the stream.
+	 *
+	 * @param tokenIds the token ids to be rewritten
+	 */
+	public void remapTokenIds( int[] tokenIds ) {
+		remapTokenIds( tokenIds, 0, tokenIds.length );
+	}
+
+	/**
+	 * Rewrites a range of the token ids in place, in a single pass over the range.
+	 *
+	 * @param tokenIds the token ids to be rewritten
+	 * @param start the start of the range
+	 * @param end the end (exclusive) of the range
+	 */
+	public void remapTokenIds( int[] tokenIds, int start, int end ) {
+
+		int[][] remaps = _remaps;
+		int bits = TokenTable._CATEGORY_BITS;
+		int mask = TokenTable._CATEGORY_MASK;
+
+		for( int i = start; i < end; i++ ) {
+			int tokenId = tokenIds[i];
+			int category = tokenId & mask;
+			tokenIds[i] = ( remaps[category][tokenId >>> bits] << bits ) | category;
+		}
+	}
+
+	/**
+	 * Rewrites a tokenized input of identifiers (ie: :o3) in place. Tokens that were left
+	 * unmapped are kept as they are, as they are their own identifier.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} identifiers to be rewritten
+	 */
+	public void remapTokenKeys( ArrayList<String> tokenizedInput ) {
+
+		for( int i = 0; i < tokenizedInput.size(); i++ ) {
+
+			String token = tokenizedInput.get( i );
+			AutoKeyHashMap<String> map = _target.getMap( token );
+
+			// Find the category of the token's map
+			int categories = TokenTable._CATEGORY_COUNT;
+			for( int category = 0; category < categories && map != null; category++ ) {
+				if( _target.getMap( category ) == map ) {
+
+					int id = map.getKeyId( token );
+					if( id != -1 ) {
+						tokenizedInput.set( i, map.getKeyForId( _remaps[category][id] ) );
+					}
+					break;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limits of a single tokenization, used to bound its latency. A tokenization can be limited by
+ * the number of tokens, the length of the input and a timeout, and can be cancelled from another
+ * thread while it runs. A limit of 0 means there is no limit.
+ * <p>
+ * When the token or input limit is reached, the tokens of the part of the input before it are
+ * mapped. When the timeout passes or the tokenization is cancelled, it is aborted: the tokens
+ * that were mapped by then are returned, and the {@link TokenTable} keeps nothing of the rest of
+ * the input.
+ *
+ * @author Kevin Jalbert
+ * @see TokenizationResult
+ */
+public class TokenizationLimits {
+
+	/** The maximum number of tokens to be lexed; 0 for no limit. */
+	private int					_maxTokens			= 0;
+
+	/** The maximum number of characters of the input to be tokenized; 0 for no limit. */
+	private int					_maxInputLength		= 0;
+
+	/** The time allowed (in nanoseconds) from the start of the tokenization; 0 for no limit. */
+	private long				_timeoutNanos		= 0;
+
+	/** If true the tokenization is to be aborted. */
+	private volatile boolean	_cancelled			= false;
+
+	/**
+	 * Sets the maximum number of tokens to be lexed from the input.
+	 *
+	 * @param maxTokens the maximum number of tokens; 0 for no limit
+	 */
+	public void setMaxTokens( int maxTokens ) {
+		_maxTokens = maxTokens;
+	}
+
+	/**
+	 * Gets the maximum number of tokens to be lexed from the input.
+	 *
+	 * @return the maximum number of tokens; 0 for no limit
+	 */
+	public int getMaxTokens() {
+		return _maxTokens;
+	}
+
+	/**
+	 * Sets the maximum number of characters of the input to be tokenized.
+	 *
+	 * @param maxInputLength the maximum number of characters; 0 for no limit
+	 */
+	public void setMaxInputLength( int maxInputLength ) {
+		_maxInputLength = maxInputLength;
+	}
+
+	/**
+	 * Gets the maximum number of characters of the input to be tokenized.
+	 *
+	 * @return the maximum number of characters; 0 for no limit
+	 */
+	public int getMaxInputLength() {
+		return _maxInputLength;
+	}
+
+	/**
+	 * Sets the time allowed for each tokenization, measured from when it starts (including the
+	 * time waiting for the {@link TokenTable}).
+	 *
+	 * @param timeout the time allowed; 0 for no limit
+	 * @param unit the {@link TimeUnit} of the timeout
+	 */
+	public void setTimeout( long timeout, TimeUnit unit ) {
+		_timeoutNanos = unit.toNanos( timeout );
+	}
+
+	/**
+	 * Gets the time allowed for each tokenization.
+	 *
+	 * @return the time allowed in nanoseconds; 0 for no limit
+	 */
+	public long getTimeoutNanos() {
+		return _timeoutNanos;
+	}
+
+	/**
+	 * Cancels the tokenizations using these limits; a running tokenization stops soon after.
+	 */
+	public void cancel() {
+		_cancelled = true;
+	}
+
+	/**
+	 * Checks to see if the tokenizations using these limits have been cancelled.
+	 *
+	 * @return true if cancelled
+	 */
+	public boolean isCancelled() {
+		return _cancelled;
+	}
+}
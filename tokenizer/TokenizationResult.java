@@ -0,0 +1,57 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.ArrayList;
+
+/**
+ * The tokens and the {@link TokenizationStatus} of a tokenization that was run with
+ * {@link TokenizationLimits}.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenizationResult {
+
+	/** The tokens (identifiers) of the input that was processed. */
+	private ArrayList<String>	_tokens	= null;
+
+	/** The outcome of the tokenization. */
+	private TokenizationStatus	_status	= null;
+
+	/**
+	 * Instantiates a new {@link TokenizationResult}.
+	 *
+	 * @param tokens the tokens of the input that was processed
+	 * @param status the outcome of the tokenization
+	 */
+	public TokenizationResult( ArrayList<String> tokens, TokenizationStatus status ) {
+		_tokens = tokens;
+		_status = status;
+	}
+
+	/**
+	 * Gets the tokens of the input that was processed. When the tokenization stopped at a limit or
+	 * was aborted these are the tokens of a prefix of the input.
+	 *
+	 * @return the {@link ArrayList} of {@link String} tokens
+	 */
+	public ArrayList<String> getTokens() {
+		return _tokens;
+	}
+
+	/**
+	 * Gets the outcome of the tokenization.
+	 *
+	 * @return the {@link TokenizationStatus}
+	 */
+	public TokenizationStatus getStatus() {
+		return _status;
+	}
+
+	/**
+	 * Checks to see if the whole input was tokenized.
+	 *
+	 * @return true if the status is {@link TokenizationStatus#COMPLETE}
+	 */
+	public boolean isComplete() {
+		return _status == TokenizationStatus.COMPLETE;
+	}
+}
@@ -0,0 +1,34 @@
+package ca.tokenizing_parser.tokenizer;
+
+/**
+ * The outcome of a tokenization that was run with {@link TokenizationLimits}.
+ *
+ * @author Kevin Jalbert
+ */
+public enum TokenizationStatus {
+
+	/** The whole input was tokenized. */
+	COMPLETE,
+
+	/** The maximum number of tokens was reached; the tokens of the input before it are mapped. */
+	TOKEN_LIMIT,
+
+	/** The input was longer than the maximum input length; the tokens of the prefix are mapped. */
+	INPUT_LIMIT,
+
+	/** The deadline passed; the tokens mapped before then are kept, and the rest are not. */
+	DEADLINE,
+
+	/** The tokenization was cancelled; the tokens mapped before then are kept. */
+	CANCELLED;
+
+	/**
+	 * Checks to see if the tokenization was aborted (ie: by the deadline or a cancellation), in
+	 * which case the tokens are those that were mapped before it (possibly none).
+	 *
+	 * @return true if the tokenization was aborted
+	 */
+	public boolean isAborted() {
+		return this == DEADLINE || this == CANCELLED;
+	}
+}
@@ -0,0 +1,175 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The token ids of many inputs that were tokenized together, see
+ * {@link TokenizerEngine#tokenizeBatch(java.util.List, boolean, boolean, TokenTable)}. The token
+ * ids (see {@link TokenTable#getTokenId(String)}) of all the inputs are held back to back in one
+ * <code>int</code> array, with the offset of where each input starts in it.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenizedBatch {
+
+	/** The token ids of all the inputs, back to back (only the first _tokenCount are used). */
+	private int[]				_tokenIds	= null;
+
+	/** The number of token ids in the token ids array. */
+	private int					_tokenCount	= 0;
+
+	/** The offset of the first token id of each input, followed by the token count. */
+	private int[]				_offsets	= null;
+
+	/** The exception thrown by each input; null if no input failed. */
+	private RuntimeException[]	_failures	= null;
+
+	/**
+	 * Instantiates a new empty {@link TokenizedBatch} for the specified number of inputs.
+	 *
+	 * @param inputCount the number of inputs in the batch
+	 * @param tokenCapacity the initial capacity of the token ids
+	 */
+	TokenizedBatch( int inputCount, int tokenCapacity ) {
+		_tokenIds = new int[Math.max( tokenCapacity, 16 )];
+		_offsets = new int[inputCount + 1];
+	}
+
+	/**
+	 * Adds the token id of the next token of the current input.
+	 *
+	 * @param tokenId the token id to add
+	 */
+	void add( int tokenId ) {
+
+		if( _tokenCount == _tokenIds.length ) {
+			_tokenIds = Arrays.copyOf( _tokenIds, _tokenIds.length * 2 );
+		}
+
+		_tokenIds[_tokenCount++] = tokenId;
+	}
+
+	/**
+	 * Ends the input, so the token ids that are added next belong to the input that follows it.
+	 *
+	 * @param input the index of the input that is ended
+	 */
+	void end( int input ) {
+		_offsets[input + 1] = _tokenCount;
+	}
+
+	/**
+	 * Ends the input as failed, dropping any of its token ids that were already added.
+	 *
+	 * @param input the index of the input that failed
+	 * @param failure the exception that was thrown by the input
+	 */
+	void fail( int input, RuntimeException failure ) {
+
+		if( _failures == null ) {
+			_failures = new RuntimeException[_offsets.length - 1];
+		}
+
+		_failures[input] = failure;
+		_tokenCount = _offsets[input];
+		end( input );
+	}
+
+	/**
+	 * Gets the number of inputs in the batch.
+	 *
+	 * @return the number of inputs
+	 */
+	public int getInputCount() {
+		return _offsets.length - 1;
+	}
+
+	/**
+	 * Gets the number of token ids of all the inputs together.
+	 *
+	 * @return the number of token ids
+	 */
+	public int getTokenCount() {
+		return _tokenCount;
+	}
+
+	/**
+	 * Gets the shared array of the token ids of all the inputs. Only the first
+	 * {@link TokenizedBatch#getTokenCount()} ids are used, and the array is not copied, so it must
+	 * not be modified.
+	 *
+	 * @return the token ids of all the inputs
+	 */
+	public int[] getTokenIds() {
+		return _tokenIds;
+	}
+
+	/**
+	 * Gets the offset of the first token id of the input within the token ids.
+	 *
+	 * @param input the index of the input
+	 * @return the offset of the first token id of the input
+	 */
+	public int getStart( int input ) {
+		return _offsets[input];
+	}
+
+	/**
+	 * Gets the offset just past the last token id of the input within the token ids.
+	 *
+	 * @param input the index of the input
+	 * @return the offset just past the last token id of the input
+	 */
+	public int getEnd( int input ) {
+		return _offsets[input + 1];
+	}
+
+	/**
+	 * Gets a copy of the token ids of the input.
+	 *
+	 * @param input the index of the input
+	 * @return the token ids of the input
+	 */
+	public int[] getTokenIds( int input ) {
+		return Arrays.copyOfRange( _tokenIds, _offsets[input], _offsets[input + 1] );
+	}
+
+	/**
+	 * Gets the token keys of the input (see {@link TokenTable#getTokenKey(int)}), as they would
+	 * have been returned when tokenizing the input on its own.
+	 *
+	 * @param input the index of the input
+	 * @param tokenTable the {@link TokenTable} that the batch was mapped with
+	 * @return an {@link ArrayList} of {@link String} identifiers of the input
+	 */
+	public ArrayList<String> getTokenKeys( int input, TokenTable tokenTable ) {
+
+		ArrayList<String> tokenKeys = new ArrayList<String>( getEnd( input ) - getStart( input ) );
+		for( int i = getStart( input ); i < getEnd( input ); i++ ) {
+			tokenKeys.add( tokenTable.getTokenKey( _tokenIds[i] ) );
+		}
+
+		return tokenKeys;
+	}
+
+	/**
+	 * Checks to see if the input failed to be tokenized, in which case it has no token ids.
+	 *
+	 * @param input the index of the input
+	 * @return true if the input failed
+	 */
+	public boolean isFailed( int input ) {
+		return _failures != null && _failures[input] != null;
+	}
+
+	/**
+	 * Gets the exception that was thrown when tokenizing the input on its own.
+	 *
+	 * @param input the index of the input
+	 * @return the exception thrown by the input; null if it didn't fail
+	 */
+	public RuntimeException getFailure( int input ) {
+		return _failures == null ? null : _failures[input];
+	}
+}
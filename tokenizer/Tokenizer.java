@@ -1,8 +1,8 @@
 package ca.tokenizing_parser.tokenizer;
 
-import java.text.CharacterIterator;
-import java.text.StringCharacterIterator;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
 
 import ca.tokenizing_parser.tokenizer.languages.LanguageKeywords;
 
@@ -15,25 +15,22 @@ import ca.tokenizing_parser.tokenizer.languages.LanguageKeywords;
  * <p>
  * The second type of output makes use of the {@link TokenTable} class which handles the mapping of
  * tokens to unique identifiers.
+ * <p>
+ * A {@link Tokenizer} is meant to be used by a single thread. The tokenization itself is performed
+ * by a {@link TokenizerEngine}, which can be shared between threads.
  * 
  * @author Kevin Jalbert
  */
 public class Tokenizer {
 
-	/** The {@link StringCharacterIterator} used to navigate the input string */
-	private StringCharacterIterator	_iter			= null;
-
-	/** The tokenized input of the passed input. */
-	private ArrayList<String>		_tokenizedInput	= null;
-
-	/** The token buffer of the next token to be added. */
-	private String					_tokenBuffer	= "";
+	/** The {@link TokenizerEngine} that performs the tokenization for this {@link Tokenizer}. */
+	private TokenizerEngine		_engine		= null;
 
 	/** The {@link LanguageKeywords} being used for this {@link Tokenizer}. */
-	private LanguageKeywords		_language		= null;
+	private LanguageKeywords	_language	= null;
 
 	/** The {@link TokenTable} that holds the mapping of the tokens to identifiers. */
-	private TokenTable				_tokenTable		= null;
+	private TokenTable			_tokenTable	= null;
 
 	/**
 	 * Instantiates a new {@link Tokenizer} with the specified {@link LanguageKeywords}.
@@ -41,19 +38,33 @@ public class Tokenizer {
 	 * @param language the {@link LanguageKeywords} language to be used for this {@link Tokenizer}
 	 */
 	public Tokenizer( LanguageKeywords language ) {
+		this( language, new TokenTable( language ) );
+	}
+
+	/**
+	 * Instantiates a new {@link Tokenizer} with the specified {@link LanguageKeywords}, which maps
+	 * tokens using the specified {@link TokenTable} (ie: one that stores its literals and comments
+	 * off the heap).
+	 * 
+	 * @param language the {@link LanguageKeywords} language to be used for this {@link Tokenizer}
+	 * @param tokenTable the {@link TokenTable} to be used for this {@link Tokenizer}
+	 */
+	public Tokenizer( LanguageKeywords language, TokenTable tokenTable ) {
 		_language = language;
-		_iter = new StringCharacterIterator( "" );
-		_tokenizedInput = new ArrayList<String>();
-		_tokenTable = new TokenTable();
+		_engine = language == null ? null : new TokenizerEngine( language );
+		_tokenTable = tokenTable;
 	}
 
 	/**
-	 * Sets the {@link LanguageKeywords} to be used for this {@link Tokenizer}.
+	 * Sets the {@link LanguageKeywords} to be used for this {@link Tokenizer}. The keywords and
+	 * delimiters of the {@link TokenTable} are reassigned to the fixed ids of the new language.
 	 * 
 	 * @param language the new {@link LanguageKeywords} to be used
 	 */
 	public void setLanguage( LanguageKeywords language ) {
 		_language = language;
+		_engine = language == null ? null : new TokenizerEngine( language );
+		_tokenTable.setLanguage( language );
 	}
 
 	/**
@@ -65,6 +76,16 @@ public class Tokenizer {
 		return _language;
 	}
 
+	/**
+	 * Gets the {@link TokenizerEngine} that this {@link Tokenizer} is using. The engine can be
+	 * shared with other threads, unlike the {@link Tokenizer}.
+	 * 
+	 * @return the {@link TokenizerEngine} currently in use; null if no language is set
+	 */
+	public TokenizerEngine getEngine() {
+		return _engine;
+	}
+
 	/**
 	 * Clears the {@link TokenTable} being used by this {@link Tokenizer}.
 	 */
@@ -91,25 +112,32 @@ public class Tokenizer {
 	 * @return an {@link ArrayList} of {@link String} tokens (excluding spacing), from the input
 	 */
 	public ArrayList<String> tokenizeInput( String input ) {
+		return _engine.tokenizeInput( input );
+	}
 
-		// First remove comments and literals
-		input = _tokenTable.replaceRemoveLiteralsAndComments( input, false, false );
-
-		// Prepare to tokenize a new input
-		_iter.setText( input );
-		_tokenBuffer = "";
-
-		// Perform the tokenization of the input
-		boolean firstToken = true;
-		addNextTokens( firstToken ); // First token is a special case
-		firstToken = false;
-
-		// Iterate till tokenization is done
-		while( _iter.current() != CharacterIterator.DONE ) {
-			addNextTokens( firstToken );
-		}
+	/**
+	 * Tokenize the UTF-8 input to produce an {@link ArrayList} of the actual tokens, see
+	 * {@link #tokenizeInput(String)}. The bytes are not decoded into a {@link String} first.
+	 * 
+	 * @param input the UTF-8 bytes to be tokenized
+	 * @return an {@link ArrayList} of {@link String} tokens (excluding spacing), from the input
+	 * @throws IllegalArgumentException if the input is not well-formed UTF-8
+	 */
+	public ArrayList<String> tokenizeInput( byte[] input ) {
+		return _engine.tokenizeInput( ByteBuffer.wrap( input ) );
+	}
 
-		return _tokenizedInput;
+	/**
+	 * Tokenize the UTF-8 input to produce an {@link ArrayList} of the actual tokens, see
+	 * {@link #tokenizeInput(String)}. The bytes are not decoded into a {@link String} first.
+	 * 
+	 * @param input the {@link ByteBuffer} (heap or direct) of UTF-8 bytes to be tokenized, from
+	 *            its position to its limit (which are not changed)
+	 * @return an {@link ArrayList} of {@link String} tokens (excluding spacing), from the input
+	 * @throws IllegalArgumentException if the input is not well-formed UTF-8
+	 */
+	public ArrayList<String> tokenizeInput( ByteBuffer input ) {
+		return _engine.tokenizeInput( input );
 	}
 
 	/**
@@ -147,131 +175,143 @@ public class Tokenizer {
 			return null;
 		}
 
-		// Replace/remove the literals and comments
-		input = _tokenTable.replaceRemoveLiteralsAndComments( input, keepLiterals, keepComments );
-
-		// Prepare to tokenize a new input
-		_iter.setText( input );
-		_tokenBuffer = "";
-		_tokenizedInput.clear();
-
-		// Perform the tokenization of the input
-		boolean isFirstToken = true;
-		addNextTokens( isFirstToken ); // First token is a special case
-		isFirstToken = false;
-
-		// Iterate till tokenization is done
-		while( _iter.current() != CharacterIterator.DONE ) {
-			addNextTokens( isFirstToken );
-		}
-
-		// Replace the primitives 
-		_tokenizedInput = _tokenTable.replacePrimitives( _tokenizedInput );
-
-		// Replace the objects
-		_tokenizedInput = _tokenTable.replaceObjects( _tokenizedInput, _language );
-
-		// Replace the keywords
-		_tokenizedInput = _tokenTable.replaceKeywords( _tokenizedInput, _language );
+		return _engine.tokenizeInputWithMapping( input, keepLiterals, keepComments, _tokenTable );
+	}
 
-		// Replace the delimiters
-		_tokenizedInput = _tokenTable.replaceDelimiters( _tokenizedInput, _language );
+	/**
+	 * Tokenize the input to produce an {@link ArrayList} of identifiers that map to corresponding
+	 * tokens, see {@link #tokenizeInputWithMapping(String, boolean, boolean)}, while also producing
+	 * the per-document local identifiers of the {@link LocalNumbering} (ie: for type-2 clone
+	 * normalization) without clearing the {@link TokenTable}.
+	 * 
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param localNumbering the {@link LocalNumbering} to number the identifiers of the input with
+	 * @param localOutput the {@link ArrayList} that the local identifiers are added to
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input. If no {@link LanguageKeywords} is set a
+	 *         <code>null</code> is returned.
+	 * @see TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable,
+	 *      LocalNumbering, ArrayList)
+	 */
+	public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, LocalNumbering localNumbering, ArrayList<String> localOutput ) {
 
-		// Deep clone the token output
-		ArrayList<String> tokenOutput = new ArrayList<String>();
-		for( String token : _tokenizedInput ) {
-			tokenOutput.add( token.toString() );
+		// Make sure there is a language set if not return null.
+		if( _language == null ) {
+			return null;
 		}
 
-		return tokenOutput;
+		return _engine.tokenizeInputWithMapping( input, keepLiterals, keepComments, _tokenTable,
+				localNumbering, localOutput );
 	}
 
 	/**
-	 * Finds and adds the next token to the internal tokenized input {@link ArrayList}, using the
-	 * {@link LanguageKeywords} of this {@link Tokenizer}. The process of finding tokens involves
-	 * using the delimiters of the {@link LanguageKeywords} as well as a
-	 * {@link StringCharacterIterator}.
+	 * Tokenize the input to produce an {@link ArrayList} of identifiers that map to corresponding
+	 * tokens, see {@link #tokenizeInputWithMapping(String, boolean, boolean)}, within the
+	 * specified {@link TokenizationLimits}. If a limit is hit the tokenization stops early, and the
+	 * {@link TokenizationResult} says why.
 	 * 
-	 * @param isFirstToken if this is the first token to be found
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param limits the {@link TokenizationLimits} of the tokenization
+	 * @return the {@link TokenizationResult} holding the identifiers and the
+	 *         {@link TokenizationStatus}. If no {@link LanguageKeywords} is set a
+	 *         <code>null</code> is returned.
+	 * @see TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable,
+	 *      TokenizationLimits)
 	 */
-	private void addNextTokens( boolean isFirstToken ) {
+	public TokenizationResult tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, TokenizationLimits limits ) {
 
-		// Special case of handling the first token's first character
-		String character = null;
-		if( isFirstToken ) {
-			character = String.valueOf( _iter.current() );
-		}
-		else {
-			character = String.valueOf( _iter.next() );
+		// Make sure there is a language set if not return null.
+		if( _language == null ) {
+			return null;
 		}
 
-		// Check to see if the the character is a delimiter
-		if( _language.isDelimiter( character ) ) {
-
-			// Add this character to the delimiter buffer 
-			String delimiterBuffer = character;
-
-			// Look farther ahead to see if a larger delimiter match can be found
-			for( int i = 0; i < _language.getLookAheadNumber(); i++ ) {
-				delimiterBuffer = delimiterBuffer.concat( String.valueOf( _iter.next() ) );
-			}
-
-			// Check to see if the farthest look ahead is a valid delimiter
-			if( _language.isDelimiter( delimiterBuffer ) ) {
-
-				// A delimiter was found, handle it and reset the buffer
-				handleDelimiter( delimiterBuffer );
-				delimiterBuffer = "";
-			}
-			else {
-
-				// Fall back one character and try to match again; for as many look ahead times
-				for( int i = 0; i < _language.getLookAheadNumber(); i++ ) {
+		return _engine.tokenizeInputWithMapping( input, keepLiterals, keepComments, _tokenTable,
+				limits );
+	}
 
-					// Try without the last look ahead
-					delimiterBuffer = delimiterBuffer.substring( 0, delimiterBuffer.length() - 1 );
-					_iter.previous();
+	/**
+	 * Tokenize the UTF-8 input to produce an {@link ArrayList} of identifiers that map to
+	 * corresponding tokens, see {@link #tokenizeInputWithMapping(String, boolean, boolean)}. The
+	 * bytes are not decoded into a {@link String} first.
+	 * 
+	 * @param input the UTF-8 bytes to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input. If no {@link LanguageKeywords} is set a
+	 *         <code>null</code> is returned.
+	 * @throws IllegalArgumentException if the input is not well-formed UTF-8
+	 */
+	public ArrayList<String> tokenizeInputWithMapping( byte[] input, boolean keepLiterals,
+			boolean keepComments ) {
+		return tokenizeInputWithMapping( ByteBuffer.wrap( input ), keepLiterals, keepComments );
+	}
 
-					// Check to see if the delimiter buffer matches now
-					if( _language.isDelimiter( delimiterBuffer ) ) {
+	/**
+	 * Tokenize the UTF-8 input to produce an {@link ArrayList} of identifiers that map to
+	 * corresponding tokens, see {@link #tokenizeInputWithMapping(String, boolean, boolean)}. The
+	 * bytes are not decoded into a {@link String} first.
+	 * 
+	 * @param input the {@link ByteBuffer} (heap or direct) of UTF-8 bytes to be tokenized, from
+	 *            its position to its limit (which are not changed)
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input. If no {@link LanguageKeywords} is set a
+	 *         <code>null</code> is returned.
+	 * @throws IllegalArgumentException if the input is not well-formed UTF-8
+	 */
+	public ArrayList<String> tokenizeInputWithMapping( ByteBuffer input, boolean keepLiterals,
+			boolean keepComments ) {
 
-						// A delimiter was found, handle it and reset the buffer then break
-						handleDelimiter( delimiterBuffer );
-						delimiterBuffer = "";
-						break;
-					}
-				}
-			}
-		}
-		else if( _iter.current() == CharacterIterator.DONE ) { // The input string is done
-			handleDelimiter( " " ); // Space delimiter to ensure the last token is caught
-		}
-		else { // No delimiter was found, so add this character to the token buffer
-			_tokenBuffer = _tokenBuffer.concat( character );
+		// Make sure there is a language set if not return null.
+		if( _language == null ) {
+			return null;
 		}
+
+		return _engine.tokenizeInputWithMapping( input, keepLiterals, keepComments, _tokenTable );
 	}
 
 	/**
-	 * Handle the found delimiter appropriately along with the token buffer. Will add a token if
-	 * there is something in the token buffer, as well as ignoring the delimiter buffer if the
-	 * delimiter is a space delimiter.
+	 * Tokenize a large input to produce an {@link ArrayList} of identifiers that map to
+	 * corresponding tokens, splitting the work into chunks that are run by the
+	 * {@link ExecutorService}. The output and the mapping are identical to that of
+	 * {@link #tokenizeInputWithMapping(String, boolean, boolean)}.
 	 * 
-	 * @param delimiterBuffer a string that matched a delimiter found in the
-	 *            {@link LanguageKeywords}
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param executor the {@link ExecutorService} that runs the tasks of each chunk
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input. If no {@link LanguageKeywords} is set a
+	 *         <code>null</code> is returned.
+	 * @see ParallelTokenizer
 	 */
-	private void handleDelimiter( String delimiterBuffer ) {
-
-		// If token buffer is not empty then add the token buffer as a token
-		if( !_tokenBuffer.isEmpty() ) {
-			_tokenizedInput.add( _tokenBuffer );
-		}
+	public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, ExecutorService executor ) {
 
-		// Add delimiter as a token only if it is not a space delimiter
-		if( !_language.isSpaceDelimiter( delimiterBuffer ) ) {
-			_tokenizedInput.add( delimiterBuffer );
+		// Make sure there is a language set if not return null.
+		if( _language == null ) {
+			return null;
 		}
 
-		// Reset the token buffer
-		_tokenBuffer = "";
+		return new ParallelTokenizer( _engine, executor ).tokenizeInputWithMapping( input,
+				keepLiterals, keepComments, _tokenTable );
 	}
 }
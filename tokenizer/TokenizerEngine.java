@@ -0,0 +1,1161 @@
+package ca.tokenizing_parser.tokenizer;
+
+import java.nio.ByteBuffer;
+import java.text.CharacterIterator;
+import java.text.StringCharacterIterator;
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.tokenizing_parser.tokenizer.languages.LanguageKeywords;
+
+/**
+ * The immutable core of the {@link Tokenizer}, which tokenizes input based on a
+ * {@link LanguageKeywords}. An engine holds no state about the input being tokenized, so a single
+ * engine can be shared by any number of threads.
+ * <p>
+ * The state of each tokenization is held in a {@link LexerContext} that is kept per thread, and is
+ * reset (not reallocated) between tokenizations. The mapping of tokens to identifiers is performed
+ * on a {@link TokenTable} that is passed in; the {@link TokenTable} is locked only while it is
+ * being added to (the replacement of the literals and comments, then the mapping of the rest), so
+ * a {@link TokenTable} can be shared as well and the lexing of inputs to the same
+ * {@link TokenTable} happens concurrently.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenizerEngine {
+
+	/** The token appended to a cut off input, which no mapping pass replaces or merges. */
+	private final static String				_END_SENTINEL	= "";
+
+	/** The number of tokens mapped at a time by a tokenization with limits. */
+	private final static int				_MAP_BLOCK		= 4096;
+
+	/** The first character of the private use area, which placeholders are taken from. */
+	private final static char				_PLACEHOLDER_FIRST	= '\uE000';
+
+	/** The last character of the private use area, which placeholders are taken from. */
+	private final static char				_PLACEHOLDER_LAST	= '\uF8FF';
+
+	/** The {@link LanguageKeywords} being used for this {@link TokenizerEngine}. */
+	private final LanguageKeywords			_language;
+
+	/** The {@link LexerContext} of each thread using this {@link TokenizerEngine}. */
+	private final ThreadLocal<LexerContext>	_contexts	= new ThreadLocal<LexerContext>();
+
+	/**
+	 * Instantiates a new {@link TokenizerEngine} with the specified {@link LanguageKeywords}.
+	 *
+	 * @param language the {@link LanguageKeywords} language to be used for this
+	 *            {@link TokenizerEngine}
+	 */
+	public TokenizerEngine( LanguageKeywords language ) {
+
+		if( language == null ) {
+			throw new IllegalArgumentException( "A language is required" );
+		}
+
+		_language = language;
+	}
+
+	/**
+	 * Gets the {@link LanguageKeywords} that this {@link TokenizerEngine} is using.
+	 *
+	 * @return the {@link LanguageKeywords} in use
+	 */
+	public LanguageKeywords getLanguage() {
+		return _language;
+	}
+
+	/**
+	 * Tokenize the input to produce an {@link ArrayList} of the actual tokens (excluding spacing
+	 * delimiters). Comments are removed and literals are also reduced to "" and '' for simplicity.
+	 * <p>
+	 * There is <b>no</b> mapping of tokens to identifiers in this method.
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @return an {@link ArrayList} of {@link String} tokens (excluding spacing), from the input
+	 */
+	public ArrayList<String> tokenizeInput( String input ) {
+
+		LexerContext context = getContext();
+
+		// First remove comments and literals (nothing is mapped, so the table is untouched)
+		input = context.getScratchTable().replaceRemoveLiteralsAndComments( input, false, false );
+
+		tokenize( context, input );
+
+		return new ArrayList<String>( context._tokenizedInput );
+	}
+
+	/**
+	 * Tokenize the UTF-8 input to produce an {@link ArrayList} of the actual tokens, see
+	 * {@link TokenizerEngine#tokenizeInput(String)}. The input is scanned as bytes without being
+	 * decoded into a {@link String} first.
+	 *
+	 * @param input the {@link ByteBuffer} of UTF-8 bytes to be tokenized (from its position to its
+	 *            limit, which are not changed)
+	 * @return an {@link ArrayList} of {@link String} tokens (excluding spacing), from the input
+	 * @throws IllegalArgumentException if the input is not well-formed UTF-8
+	 */
+	public ArrayList<String> tokenizeInput( ByteBuffer input ) {
+
+		LexerContext context = getContext();
+
+		// First remove comments and literals (nothing is mapped, so the table is untouched)
+		tokenize( context, context.getScratchTable().replaceRemoveLiteralsAndComments( input, false,
+				false ) );
+
+		return new ArrayList<String>( context._tokenizedInput );
+	}
+
+	/**
+	 * Tokenize the input to produce an {@link ArrayList} of identifiers that map to corresponding
+	 * tokens, using the specified {@link TokenTable}. The option of keeping comments and/or
+	 * literals for the mapping process can be specified as well. The {@link TokenTable} is locked
+	 * while the literals and comments are replaced and while the tokens are mapped, but not while
+	 * the input is lexed.
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input
+	 * @see Tokenizer#tokenizeInputWithMapping(String, boolean, boolean)
+	 */
+	public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable ) {
+		return tokenizeInputWithMapping( input, null, keepLiterals, keepComments, tokenTable,
+				null, null );
+	}
+
+	/**
+	 * Tokenize the input to produce an {@link ArrayList} of identifiers that map to corresponding
+	 * tokens (see {@link #tokenizeInputWithMapping(String, boolean, boolean, TokenTable)}), while
+	 * also producing the per-document local identifiers of the {@link LocalNumbering} in the same
+	 * pass. The {@link LocalNumbering} is reset for the input, and the global {@link TokenTable}
+	 * keeps its identifiers.
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @param localNumbering the {@link LocalNumbering} to number the identifiers of the input with
+	 * @param localOutput the {@link ArrayList} that the local identifiers are added to, in the
+	 *            same order as the returned identifiers
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input
+	 */
+	public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable, LocalNumbering localNumbering,
+			ArrayList<String> localOutput ) {
+
+		localNumbering.reset();
+		return tokenizeInputWithMapping( input, null, keepLiterals, keepComments, tokenTable,
+				localNumbering, localOutput );
+	}
+
+	/**
+	 * Tokenize the input to produce an {@link ArrayList} of identifiers that map to corresponding
+	 * tokens (see {@link #tokenizeInputWithMapping(String, boolean, boolean, TokenTable)}), within
+	 * the specified {@link TokenizationLimits}. The limits are checked inside the scanning, lexing
+	 * and mapping loops.
+	 * <p>
+	 * The tokens are mapped a block at a time, so that whatever stops the tokenization leaves the
+	 * tokens of the blocks before it mapped. If the input is too long, or too many tokens are
+	 * lexed, the part of the input before the limit is mapped (less a token that the limit cut in
+	 * two). If the deadline passes or the tokenization is cancelled (including while waiting for
+	 * the {@link TokenTable}), the blocks mapped before then are kept and the block being mapped is
+	 * rolled back. Either way, the {@link TokenTable} only keeps the values (and frequency counts)
+	 * of the tokens that are returned (an exception only rolls back the block being mapped).
+	 * <p>
+	 * The literals and comments are scanned, and the input lexed, without the lock of the
+	 * {@link TokenTable}: each literal and comment is lexed as a placeholder character, which is
+	 * replaced by its identifier when the lock is taken to map the block it is in. If the
+	 * identifiers are renumbered or discarded in between (see {@link TokenTable#getGeneration()}),
+	 * the blocks mapped before are mapped again from the start (and counted again if the frequency
+	 * counts were kept). The lock is held throughout if a delimiter of the language could split an
+	 * identifier, or if no placeholder character is free.
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @param limits the {@link TokenizationLimits} of the tokenization
+	 * @return the {@link TokenizationResult} holding the identifiers and the
+	 *         {@link TokenizationStatus}
+	 */
+	public TokenizationResult tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable, TokenizationLimits limits ) {
+
+		LimitTracker tracker = new LimitTracker( limits );
+		ArrayList<String> tokenOutput = new ArrayList<String>();
+
+		// Only tokenize as much of the input as is allowed
+		int length = input.length();
+		if( limits.getMaxInputLength() > 0 && length > limits.getMaxInputLength() ) {
+			length = limits.getMaxInputLength();
+			tracker.stop( TokenizationStatus.INPUT_LIMIT );
+		}
+
+		// A cut between two characters that aren't delimiters falls inside a token
+		boolean splitToken = length < input.length()
+				&& !_language.isDelimiter( String.valueOf( input.charAt( length - 1 ) ) )
+				&& !_language.isDelimiter( String.valueOf( input.charAt( length ) ) );
+
+		if( !tracker.lock( tokenTable.getLock() ) ) {
+			return new TokenizationResult( tokenOutput, tracker.getStatus() );
+		}
+
+		int generation = 0;
+		char placeholder = 0;
+		boolean sketchLiterals = false;
+		boolean sketchComments = false;
+		try {
+			generation = tokenTable.getGeneration();
+			sketchLiterals = tokenTable.isSketchOnly( TokenTable._LITERAL_CATEGORY );
+			sketchComments = tokenTable.isSketchOnly( TokenTable._COMMENT_CATEGORY );
+			if( hasOpaqueKeys( tokenTable ) ) {
+				placeholder = findPlaceholder( input, length );
+			}
+
+			// The identifiers must be known before lexing if a delimiter could split them
+			if( placeholder == 0 ) {
+				return tokenizeLocked( input, length, splitToken, keepLiterals, keepComments,
+						tokenTable, tracker );
+			}
+		}
+		finally {
+			tokenTable.getLock().unlock();
+		}
+
+		LexerContext context = getContext();
+		ArrayList<String> tokens = context._tokenizedInput;
+		context._pendingCategories.clear();
+		context._pendingValues.clear();
+
+		// Replace/remove the literals and comments without the table, leaving placeholders
+		LiteralCommentReplacer replacer = new LiteralCommentReplacer( placeholder,
+				context._pendingCategories, context._pendingValues, keepLiterals, keepComments,
+				length );
+		replacer.setSketchRemoved( sketchLiterals, sketchComments );
+		LiteralCommentScanner scanner = new LiteralCommentScanner();
+		scanner.setLimits( tracker );
+		scanner.scan( input, 0, length, LiteralCommentScanner._CODE, replacer );
+		String replaced = replacer.getOutput();
+
+		int mapped = 0;
+		int resolved = 0;
+		boolean done = tracker.isAborted();
+
+		if( !done ) {
+			context.reset( replaced );
+			addNextTokens( context, true ); // First token is a special case
+		}
+
+		while( !done ) {
+
+			// Lex the next block without the lock
+			lex( context, tracker, mapped + _MAP_BLOCK );
+			if( tracker.isAborted() ) {
+				break;
+			}
+
+			// Only the last block can end on a token that expects a following token
+			done = context._iter.current() == CharacterIterator.DONE
+					|| tracker.getStatus() == TokenizationStatus.TOKEN_LIMIT;
+			boolean truncated = done && tracker.getStatus() != TokenizationStatus.COMPLETE;
+
+			// Leave out the fragment of a token that the end of the input cut in two
+			if( splitToken && context._iter.current() == CharacterIterator.DONE
+					&& tracker.getStatus() == TokenizationStatus.INPUT_LIMIT
+					&& tokens.size() > mapped && !replaced.isEmpty() && !_language
+							.isDelimiter( replaced.substring( replaced.length() - 1 ) ) ) {
+				tokens.remove( tokens.size() - 1 );
+			}
+
+			if( !tracker.lock( tokenTable.getLock() ) ) {
+				break;
+			}
+
+			try {
+
+				// The blocks mapped before are mapped again if their identifiers were renumbered
+				int from = mapped;
+				int placeholders = resolved;
+				if( tokenTable.getGeneration() != generation ) {
+					if( !hasOpaqueKeys( tokenTable ) ) {
+						tracker.restart();
+						if( length < input.length() ) {
+							tracker.stop( TokenizationStatus.INPUT_LIMIT );
+						}
+						return tokenizeLocked( input, length, splitToken, keepLiterals,
+								keepComments, tokenTable, tracker );
+					}
+
+					generation = tokenTable.getGeneration();
+					tokenOutput.clear();
+					from = 0;
+					placeholders = 0;
+				}
+
+				int[] snapshot = tokenTable.snapshot();
+				try {
+
+					if( from == 0 ) {
+						tokenTable.startDocument();
+					}
+
+					// Give the literals and comments of the block their identifiers, then map it
+					ArrayList<String> block = new ArrayList<String>( tokens.size() - from + 1 );
+					placeholders = resolvePlaceholders( tokens.subList( from, tokens.size() ),
+							placeholder, context, placeholders, tokenTable, block, null );
+					if( done ) {
+						placeholders = sketchRemoved( context, placeholders, tokenTable );
+					}
+					if( truncated ) {
+						block.add( _END_SENTINEL );
+					}
+
+					block = mapTokens( block, tokenTable, tracker );
+					if( tracker.isAborted() ) {
+						tokenTable.rollback( snapshot );
+						break;
+					}
+					tokenTable.commit();
+
+					if( truncated ) {
+						block.remove( block.size() - 1 );
+					}
+					tokenOutput.addAll( block );
+					mapped = tokens.size();
+					resolved = placeholders;
+				}
+				catch( RuntimeException e ) {
+					tokenTable.rollback( snapshot );
+					throw e;
+				}
+			}
+			finally {
+				tokenTable.getLock().unlock();
+			}
+		}
+
+		return new TokenizationResult( tokenOutput, tracker.getStatus() );
+	}
+
+	/**
+	 * Tokenizes the input within the limits while holding the lock of the {@link TokenTable}
+	 * throughout, for when the literals and comments must be given their identifiers before the
+	 * input is lexed (see {@link #hasOpaqueKeys(TokenTable)}).
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @param length the length of the input that is tokenized
+	 * @param splitToken if true the length cuts a token of the input in two
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @param tracker the {@link LimitTracker} of the tokenization
+	 * @return the {@link TokenizationResult} holding the identifiers and the
+	 *         {@link TokenizationStatus}
+	 */
+	private TokenizationResult tokenizeLocked( String input, int length, boolean splitToken,
+			boolean keepLiterals, boolean keepComments, TokenTable tokenTable,
+			LimitTracker tracker ) {
+
+		ArrayList<String> tokenOutput = new ArrayList<String>();
+
+		if( !tracker.lock( tokenTable.getLock() ) ) {
+			return new TokenizationResult( tokenOutput, tracker.getStatus() );
+		}
+
+		try {
+
+			int[] snapshot = tokenTable.snapshot();
+			try {
+
+				tokenTable.startDocument();
+
+				LexerContext context = getContext();
+				ArrayList<String> tokens = context._tokenizedInput;
+				context._literalKeys.clear();
+				context._commentKeys.clear();
+				context._literalEnds.clear();
+				context._commentEnds.clear();
+
+				// Replace/remove the literals and comments, counting them with the block they're in
+				String replaced = tokenTable.replaceRemoveLiteralsAndComments( input, length,
+						keepLiterals, keepComments, tracker, context._literalKeys,
+						context._commentKeys, context._literalEnds, context._commentEnds );
+
+				int[] mark = snapshot;
+				int literals = 0;
+				int comments = 0;
+				int mappedLiterals = 0;
+				int mappedComments = 0;
+				int mapped = 0;
+				boolean done = tracker.isAborted();
+
+				if( !done ) {
+					context.reset( replaced );
+					addNextTokens( context, true ); // First token is a special case
+				}
+
+				while( !done ) {
+
+					int end = lex( context, tracker, mapped + _MAP_BLOCK );
+					if( tracker.isAborted() ) {
+						break;
+					}
+
+					// Only the last block can end on a token that expects a following token
+					done = context._iter.current() == CharacterIterator.DONE
+							|| tracker.getStatus() == TokenizationStatus.TOKEN_LIMIT;
+					boolean truncated = done && tracker.getStatus() != TokenizationStatus.COMPLETE;
+
+					// Leave out the fragment of a token that the end of the input cut in two
+					if( splitToken && context._iter.current() == CharacterIterator.DONE
+							&& tracker.getStatus() == TokenizationStatus.INPUT_LIMIT
+							&& tokens.size() > mapped && !replaced.isEmpty() && !_language
+									.isDelimiter( replaced.substring( replaced.length() - 1 ) ) ) {
+						end -= tokens.remove( tokens.size() - 1 ).length();
+					}
+
+					// Count the literals and comments of the block, then map its tokens
+					for( ; literals < context._literalKeys.size()
+							&& context._literalEnds.get( literals ) <= end; literals++ ) {
+						tokenTable.count( TokenTable._LITERAL_CATEGORY,
+								context._literalKeys.get( literals ) );
+					}
+					for( ; comments < context._commentKeys.size()
+							&& context._commentEnds.get( comments ) <= end; comments++ ) {
+						tokenTable.count( TokenTable._COMMENT_CATEGORY,
+								context._commentKeys.get( comments ) );
+					}
+
+					ArrayList<String> block = new ArrayList<String>( tokens.subList( mapped,
+							tokens.size() ) );
+					if( truncated ) {
+						block.add( _END_SENTINEL );
+					}
+
+					block = mapTokens( block, tokenTable, tracker );
+					if( tracker.isAborted() ) {
+						break;
+					}
+
+					if( truncated ) {
+						block.remove( block.size() - 1 );
+					}
+					tokenOutput.addAll( block );
+					mapped = tokens.size();
+					mark = tokenTable.mark();
+					mappedLiterals = literals;
+					mappedComments = comments;
+				}
+
+				// Keep the blocks that were mapped, and none of the literals and comments after them
+				if( mark != snapshot ) {
+					mark[TokenTable._LITERAL_CATEGORY] = getValueCount( tokenTable,
+							TokenTable._LITERAL_CATEGORY, context._literalKeys, mappedLiterals,
+							snapshot );
+					mark[TokenTable._COMMENT_CATEGORY] = getValueCount( tokenTable,
+							TokenTable._COMMENT_CATEGORY, context._commentKeys, mappedComments,
+							snapshot );
+				}
+				tokenTable.rollback( mark );
+				tokenTable.commit();
+
+				return new TokenizationResult( tokenOutput, tracker.getStatus() );
+			}
+			catch( RuntimeException e ) {
+				tokenTable.rollback( snapshot );
+				throw e;
+			}
+		}
+		finally {
+			tokenTable.getLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks whether the identifiers of the literals and comments of the {@link TokenTable} lex as
+	 * a single run of non-delimiters, as a placeholder character does: that is, whether no
+	 * delimiter of the language contains a character of their keys. Caller holds lock.
+	 *
+	 * @param tokenTable the {@link TokenTable} whose identifiers are checked
+	 * @return true if a placeholder can stand in for each identifier while lexing
+	 */
+	private boolean hasOpaqueKeys( TokenTable tokenTable ) {
+
+		String characters = tokenTable.getMap( TokenTable._LITERAL_CATEGORY ).getKeyPrefix()
+				+ tokenTable.getMap( TokenTable._COMMENT_CATEGORY ).getKeyPrefix() + "0123456789"
+				+ ( tokenTable.isContentKeys() ? "abcdef" : "" );
+
+		for( int i = 0; i < characters.length(); i++ ) {
+			if( isInDelimiter( characters.charAt( i ) ) ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Finds a character of the private use area that neither occurs in the input nor in any
+	 * delimiter of the language, to stand in for the literals and comments while lexing.
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @param length the length of the input that is tokenized
+	 * @return the placeholder character, or 0 if there is none
+	 */
+	private char findPlaceholder( String input, int length ) {
+
+		boolean[] used = new boolean[_PLACEHOLDER_LAST - _PLACEHOLDER_FIRST + 1];
+		for( int i = 0; i < length; i++ ) {
+			char character = input.charAt( i );
+			if( character >= _PLACEHOLDER_FIRST && character <= _PLACEHOLDER_LAST ) {
+				used[character - _PLACEHOLDER_FIRST] = true;
+			}
+		}
+
+		for( int i = 0; i < used.length; i++ ) {
+			char character = (char) ( _PLACEHOLDER_FIRST + i );
+			if( !used[i] && !isInDelimiter( character ) ) {
+				return character;
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Checks whether the character occurs in any delimiter of the language.
+	 *
+	 * @param character the character to look for
+	 * @return true if a delimiter contains the character
+	 */
+	private boolean isInDelimiter( char character ) {
+
+		for( int i = 0; i < _language.getDelimiterCount(); i++ ) {
+			if( _language.getDelimiter( i ).indexOf( character ) != -1 ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Adds the tokens to the block, replacing each placeholder in them with the identifier of its
+	 * literal or comment (added to the {@link TokenTable} and counted) in order. Caller holds
+	 * lock.
+	 *
+	 * @param tokens the {@link List} of tokens of the block
+	 * @param placeholder the character standing in for the literals and comments
+	 * @param context the {@link LexerContext} holding the values of the placeholders
+	 * @param resolved the number of recorded values resolved before the block
+	 * @param tokenTable the {@link TokenTable} to add the literals and comments to
+	 * @param block the {@link ArrayList} that the tokens are added to
+	 * @param blockIds the array that the token id of each added token is written to (see
+	 *            {@link TokenTable#getTokenId(String)}), or -1 if it isn't an identifier; null if
+	 *            the ids aren't kept
+	 * @return the number of recorded values resolved including the block
+	 */
+	private static int resolvePlaceholders( List<String> tokens, char placeholder,
+			LexerContext context, int resolved, TokenTable tokenTable, ArrayList<String> block,
+			int[] blockIds ) {
+
+		StringBuilder token = new StringBuilder();
+		for( String value : tokens ) {
+
+			if( value.indexOf( placeholder ) == -1 ) {
+				if( blockIds != null ) {
+					blockIds[block.size()] = -1;
+				}
+				block.add( value );
+				continue;
+			}
+
+			int tokenId = -1;
+			token.setLength( 0 );
+			for( int i = 0; i < value.length(); i++ ) {
+				char character = value.charAt( i );
+				if( character != placeholder ) {
+					token.append( character );
+					continue;
+				}
+
+				resolved = sketchRemoved( context, resolved, tokenTable );
+				int category = context._pendingCategories.get( resolved );
+				String literal = context._pendingValues.get( resolved++ );
+				String key = tokenTable.count( category, tokenTable.addValue( category, literal ),
+						literal );
+				token.append( key );
+
+				// A placeholder on its own is the identifier, whose id is known here
+				if( blockIds != null && value.length() == 1 ) {
+					tokenId = ( tokenTable.getMap( category ).getKeyId( key )
+							<< TokenTable._CATEGORY_BITS ) | category;
+				}
+			}
+			if( blockIds != null ) {
+				blockIds[block.size()] = tokenId;
+			}
+			block.add( token.toString() );
+		}
+
+		return resolved;
+	}
+
+	/**
+	 * Sketches the values of the removed literals and comments that were recorded before the next
+	 * placeholder (see {@link LiteralCommentReplacer#setSketchRemoved(boolean, boolean)}). Caller
+	 * holds lock.
+	 *
+	 * @param context the {@link LexerContext} holding the values of the placeholders
+	 * @param resolved the number of recorded values resolved so far
+	 * @param tokenTable the {@link TokenTable} whose sketches count the values
+	 * @return the number of recorded values resolved, up to the next placeholder
+	 */
+	private static int sketchRemoved( LexerContext context, int resolved, TokenTable tokenTable ) {
+
+		ArrayList<Integer> categories = context._pendingCategories;
+		while( resolved < categories.size()
+				&& ( categories.get( resolved ) & LiteralCommentReplacer._REMOVED ) != 0 ) {
+			tokenTable.sketch( categories.get( resolved ) & ~LiteralCommentReplacer._REMOVED,
+					context._pendingValues.get( resolved ) );
+			resolved++;
+		}
+
+		return resolved;
+	}
+
+	/**
+	 * Gets the number of ids of the category that a tokenization with limits keeps: those it was
+	 * given before the tokenization, and those of the values first added by the identifiers that
+	 * were mapped (values are added in order, so the values of the rest have higher ids).
+	 *
+	 * @param tokenTable the {@link TokenTable} of the tokenization
+	 * @param category the token category of the identifiers
+	 * @param keys the identifiers of the category, in the order they were added
+	 * @param mappedKeys the number of the identifiers that were mapped
+	 * @param snapshot the snapshot from before the tokenization
+	 * @return the number of ids to be kept
+	 */
+	private static int getValueCount( TokenTable tokenTable, int category,
+			ArrayList<String> keys, int mappedKeys, int[] snapshot ) {
+
+		AutoKeyHashMap<String> map = tokenTable.getMap( category );
+
+		int valueCount = snapshot[category];
+		for( int i = 0; i < mappedKeys; i++ ) {
+			valueCount = Math.max( valueCount, map.getKeyId( keys.get( i ) ) + 1 );
+		}
+
+		return valueCount;
+	}
+
+	/**
+	 * Tokenize the UTF-8 input to produce an {@link ArrayList} of identifiers that map to
+	 * corresponding tokens, see
+	 * {@link TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable)}. The
+	 * input is scanned as bytes without being decoded into a {@link String} first.
+	 *
+	 * @param input the {@link ByteBuffer} of UTF-8 bytes to be tokenized (from its position to its
+	 *            limit, which are not changed)
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input
+	 * @throws IllegalArgumentException if the input is not well-formed UTF-8
+	 */
+	public ArrayList<String> tokenizeInputWithMapping( ByteBuffer input, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable ) {
+		return tokenizeInputWithMapping( null, input, keepLiterals, keepComments, tokenTable, null,
+				null );
+	}
+
+	/**
+	 * Tokenize the {@link String} or UTF-8 input to produce an {@link ArrayList} of identifiers,
+	 * see {@link TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable)}.
+	 * <p>
+	 * The {@link TokenTable} is only locked while it is added to: once to replace the literals and
+	 * comments, whose identifiers are counted later, and once to map the lexed tokens (counting
+	 * the document). Should the identifiers be renumbered or discarded in between (see
+	 * {@link TokenTable#getGeneration()}), the replaced input is stale and the input is started
+	 * over.
+	 *
+	 * @param input the input {@link String} to be tokenized; null for the UTF-8 input
+	 * @param bytes the {@link ByteBuffer} of UTF-8 bytes to be tokenized; null for the
+	 *            {@link String} input
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @param localNumbering the {@link LocalNumbering} of the document; null for none
+	 * @param localOutput the {@link ArrayList} that the local identifiers are added to
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 *         (excluding spacing), from the input
+	 */
+	private ArrayList<String> tokenizeInputWithMapping( String input, ByteBuffer bytes,
+			boolean keepLiterals, boolean keepComments, TokenTable tokenTable,
+			LocalNumbering localNumbering, ArrayList<String> localOutput ) {
+
+		LexerContext context = getContext();
+
+		while( true ) {
+
+			int generation = 0;
+			String replaced = null;
+			context._literalKeys.clear();
+			context._commentKeys.clear();
+
+			// Replace/remove the literals and comments, deferring the counting of their identifiers
+			tokenTable.getLock().lock();
+			try {
+				generation = tokenTable.getGeneration();
+				if( bytes == null ) {
+					replaced = tokenTable.replaceRemoveLiteralsAndComments( input, keepLiterals,
+							keepComments, null, context._literalKeys, context._commentKeys );
+				}
+				else {
+					replaced = tokenTable.replaceRemoveLiteralsAndComments( bytes, keepLiterals,
+							keepComments, context._literalKeys, context._commentKeys );
+				}
+			}
+			finally {
+				tokenTable.getLock().unlock();
+			}
+
+			// The lexing doesn't touch the table, so other inputs can be mapped meanwhile
+			tokenize( context, replaced );
+
+			tokenTable.getLock().lock();
+			try {
+
+				// Start over if the identifiers of the replaced input are no longer valid
+				if( tokenTable.getGeneration() != generation ) {
+					continue;
+				}
+
+				tokenTable.startDocument();
+				tokenTable.count( TokenTable._LITERAL_CATEGORY, context._literalKeys );
+				tokenTable.count( TokenTable._COMMENT_CATEGORY, context._commentKeys );
+
+				return mapTokens( context._tokenizedInput, tokenTable, null, localNumbering,
+						localOutput );
+			}
+			finally {
+				tokenTable.getLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Tokenize many inputs at once into the token ids (see {@link TokenTable#getTokenId(String)})
+	 * of a {@link TokenizedBatch}, which gives the same ids as tokenizing each input in turn with
+	 * {@link TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable)} and
+	 * then passing the result to {@link TokenTable#getTokenIds(ArrayList)}. The token ids are
+	 * written as the replacement passes give the tokens their identifiers (only the tokens left
+	 * unmapped are looked up), and the lists used while mapping are reused between the inputs, so
+	 * tokenizing many small inputs costs about the same as one large input.
+	 * <p>
+	 * Each input is scanned and lexed without the lock of the {@link TokenTable}, with a
+	 * placeholder character standing in for each literal and comment (as it is when tokenizing
+	 * within {@link TokenizationLimits}), and the lock is only taken to map that input. The input
+	 * is scanned again under the lock if a delimiter of the language could split an identifier (or
+	 * no placeholder character is free), or if the literals or comments stopped or started being
+	 * sketch-only in the meantime.
+	 * <p>
+	 * An input that throws an exception has no token ids, and the exception is kept in the
+	 * {@link TokenizedBatch} instead of being thrown (the {@link TokenTable} is left as it would be
+	 * after the failed call).
+	 *
+	 * @param inputs the {@link List} of input {@link String}s to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param keepComments if true then the comments will be mapped as well, otherwise they are
+	 *            omitted
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @return the {@link TokenizedBatch} of the token ids of each input
+	 */
+	public TokenizedBatch tokenizeBatch( List<String> inputs, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable ) {
+
+		LexerContext context = getContext();
+
+		// Guess at about one token per eight characters to presize the token ids
+		long characters = 0;
+		for( String input : inputs ) {
+			characters += input.length();
+		}
+		TokenizedBatch batch = new TokenizedBatch( inputs.size(),
+				(int) Math.min( characters / 8, 1 << 24 ) );
+
+		// What the scanning without the lock depends on, as of the last time the lock was held
+		int generation = 0;
+		boolean opaqueKeys = false;
+		boolean sketchLiterals = false;
+		boolean sketchComments = false;
+		tokenTable.getLock().lock();
+		try {
+			generation = tokenTable.getGeneration();
+			opaqueKeys = hasOpaqueKeys( tokenTable );
+			sketchLiterals = tokenTable.isSketchOnly( TokenTable._LITERAL_CATEGORY );
+			sketchComments = tokenTable.isSketchOnly( TokenTable._COMMENT_CATEGORY );
+		}
+		finally {
+			tokenTable.getLock().unlock();
+		}
+
+		for( int i = 0; i < inputs.size(); i++ ) {
+			try {
+
+				String input = inputs.get( i );
+				char placeholder = opaqueKeys ? findPlaceholder( input, input.length() ) : 0;
+
+				// Replace/remove the literals and comments with placeholders, and lex the input
+				if( placeholder != 0 ) {
+					context._pendingCategories.clear();
+					context._pendingValues.clear();
+					LiteralCommentReplacer replacer = new LiteralCommentReplacer( placeholder,
+							context._pendingCategories, context._pendingValues, keepLiterals,
+							keepComments, input.length() );
+					replacer.setSketchRemoved( sketchLiterals, sketchComments );
+					new LiteralCommentScanner().scan( input, 0, input.length(),
+							LiteralCommentScanner._CODE, replacer );
+					tokenize( context, replacer.getOutput() );
+				}
+
+				tokenTable.getLock().lock();
+				try {
+
+					// The placeholders are of no use if the table no longer scans the same way
+					if( tokenTable.getGeneration() != generation ) {
+						generation = tokenTable.getGeneration();
+						opaqueKeys = hasOpaqueKeys( tokenTable );
+					}
+					boolean literals = tokenTable.isSketchOnly( TokenTable._LITERAL_CATEGORY );
+					boolean comments = tokenTable.isSketchOnly( TokenTable._COMMENT_CATEGORY );
+					if( !opaqueKeys || literals != sketchLiterals || comments != sketchComments ) {
+						sketchLiterals = literals;
+						sketchComments = comments;
+						placeholder = 0;
+					}
+
+					tokenTable.startDocument();
+					ArrayList<String> tokens = context._tokenizedInput;
+					int[] tokenIds = null;
+					if( placeholder == 0 ) {
+						tokenize( context, tokenTable.replaceRemoveLiteralsAndComments( input,
+								keepLiterals, keepComments ) );
+						context.ensureIdCapacity();
+					}
+					else { // Give the literals and comments their identifiers (and token ids)
+						context.ensureIdCapacity();
+						tokens = context._mappedInput;
+						tokenIds = context._mappedIds;
+						tokens.clear();
+						sketchRemoved( context, resolvePlaceholders( context._tokenizedInput,
+								placeholder, context, 0, tokenTable, tokens, tokenIds ),
+								tokenTable );
+					}
+
+					// Map the tokens, passing them and their ids back and forth between the lists
+					tokenTable.replacePrimitives( tokens, null, context._scratchInput, tokenIds,
+							context._scratchIds );
+					tokenTable.replaceObjects( context._scratchInput, _language, null,
+							context._mappedInput, context._scratchIds, context._mappedIds );
+					tokenTable.replaceKeywords( context._mappedInput, _language, null,
+							context._scratchInput, context._mappedIds, context._scratchIds );
+					tokenTable.replaceDelimiters( context._scratchInput, _language, null,
+							context._mappedInput, context._scratchIds, context._mappedIds );
+
+					// Only the tokens that aren't identifiers are looked up (as unmapped tokens)
+					for( int token = 0; token < context._mappedInput.size(); token++ ) {
+						int tokenId = context._mappedIds[token];
+						batch.add( tokenId != -1 ? tokenId
+								: tokenTable.getTokenId( context._mappedInput.get( token ) ) );
+					}
+				}
+				finally {
+					tokenTable.getLock().unlock();
+				}
+				batch.end( i );
+			}
+			catch( RuntimeException e ) {
+				batch.fail( i, e );
+			}
+		}
+
+		return batch;
+	}
+
+	/**
+	 * Maps the tokenized input (which has had its literals and comments replaced already) to
+	 * identifiers using the {@link TokenTable}. The caller must hold the {@link TokenTable}'s lock.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens to be mapped
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 */
+	ArrayList<String> mapTokens( ArrayList<String> tokenizedInput, TokenTable tokenTable ) {
+		return mapTokens( tokenizedInput, tokenTable, null );
+	}
+
+	/**
+	 * Maps the tokenized input to identifiers using the {@link TokenTable}, see
+	 * {@link TokenizerEngine#mapTokens(ArrayList, TokenTable)}, stopping early if the
+	 * {@link LimitTracker} aborts (in which case the output is incomplete).
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens to be mapped
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 */
+	ArrayList<String> mapTokens( ArrayList<String> tokenizedInput, TokenTable tokenTable,
+			LimitTracker limits ) {
+		return mapTokens( tokenizedInput, tokenTable, limits, null, null );
+	}
+
+	/**
+	 * Maps the tokenized input to identifiers using the {@link TokenTable}, see
+	 * {@link TokenizerEngine#mapTokens(ArrayList, TokenTable, LimitTracker)}, while also filling the
+	 * local identifiers of the {@link LocalNumbering} in the same pass over the output.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} tokens to be mapped
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @param limits the {@link LimitTracker} to check; null for no limits
+	 * @param localNumbering the {@link LocalNumbering} of the document; null for none
+	 * @param localOutput the {@link ArrayList} that the local identifiers are added to
+	 * @return an {@link ArrayList} of {@link String} identifiers that correspond to tokens
+	 */
+	ArrayList<String> mapTokens( ArrayList<String> tokenizedInput, TokenTable tokenTable,
+			LimitTracker limits, LocalNumbering localNumbering, ArrayList<String> localOutput ) {
+
+		// Replace the primitives
+		tokenizedInput = tokenTable.replacePrimitives( tokenizedInput, limits );
+
+		// Replace the objects
+		tokenizedInput = tokenTable.replaceObjects( tokenizedInput, _language, limits );
+
+		// Replace the keywords
+		tokenizedInput = tokenTable.replaceKeywords( tokenizedInput, _language, limits );
+
+		// Replace the delimiters
+		tokenizedInput = tokenTable.replaceDelimiters( tokenizedInput, _language, limits );
+
+		// Each replacement built a new list, so the output is returned without another copy
+		if( localNumbering != null ) {
+			localOutput.ensureCapacity( localOutput.size() + tokenizedInput.size() );
+			for( String token : tokenizedInput ) {
+				localOutput.add( localNumbering.getLocalKey( token, tokenTable ) );
+			}
+		}
+
+		return tokenizedInput;
+	}
+
+	/**
+	 * Gets the {@link LexerContext} of the current thread, creating it the first time the thread
+	 * uses this {@link TokenizerEngine}.
+	 *
+	 * @return the {@link LexerContext} of the current thread
+	 */
+	LexerContext getContext() {
+
+		LexerContext context = _contexts.get();
+		if( context == null ) {
+			context = new LexerContext();
+			_contexts.set( context );
+		}
+
+		return context;
+	}
+
+	/**
+	 * Tokenizes the input (which has had its literals and comments replaced) into the
+	 * {@link LexerContext}'s tokenized input.
+	 *
+	 * @param context the {@link LexerContext} of this tokenization
+	 * @param input the input {@link String} to be tokenized
+	 */
+	void tokenize( LexerContext context, String input ) {
+
+		// Prepare to tokenize a new input
+		context.reset( input );
+
+		// Perform the tokenization of the input
+		boolean isFirstToken = true;
+		addNextTokens( context, isFirstToken ); // First token is a special case
+		isFirstToken = false;
+
+		// Iterate till tokenization is done
+		while( context._iter.current() != CharacterIterator.DONE ) {
+			addNextTokens( context, isFirstToken );
+		}
+	}
+
+	/**
+	 * Continues to tokenize the input of the {@link LexerContext} (whose first token has been
+	 * found), see {@link TokenizerEngine#tokenize(LexerContext, String)}, until there are at least
+	 * the specified number of tokens and the last of them is a delimiter that the mapping passes
+	 * don't look past (so the tokens can be mapped without the ones that follow). The tokenizing
+	 * stops early at the end of the input, or if the {@link LimitTracker} aborts or the maximum
+	 * number of tokens is reached, in which case the tokenized input holds exactly that many.
+	 *
+	 * @param context the {@link LexerContext} of this tokenization
+	 * @param limits the {@link LimitTracker} to check
+	 * @param minTokens the number of tokens to be reached before stopping at a delimiter
+	 * @return the position in the input of the end of the last token
+	 */
+	private int lex( LexerContext context, LimitTracker limits, int minTokens ) {
+
+		ArrayList<String> tokens = context._tokenizedInput;
+		StringCharacterIterator iter = context._iter;
+		int end = 0;
+		if( !tokens.isEmpty() ) {
+			end = iter.current() == CharacterIterator.DONE ? iter.getEndIndex()
+					: iter.getIndex() + 1;
+		}
+
+		while( iter.current() != CharacterIterator.DONE ) {
+
+			// Stop if a limit has been hit
+			if( limits.check() || limits.isTokenLimitReached( tokens.size() ) ) {
+				break;
+			}
+
+			int size = tokens.size();
+			addNextTokens( context, false );
+			if( tokens.size() == size ) {
+				continue;
+			}
+
+			// The tokens end at the delimiter just found (or at the end of the input)
+			end = iter.current() == CharacterIterator.DONE ? iter.getEndIndex()
+					: iter.getIndex() + 1;
+
+			// A delimiter may have pushed the tokens past the maximum
+			if( limits.getMaxTokens() > 0 && tokens.size() > limits.getMaxTokens() ) {
+				end -= tokens.remove( tokens.size() - 1 ).length();
+				limits.stop( TokenizationStatus.TOKEN_LIMIT );
+				break;
+			}
+
+			String token = tokens.get( tokens.size() - 1 );
+			if( tokens.size() >= minTokens && _language.isDelimiter( token )
+					&& !_language.isMethodCall( token ) && !token.equals( "." ) ) {
+				break;
+			}
+		}
+
+		return end;
+	}
+
+	/**
+	 * Finds and adds the next token to the context's tokenized input {@link ArrayList}, using the
+	 * {@link LanguageKeywords} of this {@link TokenizerEngine}. The process of finding tokens
+	 * involves using the delimiters of the {@link LanguageKeywords} as well as a
+	 * {@link StringCharacterIterator}.
+	 *
+	 * @param context the {@link LexerContext} of this tokenization
+	 * @param isFirstToken if this is the first token to be found
+	 */
+	private void addNextTokens( LexerContext context, boolean isFirstToken ) {
+
+		StringCharacterIterator iter = context._iter;
+
+		// Special case of handling the first token's first character
+		String character = null;
+		if( isFirstToken ) {
+			character = String.valueOf( iter.current() );
+		}
+		else {
+			character = String.valueOf( iter.next() );
+		}
+
+		// Check to see if the the character is a delimiter
+		if( _language.isDelimiter( character ) ) {
+
+			// Add this character to the delimiter buffer
+			String delimiterBuffer = character;
+
+			// Look farther ahead to see if a larger delimiter match can be found
+			for( int i = 0; i < _language.getLookAheadNumber(); i++ ) {
+				delimiterBuffer = delimiterBuffer.concat( String.valueOf( iter.next() ) );
+			}
+
+			// Check to see if the farthest look ahead is a valid delimiter
+			if( _language.isDelimiter( delimiterBuffer ) ) {
+
+				// A delimiter was found, handle it and reset the buffer
+				handleDelimiter( context, delimiterBuffer );
+				delimiterBuffer = "";
+			}
+			else {
+
+				// Fall back one character and try to match again; for as many look ahead times
+				for( int i = 0; i < _language.getLookAheadNumber(); i++ ) {
+
+					// Try without the last look ahead
+					delimiterBuffer = delimiterBuffer.substring( 0, delimiterBuffer.length() - 1 );
+					iter.previous();
+
+					// Check to see if the delimiter buffer matches now
+					if( _language.isDelimiter( delimiterBuffer ) ) {
+
+						// A delimiter was found, handle it and reset the buffer then break
+						handleDelimiter( context, delimiterBuffer );
+						delimiterBuffer = "";
+						break;
+					}
+				}
+			}
+		}
+		else if( iter.current() == CharacterIterator.DONE ) { // The input string is done
+			handleDelimiter( context, " " ); // Space delimiter to ensure the last token is caught
+		}
+		else { // No delimiter was found, so add this character to the token buffer
+			context._tokenBuffer.append( character );
+		}
+	}
+
+	/**
+	 * Handle the found delimiter appropriately along with the token buffer. Will add a token if
+	 * there is something in the token buffer, as well as ignoring the delimiter buffer if the
+	 * delimiter is a space delimiter.
+	 *
+	 * @param context the {@link LexerContext} of this tokenization
+	 * @param delimiterBuffer a string that matched a delimiter found in the
+	 *            {@link LanguageKeywords}
+	 */
+	private void handleDelimiter( LexerContext context, String delimiterBuffer ) {
+
+		// If token buffer is not empty then add the token buffer as a token
+		if( context._tokenBuffer.length() > 0 ) {
+			context._tokenizedInput.add( context._tokenBuffer.toString() );
+		}
+
+		// Add delimiter as a token only if it is not a space delimiter
+		if( !_language.isSpaceDelimiter( delimiterBuffer ) ) {
+			context._tokenizedInput.add( delimiterBuffer );
+		}
+
+		// Reset the token buffer
+		context._tokenBuffer.setLength( 0 );
+	}
+}
@@ -0,0 +1,95 @@
+package ca.tokenizing_parser.tokenizer;
+
+/**
+ * A {@link LiteralCommentScanner.Handler} for scanning a {@link ByteCharSequence}, which decodes
+ * the UTF-8 of the code, literals and comments before passing them on to another handler. Only the
+ * parts that hold multi-byte sequences are decoded; ASCII parts are passed on as they are.
+ *
+ * @author Kevin Jalbert
+ */
+class Utf8DecodingHandler implements LiteralCommentScanner.Handler {
+
+	/** The handler that the decoded parts are passed on to. */
+	private LiteralCommentScanner.Handler	_handler	= null;
+
+	/** The characters of the part being decoded. */
+	private StringBuilder					_decoded	= new StringBuilder();
+
+	/**
+	 * Instantiates a new {@link Utf8DecodingHandler}.
+	 *
+	 * @param handler the handler that the decoded parts are passed on to
+	 */
+	Utf8DecodingHandler( LiteralCommentScanner.Handler handler ) {
+		_handler = handler;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void code( CharSequence input, int start, int end ) {
+
+		if( ByteCharSequence.isAscii( input, start, end ) ) {
+			_handler.code( input, start, end );
+		}
+		else {
+			_handler.code( decode( input, start, end ), 0, _decoded.length() );
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void literal( char quote, CharSequence content, boolean continued ) {
+		_handler.literal( quote, decode( content ), continued );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void lineComment( CharSequence content, boolean continued, boolean endOfInput ) {
+		_handler.lineComment( decode( content ), continued, endOfInput );
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void blockComment( CharSequence content, boolean continued ) {
+		_handler.blockComment( decode( content ), continued );
+	}
+
+	/**
+	 * Decodes the content of a literal or comment, unless it is all ASCII.
+	 *
+	 * @param content the content as bytes
+	 * @return the decoded content
+	 */
+	private CharSequence decode( CharSequence content ) {
+
+		if( ByteCharSequence.isAscii( content, 0, content.length() ) ) {
+			return content;
+		}
+
+		return decode( content, 0, content.length() );
+	}
+
+	/**
+	 * Decodes a range of bytes into the reused decoding buffer.
+	 *
+	 * @param bytes the bytes, one per character
+	 * @param start the start of the range
+	 * @param end the end (exclusive) of the range
+	 * @return the decoding buffer
+	 */
+	private CharSequence decode( CharSequence bytes, int start, int end ) {
+
+		_decoded.setLength( 0 );
+		ByteCharSequence.decode( bytes, start, end, _decoded );
+
+		return _decoded;
+	}
+}
@@ -0,0 +1,566 @@
+package ca.tokenizing_parser.tokenizer.batch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+import ca.tokenizing_parser.tokenizer.TokenizerEngine;
+
+/**
+ * Tokenizes the files under a directory tree in a single long run that can be interrupted at any
+ * point (ie: a crash or a deploy) and resumed later, exactly where the last checkpoint left it.
+ * <p>
+ * The files are tokenized one at a time in the order of their paths, so the ids are assigned in
+ * the same order on every run. Each file adds one line to the append-only output file of the work
+ * directory: its path, a tab and its identifiers separated by spaces. A file that fails to
+ * tokenize has its values rolled back out of the {@link TokenTable} and adds no line, so a resumed
+ * run tries it again. Every so often a checkpoint is written: the output is forced to the disk,
+ * the values added to the {@link TokenTable} since the last checkpoint are appended to the
+ * append-only values log (see {@link TokenTable#writeAdded(java.io.DataOutput, int[])}) and
+ * forced, then a small manifest of the lengths of the output and the log, the position reached in
+ * the files and the paths of the files that failed is written to a temporary file that is forced
+ * and atomically renamed over the last one. A checkpoint therefore costs as much as the values it
+ * adds, however large the {@link TokenTable} or the output grow, and is always consistent,
+ * whenever the run stops.
+ * <p>
+ * A resumed run truncates the output and the log back to their checkpointed lengths (dropping the
+ * lines and values that were not checkpointed), replays the log into the {@link TokenTable},
+ * tries the files that failed again, and goes on from the file after the last one the checkpoint
+ * reached (without reading the output). The remaining files then get the ids they would have had
+ * in an uninterrupted run, provided the files did not change in between.
+ *
+ * @author Kevin Jalbert
+ */
+public class CheckpointedBatch {
+
+	/** The name of the output file within the work directory. */
+	public final static String	_OUTPUT_FILE			= "tokens.txt";
+
+	/** The name of the checkpoint manifest file within the work directory. */
+	public final static String	_CHECKPOINT_FILE		= "checkpoint";
+
+	/** The name of the values log file within the work directory. */
+	public final static String	_VALUES_FILE			= "values.log";
+
+	/** The magic number that starts a checkpoint file ("TKCP"). */
+	private final static int	_MAGIC					= 0x544B4350;
+
+	/** The version of the checkpoint format. */
+	private final static int	_VERSION				= 3;
+
+	/** The UTF-8 {@link Charset} of the files and the output. */
+	private final static Charset	_UTF8				= Charset.forName( "UTF-8" );
+
+	/** The {@link TokenizerEngine} that tokenizes the files. */
+	private TokenizerEngine		_engine					= null;
+
+	/** The {@link TokenTable} that the files are mapped with. */
+	private TokenTable			_tokenTable				= null;
+
+	/** The directory of the output and checkpoint files. */
+	private Path				_workDirectory			= null;
+
+	/** The suffix of the files to be tokenized; an empty suffix tokenizes all. */
+	private String				_suffix					= "";
+
+	/** If true the literals are mapped. */
+	private boolean				_keepLiterals			= true;
+
+	/** If true the comments are mapped. */
+	private boolean				_keepComments			= true;
+
+	/** The number of files between checkpoints. */
+	private int					_checkpointFiles		= 1000;
+
+	/** The time between checkpoints in milliseconds. */
+	private long				_checkpointMillis		= 60000;
+
+	/** The number of files tokenized by the last run. */
+	private long				_files					= 0;
+
+	/** The number of files of the last run that failed to tokenize. */
+	private long				_errors					= 0;
+
+	/** The number of files the last run skipped as they were completed by an earlier run. */
+	private long				_resumed				= 0;
+
+	/** The number of checkpoints written by the last run. */
+	private long				_checkpoints			= 0;
+
+	/** The number of ids of each category that the values log holds. */
+	private int[]				_loggedCounts			= null;
+
+	/** The number of blocks of values that the values log holds. */
+	private long				_loggedBlocks			= 0;
+
+	/** The paths of the files that failed to tokenize, which a resumed run tries again. */
+	private ArrayList<String>	_failed					= null;
+
+	/** The number of files completed (or failed) since the last checkpoint. */
+	private int					_sinceCheckpoint		= 0;
+
+	/** The time of the last checkpoint in milliseconds. */
+	private long				_lastCheckpoint			= 0;
+
+	/**
+	 * Instantiates a new {@link CheckpointedBatch}.
+	 *
+	 * @param engine the {@link TokenizerEngine} that tokenizes the files
+	 * @param tokenTable the {@link TokenTable} that the files are mapped with, which is replaced
+	 *            by the checkpointed one when a run is resumed
+	 * @param workDirectory the directory of the output and checkpoint files
+	 */
+	public CheckpointedBatch( TokenizerEngine engine, TokenTable tokenTable, Path workDirectory ) {
+		_engine = engine;
+		_tokenTable = tokenTable;
+		_workDirectory = workDirectory;
+	}
+
+	/**
+	 * Sets the suffix of the files to be tokenized (ie: .java).
+	 *
+	 * @param suffix the suffix of the files; an empty suffix tokenizes all files
+	 */
+	public void setSuffix( String suffix ) {
+		_suffix = suffix;
+	}
+
+	/**
+	 * Sets whether the literals and comments are mapped. A resumed run must use the same settings.
+	 *
+	 * @param keepLiterals if true then the literals will be mapped as well
+	 * @param keepComments if true then the comments will be mapped as well
+	 */
+	public void setKeep( boolean keepLiterals, boolean keepComments ) {
+		_keepLiterals = keepLiterals;
+		_keepComments = keepComments;
+	}
+
+	/**
+	 * Sets how often a checkpoint is written: after the number of files or the time since the
+	 * last checkpoint, whichever comes first.
+	 *
+	 * @param files the number of files between checkpoints
+	 * @param millis the time between checkpoints in milliseconds
+	 */
+	public void setCheckpointInterval( int files, long millis ) {
+
+		if( files < 1 || millis < 0 ) {
+			throw new IllegalArgumentException( "Invalid checkpoint interval" );
+		}
+
+		_checkpointFiles = files;
+		_checkpointMillis = millis;
+	}
+
+	/**
+	 * Gets the path of the output file.
+	 *
+	 * @return the path of the output file
+	 */
+	public Path getOutputPath() {
+		return _workDirectory.resolve( _OUTPUT_FILE );
+	}
+
+	/**
+	 * Gets the number of files tokenized by the last run (the failed ones included).
+	 *
+	 * @return the number of files
+	 */
+	public long getFiles() {
+		return _files;
+	}
+
+	/**
+	 * Gets the number of files of the last run that failed to tokenize.
+	 *
+	 * @return the number of failed files
+	 */
+	public long getErrors() {
+		return _errors;
+	}
+
+	/**
+	 * Gets the number of files the last run skipped, as an earlier run had completed them.
+	 *
+	 * @return the number of resumed files
+	 */
+	public long getResumed() {
+		return _resumed;
+	}
+
+	/**
+	 * Gets the number of checkpoints written by the last run.
+	 *
+	 * @return the number of checkpoints
+	 */
+	public long getCheckpoints() {
+		return _checkpoints;
+	}
+
+	/**
+	 * Runs the batch over the files under the directory (searched recursively), resuming from the
+	 * checkpoint of the work directory if there is one. A checkpoint is written at the end.
+	 *
+	 * @param root the root directory of the files
+	 * @throws IOException if the files cannot be listed, or the output or checkpoint cannot be
+	 *             read or written
+	 */
+	public void run( Path root ) throws IOException {
+
+		_files = 0;
+		_errors = 0;
+		_resumed = 0;
+		_checkpoints = 0;
+
+		Files.createDirectories( _workDirectory );
+		ArrayList<Path> paths = listFiles( root );
+
+		FileChannel output = FileChannel.open( getOutputPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE );
+		FileChannel values = null;
+		try {
+			values = FileChannel.open( _workDirectory.resolve( _VALUES_FILE ),
+					StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+			int next = resume( output, values, root, paths );
+			output.position( output.size() );
+
+			_sinceCheckpoint = 0;
+			_lastCheckpoint = System.currentTimeMillis();
+
+			// Try the files that failed before again, then go on from where the checkpoint was
+			for( String name : new ArrayList<String>( _failed ) ) {
+				if( tokenizeFile( output, root.getFileSystem().getPath( name ), name ) ) {
+					_failed.remove( name );
+				}
+				checkpointIfDue( output, values, paths, next );
+			}
+
+			while( next < paths.size() ) {
+
+				Path path = paths.get( next++ );
+				String name = path.toString();
+				if( !tokenizeFile( output, path, name ) ) {
+					_failed.add( name );
+				}
+				checkpointIfDue( output, values, paths, next );
+			}
+
+			checkpoint( output, values, paths, next );
+		}
+		finally {
+			try {
+				if( values != null ) {
+					values.close();
+				}
+			}
+			finally {
+				output.close();
+			}
+		}
+	}
+
+	/**
+	 * Tokenizes a file and appends its line to the output.
+	 *
+	 * @param output the {@link FileChannel} of the output
+	 * @param path the path of the file
+	 * @param name the path of the file as written to the output
+	 * @return true if the file was tokenized; false if it failed
+	 * @throws IOException if the output cannot be written
+	 */
+	private boolean tokenizeFile( FileChannel output, Path path, String name ) throws IOException {
+
+		_files++;
+		_sinceCheckpoint++;
+
+		// A path that cannot be written as a line fails on every run
+		ByteBuffer line = null;
+		if( name.indexOf( '\t' ) == -1 && name.indexOf( '\n' ) == -1 ) {
+			line = tokenize( path, name );
+		}
+
+		if( line == null ) {
+			_errors++;
+			return false;
+		}
+
+		while( line.hasRemaining() ) {
+			output.write( line );
+		}
+		return true;
+	}
+
+	/**
+	 * Writes a checkpoint if enough files were tokenized, or enough time went by, since the last
+	 * one (see {@link CheckpointedBatch#setCheckpointInterval(int, long)}).
+	 *
+	 * @param output the {@link FileChannel} of the output
+	 * @param values the {@link FileChannel} of the values log
+	 * @param paths the sorted paths of the files
+	 * @param next the index of the next path to be tokenized
+	 * @throws IOException if the checkpoint cannot be written
+	 */
+	private void checkpointIfDue( FileChannel output, FileChannel values, ArrayList<Path> paths,
+			int next ) throws IOException {
+
+		long now = System.currentTimeMillis();
+		if( _sinceCheckpoint >= _checkpointFiles || now - _lastCheckpoint >= _checkpointMillis ) {
+			checkpoint( output, values, paths, next );
+			_sinceCheckpoint = 0;
+			_lastCheckpoint = now;
+		}
+	}
+
+	/**
+	 * Tokenizes a file into its output line. The {@link TokenTable} is locked for the file, and
+	 * rolled back should the file fail to tokenize, so a failed file leaves no values behind.
+	 *
+	 * @param path the path of the file
+	 * @param name the path of the file as written to the output
+	 * @return the UTF-8 encoded output line of the file; null if the file failed to tokenize
+	 */
+	private ByteBuffer tokenize( Path path, String name ) {
+
+		ByteBuffer content = null;
+		try {
+			content = ByteBuffer.wrap( Files.readAllBytes( path ) );
+		}
+		catch( IOException e ) {
+			return null;
+		}
+
+		ArrayList<String> tokens = null;
+		_tokenTable.getLock().lock();
+		try {
+			int[] snapshot = _tokenTable.snapshot();
+			try {
+				tokens = _engine.tokenizeInputWithMapping( content, _keepLiterals, _keepComments,
+						_tokenTable );
+				_tokenTable.commit();
+			}
+			catch( RuntimeException e ) {
+				_tokenTable.rollback( snapshot );
+				return null;
+			}
+		}
+		finally {
+			_tokenTable.getLock().unlock();
+		}
+
+		StringBuilder line = new StringBuilder( name ).append( '\t' );
+		for( int i = 0; i < tokens.size(); i++ ) {
+			if( i > 0 ) {
+				line.append( ' ' );
+			}
+			line.append( tokens.get( i ) );
+		}
+
+		return ByteBuffer.wrap( line.append( '\n' ).toString().getBytes( _UTF8 ) );
+	}
+
+	/**
+	 * Restores the {@link TokenTable}, the output and the values log from the checkpoint (or
+	 * empties the output and the log if there is no checkpoint), along with the paths of the files
+	 * that failed, and finds the file to go on from.
+	 *
+	 * @param output the {@link FileChannel} of the output
+	 * @param values the {@link FileChannel} of the values log
+	 * @param root the root directory of the files
+	 * @param paths the sorted paths of the files
+	 * @return the index of the first path that the checkpoint didn't reach
+	 * @throws IOException if the checkpoint, output or values log cannot be read, or don't match
+	 */
+	private int resume( FileChannel output, FileChannel values, Path root, ArrayList<Path> paths )
+			throws IOException {
+
+		_loggedCounts = new int[TokenTable._UNMAPPED_CATEGORY + 1];
+		_loggedBlocks = 0;
+		_failed = new ArrayList<String>();
+
+		Path checkpoint = _workDirectory.resolve( _CHECKPOINT_FILE );
+		if( !Files.exists( checkpoint ) ) {
+			output.truncate( 0 );
+			values.truncate( 0 );
+			return 0;
+		}
+
+		long length = 0;
+		long valuesLength = 0;
+		int next = 0;
+		String last = null;
+		ArrayList<String> failed = new ArrayList<String>();
+		int[] loggedCounts = new int[TokenTable._UNMAPPED_CATEGORY + 1];
+		DataInputStream input = new DataInputStream( new BufferedInputStream( Files
+				.newInputStream( checkpoint ) ) );
+		try {
+			if( input.readInt() != _MAGIC || input.readInt() != _VERSION ) {
+				throw new IOException( "Not a checkpoint file: " + checkpoint );
+			}
+
+			length = input.readLong();
+			valuesLength = input.readLong();
+			_loggedBlocks = input.readLong();
+			for( int category = 0; category < loggedCounts.length; category++ ) {
+				loggedCounts[category] = input.readInt();
+			}
+
+			next = input.readInt();
+			last = input.readUTF();
+			for( int count = input.readInt(); count > 0; count-- ) {
+				failed.add( input.readUTF() );
+			}
+		}
+		finally {
+			input.close();
+		}
+
+		if( output.size() < length ) {
+			throw new IOException( "The output is shorter than its checkpoint" );
+		}
+		if( values.size() < valuesLength ) {
+			throw new IOException( "The values log is shorter than its checkpoint" );
+		}
+		output.truncate( length );
+		values.truncate( valuesLength );
+
+		// Replay the checkpointed blocks of the values log (the stream is not closed, as that
+		// would close the channel)
+		values.position( 0 );
+		DataInputStream log = new DataInputStream( new BufferedInputStream( Channels
+				.newInputStream( values ) ) );
+		_tokenTable.getLock().lock();
+		try {
+			_tokenTable.clearAll();
+			for( long block = 0; block < _loggedBlocks; block++ ) {
+				_tokenTable.readAdded( log );
+			}
+
+			int[] restoredCounts = _tokenTable.snapshot();
+			_tokenTable.commit();
+			if( !Arrays.equals( restoredCounts, loggedCounts ) ) {
+				throw new IOException( "The values log doesn't match its checkpoint" );
+			}
+		}
+		finally {
+			_tokenTable.getLock().unlock();
+		}
+		_loggedCounts = loggedCounts;
+		_failed = failed;
+
+		// Should the files have changed, go on from the first path after the last one reached
+		if( next > paths.size() || ( next > 0 && !paths.get( next - 1 ).toString().equals(
+				last ) ) ) {
+			int found = Collections.binarySearch( paths, root.getFileSystem().getPath( last ) );
+			next = found >= 0 ? found + 1 : -found - 1;
+		}
+
+		_resumed = Math.max( next - failed.size(), 0 );
+		return next;
+	}
+
+	/**
+	 * Writes a checkpoint: forces the output to the disk, appends the values added to the
+	 * {@link TokenTable} since the last checkpoint to the values log and forces it, then writes
+	 * the lengths of the output and the log, the index and the last path reached, and the paths of
+	 * the files that failed to a temporary manifest file, forces it, and renames it over the
+	 * checkpoint.
+	 *
+	 * @param output the {@link FileChannel} of the output
+	 * @param values the {@link FileChannel} of the values log
+	 * @param paths the sorted paths of the files
+	 * @param next the index of the next path to be tokenized
+	 * @throws IOException if the checkpoint cannot be written
+	 */
+	private void checkpoint( FileChannel output, FileChannel values, ArrayList<Path> paths,
+			int next ) throws IOException {
+
+		output.force( false );
+
+		// Append the new values to the log (the stream is not closed, as that would close the
+		// channel)
+		values.position( values.size() );
+		DataOutputStream log = new DataOutputStream( new BufferedOutputStream( Channels
+				.newOutputStream( values ) ) );
+		int[] loggedCounts = _tokenTable.writeAdded( log, _loggedCounts );
+		log.flush();
+		values.force( false );
+
+		Path temporary = _workDirectory.resolve( _CHECKPOINT_FILE + ".tmp" );
+		FileChannel channel = FileChannel.open( temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+		try {
+			DataOutputStream stream = new DataOutputStream( new BufferedOutputStream( Channels
+					.newOutputStream( channel ) ) );
+			stream.writeInt( _MAGIC );
+			stream.writeInt( _VERSION );
+			stream.writeLong( output.size() );
+			stream.writeLong( values.size() );
+			stream.writeLong( _loggedBlocks + 1 );
+			for( int category = 0; category < loggedCounts.length; category++ ) {
+				stream.writeInt( loggedCounts[category] );
+			}
+			stream.writeInt( next );
+			stream.writeUTF( next == 0 ? "" : paths.get( next - 1 ).toString() );
+			stream.writeInt( _failed.size() );
+			for( String name : _failed ) {
+				stream.writeUTF( name );
+			}
+			stream.flush();
+
+			channel.force( true );
+		}
+		finally {
+			channel.close();
+		}
+
+		Files.move( temporary, _workDirectory.resolve( _CHECKPOINT_FILE ),
+				StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+		_loggedCounts = loggedCounts;
+		_loggedBlocks++;
+		_checkpoints++;
+	}
+
+	/**
+	 * Lists the files under the directory that have the suffix, in the order of their paths.
+	 *
+	 * @param root the root directory of the files
+	 * @return the sorted paths of the files
+	 * @throws IOException if the directory cannot be walked
+	 */
+	private ArrayList<Path> listFiles( Path root ) throws IOException {
+
+		final ArrayList<Path> paths = new ArrayList<Path>();
+		Files.walkFileTree( root, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) {
+				if( attributes.isRegularFile() && file.toString().endsWith( _suffix ) ) {
+					paths.add( file );
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		} );
+
+		Collections.sort( paths );
+		return paths;
+	}
+}
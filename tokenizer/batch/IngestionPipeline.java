@@ -0,0 +1,570 @@
+package ca.tokenizing_parser.tokenizer.batch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+import ca.tokenizing_parser.tokenizer.TokenizerEngine;
+
+/**
+ * Tokenizes the files under a directory tree in a staged pipeline, so the reading of files, the
+ * tokenizing and mapping of their content and the writing of the results overlap instead of
+ * taking turns on each thread. The stages are:
+ * <ol>
+ * <li>read: reads the UTF-8 content of each file
+ * <li>tokenize: tokenizes and maps the content, see
+ * {@link TokenizerEngine#tokenizeInputWithMapping(ByteBuffer, boolean, boolean, TokenTable)}
+ * <li>sink: passes each {@link TokenizedFile} on to the {@link TokenSink}
+ * </ol>
+ * <p>
+ * Each stage has its own number of threads, and takes its files from a bounded queue that the
+ * previous stage puts them into (the read stage takes the paths from the directory walk). A full
+ * queue blocks the stage putting into it, so a slow stage holds back the stages before it instead
+ * of letting files pile up in memory. The {@link StageStats} of each stage show where the time
+ * goes while the pipeline runs.
+ * <p>
+ * Files that cannot be read or tokenized are counted as errors of their stage and skipped. A
+ * {@link TokenSink} that fails stops the whole pipeline.
+ *
+ * @author Kevin Jalbert
+ */
+public class IngestionPipeline {
+
+	/** The time a blocked stage waits before checking whether the pipeline has failed. */
+	private final static long				_POLL_MILLIS		= 100;
+
+	/** The marker that ends a queue. */
+	private final static TokenizedFile		_END				= new TokenizedFile( null );
+
+	/** The {@link TokenizerEngine} that tokenizes the files. */
+	private TokenizerEngine					_engine				= null;
+
+	/** The {@link TokenTable} that the files are mapped with; null for a table per thread. */
+	private TokenTable						_tokenTable			= null;
+
+	/** The {@link TokenSink} that receives the tokenized files. */
+	private TokenSink						_sink				= null;
+
+	/** The number of threads of the read stage. */
+	private int								_readThreads		= 2;
+
+	/** The number of threads of the tokenize stage. */
+	private int								_tokenizeThreads	= Runtime.getRuntime()
+																		.availableProcessors();
+
+	/** The number of threads of the sink stage. */
+	private int								_sinkThreads		= 1;
+
+	/** The capacity of each queue between the stages. */
+	private int								_queueCapacity		= 64;
+
+	/** The suffix of the files to be tokenized; an empty suffix tokenizes all. */
+	private String							_suffix				= "";
+
+	/** If true the literals are mapped. */
+	private boolean							_keepLiterals		= true;
+
+	/** If true the comments are mapped. */
+	private boolean							_keepComments		= true;
+
+	/** The {@link StageStats} of the read stage. */
+	private volatile StageStats				_readStats			= null;
+
+	/** The {@link StageStats} of the tokenize stage. */
+	private volatile StageStats				_tokenizeStats		= null;
+
+	/** The {@link StageStats} of the sink stage. */
+	private volatile StageStats				_sinkStats			= null;
+
+	/** The failure that stopped the pipeline; null if it has not failed. */
+	private AtomicReference<Throwable>		_failure			= new AtomicReference<Throwable>();
+
+	/**
+	 * Instantiates a new {@link IngestionPipeline}.
+	 *
+	 * @param engine the {@link TokenizerEngine} that tokenizes the files
+	 * @param tokenTable the {@link TokenTable} that all files are mapped with, or null to give each
+	 *            thread of the tokenize stage its own {@link TokenTable} (which avoids contention on
+	 *            a shared one, but the identifiers of files from different threads then differ)
+	 * @param sink the {@link TokenSink} that receives the tokenized files
+	 */
+	public IngestionPipeline( TokenizerEngine engine, TokenTable tokenTable, TokenSink sink ) {
+		_engine = engine;
+		_tokenTable = tokenTable;
+		_sink = sink;
+	}
+
+	/**
+	 * Sets the number of threads of the read stage. More threads than one help keep several
+	 * reads in flight on fast storage.
+	 *
+	 * @param threads the number of threads
+	 */
+	public void setReadThreads( int threads ) {
+		_readThreads = checkThreads( threads );
+	}
+
+	/**
+	 * Sets the number of threads of the tokenize stage (the number of processors by default).
+	 *
+	 * @param threads the number of threads
+	 */
+	public void setTokenizeThreads( int threads ) {
+		_tokenizeThreads = checkThreads( threads );
+	}
+
+	/**
+	 * Sets the number of threads of the sink stage.
+	 *
+	 * @param threads the number of threads
+	 */
+	public void setSinkThreads( int threads ) {
+		_sinkThreads = checkThreads( threads );
+	}
+
+	/**
+	 * Sets the capacity of each queue between the stages. The capacity bounds the number of files
+	 * held in memory between two stages.
+	 *
+	 * @param capacity the capacity of each queue
+	 */
+	public void setQueueCapacity( int capacity ) {
+
+		if( capacity < 1 ) {
+			throw new IllegalArgumentException( "The queue capacity must be positive: "
+					+ capacity );
+		}
+
+		_queueCapacity = capacity;
+	}
+
+	/**
+	 * Sets the suffix of the files to be tokenized (ie: .java).
+	 *
+	 * @param suffix the suffix of the files; an empty suffix tokenizes all files
+	 */
+	public void setSuffix( String suffix ) {
+		_suffix = suffix;
+	}
+
+	/**
+	 * Sets whether the literals and comments are mapped.
+	 *
+	 * @param keepLiterals if true then the literals will be mapped as well
+	 * @param keepComments if true then the comments will be mapped as well
+	 */
+	public void setKeep( boolean keepLiterals, boolean keepComments ) {
+		_keepLiterals = keepLiterals;
+		_keepComments = keepComments;
+	}
+
+	/**
+	 * Gets the {@link StageStats} of the read stage.
+	 *
+	 * @return the {@link StageStats} of the read stage; null if the pipeline has not run
+	 */
+	public StageStats getReadStats() {
+		return _readStats;
+	}
+
+	/**
+	 * Gets the {@link StageStats} of the tokenize stage.
+	 *
+	 * @return the {@link StageStats} of the tokenize stage; null if the pipeline has not run
+	 */
+	public StageStats getTokenizeStats() {
+		return _tokenizeStats;
+	}
+
+	/**
+	 * Gets the {@link StageStats} of the sink stage.
+	 *
+	 * @return the {@link StageStats} of the sink stage; null if the pipeline has not run
+	 */
+	public StageStats getSinkStats() {
+		return _sinkStats;
+	}
+
+	/**
+	 * Runs the pipeline over the files under the directory (searched recursively), returning once
+	 * every file has reached the {@link TokenSink}.
+	 *
+	 * @param directory the directory of the files to be tokenized
+	 * @throws IOException if the directory cannot be walked or the {@link TokenSink} fails
+	 * @throws InterruptedException if interrupted while running
+	 */
+	public void run( Path directory ) throws IOException, InterruptedException {
+
+		final BlockingQueue<TokenizedFile> paths = new ArrayBlockingQueue<TokenizedFile>(
+				_queueCapacity );
+		BlockingQueue<TokenizedFile> contents = new ArrayBlockingQueue<TokenizedFile>(
+				_queueCapacity );
+		BlockingQueue<TokenizedFile> results = new ArrayBlockingQueue<TokenizedFile>(
+				_queueCapacity );
+
+		_failure.set( null );
+		_readStats = new StageStats( "read", _readThreads, paths );
+		_tokenizeStats = new StageStats( "tokenize", _tokenizeThreads, contents );
+		_sinkStats = new StageStats( "sink", _sinkThreads, results );
+
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		startStage( new ReadStage(), _readStats, paths, contents, _tokenizeThreads, threads );
+		startStage( new TokenizeStage(), _tokenizeStats, contents, results, _sinkThreads, threads );
+		startStage( new SinkStage(), _sinkStats, results, null, 0, threads );
+
+		// Walk the directory on this thread, which is held back by the read stage
+		try {
+			Files.walkFileTree( directory, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile( Path file, BasicFileAttributes attributes )
+						throws IOException {
+
+					if( attributes.isRegularFile() && file.toString().endsWith( _suffix ) ) {
+						if( !put( paths, new TokenizedFile( file ) ) ) {
+							return FileVisitResult.TERMINATE;
+						}
+					}
+
+					return FileVisitResult.CONTINUE;
+				}
+			} );
+
+			for( int i = 0; i < _readThreads; i++ ) {
+				put( paths, _END );
+			}
+		}
+		catch( IOException e ) {
+			fail( e );
+		}
+		catch( RuntimeException e ) {
+			fail( e );
+		}
+
+		for( Thread thread : threads ) {
+			thread.join();
+		}
+
+		Throwable failure = _failure.get();
+		if( failure instanceof IOException ) {
+			throw (IOException) failure;
+		}
+		else if( failure instanceof RuntimeException ) {
+			throw (RuntimeException) failure;
+		}
+		else if( failure instanceof InterruptedException ) {
+			throw (InterruptedException) failure;
+		}
+		else if( failure != null ) {
+			throw new IOException( "The pipeline failed", failure );
+		}
+	}
+
+	/**
+	 * Starts the threads of a stage.
+	 *
+	 * @param stage the work of the stage
+	 * @param stats the {@link StageStats} of the stage
+	 * @param input the queue that the stage takes its files from
+	 * @param output the queue that the stage puts its files into; null for the last stage
+	 * @param nextThreads the number of threads of the next stage, which each need an end marker
+	 * @param threads the list of started threads to add to
+	 */
+	private void startStage( Stage stage, StageStats stats, BlockingQueue<TokenizedFile> input,
+			BlockingQueue<TokenizedFile> output, int nextThreads, ArrayList<Thread> threads ) {
+
+		AtomicInteger running = new AtomicInteger( stats.getThreads() );
+		for( int i = 0; i < stats.getThreads(); i++ ) {
+
+			Thread thread = new Thread( new StageWorker( stage, stats, input, output, nextThreads,
+					running ), "pipeline-" + stats.getName() + "-" + i );
+			thread.start();
+			threads.add( thread );
+		}
+	}
+
+	/**
+	 * Puts a file into a queue, waiting while the queue is full unless the pipeline fails.
+	 *
+	 * @param queue the queue to put the file into
+	 * @param file the {@link TokenizedFile} to be put
+	 * @return true if the file was put; false if the pipeline failed
+	 */
+	private boolean put( BlockingQueue<TokenizedFile> queue, TokenizedFile file ) {
+
+		try {
+			while( _failure.get() == null ) {
+				if( queue.offer( file, _POLL_MILLIS, TimeUnit.MILLISECONDS ) ) {
+					return true;
+				}
+			}
+		}
+		catch( InterruptedException e ) {
+			fail( e );
+		}
+
+		return false;
+	}
+
+	/**
+	 * Takes a file from a queue, waiting while the queue is empty unless the pipeline fails.
+	 *
+	 * @param queue the queue to take the file from
+	 * @return the {@link TokenizedFile}; null if the pipeline failed
+	 */
+	private TokenizedFile take( BlockingQueue<TokenizedFile> queue ) {
+
+		try {
+			while( _failure.get() == null ) {
+				TokenizedFile file = queue.poll( _POLL_MILLIS, TimeUnit.MILLISECONDS );
+				if( file != null ) {
+					return file;
+				}
+			}
+		}
+		catch( InterruptedException e ) {
+			fail( e );
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stops the pipeline, keeping the first failure.
+	 *
+	 * @param failure the cause of the failure
+	 */
+	private void fail( Throwable failure ) {
+		_failure.compareAndSet( null, failure );
+	}
+
+	/**
+	 * Checks the number of threads of a stage.
+	 *
+	 * @param threads the number of threads
+	 * @return the number of threads
+	 */
+	private static int checkThreads( int threads ) {
+
+		if( threads < 1 ) {
+			throw new IllegalArgumentException( "A stage needs at least one thread: " + threads );
+		}
+
+		return threads;
+	}
+
+	/**
+	 * The work that a stage does on each file.
+	 */
+	private interface Stage {
+
+		/**
+		 * Processes a file.
+		 *
+		 * @param file the {@link TokenizedFile} to be processed
+		 * @param tokenTable the {@link TokenTable} of the thread
+		 * @return true if the file is passed on to the next stage; false if it is skipped
+		 * @throws IOException if the file cannot be processed
+		 */
+		public boolean process( TokenizedFile file, TokenTable tokenTable ) throws IOException;
+
+		/**
+		 * Checks to see if a failure to process a file stops the pipeline, instead of skipping
+		 * the file.
+		 *
+		 * @return true if a failure stops the pipeline
+		 */
+		public boolean isFatal();
+	}
+
+	/**
+	 * Reads the content of each file.
+	 */
+	private class ReadStage implements Stage {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean process( TokenizedFile file, TokenTable tokenTable ) throws IOException {
+			file.setContent( ByteBuffer.wrap( Files.readAllBytes( file.getPath() ) ) );
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean isFatal() {
+			return false;
+		}
+	}
+
+	/**
+	 * Tokenizes and maps the content of each file.
+	 */
+	private class TokenizeStage implements Stage {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean process( TokenizedFile file, TokenTable tokenTable ) {
+			file.setTokens( _engine.tokenizeInputWithMapping( file.getContent(), _keepLiterals,
+					_keepComments, tokenTable ), tokenTable );
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean isFatal() {
+			return false;
+		}
+	}
+
+	/**
+	 * Passes each file on to the {@link TokenSink}.
+	 */
+	private class SinkStage implements Stage {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean process( TokenizedFile file, TokenTable tokenTable ) throws IOException {
+			_sink.accept( file );
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean isFatal() {
+			return true;
+		}
+	}
+
+	/**
+	 * A thread of a stage, which takes files from the stage's input queue till it is ended and
+	 * puts the processed files into the output queue.
+	 */
+	private class StageWorker implements Runnable {
+
+		/** The work of the stage. */
+		private Stage							_stage			= null;
+
+		/** The {@link StageStats} of the stage. */
+		private StageStats						_stats			= null;
+
+		/** The queue that the stage takes its files from. */
+		private BlockingQueue<TokenizedFile>	_input			= null;
+
+		/** The queue that the stage puts its files into; null for the last stage. */
+		private BlockingQueue<TokenizedFile>	_output			= null;
+
+		/** The number of threads of the next stage. */
+		private int								_nextThreads	= 0;
+
+		/** The number of threads of the stage that are still running. */
+		private AtomicInteger					_running		= null;
+
+		/**
+		 * Instantiates a new {@link StageWorker}.
+		 *
+		 * @param stage the work of the stage
+		 * @param stats the {@link StageStats} of the stage
+		 * @param input the queue that the stage takes its files from
+		 * @param output the queue that the stage puts its files into; null for the last stage
+		 * @param nextThreads the number of threads of the next stage
+		 * @param running the number of threads of the stage that are still running
+		 */
+		StageWorker( Stage stage, StageStats stats, BlockingQueue<TokenizedFile> input,
+				BlockingQueue<TokenizedFile> output, int nextThreads, AtomicInteger running ) {
+			_stage = stage;
+			_stats = stats;
+			_input = input;
+			_output = output;
+			_nextThreads = nextThreads;
+			_running = running;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+
+			// Without a shared table each thread of the tokenize stage maps with its own
+			TokenTable tokenTable = _tokenTable;
+			if( tokenTable == null && _stage instanceof TokenizeStage ) {
+				tokenTable = new TokenTable( _engine.getLanguage() );
+			}
+
+			try {
+				while( true ) {
+
+					_stats.recordQueueDepth( _input.size() );
+					TokenizedFile file = take( _input );
+					if( file == null || file == _END ) {
+						break;
+					}
+
+					long start = System.nanoTime();
+					boolean passed = false;
+					try {
+						passed = _stage.process( file, tokenTable );
+						_stats.recordFile( file.getSize(), System.nanoTime() - start );
+					}
+					catch( IOException e ) {
+						handleError( e, start );
+					}
+					catch( RuntimeException e ) {
+						handleError( e, start );
+					}
+
+					if( passed && _output != null && !put( _output, file ) ) {
+						break;
+					}
+				}
+			}
+			finally {
+
+				// The last thread of the stage ends the next stage
+				if( _running.decrementAndGet() == 0 ) {
+					_stats.end();
+					for( int i = 0; i < _nextThreads; i++ ) {
+						put( _output, _END );
+					}
+				}
+			}
+		}
+
+		/**
+		 * Records a file that failed, stopping the pipeline if the failure is fatal.
+		 *
+		 * @param failure the cause of the failure
+		 * @param start the time the file was started, in nanoseconds
+		 */
+		private void handleError( Exception failure, long start ) {
+
+			_stats.recordError( System.nanoTime() - start );
+			if( _stage.isFatal() ) {
+				fail( failure );
+			}
+		}
+	}
+}
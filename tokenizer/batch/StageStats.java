@@ -0,0 +1,219 @@
+package ca.tokenizing_parser.tokenizer.batch;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.tokenizing_parser.tokenizer.stats.LatencyHistogram;
+
+/**
+ * The statistics of one stage of an {@link IngestionPipeline}: the number of files and bytes it
+ * processed, the time its threads spent working, the latency of each file, and the depth of the
+ * queue it takes its files from. The statistics can be read from any thread while the pipeline
+ * runs.
+ *
+ * @author Kevin Jalbert
+ */
+public class StageStats {
+
+	/** The name of the stage. */
+	private String					_name			= null;
+
+	/** The number of threads of the stage. */
+	private int						_threads		= 0;
+
+	/** The queue that the stage takes its files from. */
+	private BlockingQueue<?>		_queue			= null;
+
+	/** The number of files processed. */
+	private AtomicLong				_files			= new AtomicLong();
+
+	/** The number of bytes (of file content) processed. */
+	private AtomicLong				_bytes			= new AtomicLong();
+
+	/** The number of files that failed and were skipped. */
+	private AtomicLong				_errors			= new AtomicLong();
+
+	/** The total time the threads of the stage spent processing files, in nanoseconds. */
+	private AtomicLong				_busyNanos		= new AtomicLong();
+
+	/** The largest depth of the input queue that was seen. */
+	private AtomicInteger			_maxQueueDepth	= new AtomicInteger();
+
+	/** The {@link LatencyHistogram} of the time to process each file, in nanoseconds. */
+	private LatencyHistogram		_latencies		= new LatencyHistogram();
+
+	/** The time the stage started, in nanoseconds. */
+	private volatile long			_startNanos		= 0;
+
+	/** The time the stage ended, in nanoseconds; 0 while it is running. */
+	private volatile long			_endNanos		= 0;
+
+	/**
+	 * Instantiates a new {@link StageStats}.
+	 *
+	 * @param name the name of the stage
+	 * @param threads the number of threads of the stage
+	 * @param queue the queue that the stage takes its files from
+	 */
+	StageStats( String name, int threads, BlockingQueue<?> queue ) {
+		_name = name;
+		_threads = threads;
+		_queue = queue;
+		_startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Gets the name of the stage.
+	 *
+	 * @return the name of the stage
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * Gets the number of threads of the stage.
+	 *
+	 * @return the number of threads
+	 */
+	public int getThreads() {
+		return _threads;
+	}
+
+	/**
+	 * Gets the number of files processed.
+	 *
+	 * @return the number of files
+	 */
+	public long getFiles() {
+		return _files.get();
+	}
+
+	/**
+	 * Gets the number of bytes of file content processed.
+	 *
+	 * @return the number of bytes
+	 */
+	public long getBytes() {
+		return _bytes.get();
+	}
+
+	/**
+	 * Gets the number of files that failed in this stage and were skipped.
+	 *
+	 * @return the number of failed files
+	 */
+	public long getErrors() {
+		return _errors.get();
+	}
+
+	/**
+	 * Gets the number of files waiting in the queue that the stage takes its files from.
+	 *
+	 * @return the current depth of the input queue
+	 */
+	public int getQueueDepth() {
+		return _queue.size();
+	}
+
+	/**
+	 * Gets the largest number of files that were seen waiting in the input queue.
+	 *
+	 * @return the largest depth of the input queue
+	 */
+	public int getMaxQueueDepth() {
+		return _maxQueueDepth.get();
+	}
+
+	/**
+	 * Gets the {@link LatencyHistogram} of the time to process each file, in nanoseconds.
+	 *
+	 * @return the {@link LatencyHistogram} of the stage
+	 */
+	public LatencyHistogram getLatencies() {
+		return _latencies;
+	}
+
+	/**
+	 * Gets the time since the stage started (or till it ended).
+	 *
+	 * @return the elapsed time in nanoseconds
+	 */
+	public long getElapsedNanos() {
+
+		long end = _endNanos;
+		return ( end == 0 ? System.nanoTime() : end ) - _startNanos;
+	}
+
+	/**
+	 * Gets the number of files processed per second.
+	 *
+	 * @return the throughput in files per second
+	 */
+	public double getFilesPerSecond() {
+		return _files.get() * 1e9 / Math.max( 1, getElapsedNanos() );
+	}
+
+	/**
+	 * Gets the number of bytes processed per second.
+	 *
+	 * @return the throughput in bytes per second
+	 */
+	public double getBytesPerSecond() {
+		return _bytes.get() * 1e9 / Math.max( 1, getElapsedNanos() );
+	}
+
+	/**
+	 * Gets the fraction of the time that the threads of the stage spent processing files, as
+	 * opposed to waiting on their queues. A stage near 1 is the bottleneck of the pipeline.
+	 *
+	 * @return the utilization of the stage, between 0 and 1
+	 */
+	public double getUtilization() {
+		return _busyNanos.get() / (double) Math.max( 1, getElapsedNanos() * _threads );
+	}
+
+	/**
+	 * Records the depth of the input queue.
+	 *
+	 * @param depth the depth of the input queue
+	 */
+	void recordQueueDepth( int depth ) {
+
+		int max = _maxQueueDepth.get();
+		while( depth > max && !_maxQueueDepth.compareAndSet( max, depth ) ) {
+			max = _maxQueueDepth.get();
+		}
+	}
+
+	/**
+	 * Records a processed file.
+	 *
+	 * @param bytes the number of bytes of the file
+	 * @param nanos the time it took to process the file
+	 */
+	void recordFile( long bytes, long nanos ) {
+		_files.incrementAndGet();
+		_bytes.addAndGet( bytes );
+		_busyNanos.addAndGet( nanos );
+		_latencies.recordValue( nanos );
+	}
+
+	/**
+	 * Records a file that failed and was skipped.
+	 *
+	 * @param nanos the time spent on the file
+	 */
+	void recordError( long nanos ) {
+		_errors.incrementAndGet();
+		_busyNanos.addAndGet( nanos );
+	}
+
+	/**
+	 * Marks the end of the stage.
+	 */
+	void end() {
+		_endNanos = System.nanoTime();
+	}
+}
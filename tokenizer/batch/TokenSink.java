@@ -0,0 +1,21 @@
+package ca.tokenizing_parser.tokenizer.batch;
+
+import java.io.IOException;
+
+/**
+ * The last stage of an {@link IngestionPipeline}, which receives the tokenized files (ie: to write
+ * them to a token stream). A {@link TokenSink} is called by as many threads as the sink stage has,
+ * so it must be thread-safe unless the sink stage has a single thread.
+ *
+ * @author Kevin Jalbert
+ */
+public interface TokenSink {
+
+	/**
+	 * Accepts a tokenized file. Files arrive in no particular order.
+	 *
+	 * @param file the {@link TokenizedFile} holding the file's identifiers
+	 * @throws IOException if the file cannot be written, which stops the pipeline
+	 */
+	public void accept( TokenizedFile file ) throws IOException;
+}
@@ -0,0 +1,628 @@
+package ca.tokenizing_parser.tokenizer.batch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+import ca.tokenizing_parser.tokenizer.TokenizerEngine;
+import ca.tokenizing_parser.tokenizer.stats.LatencyHistogram;
+
+/**
+ * Schedules tokenization jobs of two priority classes onto a fixed set of worker threads, so that
+ * interactive jobs (ie: one edited file) are not queued behind bulk jobs (ie: reindexing thousands
+ * of files). Each class has its own queue and a limit on the number of workers running its jobs
+ * at once; a free worker always takes interactive work first.
+ * <p>
+ * A bulk job is cut into slices of a bounded number of documents and characters, which are queued
+ * one after another, so the workers return to the scheduler between slices. A worker running a
+ * bulk slice also yields between documents when interactive work is waiting and no other worker is
+ * free to take it, putting the rest of the slice back at the head of the bulk queue. By default
+ * the bulk class may use all but one of the workers, which keeps a worker free for interactive
+ * work while the bulk jobs use the rest of the capacity.
+ * <p>
+ * The time each slice waits in its queue and the time it takes to run are recorded per class.
+ * A job that throws (ie: one of the {@link TokenTable} mapping quirks) fails its future, and the
+ * rest of its slices are skipped.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenizationScheduler {
+
+	/** The priority class of interactive jobs. */
+	public final static int				_INTERACTIVE		= 0;
+
+	/** The priority class of bulk jobs. */
+	public final static int				_BULK				= 1;
+
+	/** The number of priority classes. */
+	public final static int				_CLASSES			= 2;
+
+	/** The {@link TokenizerEngine} that tokenizes the documents. */
+	private TokenizerEngine				_engine				= null;
+
+	/** The worker threads. */
+	private Thread[]					_workers			= null;
+
+	/** The lock of the queues and counters. */
+	private final ReentrantLock			_lock				= new ReentrantLock();
+
+	/** Signalled when a slice is queued or a worker frees a slot of a class. */
+	private final Condition				_workAvailable		= _lock.newCondition();
+
+	/** The queue of slices of each class. */
+	private ArrayList<ArrayDeque<Slice>>	_queues			= null;
+
+	/** The number of workers running slices of each class. */
+	private int[]						_running			= new int[_CLASSES];
+
+	/** The largest number of workers that may run slices of each class. */
+	private int[]						_limits				= new int[_CLASSES];
+
+	/** The number of workers waiting for work. */
+	private int							_idle				= 0;
+
+	/** The largest number of documents of a bulk slice. */
+	private int							_sliceDocuments		= 16;
+
+	/** The largest number of characters of a bulk slice (a single document may exceed it). */
+	private int							_sliceCharacters	= 256 * 1024;
+
+	/** If true no more jobs are accepted and the workers exit once the queues are empty. */
+	private boolean						_shutdown			= false;
+
+	/** The {@link LatencyHistogram} of the queue wait of the slices of each class (nanoseconds). */
+	private LatencyHistogram[]			_queueWaits			= new LatencyHistogram[_CLASSES];
+
+	/** The {@link LatencyHistogram} of the run time of the slices of each class (nanoseconds). */
+	private LatencyHistogram[]			_runTimes			= new LatencyHistogram[_CLASSES];
+
+	/** The number of documents tokenized of each class. */
+	private AtomicLong[]				_documents			= new AtomicLong[_CLASSES];
+
+	/** The number of times a bulk slice yielded to interactive work. */
+	private AtomicLong					_yields				= new AtomicLong();
+
+	/**
+	 * Instantiates a new {@link TokenizationScheduler} and starts its worker threads.
+	 *
+	 * @param engine the {@link TokenizerEngine} that tokenizes the documents
+	 * @param threads the number of worker threads
+	 */
+	public TokenizationScheduler( TokenizerEngine engine, int threads ) {
+
+		if( threads < 1 ) {
+			throw new IllegalArgumentException( "There must be at least one worker thread" );
+		}
+
+		_engine = engine;
+		_queues = new ArrayList<ArrayDeque<Slice>>( _CLASSES );
+		for( int priority = 0; priority < _CLASSES; priority++ ) {
+			_queues.add( new ArrayDeque<Slice>() );
+			_queueWaits[priority] = new LatencyHistogram();
+			_runTimes[priority] = new LatencyHistogram();
+			_documents[priority] = new AtomicLong();
+		}
+
+		_limits[_INTERACTIVE] = threads;
+		_limits[_BULK] = Math.max( 1, threads - 1 );
+
+		_workers = new Thread[threads];
+		for( int i = 0; i < threads; i++ ) {
+			_workers[i] = new Thread( new Worker(), "tokenization-scheduler-" + i );
+			_workers[i].setDaemon( true );
+			_workers[i].start();
+		}
+	}
+
+	/**
+	 * Sets the largest number of workers that may run jobs of a class at once.
+	 *
+	 * @param priority the priority class ({@link TokenizationScheduler#_INTERACTIVE} or
+	 *            {@link TokenizationScheduler#_BULK})
+	 * @param limit the largest number of workers (at least 1)
+	 */
+	public void setConcurrencyLimit( int priority, int limit ) {
+
+		if( limit < 1 ) {
+			throw new IllegalArgumentException( "The concurrency limit must be at least 1" );
+		}
+
+		_lock.lock();
+		try {
+			_limits[priority] = limit;
+			_workAvailable.signalAll();
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the largest number of workers that may run jobs of a class at once.
+	 *
+	 * @param priority the priority class
+	 * @return the concurrency limit of the class
+	 */
+	public int getConcurrencyLimit( int priority ) {
+
+		_lock.lock();
+		try {
+			return _limits[priority];
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the bounds of the slices that bulk jobs are cut into. Smaller slices let interactive
+	 * work in sooner at the cost of more scheduling.
+	 *
+	 * @param documents the largest number of documents of a slice
+	 * @param characters the largest number of characters of a slice (a larger document makes a
+	 *            slice of its own)
+	 */
+	public void setSliceSize( int documents, int characters ) {
+
+		if( documents < 1 || characters < 1 ) {
+			throw new IllegalArgumentException( "The slice size must be positive" );
+		}
+
+		_sliceDocuments = documents;
+		_sliceCharacters = characters;
+	}
+
+	/**
+	 * Submits an interactive job of one document.
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well
+	 * @param keepComments if true then the comments will be mapped as well
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @return the future identifiers of the document
+	 * @see TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable)
+	 */
+	public CompletableFuture<ArrayList<String>> submit( String input, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable ) {
+
+		ArrayList<String> inputs = new ArrayList<String>( 1 );
+		inputs.add( input );
+
+		Job job = new Job( inputs, keepLiterals, keepComments, tokenTable );
+		job._single = new CompletableFuture<ArrayList<String>>();
+
+		enqueue( _INTERACTIVE, job, 0, 1 );
+
+		return job._single;
+	}
+
+	/**
+	 * Submits a job of many documents, which is cut into slices (see
+	 * {@link TokenizationScheduler#setSliceSize(int, int)}).
+	 *
+	 * @param priority the priority class of the job
+	 * @param inputs the input {@link String}s to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well
+	 * @param keepComments if true then the comments will be mapped as well
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @return the future identifiers of each document, in the order of the inputs
+	 */
+	public CompletableFuture<ArrayList<ArrayList<String>>> submit( int priority,
+			List<String> inputs, boolean keepLiterals, boolean keepComments,
+			TokenTable tokenTable ) {
+
+		Job job = new Job( new ArrayList<String>( inputs ), keepLiterals, keepComments,
+				tokenTable );
+		if( inputs.isEmpty() ) {
+			job._future.complete( job._results );
+			return job._future;
+		}
+
+		_lock.lock();
+		try {
+			// Queue the slices in order, bounding their documents and characters
+			int start = 0;
+			while( start < job._inputs.size() ) {
+
+				int end = start;
+				long characters = 0;
+				while( end < job._inputs.size() && end - start < _sliceDocuments
+						&& ( end == start || characters + job._inputs.get( end ).length()
+								<= _sliceCharacters ) ) {
+					characters += job._inputs.get( end ).length();
+					end++;
+				}
+
+				enqueue( priority, job, start, end );
+				start = end;
+			}
+		}
+		finally {
+			_lock.unlock();
+		}
+
+		return job._future;
+	}
+
+	/**
+	 * Gets the number of slices waiting in the queue of a class.
+	 *
+	 * @param priority the priority class
+	 * @return the depth of the queue
+	 */
+	public int getQueueDepth( int priority ) {
+
+		_lock.lock();
+		try {
+			return _queues.get( priority ).size();
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of workers running slices of a class.
+	 *
+	 * @param priority the priority class
+	 * @return the number of running workers
+	 */
+	public int getRunning( int priority ) {
+
+		_lock.lock();
+		try {
+			return _running[priority];
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the {@link LatencyHistogram} of the time the slices of a class waited in their queue,
+	 * in nanoseconds. An interactive job is a single slice, so this is the queue wait of each
+	 * interactive job.
+	 *
+	 * @param priority the priority class
+	 * @return the {@link LatencyHistogram} of the queue waits
+	 */
+	public LatencyHistogram getQueueWaits( int priority ) {
+		return _queueWaits[priority];
+	}
+
+	/**
+	 * Gets the {@link LatencyHistogram} of the time the slices of a class took to run, in
+	 * nanoseconds.
+	 *
+	 * @param priority the priority class
+	 * @return the {@link LatencyHistogram} of the run times
+	 */
+	public LatencyHistogram getRunTimes( int priority ) {
+		return _runTimes[priority];
+	}
+
+	/**
+	 * Gets the number of documents of a class that were tokenized.
+	 *
+	 * @param priority the priority class
+	 * @return the number of documents
+	 */
+	public long getDocuments( int priority ) {
+		return _documents[priority].get();
+	}
+
+	/**
+	 * Gets the number of times a bulk slice yielded to interactive work between documents.
+	 *
+	 * @return the number of yields
+	 */
+	public long getYields() {
+		return _yields.get();
+	}
+
+	/**
+	 * Stops accepting jobs and waits for the workers to finish the queued slices.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the workers
+	 */
+	public void shutdown() throws InterruptedException {
+
+		_lock.lock();
+		try {
+			_shutdown = true;
+			_workAvailable.signalAll();
+		}
+		finally {
+			_lock.unlock();
+		}
+
+		for( Thread worker : _workers ) {
+			worker.join();
+		}
+	}
+
+	/**
+	 * Queues a slice of a job.
+	 *
+	 * @param priority the priority class of the slice
+	 * @param job the {@link Job} of the slice
+	 * @param start the index of the first document of the slice
+	 * @param end the index after the last document of the slice
+	 */
+	private void enqueue( int priority, Job job, int start, int end ) {
+
+		_lock.lock();
+		try {
+			if( _shutdown ) {
+				throw new IllegalStateException( "The scheduler has been shut down" );
+			}
+
+			job._pending++;
+			_queues.get( priority ).addLast( new Slice( priority, job, start, end ) );
+			_workAvailable.signal();
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the next slice a worker may run: interactive first, then bulk, each within the
+	 * concurrency limit of its class. Waits while there is none.
+	 *
+	 * @return the next {@link Slice}; null if the scheduler is shut down and the queues are empty
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private Slice take() throws InterruptedException {
+
+		_lock.lock();
+		try {
+			while( true ) {
+
+				for( int priority = 0; priority < _CLASSES; priority++ ) {
+					if( !_queues.get( priority ).isEmpty()
+							&& _running[priority] < _limits[priority] ) {
+						_running[priority]++;
+						return _queues.get( priority ).pollFirst();
+					}
+				}
+
+				if( _shutdown && _queues.get( _INTERACTIVE ).isEmpty()
+						&& _queues.get( _BULK ).isEmpty() ) {
+					return null;
+				}
+
+				_idle++;
+				try {
+					_workAvailable.await();
+				}
+				finally {
+					_idle--;
+				}
+			}
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Checks to see if a bulk slice should yield to interactive work: interactive work is waiting,
+	 * may run, and no worker is free to take it.
+	 *
+	 * @return true if the slice should yield
+	 */
+	private boolean shouldYield() {
+
+		_lock.lock();
+		try {
+			return !_queues.get( _INTERACTIVE ).isEmpty() && _idle == 0
+					&& _running[_INTERACTIVE] < _limits[_INTERACTIVE];
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Ends the run of a slice, putting the rest of a yielded slice back at the head of its queue.
+	 *
+	 * @param slice the {@link Slice} that ran
+	 * @param next the index of the first document that didn't run
+	 */
+	private void finish( Slice slice, int next ) {
+
+		_lock.lock();
+		try {
+			_running[slice._priority]--;
+
+			Job job = slice._job;
+			if( next < slice._end && !job._future.isDone() ) {
+				_queues.get( slice._priority ).addFirst( new Slice( slice._priority, job, next,
+						slice._end ) );
+			}
+			else {
+				job._pending--;
+				if( job._pending == 0 && !job._future.isDone() ) {
+					job._future.complete( job._results );
+					if( job._single != null ) {
+						job._single.complete( job._results.get( 0 ) );
+					}
+				}
+			}
+
+			_workAvailable.signalAll();
+		}
+		finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs the documents of a slice, yielding between documents of a bulk slice when needed.
+	 *
+	 * @param slice the {@link Slice} to be run
+	 * @return the index of the first document that didn't run
+	 */
+	private int runSlice( Slice slice ) {
+
+		Job job = slice._job;
+		long start = System.nanoTime();
+		_queueWaits[slice._priority].recordValue( start - slice._queuedNanos );
+
+		int next = slice._start;
+		try {
+			while( next < slice._end && !job._future.isDone() ) {
+
+				// Yield between documents, never before the first
+				if( next > slice._start && slice._priority == _BULK && shouldYield() ) {
+					_yields.incrementAndGet();
+					break;
+				}
+
+				ArrayList<String> tokens = _engine.tokenizeInputWithMapping( job._inputs
+						.get( next ), job._keepLiterals, job._keepComments, job._tokenTable );
+				job._results.set( next, tokens );
+				_documents[slice._priority].incrementAndGet();
+				next++;
+			}
+		}
+		catch( RuntimeException e ) {
+			job.fail( e );
+			next = slice._end;
+		}
+
+		_runTimes[slice._priority].recordValue( System.nanoTime() - start );
+
+		return next;
+	}
+
+	/**
+	 * A job of one or more documents, whose results are filled in by its slices.
+	 */
+	private static class Job {
+
+		/** The inputs of the job. */
+		private ArrayList<String>							_inputs			= null;
+
+		/** The identifiers of each input, filled in as the slices run. */
+		private ArrayList<ArrayList<String>>				_results		= null;
+
+		/** If true then the literals will be mapped as well. */
+		private boolean										_keepLiterals	= false;
+
+		/** If true then the comments will be mapped as well. */
+		private boolean										_keepComments	= false;
+
+		/** The {@link TokenTable} to map the tokens with. */
+		private TokenTable									_tokenTable		= null;
+
+		/** The number of slices that haven't finished (guarded by the scheduler lock). */
+		private int											_pending		= 0;
+
+		/** The future of the whole job. */
+		private CompletableFuture<ArrayList<ArrayList<String>>>	_future			= null;
+
+		/** The future of a single document job; null for other jobs. */
+		private CompletableFuture<ArrayList<String>>		_single			= null;
+
+		/**
+		 * Instantiates a new {@link Job}.
+		 *
+		 * @param inputs the inputs of the job
+		 * @param keepLiterals if true then the literals will be mapped as well
+		 * @param keepComments if true then the comments will be mapped as well
+		 * @param tokenTable the {@link TokenTable} to map the tokens with
+		 */
+		public Job( ArrayList<String> inputs, boolean keepLiterals, boolean keepComments,
+				TokenTable tokenTable ) {
+			_inputs = inputs;
+			_keepLiterals = keepLiterals;
+			_keepComments = keepComments;
+			_tokenTable = tokenTable;
+			_future = new CompletableFuture<ArrayList<ArrayList<String>>>();
+
+			_results = new ArrayList<ArrayList<String>>( inputs.size() );
+			for( int i = 0; i < inputs.size(); i++ ) {
+				_results.add( null );
+			}
+		}
+
+		/**
+		 * Fails the futures of the job.
+		 *
+		 * @param e the exception that failed the job
+		 */
+		public void fail( Throwable e ) {
+			_future.completeExceptionally( e );
+			if( _single != null ) {
+				_single.completeExceptionally( e );
+			}
+		}
+	}
+
+	/**
+	 * A range of the documents of a {@link Job}, queued in a priority class.
+	 */
+	private static class Slice {
+
+		/** The priority class of the slice. */
+		private int		_priority		= 0;
+
+		/** The {@link Job} of the slice. */
+		private Job		_job			= null;
+
+		/** The index of the first document of the slice. */
+		private int		_start			= 0;
+
+		/** The index after the last document of the slice. */
+		private int		_end			= 0;
+
+		/** The time the slice was queued, in nanoseconds. */
+		private long	_queuedNanos	= 0;
+
+		/**
+		 * Instantiates a new {@link Slice}, queued now.
+		 *
+		 * @param priority the priority class of the slice
+		 * @param job the {@link Job} of the slice
+		 * @param start the index of the first document of the slice
+		 * @param end the index after the last document of the slice
+		 */
+		public Slice( int priority, Job job, int start, int end ) {
+			_priority = priority;
+			_job = job;
+			_start = start;
+			_end = end;
+			_queuedNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * A worker thread that runs slices till the scheduler is shut down.
+	 */
+	private class Worker implements Runnable {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+			try {
+				Slice slice = take();
+				while( slice != null ) {
+					finish( slice, runSlice( slice ) );
+					slice = take();
+				}
+			}
+			catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
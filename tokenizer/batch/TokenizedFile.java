@@ -0,0 +1,108 @@
+package ca.tokenizing_parser.tokenizer.batch;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+
+/**
+ * A file passing through an {@link IngestionPipeline}. The reader stage fills in its content, and
+ * the tokenizer stage replaces the content with the identifiers and the {@link TokenTable} they
+ * belong to.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenizedFile {
+
+	/** The path of the file. */
+	private Path				_path		= null;
+
+	/** The UTF-8 content of the file; null once it has been tokenized. */
+	private ByteBuffer			_content	= null;
+
+	/** The size of the file in bytes. */
+	private long				_size		= 0;
+
+	/** The identifiers of the file; null till it has been tokenized. */
+	private ArrayList<String>	_tokens		= null;
+
+	/** The {@link TokenTable} that the identifiers belong to. */
+	private TokenTable			_tokenTable	= null;
+
+	/**
+	 * Instantiates a new {@link TokenizedFile} that has not been read yet.
+	 *
+	 * @param path the path of the file
+	 */
+	TokenizedFile( Path path ) {
+		_path = path;
+	}
+
+	/**
+	 * Gets the path of the file.
+	 *
+	 * @return the path of the file
+	 */
+	public Path getPath() {
+		return _path;
+	}
+
+	/**
+	 * Gets the size of the file in bytes.
+	 *
+	 * @return the size of the file
+	 */
+	public long getSize() {
+		return _size;
+	}
+
+	/**
+	 * Gets the identifiers of the file.
+	 *
+	 * @return an {@link ArrayList} of {@link String} identifiers
+	 */
+	public ArrayList<String> getTokens() {
+		return _tokens;
+	}
+
+	/**
+	 * Gets the {@link TokenTable} that the identifiers belong to.
+	 *
+	 * @return the {@link TokenTable} of the identifiers
+	 */
+	public TokenTable getTokenTable() {
+		return _tokenTable;
+	}
+
+	/**
+	 * Gets the content of the file.
+	 *
+	 * @return the {@link ByteBuffer} of UTF-8 content; null once the file has been tokenized
+	 */
+	ByteBuffer getContent() {
+		return _content;
+	}
+
+	/**
+	 * Sets the content of the file, as read by the reader stage.
+	 *
+	 * @param content the {@link ByteBuffer} of UTF-8 content
+	 */
+	void setContent( ByteBuffer content ) {
+		_content = content;
+		_size = content.remaining();
+	}
+
+	/**
+	 * Sets the identifiers of the file, releasing its content.
+	 *
+	 * @param tokens the identifiers of the file
+	 * @param tokenTable the {@link TokenTable} that the identifiers belong to
+	 */
+	void setTokens( ArrayList<String> tokens, TokenTable tokenTable ) {
+		_tokens = tokens;
+		_tokenTable = tokenTable;
+		_content = null;
+	}
+}
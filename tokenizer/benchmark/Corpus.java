@@ -0,0 +1,20 @@
+package ca.tokenizing_parser.tokenizer.benchmark;
+
+import java.util.Random;
+
+/**
+ * A source of documents to be tokenized by a benchmark. A {@link Corpus} is shared by the threads
+ * of a benchmark, so each thread passes in its own {@link Random}.
+ *
+ * @author Kevin Jalbert
+ */
+public interface Corpus {
+
+	/**
+	 * Gets the next document to be tokenized.
+	 *
+	 * @param random the {@link Random} of the calling thread
+	 * @return the next document
+	 */
+	String nextDocument( Random random );
+}
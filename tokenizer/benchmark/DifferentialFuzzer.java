@@ -0,0 +1,1044 @@
+package ca.tokenizing_parser.tokenizer.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ca.tokenizing_parser.tokenizer.AutoKeyHashMap;
+import ca.tokenizing_parser.tokenizer.ParallelTokenizer;
+import ca.tokenizing_parser.tokenizer.TokenTable;
+import ca.tokenizing_parser.tokenizer.TokenizedBatch;
+import ca.tokenizing_parser.tokenizer.TokenizerEngine;
+import ca.tokenizing_parser.tokenizer.languages.JavaKeywords;
+import ca.tokenizing_parser.tokenizer.languages.LanguageKeywords;
+
+/**
+ * A differential fuzzer that runs a reference {@link TokenizerVariant} and any number of
+ * alternative ones side by side over generated inputs, and checks that they produce the same
+ * identifiers, the same replaced inputs and the same {@link TokenTable} contents, byte for byte.
+ * The reference quirks are part of the contract, so an exception of the reference (ie: a digit
+ * ending the input) must be thrown by the alternatives as well.
+ * <p>
+ * The inputs are Java-like: statements built from a small grammar that favours the corner cases
+ * of the lexing (escapes, unterminated literals and comments, <code>.51</code> and
+ * <code>3.</code> primitives, dotted object chains, comment markers within literals), soups of
+ * fragments, and random character mutations of both. Each input is run with a fresh
+ * {@link TokenTable} per variant. A failing input is shrunk by removing ever smaller chunks of it
+ * while it still fails, so the report holds a minimal case.
+ * <p>
+ * The relative throughput of the variants is measured separately over the documents of a
+ * {@link Corpus}, as the fuzzed inputs are too small to time.
+ *
+ * @author Kevin Jalbert
+ */
+public class DifferentialFuzzer {
+
+	/** The names of the categories of the {@link TokenTable}, indexed by category. */
+	private final static String[]		_CATEGORY_NAMES	= { "literals", "primitives", "objects",
+			"comments", "keywords", "delimiters"		};
+
+	/** The fragments of the fragment soups, which are concatenated without spacing. */
+	private final static String[]		_FRAGMENTS		= { "a", "b.c", "x.y.z()", "this.x",
+			"foo.bar.baz", "System.out.println(", "\"str\"", "\"es\\\"c\"", "\"\\\\\"", "'c'",
+			"'\\''", "\"unterminated", "'", "// line\n", "/* block * x */", "/** doc */", "/*",
+			"*/", "//", "/* unterminated", "\"// not a comment\"", "\"/* nor this */\"", "2.51",
+			".51", "3.", "12", "0", "1a", "0x1F", "1e5", ".", "..", " ", "\n", "\r\n", "\t", ";",
+			"(", ")", "{", "}", "[", "]", "==", "!=", "++", "+", "-", "--", "=", "<=", ">", "<<",
+			"!", "&&", "||", "?", ":", "%", "/", "*", "\\", "\\\\\"", "if", "while", "int",
+			"return", "new", "class", "a1_", "_b", "x\"s\"", "\u00e9t\u00e9", "\u4e2d"	};
+
+	/** The identifiers of the grammar. */
+	private final static String[]		_IDENTIFIERS	= { "a", "b", "value", "count", "x1",
+			"_tmp", "list", "System", "out", "self", "\u00e9l\u00e8ve" };
+
+	/** The types of the grammar. */
+	private final static String[]		_TYPES			= { "int", "double", "String", "Object",
+			"List", "char", "boolean" };
+
+	/** The binary operators of the grammar. */
+	private final static String[]		_OPERATORS		= { "+", "-", "*", "/", "%", "==", "!=",
+			"<", "<=", "&&", "||", "<<", ">>", ">>>" };
+
+	/** The characters inserted by the mutations. */
+	private final static String			_MUTATIONS		= "\"'/*.\\\n 9";
+
+	/** The {@link Charset} of the UTF-8 inputs. */
+	private final static Charset		_UTF8			= Charset.forName( "UTF-8" );
+
+	/** The reference {@link TokenizerVariant}. */
+	private TokenizerVariant			_reference		= null;
+
+	/** The alternative {@link TokenizerVariant}s compared against the reference. */
+	private ArrayList<TokenizerVariant>	_variants		= new ArrayList<TokenizerVariant>();
+
+	/** The {@link LanguageKeywords} of the {@link TokenTable}s. */
+	private LanguageKeywords			_language		= null;
+
+	/** The number of inputs to be generated. */
+	private int							_cases			= 10000;
+
+	/** The largest number of comparisons spent shrinking a failing input. */
+	private int							_maxShrinkSteps	= 2000;
+
+	/** The largest number of failing inputs to be reported (the fuzzing stops after them). */
+	private int							_maxFailures	= 10;
+
+	/** The seed of the generated inputs. */
+	private long						_seed			= 0;
+
+	/** The {@link Corpus} of the throughput measurement; null to skip it. */
+	private Corpus						_corpus			= null;
+
+	/** The number of documents of the throughput measurement. */
+	private int							_documents		= 200;
+
+	/** The failing inputs found by the last run, shrunk. */
+	private ArrayList<String>			_failures		= new ArrayList<String>();
+
+	/**
+	 * Instantiates a new {@link DifferentialFuzzer}.
+	 *
+	 * @param language the {@link LanguageKeywords} of the {@link TokenTable}s
+	 * @param reference the reference {@link TokenizerVariant}
+	 */
+	public DifferentialFuzzer( LanguageKeywords language, TokenizerVariant reference ) {
+		_language = language;
+		_reference = reference;
+	}
+
+	/**
+	 * Adds an alternative {@link TokenizerVariant} to be compared against the reference.
+	 *
+	 * @param variant the {@link TokenizerVariant} to be compared
+	 */
+	public void addVariant( TokenizerVariant variant ) {
+		_variants.add( variant );
+	}
+
+	/**
+	 * Sets the number of inputs to be generated.
+	 *
+	 * @param cases the number of inputs
+	 */
+	public void setCases( int cases ) {
+		_cases = cases;
+	}
+
+	/**
+	 * Sets the largest number of comparisons spent shrinking each failing input.
+	 *
+	 * @param maxShrinkSteps the largest number of comparisons
+	 */
+	public void setMaxShrinkSteps( int maxShrinkSteps ) {
+		_maxShrinkSteps = maxShrinkSteps;
+	}
+
+	/**
+	 * Sets the largest number of failing inputs to be reported, after which the fuzzing stops.
+	 *
+	 * @param maxFailures the largest number of failing inputs
+	 */
+	public void setMaxFailures( int maxFailures ) {
+		_maxFailures = maxFailures;
+	}
+
+	/**
+	 * Sets the seed of the generated inputs, so a run can be repeated.
+	 *
+	 * @param seed the seed
+	 */
+	public void setSeed( long seed ) {
+		_seed = seed;
+	}
+
+	/**
+	 * Sets the {@link Corpus} that the throughput of the variants is measured over.
+	 *
+	 * @param corpus the {@link Corpus} of documents; null to skip the measurement
+	 * @param documents the number of documents to be tokenized by each variant
+	 */
+	public void setThroughputCorpus( Corpus corpus, int documents ) {
+		_corpus = corpus;
+		_documents = documents;
+	}
+
+	/**
+	 * Gets the failing inputs found by the last run, after they were shrunk.
+	 *
+	 * @return the failing inputs
+	 */
+	public ArrayList<String> getFailures() {
+		return _failures;
+	}
+
+	/**
+	 * Runs the fuzzing, and then the throughput measurement, writing a report of the failing
+	 * inputs and the throughputs.
+	 *
+	 * @param output the {@link Writer} the report is written to
+	 * @return the number of failing inputs
+	 * @throws IOException if the report cannot be written
+	 */
+	public int run( Writer output ) throws IOException {
+
+		_failures.clear();
+		Random random = new Random( _seed );
+
+		int cases = 0;
+		while( cases < _cases && _failures.size() < _maxFailures ) {
+
+			String input = nextInput( random );
+			boolean keepLiterals = random.nextBoolean();
+			boolean keepComments = random.nextBoolean();
+			cases++;
+
+			String difference = compare( input, keepLiterals, keepComments );
+			if( difference == null ) {
+				continue;
+			}
+
+			String shrunk = shrink( input, keepLiterals, keepComments );
+			_failures.add( shrunk );
+
+			output.write( "FAILURE " + _failures.size() + " (case " + cases + ", keepLiterals="
+					+ keepLiterals + ", keepComments=" + keepComments + ")\n" );
+			output.write( "  input:  " + escape( shrunk ) + "\n" );
+			output.write( "  " + compare( shrunk, keepLiterals, keepComments ) + "\n" );
+		}
+
+		output.write( String.format( Locale.ROOT, "%d cases, %d variants, %d failures\n", cases,
+				_variants.size(), _failures.size() ) );
+
+		if( _corpus != null ) {
+			measureThroughput( output, random );
+		}
+		output.flush();
+
+		return _failures.size();
+	}
+
+	/**
+	 * Compares the variants against the reference over an input.
+	 *
+	 * @param input the input to be compared
+	 * @param keepLiterals if true then the literals are kept (or replaced)
+	 * @param keepComments if true then the comments are kept (or replaced)
+	 * @return a description of the first difference; null if every variant matches
+	 */
+	private String compare( String input, boolean keepLiterals, boolean keepComments ) {
+
+		String expectedTokens = describeTokenization( _reference, input, keepLiterals,
+				keepComments );
+		String expectedReplaced = describeReplacement( _reference, input, keepLiterals,
+				keepComments );
+
+		for( TokenizerVariant variant : _variants ) {
+
+			String actual = describeTokenization( variant, input, keepLiterals, keepComments );
+			if( !actual.equals( expectedTokens ) ) {
+				return variant.getName() + " tokenizeInputWithMapping differs: "
+						+ describeDifference( expectedTokens, actual );
+			}
+
+			actual = describeReplacement( variant, input, keepLiterals, keepComments );
+			if( !actual.equals( expectedReplaced ) ) {
+				return variant.getName() + " replaceRemoveLiteralsAndComments differs: "
+						+ describeDifference( expectedReplaced, actual );
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Tokenizes an input with a variant and describes the outcome: the identifiers (or the
+	 * exception) followed by the contents of the {@link TokenTable}.
+	 *
+	 * @param variant the {@link TokenizerVariant} to be run
+	 * @param input the input to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well
+	 * @param keepComments if true then the comments will be mapped as well
+	 * @return the description of the outcome
+	 */
+	private String describeTokenization( TokenizerVariant variant, String input,
+			boolean keepLiterals, boolean keepComments ) {
+
+		TokenTable tokenTable = new TokenTable( _language );
+		StringBuilder description = new StringBuilder();
+		try {
+			description.append( "tokens " ).append(
+					variant.tokenizeInputWithMapping( input, keepLiterals, keepComments,
+							tokenTable ) );
+		}
+		catch( RuntimeException e ) {
+			description.append( "exception " ).append( e.getClass().getName() );
+		}
+
+		describeTable( tokenTable, description );
+		return description.toString();
+	}
+
+	/**
+	 * Replaces the literals and comments of an input with a variant and describes the outcome:
+	 * the replaced input (or the exception) followed by the contents of the {@link TokenTable}.
+	 *
+	 * @param variant the {@link TokenizerVariant} to be run
+	 * @param input the input to be replaced
+	 * @param replaceLiterals if true the literals are replaced, otherwise removed
+	 * @param replaceComments if true the comments are replaced, otherwise removed
+	 * @return the description of the outcome
+	 */
+	private String describeReplacement( TokenizerVariant variant, String input,
+			boolean replaceLiterals, boolean replaceComments ) {
+
+		TokenTable tokenTable = new TokenTable( _language );
+		StringBuilder description = new StringBuilder();
+		try {
+			description.append( "replaced " ).append(
+					escape( variant.replaceRemoveLiteralsAndComments( input, replaceLiterals,
+							replaceComments, tokenTable ) ) );
+		}
+		catch( RuntimeException e ) {
+			description.append( "exception " ).append( e.getClass().getName() );
+		}
+
+		describeTable( tokenTable, description );
+		return description.toString();
+	}
+
+	/**
+	 * Appends the values of each category of a {@link TokenTable} in the order of their ids, one
+	 * line per category.
+	 *
+	 * @param tokenTable the {@link TokenTable} to be described
+	 * @param description the description to append to
+	 */
+	private static void describeTable( TokenTable tokenTable, StringBuilder description ) {
+
+		for( int category = 0; category < TokenTable._CATEGORY_COUNT; category++ ) {
+
+			AutoKeyHashMap<String> map = tokenTable.getMap( category );
+			description.append( '\n' ).append( _CATEGORY_NAMES[category] ).append( " [" );
+
+			int valueCount = map.getValueCount();
+			for( int id = 0; id < valueCount; id++ ) {
+				if( id > 0 ) {
+					description.append( ", " );
+				}
+				description.append( escape( map.getValue( map.getKeyForId( id ) ) ) );
+			}
+			description.append( ']' );
+		}
+	}
+
+	/**
+	 * Describes the first line that differs between two descriptions.
+	 *
+	 * @param expected the description of the reference
+	 * @param actual the description of the variant
+	 * @return the expected and actual line
+	 */
+	private static String describeDifference( String expected, String actual ) {
+
+		String[] expectedLines = expected.split( "\n", -1 );
+		String[] actualLines = actual.split( "\n", -1 );
+
+		int line = 0;
+		while( line < expectedLines.length && line < actualLines.length
+				&& expectedLines[line].equals( actualLines[line] ) ) {
+			line++;
+		}
+
+		return "expected <" + ( line < expectedLines.length ? expectedLines[line] : "" )
+				+ "> but was <" + ( line < actualLines.length ? actualLines[line] : "" ) + ">";
+	}
+
+	/**
+	 * Shrinks a failing input by removing chunks of it (halving the chunk size whenever no chunk
+	 * can be removed) while some variant still differs from the reference.
+	 *
+	 * @param input the failing input
+	 * @param keepLiterals if true then the literals are kept (or replaced)
+	 * @param keepComments if true then the comments are kept (or replaced)
+	 * @return the shrunk input, which still fails
+	 */
+	private String shrink( String input, boolean keepLiterals, boolean keepComments ) {
+
+		int steps = 0;
+		int chunk = Math.max( 1, input.length() / 2 );
+		while( steps < _maxShrinkSteps ) {
+
+			boolean removed = false;
+			int start = 0;
+			while( start < input.length() && steps < _maxShrinkSteps ) {
+
+				int end = Math.min( start + chunk, input.length() );
+				String candidate = input.substring( 0, start ) + input.substring( end );
+				steps++;
+
+				if( compare( candidate, keepLiterals, keepComments ) != null ) {
+					input = candidate;
+					removed = true;
+				}
+				else {
+					start = end;
+				}
+			}
+
+			if( !removed ) {
+				if( chunk == 1 ) {
+					break;
+				}
+				chunk /= 2;
+			}
+		}
+
+		return input;
+	}
+
+	/**
+	 * Measures the throughput of each variant over the same documents of the {@link Corpus}, after
+	 * a warm up pass, and writes it relative to the reference.
+	 *
+	 * @param output the {@link Writer} the report is written to
+	 * @param random the {@link Random} of the documents
+	 * @throws IOException if the report cannot be written
+	 */
+	private void measureThroughput( Writer output, Random random ) throws IOException {
+
+		ArrayList<String> documents = new ArrayList<String>( _documents );
+		long characters = 0;
+		for( int i = 0; i < _documents; i++ ) {
+			documents.add( _corpus.nextDocument( random ) );
+			characters += documents.get( i ).length();
+		}
+
+		ArrayList<TokenizerVariant> variants = new ArrayList<TokenizerVariant>();
+		variants.add( _reference );
+		variants.addAll( _variants );
+
+		double referenceRate = 0;
+		for( TokenizerVariant variant : variants ) {
+
+			timeDocuments( variant, documents );
+			long nanos = timeDocuments( variant, documents );
+			double rate = characters * 1e9 / Math.max( 1, nanos );
+
+			if( variant == _reference ) {
+				referenceRate = rate;
+			}
+
+			output.write( String.format( Locale.ROOT, "%-12s %10.1f KB/s  %6.2fx\n", variant
+					.getName(), rate / 1024, rate / referenceRate ) );
+		}
+	}
+
+	/**
+	 * Tokenizes the documents with a variant into a single {@link TokenTable}.
+	 *
+	 * @param variant the {@link TokenizerVariant} to be timed
+	 * @param documents the documents to be tokenized
+	 * @return the time taken in nanoseconds
+	 */
+	private long timeDocuments( TokenizerVariant variant, ArrayList<String> documents ) {
+
+		TokenTable tokenTable = new TokenTable( _language );
+		long start = System.nanoTime();
+		for( String document : documents ) {
+			try {
+				variant.tokenizeInputWithMapping( document, true, true, tokenTable );
+			}
+			catch( RuntimeException e ) {
+				// The quirks of the reference are timed as well
+			}
+		}
+
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Generates the next input: a few statements of the grammar or a soup of fragments, which is
+	 * sometimes mutated.
+	 *
+	 * @param random the {@link Random} of the inputs
+	 * @return the input
+	 */
+	private String nextInput( Random random ) {
+
+		StringBuilder input = new StringBuilder();
+		if( random.nextInt( 3 ) == 0 ) {
+			int fragments = random.nextInt( 40 );
+			for( int i = 0; i < fragments; i++ ) {
+				input.append( _FRAGMENTS[random.nextInt( _FRAGMENTS.length )] );
+			}
+		}
+		else {
+			int statements = 1 + random.nextInt( 6 );
+			for( int i = 0; i < statements; i++ ) {
+				appendStatement( input, random );
+			}
+		}
+
+		// Mutate some inputs by inserting, deleting or duplicating characters
+		if( random.nextInt( 3 ) == 0 && input.length() > 0 ) {
+			int mutations = 1 + random.nextInt( 3 );
+			for( int i = 0; i < mutations && input.length() > 0; i++ ) {
+
+				int position = random.nextInt( input.length() );
+				switch( random.nextInt( 3 ) ) {
+					case 0:
+						input.insert( position, _MUTATIONS.charAt( random.nextInt( _MUTATIONS
+								.length() ) ) );
+						break;
+					case 1:
+						input.deleteCharAt( position );
+						break;
+					default:
+						input.insert( position, input.charAt( position ) );
+						break;
+				}
+			}
+		}
+
+		return input.toString();
+	}
+
+	/**
+	 * Appends a random statement of the grammar to the input.
+	 *
+	 * @param input the input being generated
+	 * @param random the {@link Random} of the inputs
+	 */
+	private static void appendStatement( StringBuilder input, Random random ) {
+
+		switch( random.nextInt( 6 ) ) {
+			case 0: // Declaration
+				input.append( pick( _TYPES, random ) ).append( ' ' );
+				input.append( pick( _IDENTIFIERS, random ) ).append( " = " );
+				input.append( expression( random ) ).append( ";\n" );
+				break;
+			case 1: // Call on a dotted object chain
+				input.append( chain( random ) ).append( '(' ).append( expression( random ) );
+				input.append( ");\n" );
+				break;
+			case 2: // Condition
+				input.append( "if( " ).append( expression( random ) ).append( " ) { " );
+				input.append( pick( _IDENTIFIERS, random ) ).append( "++; }\n" );
+				break;
+			case 3: // Line comment
+				input.append( "// " ).append( commentText( random ) ).append( '\n' );
+				break;
+			case 4: // Block comment, which may be left unterminated
+				input.append( random.nextBoolean() ? "/* " : "/** " );
+				input.append( commentText( random ) );
+				input.append( random.nextInt( 5 ) == 0 ? "" : " */\n" );
+				break;
+			default: // Assignment of a literal
+				input.append( pick( _IDENTIFIERS, random ) ).append( " = " );
+				input.append( literal( random ) ).append( ";\n" );
+				break;
+		}
+	}
+
+	/**
+	 * Generates a random expression of the grammar.
+	 *
+	 * @param random the {@link Random} of the inputs
+	 * @return the expression
+	 */
+	private static String expression( Random random ) {
+
+		StringBuilder expression = new StringBuilder( operand( random ) );
+		int operators = random.nextInt( 3 );
+		for( int i = 0; i < operators; i++ ) {
+			expression.append( ' ' ).append( pick( _OPERATORS, random ) ).append( ' ' );
+			expression.append( operand( random ) );
+		}
+
+		return expression.toString();
+	}
+
+	/**
+	 * Generates a random operand of an expression.
+	 *
+	 * @param random the {@link Random} of the inputs
+	 * @return the operand
+	 */
+	private static String operand( Random random ) {
+
+		switch( random.nextInt( 8 ) ) {
+			case 0:
+				return String.valueOf( random.nextInt( 1000 ) );
+			case 1:
+				return random.nextInt( 100 ) + "." + random.nextInt( 100 );
+			case 2:
+				return "." + random.nextInt( 100 );
+			case 3:
+				return random.nextInt( 10 ) + ".";
+			case 4:
+				return literal( random );
+			case 5:
+				return chain( random ) + "()";
+			default:
+				return pick( _IDENTIFIERS, random );
+		}
+	}
+
+	/**
+	 * Generates a random dotted object chain.
+	 *
+	 * @param random the {@link Random} of the inputs
+	 * @return the object chain
+	 */
+	private static String chain( Random random ) {
+
+		StringBuilder chain = new StringBuilder( random.nextInt( 4 ) == 0 ? "this"
+				: pick( _IDENTIFIERS, random ) );
+		int links = random.nextInt( 4 );
+		for( int i = 0; i < links; i++ ) {
+			chain.append( '.' ).append( pick( _IDENTIFIERS, random ) );
+		}
+
+		return chain.toString();
+	}
+
+	/**
+	 * Generates a random string or character literal, with escapes and comment markers, which
+	 * may be left unterminated.
+	 *
+	 * @param random the {@link Random} of the inputs
+	 * @return the literal
+	 */
+	private static String literal( Random random ) {
+
+		char quote = random.nextInt( 4 ) == 0 ? '\'' : '"';
+		StringBuilder literal = new StringBuilder().append( quote );
+
+		int parts = random.nextInt( 4 );
+		for( int i = 0; i < parts; i++ ) {
+			switch( random.nextInt( 6 ) ) {
+				case 0:
+					literal.append( '\\' ).append( quote );
+					break;
+				case 1:
+					literal.append( "\\\\" );
+					break;
+				case 2:
+					literal.append( "\\n" );
+					break;
+				case 3:
+					literal.append( random.nextBoolean() ? "//" : "/*" );
+					break;
+				default:
+					literal.append( pick( _IDENTIFIERS, random ) );
+					break;
+			}
+		}
+
+		if( random.nextInt( 10 ) != 0 ) {
+			literal.append( quote );
+		}
+
+		return literal.toString();
+	}
+
+	/**
+	 * Generates the random text of a comment, which may hold quotes and comment markers.
+	 *
+	 * @param random the {@link Random} of the inputs
+	 * @return the comment text
+	 */
+	private static String commentText( Random random ) {
+
+		StringBuilder text = new StringBuilder( pick( _IDENTIFIERS, random ) );
+		int words = random.nextInt( 4 );
+		for( int i = 0; i < words; i++ ) {
+			text.append( ' ' ).append( random.nextInt( 5 ) == 0 ? "\"/*'" : pick( _IDENTIFIERS,
+					random ) );
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * Picks a random element.
+	 *
+	 * @param values the elements to pick from
+	 * @param random the {@link Random} of the inputs
+	 * @return the element
+	 */
+	private static String pick( String[] values, Random random ) {
+		return values[random.nextInt( values.length )];
+	}
+
+	/**
+	 * Escapes the control characters, backslashes and non-ASCII characters of a value so it fits
+	 * on one line of the report.
+	 *
+	 * @param value the value to be escaped
+	 * @return the escaped value
+	 */
+	private static String escape( String value ) {
+
+		if( value == null ) {
+			return "null";
+		}
+
+		StringBuilder escaped = new StringBuilder( value.length() + 2 ).append( '"' );
+		for( int i = 0; i < value.length(); i++ ) {
+
+			char c = value.charAt( i );
+			if( c == '\\' || c == '"' ) {
+				escaped.append( '\\' ).append( c );
+			}
+			else if( c == '\n' ) {
+				escaped.append( "\\n" );
+			}
+			else if( c < ' ' || c > '~' ) {
+				escaped.append( String.format( Locale.ROOT, "\\u%04x", (int) c ) );
+			}
+			else {
+				escaped.append( c );
+			}
+		}
+
+		return escaped.append( '"' ).toString();
+	}
+
+	/**
+	 * Gets the reference {@link TokenizerVariant}: the frozen copy of the original tokenizer (see
+	 * {@link ReferenceVariant}), which shares no code with the {@link TokenizerEngine}.
+	 *
+	 * @param language the {@link LanguageKeywords} of the variant
+	 * @return the reference {@link TokenizerVariant}
+	 */
+	public static TokenizerVariant getReference( LanguageKeywords language ) {
+		return new ReferenceVariant( language );
+	}
+
+	/**
+	 * Gets the {@link TokenizerVariant} of the {@link String} paths of the
+	 * {@link TokenizerEngine} and {@link TokenTable}.
+	 *
+	 * @param engine the {@link TokenizerEngine} of the variant
+	 * @return the {@link String} {@link TokenizerVariant}
+	 */
+	public static TokenizerVariant getStringVariant( TokenizerEngine engine ) {
+		return new StringVariant( engine );
+	}
+
+	/**
+	 * Gets the {@link TokenizerVariant} of the UTF-8 {@link ByteBuffer} paths of the
+	 * {@link TokenizerEngine} and {@link TokenTable}.
+	 *
+	 * @param engine the {@link TokenizerEngine} of the variant
+	 * @return the UTF-8 {@link TokenizerVariant}
+	 */
+	public static TokenizerVariant getUtf8Variant( TokenizerEngine engine ) {
+		return new Utf8Variant( engine );
+	}
+
+	/**
+	 * Gets the {@link TokenizerVariant} of the batches of the {@link TokenizerEngine}, which
+	 * tokenizes each input twice in one {@link TokenizedBatch} and reads the identifiers back from
+	 * the token ids. Its replacement of the literals and comments is the one of the
+	 * {@link TokenTable}.
+	 *
+	 * @param engine the {@link TokenizerEngine} of the variant
+	 * @return the batch {@link TokenizerVariant}
+	 */
+	public static TokenizerVariant getBatchVariant( TokenizerEngine engine ) {
+		return new BatchVariant( engine );
+	}
+
+	/**
+	 * Gets the {@link TokenizerVariant} of a {@link ParallelTokenizer}. Its replacement of the
+	 * literals and comments is the chunked scan of the {@link ParallelTokenizer}.
+	 *
+	 * @param engine the {@link TokenizerEngine} of the variant
+	 * @param executor the {@link ExecutorService} that runs the chunks
+	 * @param chunkSize the number of characters in each chunk (small sizes split the fuzzed inputs)
+	 * @return the parallel {@link TokenizerVariant}
+	 */
+	public static TokenizerVariant getParallelVariant( TokenizerEngine engine,
+			ExecutorService executor, int chunkSize ) {
+		return new ParallelVariant( new ParallelTokenizer( engine, executor, chunkSize ) );
+	}
+
+	/**
+	 * Fuzzes the built-in variants against the reference, printing the report. The options are:
+	 * <ul>
+	 * <li>--cases &lt;count&gt; of generated inputs
+	 * <li>--seed &lt;seed&gt; of the generated inputs
+	 * <li>--documents &lt;count&gt; of synthetic documents of the throughput measurement
+	 * <li>--chunk-size &lt;characters&gt; of the parallel variant
+	 * </ul>
+	 *
+	 * @param args the command line options
+	 * @throws Exception if the fuzzing fails
+	 */
+	public static void main( String[] args ) throws Exception {
+
+		int cases = 10000;
+		long seed = System.nanoTime();
+		int documents = 200;
+		int chunkSize = 16;
+
+		for( int i = 0; i < args.length; i++ ) {
+
+			String option = args[i];
+			if( i + 1 >= args.length ) {
+				throw new IllegalArgumentException( "Missing or unknown option: " + option );
+			}
+			else if( option.equals( "--cases" ) ) {
+				cases = Integer.parseInt( args[++i] );
+			}
+			else if( option.equals( "--seed" ) ) {
+				seed = Long.parseLong( args[++i] );
+			}
+			else if( option.equals( "--documents" ) ) {
+				documents = Integer.parseInt( args[++i] );
+			}
+			else if( option.equals( "--chunk-size" ) ) {
+				chunkSize = Integer.parseInt( args[++i] );
+			}
+			else {
+				throw new IllegalArgumentException( "Unknown option: " + option );
+			}
+		}
+
+		LanguageKeywords language = JavaKeywords.getInstance();
+		TokenizerEngine engine = new TokenizerEngine( language );
+		ExecutorService executor = Executors.newFixedThreadPool( Runtime.getRuntime()
+				.availableProcessors() );
+
+		int failures = 0;
+		try {
+			DifferentialFuzzer fuzzer = new DifferentialFuzzer( language, getReference( language ) );
+			fuzzer.addVariant( getStringVariant( engine ) );
+			fuzzer.addVariant( getUtf8Variant( engine ) );
+			fuzzer.addVariant( getBatchVariant( engine ) );
+			fuzzer.addVariant( getParallelVariant( engine, executor, chunkSize ) );
+			fuzzer.setCases( cases );
+			fuzzer.setSeed( seed );
+			fuzzer.setThroughputCorpus( new SyntheticCorpus( 1024, 64 * 1024, 100000, 0.2 ),
+					documents );
+
+			System.out.println( "Seed " + seed );
+			failures = fuzzer.run( new OutputStreamWriter( System.out, _UTF8 ) );
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		if( failures > 0 ) {
+			System.exit( 1 );
+		}
+	}
+
+	/**
+	 * The {@link TokenizerVariant} of the {@link String} paths.
+	 */
+	private static class StringVariant implements TokenizerVariant {
+
+		/** The {@link TokenizerEngine} of the variant. */
+		private TokenizerEngine	_engine	= null;
+
+		/**
+		 * Instantiates a new {@link StringVariant}.
+		 *
+		 * @param engine the {@link TokenizerEngine} of the variant
+		 */
+		public StringVariant( TokenizerEngine engine ) {
+			_engine = engine;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getName() {
+			return "string";
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+				boolean keepComments, TokenTable tokenTable ) {
+			return _engine.tokenizeInputWithMapping( input, keepLiterals, keepComments,
+					tokenTable );
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+				boolean replaceComments, TokenTable tokenTable ) {
+			return tokenTable.replaceRemoveLiteralsAndComments( input, replaceLiterals,
+					replaceComments );
+		}
+	}
+
+	/**
+	 * The {@link TokenizerVariant} of the UTF-8 {@link ByteBuffer} paths, which lex the encoded
+	 * input without decoding it first.
+	 */
+	private static class Utf8Variant implements TokenizerVariant {
+
+		/** The {@link TokenizerEngine} of the variant. */
+		private TokenizerEngine	_engine	= null;
+
+		/**
+		 * Instantiates a new {@link Utf8Variant}.
+		 *
+		 * @param engine the {@link TokenizerEngine} of the variant
+		 */
+		public Utf8Variant( TokenizerEngine engine ) {
+			_engine = engine;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getName() {
+			return "utf-8";
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+				boolean keepComments, TokenTable tokenTable ) {
+			return _engine.tokenizeInputWithMapping( ByteBuffer.wrap( input.getBytes( _UTF8 ) ),
+					keepLiterals, keepComments, tokenTable );
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+				boolean replaceComments, TokenTable tokenTable ) {
+			return tokenTable.replaceRemoveLiteralsAndComments( ByteBuffer.wrap( input
+					.getBytes( _UTF8 ) ), replaceLiterals, replaceComments );
+		}
+	}
+
+	/**
+	 * The {@link TokenizerVariant} of the batches of a {@link TokenizerEngine}. Each input is
+	 * tokenized twice in the same batch, so the second copy checks that the inputs of a batch are
+	 * kept apart (the table already holds its values, which leaves the table as it was).
+	 */
+	private static class BatchVariant implements TokenizerVariant {
+
+		/** The {@link TokenizerEngine} of the variant. */
+		private TokenizerEngine	_engine	= null;
+
+		/**
+		 * Instantiates a new {@link BatchVariant}.
+		 *
+		 * @param engine the {@link TokenizerEngine} of the variant
+		 */
+		public BatchVariant( TokenizerEngine engine ) {
+			_engine = engine;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getName() {
+			return "batch";
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+				boolean keepComments, TokenTable tokenTable ) {
+
+			TokenizedBatch batch = _engine.tokenizeBatch( Arrays.asList( input, input ),
+					keepLiterals, keepComments, tokenTable );
+			if( batch.isFailed( 0 ) ) {
+				throw batch.getFailure( 0 );
+			}
+
+			ArrayList<String> tokenKeys = batch.getTokenKeys( 0, tokenTable );
+			if( batch.isFailed( 1 ) || !batch.getTokenKeys( 1, tokenTable ).equals( tokenKeys ) ) {
+				throw new IllegalStateException( "The copies of the input differ" );
+			}
+
+			return tokenKeys;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+				boolean replaceComments, TokenTable tokenTable ) {
+			return tokenTable.replaceRemoveLiteralsAndComments( input, replaceLiterals,
+					replaceComments );
+		}
+	}
+
+	/**
+	 * The {@link TokenizerVariant} of a {@link ParallelTokenizer}.
+	 */
+	private static class ParallelVariant implements TokenizerVariant {
+
+		/** The {@link ParallelTokenizer} of the variant. */
+		private ParallelTokenizer	_tokenizer	= null;
+
+		/**
+		 * Instantiates a new {@link ParallelVariant}.
+		 *
+		 * @param tokenizer the {@link ParallelTokenizer} of the variant
+		 */
+		public ParallelVariant( ParallelTokenizer tokenizer ) {
+			_tokenizer = tokenizer;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getName() {
+			return "parallel";
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+				boolean keepComments, TokenTable tokenTable ) {
+			return _tokenizer.tokenizeInputWithMapping( input, keepLiterals, keepComments,
+					tokenTable );
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+				boolean replaceComments, TokenTable tokenTable ) {
+			return _tokenizer.replaceRemoveLiteralsAndComments( input, replaceLiterals,
+					replaceComments, tokenTable );
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package ca.tokenizing_parser.tokenizer.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A {@link Corpus} of recorded documents that are loaded into memory from the files under a
+ * directory. Documents are replayed in a random order.
+ *
+ * @author Kevin Jalbert
+ */
+public class RecordedCorpus implements Corpus {
+
+	/** The loaded documents. */
+	private ArrayList<String>	_documents	= new ArrayList<String>();
+
+	/** The total number of characters of the loaded documents. */
+	private long				_characters	= 0;
+
+	/**
+	 * Instantiates a new {@link RecordedCorpus}, loading the files under the directory that end
+	 * with the specified suffix.
+	 *
+	 * @param directory the directory to load the files from (searched recursively)
+	 * @param suffix the suffix of the files to be loaded (ie: .java); an empty suffix loads all
+	 * @param charset the {@link Charset} of the files
+	 * @throws IOException if the files cannot be read
+	 */
+	public RecordedCorpus( Path directory, final String suffix, final Charset charset )
+			throws IOException {
+
+		Files.walkFileTree( directory, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile( Path file, BasicFileAttributes attributes )
+					throws IOException {
+
+				if( attributes.isRegularFile() && file.toString().endsWith( suffix ) ) {
+					String document = new String( Files.readAllBytes( file ), charset );
+					_documents.add( document );
+					_characters += document.length();
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+		} );
+
+		if( _documents.isEmpty() ) {
+			throw new IllegalArgumentException( "No documents were found under " + directory );
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String nextDocument( Random random ) {
+		return _documents.get( random.nextInt( _documents.size() ) );
+	}
+
+	/**
+	 * Gets the number of loaded documents.
+	 *
+	 * @return the number of documents
+	 */
+	public int getDocumentCount() {
+		return _documents.size();
+	}
+
+	/**
+	 * Gets the total number of characters of the loaded documents.
+	 *
+	 * @return the number of characters
+	 */
+	public long getCharacterCount() {
+		return _characters;
+	}
+}
@@ -0,0 +1,589 @@
+package ca.tokenizing_parser.tokenizer.benchmark;
+
+import java.text.CharacterIterator;
+import java.text.StringCharacterIterator;
+import java.util.ArrayList;
+import java.util.ListIterator;
+import java.util.regex.Pattern;
+
+import ca.tokenizing_parser.tokenizer.AutoKeyHashMap;
+import ca.tokenizing_parser.tokenizer.TokenTable;
+import ca.tokenizing_parser.tokenizer.languages.LanguageKeywords;
+
+/**
+ * The reference {@link TokenizerVariant} of a {@link DifferentialFuzzer}: a frozen copy of the
+ * original <code>Tokenizer.tokenizeInputWithMapping</code> and
+ * <code>TokenTable.replaceRemoveLiteralsAndComments</code>, kept apart from the optimized engine so
+ * that any drift of the engine from the original behaviour (quirks included) shows up as a
+ * difference. The algorithm is unchanged; it only adds its values through the
+ * {@link AutoKeyHashMap}s of the {@link TokenTable} it is given, rather than being a part of it.
+ * <p>
+ * <b>Do not optimize this class.</b> It is the definition of the expected output. It is not
+ * thread safe, as the original wasn't.
+ *
+ * @author Kevin Jalbert
+ */
+public class ReferenceVariant implements TokenizerVariant {
+
+	/** The {@link StringCharacterIterator} used to navigate the input string */
+	private StringCharacterIterator	_iter			= new StringCharacterIterator( "" );
+
+	/** The tokenized input of the passed input. */
+	private ArrayList<String>		_tokenizedInput	= new ArrayList<String>();
+
+	/** The token buffer of the next token to be added. */
+	private String					_tokenBuffer	= "";
+
+	/** The {@link LanguageKeywords} being used for the tokenization. */
+	private LanguageKeywords		_language		= null;
+
+	/**
+	 * Instantiates a new {@link ReferenceVariant} with the specified {@link LanguageKeywords}.
+	 *
+	 * @param language the {@link LanguageKeywords} language to be used
+	 */
+	public ReferenceVariant( LanguageKeywords language ) {
+		_language = language;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getName() {
+		return "reference";
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable ) {
+
+		// Replace/remove the literals and comments
+		input = replaceRemoveLiteralsAndComments( input, keepLiterals, keepComments, tokenTable );
+
+		// Prepare to tokenize a new input
+		_iter.setText( input );
+		_tokenBuffer = "";
+		_tokenizedInput.clear();
+
+		// Perform the tokenization of the input
+		boolean isFirstToken = true;
+		addNextTokens( isFirstToken ); // First token is a special case
+		isFirstToken = false;
+
+		// Iterate till tokenization is done
+		while( _iter.current() != CharacterIterator.DONE ) {
+			addNextTokens( isFirstToken );
+		}
+
+		// Replace the primitives
+		_tokenizedInput = replacePrimitives( _tokenizedInput,
+				tokenTable.getMap( TokenTable._PRIMITIVE_CATEGORY ) );
+
+		// Replace the objects
+		_tokenizedInput = replaceObjects( _tokenizedInput,
+				tokenTable.getMap( TokenTable._OBJECT_CATEGORY ) );
+
+		// Replace the keywords
+		_tokenizedInput = replaceKeywords( _tokenizedInput,
+				tokenTable.getMap( TokenTable._KEYWORD_CATEGORY ) );
+
+		// Replace the delimiters
+		_tokenizedInput = replaceDelimiters( _tokenizedInput,
+				tokenTable.getMap( TokenTable._DELIMITER_CATEGORY ) );
+
+		// Deep clone the token output
+		ArrayList<String> tokenOutput = new ArrayList<String>();
+		for( String token : _tokenizedInput ) {
+			tokenOutput.add( token.toString() );
+		}
+
+		return tokenOutput;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+			boolean replaceComments, TokenTable tokenTable ) {
+
+		AutoKeyHashMap<String> literals = tokenTable.getMap( TokenTable._LITERAL_CATEGORY );
+		AutoKeyHashMap<String> comments = tokenTable.getMap( TokenTable._COMMENT_CATEGORY );
+		StringCharacterIterator iter = new StringCharacterIterator( input );
+
+		boolean done = false;
+		boolean inDoubleQuote = false;
+		boolean inSingleQuote = false;
+		boolean inLineComment = false;
+		boolean inBlockComment = false;
+		StringBuilder output = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		StringBuilder comment = new StringBuilder();
+
+		// Keep going till no more characters
+		while( !done ) {
+
+			char token = iter.current();
+			boolean escaped = false;
+
+			// Handle the token
+			if( token == CharacterIterator.DONE ) { // Handles initial token as ending
+				done = true;
+			}
+			else { // Valid token
+
+				if( token == '\"' && !inSingleQuote && !inLineComment && !inBlockComment ) {
+
+					if( inDoubleQuote ) { // Inside the double quotes
+
+						// Check to see escape status, then return position
+						int currentPosition = iter.getIndex();
+						while( iter.previous() == '\\' ) {
+							escaped = !escaped;
+						}
+						iter.setIndex( currentPosition );
+
+						if( !escaped ) { // If not escaped then exit this double quote
+
+							// If replacing then replace with an identifier; otherwise remove
+							if( replaceLiterals ) {
+								output.append( literals.addValue( "\"" + literal.toString()
+										+ "\"" ) );
+							}
+							else {
+								output.append( "\"\"" );
+							}
+							literal.delete( 0, literal.length() );
+							inDoubleQuote = false;
+						}
+						else { // In the double quote still; append token to literal output
+							literal.append( token );
+						}
+					}
+					else { // Outside double quotes; just entered them
+						inDoubleQuote = true;
+					}
+				}
+				else if( token == '\'' && !inDoubleQuote && !inLineComment && !inBlockComment ) {
+
+					if( inSingleQuote ) { // Inside the single quotes
+
+						// Check to see escape status, then return position
+						int currentPosition = iter.getIndex();
+						while( iter.previous() == '\\' ) {
+							escaped = !escaped;
+						}
+						iter.setIndex( currentPosition );
+
+						if( !escaped ) { // If not escaped then exit this single quote
+
+							// If replacing then replace with an identifier; otherwise remove
+							if( replaceLiterals ) {
+								output.append( literals.addValue( "\'" + literal.toString()
+										+ "\'" ) );
+							}
+							else {
+								output.append( "\'\'" );
+							}
+							literal.delete( 0, literal.length() );
+							inSingleQuote = false;
+						}
+						else { // In the single quote still; append token to literal output
+							literal.append( token );
+						}
+					}
+					else { // Outside single quotes; just entered them
+						inSingleQuote = true;
+					}
+				}
+				else if( token == '/' && !inDoubleQuote && !inSingleQuote ) {
+
+					if( !inBlockComment && !inLineComment ) { // Not inside a comment
+
+						int currentPosition = iter.getIndex();
+						char nextToken = iter.next();
+
+						if( nextToken == '/' ) { // The line comment starts
+							inLineComment = true;
+						}
+						else if( nextToken == '*' ) { // The block comment starts
+							inBlockComment = true;
+						}
+						else { // Reset back; false alarm
+							iter.setIndex( currentPosition );
+						}
+					}
+					else { // Inside a comment still; append token to comment output
+						comment.append( token );
+					}
+				}
+				else if( token == '\n' && inLineComment ) { // Handle end of the line comment
+
+					// If the replace flag is toggled replace with identifier; otherwise remove
+					if( replaceComments ) {
+						output.append( comments.addValue( "//" + comment.toString() + "\n" )
+								+ "\n" );
+					}
+					comment.delete( 0, comment.length() );
+					inLineComment = false;
+				}
+				else if( token == '*' && inBlockComment ) { // Handle end of the block comment
+
+					int currentPosition = iter.getIndex();
+					char nextToken = iter.next();
+
+					if( nextToken == '/' ) { // The block comment ends
+
+						// If the replace flag is toggled replace with identifier; otherwise remove
+						if( replaceComments ) {
+							output.append( comments.addValue( "/*" + comment.toString() + "*/" ) );
+						}
+						else {
+							output.append( "\n" );
+						}
+						comment.delete( 0, comment.length() );
+						inBlockComment = false;
+					}
+					else { // Reset back; false alarm
+						iter.setIndex( currentPosition );
+					}
+				}
+				else if( inDoubleQuote || inSingleQuote ) { // Inside a literal; append token
+					literal.append( token );
+				}
+				else if( inBlockComment || inLineComment ) { // Inside a comment; append token
+					comment.append( token );
+				}
+				else { // Not inside anything; append token to output
+					output.append( token );
+				}
+
+				if( iter.next() == CharacterIterator.DONE ) { // Check to see if the end is next
+					done = true;
+
+					// Wrap up the possibility that the ending was a line comment
+					if( inLineComment && replaceComments ) {
+						output.append( comments.addValue( "//" + comment.toString() ) );
+					}
+				}
+			}
+		}
+
+		return output.toString();
+	}
+
+	/**
+	 * Finds and adds the next token to the tokenized input {@link ArrayList}, using the delimiters
+	 * of the {@link LanguageKeywords}.
+	 *
+	 * @param isFirstToken if this is the first token to be found
+	 */
+	private void addNextTokens( boolean isFirstToken ) {
+
+		// Special case of handling the first token's first character
+		String character = null;
+		if( isFirstToken ) {
+			character = String.valueOf( _iter.current() );
+		}
+		else {
+			character = String.valueOf( _iter.next() );
+		}
+
+		// Check to see if the the character is a delimiter
+		if( _language.isDelimiter( character ) ) {
+
+			// Add this character to the delimiter buffer
+			String delimiterBuffer = character;
+
+			// Look farther ahead to see if a larger delimiter match can be found
+			for( int i = 0; i < _language.getLookAheadNumber(); i++ ) {
+				delimiterBuffer = delimiterBuffer.concat( String.valueOf( _iter.next() ) );
+			}
+
+			// Check to see if the farthest look ahead is a valid delimiter
+			if( _language.isDelimiter( delimiterBuffer ) ) {
+
+				// A delimiter was found, handle it and reset the buffer
+				handleDelimiter( delimiterBuffer );
+				delimiterBuffer = "";
+			}
+			else {
+
+				// Fall back one character and try to match again; for as many look ahead times
+				for( int i = 0; i < _language.getLookAheadNumber(); i++ ) {
+
+					// Try without the last look ahead
+					delimiterBuffer = delimiterBuffer.substring( 0, delimiterBuffer.length() - 1 );
+					_iter.previous();
+
+					// Check to see if the delimiter buffer matches now
+					if( _language.isDelimiter( delimiterBuffer ) ) {
+
+						// A delimiter was found, handle it and reset the buffer then break
+						handleDelimiter( delimiterBuffer );
+						delimiterBuffer = "";
+						break;
+					}
+				}
+			}
+		}
+		else if( _iter.current() == CharacterIterator.DONE ) { // The input string is done
+			handleDelimiter( " " ); // Space delimiter to ensure the last token is caught
+		}
+		else { // No delimiter was found, so add this character to the token buffer
+			_tokenBuffer = _tokenBuffer.concat( character );
+		}
+	}
+
+	/**
+	 * Handle the found delimiter appropriately along with the token buffer. Will add a token if
+	 * there is something in the token buffer, as well as ignoring the delimiter buffer if the
+	 * delimiter is a space delimiter.
+	 *
+	 * @param delimiterBuffer a string that matched a delimiter of the {@link LanguageKeywords}
+	 */
+	private void handleDelimiter( String delimiterBuffer ) {
+
+		// If token buffer is not empty then add the token buffer as a token
+		if( !_tokenBuffer.isEmpty() ) {
+			_tokenizedInput.add( _tokenBuffer );
+		}
+
+		// Add delimiter as a token only if it is not a space delimiter
+		if( !_language.isSpaceDelimiter( delimiterBuffer ) ) {
+			_tokenizedInput.add( delimiterBuffer );
+		}
+
+		// Reset the token buffer
+		_tokenBuffer = "";
+	}
+
+	/**
+	 * Replace all the primitives (ie: 2, 2.51, .51 and 2.) in the tokenized input with identifiers.
+	 *
+	 * @param tokenizedInput the tokenized input to have its primitives replaced
+	 * @param primitives the {@link AutoKeyHashMap} of the primitives
+	 * @return the tokenized input with identifiers replacing all the primitives
+	 */
+	private static ArrayList<String> replacePrimitives( ArrayList<String> tokenizedInput,
+			AutoKeyHashMap<String> primitives ) {
+
+		// Acquire a temporary copy of the tokenized input to be filled with the new tokenize input
+		ArrayList<String> tempTokenizedInput = new ArrayList<String>();
+
+		// Acquire an iterator for the tokenized input
+		ListIterator<String> iter = tokenizedInput.listIterator();
+
+		// Loop for as long as there is more tokens
+		while( iter.hasNext() ) {
+
+			// Acquire the next token and reset the primitives
+			String token = iter.next();
+			String primitiveTokenLeft = ""; // The left side of the primitive (2).51
+			String primitiveTokenRight = ""; // The right side of the primitive 2.(51)
+
+			// Check to see if the current token matches a digit
+			if( Pattern.matches( "[0-9]+", token ) ) {
+
+				primitiveTokenLeft = token;
+				token = iter.next();
+
+				// Check to see if the current token matches the decimal point for a primitive
+				if( token.equals( "." ) ) {
+
+					token = iter.next();
+
+					// Check to see if the current token matches a digit
+					if( Pattern.matches( "[0-9]+", token ) ) {
+
+						primitiveTokenRight = token;
+
+						// Replace the captured primitive with an identifier
+						tempTokenizedInput.add( primitives.addValue( primitiveTokenLeft + "."
+								+ primitiveTokenRight ) );
+					}
+					else { // Current token didn't match a digit
+
+						// Go back one token then replace the captured primitive with an identifier
+						iter.previous();
+						tempTokenizedInput.add( primitives.addValue( primitiveTokenLeft + "." ) );
+					}
+				}
+				else { // No match on the decimal point
+
+					// Go back one token then replace the captured primitive with an identifier
+					iter.previous();
+					tempTokenizedInput.add( primitives.addValue( primitiveTokenLeft ) );
+				}
+			}
+			else if( token.equals( "." ) ) { // Handles situations such without leading digit (.51)
+
+				// Temporary token is used since a reference to the original is needed if this fails
+				String tempToken = iter.next();
+
+				// Check to see if the current token matches a digit
+				if( Pattern.matches( "[0-9]+", tempToken ) ) {
+
+					primitiveTokenRight = tempToken;
+
+					// Replace the captured primitive with an identifier
+					tempTokenizedInput.add( primitives.addValue( "." + primitiveTokenRight ) );
+				}
+				else { // No match on a decimal with trailing digits; keep decimal as a token
+
+					// Go back one token then add the decimal as a token to the tokenized input
+					iter.previous();
+					tempTokenizedInput.add( token );
+				}
+			}
+			else { // No match on either a digit or a decimal
+
+				// Add the token to the tokenized input
+				tempTokenizedInput.add( token );
+			}
+		}
+
+		return tempTokenizedInput;
+	}
+
+	/**
+	 * Replace all the objects (ie: a, a.b and a.b.c) in the tokenized input with identifiers.
+	 *
+	 * @param tokenizedInput the tokenized input to have its objects replaced
+	 * @param objects the {@link AutoKeyHashMap} of the objects
+	 * @return the tokenized input with identifiers replacing all the objects
+	 */
+	private ArrayList<String> replaceObjects( ArrayList<String> tokenizedInput,
+			AutoKeyHashMap<String> objects ) {
+
+		// Acquire a temporary copy of the tokenized input to be filled with the new tokenize input
+		ArrayList<String> tempTokenizedInput = new ArrayList<String>();
+
+		// Acquire an iterator for the tokenized input
+		ListIterator<String> iter = tokenizedInput.listIterator();
+
+		// Loop for as long as there is more tokens
+		while( iter.hasNext() ) {
+
+			String token = iter.next();
+			StringBuffer object = new StringBuffer();
+
+			// Check if the token matches a valid object name, and is not a keyword or delimiter
+			if( Pattern.matches( "[_a-zA-Z][0-9a-zA-Z_]*", token ) && !_language.isKeyword( token )
+					&& !_language.isDelimiter( token ) ) {
+
+				object.append( token );
+				token = iter.next();
+				boolean done = false; // Needed in the situation where multiple calls can happen
+
+				// Keep looping till the ending of this object is reached
+				while( !done ) {
+
+					// Check to see if the token is method call delimiter
+					if( _language.isMethodCall( token ) ) {
+
+						String methodCall = token; // Keep the method call token stored
+						token = iter.next();
+
+						// Check if the token is an object name, and is not a keyword or delimiter
+						if( Pattern.matches( "[_a-zA-Z][0-9a-zA-Z_]*", token )
+								&& !_language.isKeyword( token )
+								&& !_language.isDelimiter( token ) ) {
+
+							// Append the method call and token to the object; get the next token
+							object.append( methodCall + token );
+							token = iter.next();
+						}
+						else { // No match on the token to an object
+
+							// No more objects; go back a token and replace the object with its key
+							done = true;
+							iter.previous();
+							tempTokenizedInput.add( objects.addValue( object.toString() ) );
+						}
+					}
+					else { // Token didn't match method call delimiter
+
+						// No more objects; go back a token and replace object with an identifier
+						done = true;
+						iter.previous();
+						tempTokenizedInput.add( objects.addValue( object.toString() ) );
+					}
+				}
+			}
+			else { // No match on an object
+
+				// Add the token to the tokenized input
+				tempTokenizedInput.add( token );
+			}
+		}
+
+		return tempTokenizedInput;
+	}
+
+	/**
+	 * Replace all the keywords in the tokenized input with identifiers.
+	 *
+	 * @param tokenizedInput the tokenized input to have its keywords replaced
+	 * @param keywords the {@link AutoKeyHashMap} of the keywords
+	 * @return the tokenized input with identifiers replacing all the keywords
+	 */
+	private ArrayList<String> replaceKeywords( ArrayList<String> tokenizedInput,
+			AutoKeyHashMap<String> keywords ) {
+
+		// Copy a temporary copy of the tokenized input
+		ArrayList<String> tempTokenizedInput = new ArrayList<String>();
+
+		ListIterator<String> iter = tokenizedInput.listIterator();
+
+		while( iter.hasNext() ) {
+
+			String token = iter.next();
+
+			// If the token is a keyword then add it as a keyword
+			if( _language.isKeyword( token ) ) {
+				tempTokenizedInput.add( keywords.addValue( token ) );
+			}
+			else {
+				tempTokenizedInput.add( token );
+			}
+		}
+
+		return tempTokenizedInput;
+	}
+
+	/**
+	 * Replace all the delimiters in the tokenized input with identifiers.
+	 *
+	 * @param tokenizedInput the tokenized input to have its delimiters replaced
+	 * @param delimiters the {@link AutoKeyHashMap} of the delimiters
+	 * @return the tokenized input with identifiers replacing all the delimiters
+	 */
+	private ArrayList<String> replaceDelimiters( ArrayList<String> tokenizedInput,
+			AutoKeyHashMap<String> delimiters ) {
+
+		// Copy a temporary copy of the tokenized input
+		ArrayList<String> tempTokenizedInput = new ArrayList<String>();
+
+		ListIterator<String> iter = tokenizedInput.listIterator();
+
+		while( iter.hasNext() ) {
+
+			String token = iter.next();
+
+			// If the token is a delimiter then add it as a keyword
+			if( _language.isDelimiter( token ) ) {
+				tempTokenizedInput.add( delimiters.addValue( token ) );
+			}
+			else {
+				tempTokenizedInput.add( token );
+			}
+		}
+
+		return tempTokenizedInput;
+	}
+}
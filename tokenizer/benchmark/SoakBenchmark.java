@@ -0,0 +1,674 @@
+package ca.tokenizing_parser.tokenizer.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.tokenizing_parser.tokenizer.AutoKeyHashMap;
+import ca.tokenizing_parser.tokenizer.OffHeapAutoKeyHashMap;
+import ca.tokenizing_parser.tokenizer.TokenTable;
+import ca.tokenizing_parser.tokenizer.TokenizerEngine;
+import ca.tokenizing_parser.tokenizer.languages.JavaKeywords;
+import ca.tokenizing_parser.tokenizer.languages.LanguageKeywords;
+import ca.tokenizing_parser.tokenizer.stats.LatencyHistogram;
+
+/**
+ * A long running load test that replays a {@link Corpus} through a {@link TokenizerEngine} for a
+ * set duration using a number of threads. It is meant to show how the throughput and latency
+ * change as the dictionaries of the {@link TokenTable} grow, and how a policy of clearing the
+ * {@link TokenTable} affects them.
+ * <p>
+ * The latencies of the documents are recorded in a {@link LatencyHistogram} per document size
+ * bucket. At every sample interval the throughput, the latency percentiles of the interval, the
+ * heap occupancy and the size of each category of the {@link TokenTable} are recorded. The results
+ * are written as JSON.
+ *
+ * @author Kevin Jalbert
+ */
+public class SoakBenchmark {
+
+	/** The names of the document size buckets; each bucket is four times larger than the last. */
+	public final static String[]	_SIZE_BUCKETS		= { "<1K", "1K-4K", "4K-16K", "16K-64K",
+			"64K-256K", ">=256K"						};
+
+	/** The names of the categories of the {@link TokenTable}, indexed by category. */
+	private final static String[]	_CATEGORY_NAMES		= { "literals", "primitives", "objects",
+			"comments", "keywords", "delimiters"		};
+
+	/** The {@link LanguageKeywords} of the corpus. */
+	private LanguageKeywords		_language			= null;
+
+	/** The {@link Corpus} of documents to be replayed. */
+	private Corpus					_corpus				= null;
+
+	/** The duration of the benchmark in milliseconds. */
+	private long					_durationMillis		= 60000;
+
+	/** The interval between samples in milliseconds. */
+	private long					_sampleMillis		= 1000;
+
+	/** The number of threads tokenizing documents. */
+	private int						_threads			= 1;
+
+	/** If true all threads share one {@link TokenTable}, otherwise each thread has its own. */
+	private boolean					_sharedTable		= true;
+
+	/** If true the literals and comments of the {@link TokenTable}s are stored off the heap. */
+	private boolean					_offHeap			= false;
+
+	/** If true the literals are mapped. */
+	private boolean					_keepLiterals		= true;
+
+	/** If true the comments are mapped. */
+	private boolean					_keepComments		= true;
+
+	/** The number of values at which a {@link TokenTable} is cleared; 0 to never clear. */
+	private long					_clearValues		= 0;
+
+	/** The number of documents after which a {@link TokenTable} is cleared; 0 to never clear. */
+	private long					_clearDocuments		= 0;
+
+	/** The seed of the {@link Random} of each thread. */
+	private long					_seed				= 0;
+
+	/** The {@link TokenTable}s being tokenized into. */
+	private TokenTable[]			_tables				= null;
+
+	/** The number of documents mapped to each {@link TokenTable} since it was last cleared. */
+	private long[]					_tableDocuments		= null;
+
+	/** The {@link LatencyHistogram} of each document size bucket, in nanoseconds. */
+	private LatencyHistogram[]		_latencies			= null;
+
+	/** The number of documents tokenized. */
+	private AtomicLong				_documents			= new AtomicLong();
+
+	/** The number of characters tokenized. */
+	private AtomicLong				_characters			= new AtomicLong();
+
+	/** The number of documents that failed to tokenize. */
+	private AtomicLong				_errors				= new AtomicLong();
+
+	/** The number of times a {@link TokenTable} was cleared. */
+	private AtomicLong				_clears				= new AtomicLong();
+
+	/** The time (in milliseconds) that the threads stop at. */
+	private volatile long			_deadline			= 0;
+
+	/**
+	 * Instantiates a new {@link SoakBenchmark}.
+	 *
+	 * @param language the {@link LanguageKeywords} of the corpus
+	 * @param corpus the {@link Corpus} of documents to be replayed
+	 */
+	public SoakBenchmark( LanguageKeywords language, Corpus corpus ) {
+		_language = language;
+		_corpus = corpus;
+	}
+
+	/**
+	 * Sets the duration of the benchmark.
+	 *
+	 * @param durationMillis the duration in milliseconds
+	 */
+	public void setDuration( long durationMillis ) {
+		_durationMillis = durationMillis;
+	}
+
+	/**
+	 * Sets the interval between samples.
+	 *
+	 * @param sampleMillis the interval in milliseconds
+	 */
+	public void setSampleInterval( long sampleMillis ) {
+		_sampleMillis = sampleMillis;
+	}
+
+	/**
+	 * Sets the number of threads tokenizing documents.
+	 *
+	 * @param threads the number of threads
+	 */
+	public void setThreads( int threads ) {
+		_threads = threads;
+	}
+
+	/**
+	 * Sets whether all threads share one {@link TokenTable} or each thread has its own.
+	 *
+	 * @param sharedTable if true all threads share one {@link TokenTable}
+	 */
+	public void setSharedTable( boolean sharedTable ) {
+		_sharedTable = sharedTable;
+	}
+
+	/**
+	 * Sets whether the literals and comments of the {@link TokenTable}s are stored off the heap.
+	 *
+	 * @param offHeap if true the literals and comments are stored off the heap
+	 */
+	public void setOffHeap( boolean offHeap ) {
+		_offHeap = offHeap;
+	}
+
+	/**
+	 * Sets whether the literals and comments are mapped.
+	 *
+	 * @param keepLiterals if true the literals are mapped
+	 * @param keepComments if true the comments are mapped
+	 */
+	public void setKeep( boolean keepLiterals, boolean keepComments ) {
+		_keepLiterals = keepLiterals;
+		_keepComments = keepComments;
+	}
+
+	/**
+	 * Sets the policy of clearing the {@link TokenTable}s. A {@link TokenTable} is cleared once it
+	 * holds the number of values, or once the number of documents have been mapped to it since it
+	 * was last cleared.
+	 *
+	 * @param clearValues the number of values at which to clear; 0 to ignore
+	 * @param clearDocuments the number of documents after which to clear; 0 to ignore
+	 */
+	public void setClearPolicy( long clearValues, long clearDocuments ) {
+		_clearValues = clearValues;
+		_clearDocuments = clearDocuments;
+	}
+
+	/**
+	 * Sets the seed of the {@link Random} of each thread (the thread number is added to it).
+	 *
+	 * @param seed the seed
+	 */
+	public void setSeed( long seed ) {
+		_seed = seed;
+	}
+
+	/**
+	 * Runs the benchmark for its duration, then writes the results as JSON.
+	 *
+	 * @param output the {@link Writer} to write the results to
+	 * @throws IOException if the results cannot be written
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public void run( Writer output ) throws IOException, InterruptedException {
+
+		TokenizerEngine engine = new TokenizerEngine( _language );
+
+		_tables = new TokenTable[_sharedTable ? 1 : _threads];
+		_tableDocuments = new long[_tables.length];
+		for( int i = 0; i < _tables.length; i++ ) {
+			_tables[i] = new TokenTable( _language, _offHeap );
+		}
+
+		_latencies = new LatencyHistogram[_SIZE_BUCKETS.length];
+		for( int i = 0; i < _latencies.length; i++ ) {
+			_latencies[i] = new LatencyHistogram();
+		}
+
+		long start = System.currentTimeMillis();
+		_deadline = start + _durationMillis;
+
+		ArrayList<Thread> threads = new ArrayList<Thread>();
+		for( int i = 0; i < _threads; i++ ) {
+			Thread thread = new Thread( new Worker( engine, i ), "soak-" + i );
+			thread.start();
+			threads.add( thread );
+		}
+
+		// Sample till the duration is over
+		StringBuilder samples = new StringBuilder();
+		LatencyHistogram lastLatency = new LatencyHistogram();
+		long lastTime = start;
+		long lastDocuments = 0;
+		long lastCharacters = 0;
+		while( System.currentTimeMillis() < _deadline ) {
+
+			Thread.sleep( Math.max( 1, Math.min( _sampleMillis, _deadline
+					- System.currentTimeMillis() ) ) );
+
+			long now = System.currentTimeMillis();
+			long documents = _documents.get();
+			long characters = _characters.get();
+			LatencyHistogram latency = getLatency();
+
+			// The latencies of just this interval
+			LatencyHistogram interval = latency.copy();
+			interval.subtract( lastLatency );
+
+			appendSample( samples, now - start, now - lastTime, documents, documents
+					- lastDocuments, characters - lastCharacters, interval );
+
+			lastLatency = latency;
+			lastTime = now;
+			lastDocuments = documents;
+			lastCharacters = characters;
+		}
+
+		for( Thread thread : threads ) {
+			thread.join();
+		}
+
+		writeResults( output, System.currentTimeMillis() - start, samples );
+		output.flush();
+	}
+
+	/**
+	 * Tokenizes documents of the {@link Corpus} till the deadline.
+	 */
+	private class Worker implements Runnable {
+
+		/** The {@link TokenizerEngine} that is shared by the threads. */
+		private TokenizerEngine	_engine	= null;
+
+		/** The index of the {@link TokenTable} of this thread. */
+		private int				_table	= 0;
+
+		/** The {@link Random} of this thread. */
+		private Random			_random	= null;
+
+		/**
+		 * Instantiates a new {@link Worker}.
+		 *
+		 * @param engine the {@link TokenizerEngine} that is shared by the threads
+		 * @param number the number of this thread
+		 */
+		Worker( TokenizerEngine engine, int number ) {
+			_engine = engine;
+			_table = _sharedTable ? 0 : number;
+			_random = new Random( _seed + number );
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void run() {
+
+			TokenTable table = _tables[_table];
+			while( System.currentTimeMillis() < _deadline ) {
+
+				String document = _corpus.nextDocument( _random );
+
+				long start = System.nanoTime();
+				try {
+					_engine.tokenizeInputWithMapping( document, _keepLiterals, _keepComments, table );
+				}
+				catch( RuntimeException e ) {
+					_errors.incrementAndGet();
+					continue;
+				}
+				_latencies[getSizeBucket( document.length() )].recordValue( System.nanoTime() - start );
+
+				_documents.incrementAndGet();
+				_characters.addAndGet( document.length() );
+
+				applyClearPolicy( _table );
+			}
+		}
+	}
+
+	/**
+	 * Clears the {@link TokenTable} if the clearing policy says so.
+	 *
+	 * @param index the index of the {@link TokenTable}
+	 */
+	private void applyClearPolicy( int index ) {
+
+		if( _clearValues <= 0 && _clearDocuments <= 0 ) {
+			return;
+		}
+
+		TokenTable table = _tables[index];
+		table.getLock().lock();
+		try {
+
+			_tableDocuments[index]++;
+			if( ( _clearDocuments > 0 && _tableDocuments[index] >= _clearDocuments )
+					|| ( _clearValues > 0 && getValueCount( table ) >= _clearValues ) ) {
+				table.clearAll();
+				_tableDocuments[index] = 0;
+				_clears.incrementAndGet();
+			}
+		}
+		finally {
+			table.getLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the latencies of all document size buckets combined.
+	 *
+	 * @return the combined {@link LatencyHistogram}
+	 */
+	private LatencyHistogram getLatency() {
+
+		LatencyHistogram latency = new LatencyHistogram();
+		for( LatencyHistogram bucket : _latencies ) {
+			latency.add( bucket );
+		}
+
+		return latency;
+	}
+
+	/**
+	 * Appends a sample as a JSON object.
+	 *
+	 * @param samples the JSON of the samples so far
+	 * @param elapsed the milliseconds since the start
+	 * @param interval the milliseconds since the last sample
+	 * @param documents the number of documents tokenized so far
+	 * @param intervalDocuments the number of documents tokenized in the interval
+	 * @param intervalCharacters the number of characters tokenized in the interval
+	 * @param latency the {@link LatencyHistogram} of the interval
+	 */
+	private void appendSample( StringBuilder samples, long elapsed, long interval, long documents,
+			long intervalDocuments, long intervalCharacters, LatencyHistogram latency ) {
+
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		double seconds = Math.max( interval, 1 ) / 1000.0;
+
+		if( samples.length() > 0 ) {
+			samples.append( ",\n" );
+		}
+
+		samples.append( "    {\"elapsedMillis\": " ).append( elapsed );
+		samples.append( ", \"documents\": " ).append( documents );
+		samples.append( ", \"documentsPerSecond\": " ).append( format( intervalDocuments / seconds ) );
+		samples.append( ", \"charactersPerSecond\": " )
+				.append( format( intervalCharacters / seconds ) );
+		samples.append( ", \"latencyMicros\": " );
+		appendLatency( samples, latency );
+		samples.append( ", \"heapUsedBytes\": " ).append( heap.getUsed() );
+		samples.append( ", \"heapCommittedBytes\": " ).append( heap.getCommitted() );
+		samples.append( ", \"clears\": " ).append( _clears.get() );
+		samples.append( ", \"tableSizes\": " );
+		appendTableSizes( samples );
+		samples.append( '}' );
+	}
+
+	/**
+	 * Appends the number of values of each category, summed over the {@link TokenTable}s, as a JSON
+	 * object. The arena size is included if the literals and comments are stored off the heap.
+	 *
+	 * @param json the JSON being built
+	 */
+	private void appendTableSizes( StringBuilder json ) {
+
+		long[] sizes = new long[TokenTable._CATEGORY_COUNT];
+		long arena = 0;
+		for( TokenTable table : _tables ) {
+
+			table.getLock().lock();
+			try {
+				for( int category = 0; category < sizes.length; category++ ) {
+
+					AutoKeyHashMap<String> map = table.getMap( category );
+					sizes[category] += map.getSize();
+					if( map instanceof OffHeapAutoKeyHashMap ) {
+						arena += ( (OffHeapAutoKeyHashMap) map ).getArenaSize();
+					}
+				}
+			}
+			finally {
+				table.getLock().unlock();
+			}
+		}
+
+		json.append( '{' );
+		for( int category = 0; category < sizes.length; category++ ) {
+			json.append( '"' ).append( _CATEGORY_NAMES[category] ).append( "\": " );
+			json.append( sizes[category] ).append( ", " );
+		}
+		json.append( "\"arenaBytes\": " ).append( arena ).append( '}' );
+	}
+
+	/**
+	 * Appends the count, mean and percentiles (in microseconds) of a {@link LatencyHistogram} as a
+	 * JSON object.
+	 *
+	 * @param json the JSON being built
+	 * @param latency the {@link LatencyHistogram} in nanoseconds
+	 */
+	private static void appendLatency( StringBuilder json, LatencyHistogram latency ) {
+		json.append( "{\"count\": " ).append( latency.getCount() );
+		json.append( ", \"mean\": " ).append( format( latency.getMean() / 1000 ) );
+		json.append( ", \"p50\": " ).append( format( latency.getValueAtPercentile( 50 ) / 1000.0 ) );
+		json.append( ", \"p99\": " ).append( format( latency.getValueAtPercentile( 99 ) / 1000.0 ) );
+		json.append( ", \"p999\": " )
+				.append( format( latency.getValueAtPercentile( 99.9 ) / 1000.0 ) );
+		json.append( ", \"max\": " ).append( format( latency.getMax() / 1000.0 ) ).append( '}' );
+	}
+
+	/**
+	 * Writes the configuration, the totals, the latencies of each document size bucket and the
+	 * samples as a JSON object.
+	 *
+	 * @param output the {@link Writer} to write the results to
+	 * @param elapsed the milliseconds the benchmark ran for
+	 * @param samples the JSON of the samples
+	 * @throws IOException if the results cannot be written
+	 */
+	private void writeResults( Writer output, long elapsed, StringBuilder samples )
+			throws IOException {
+
+		double seconds = Math.max( elapsed, 1 ) / 1000.0;
+		StringBuilder json = new StringBuilder();
+
+		json.append( "{\n  \"config\": {\"threads\": " ).append( _threads );
+		json.append( ", \"durationMillis\": " ).append( _durationMillis );
+		json.append( ", \"sampleMillis\": " ).append( _sampleMillis );
+		json.append( ", \"sharedTable\": " ).append( _sharedTable );
+		json.append( ", \"offHeap\": " ).append( _offHeap );
+		json.append( ", \"keepLiterals\": " ).append( _keepLiterals );
+		json.append( ", \"keepComments\": " ).append( _keepComments );
+		json.append( ", \"clearValues\": " ).append( _clearValues );
+		json.append( ", \"clearDocuments\": " ).append( _clearDocuments );
+		json.append( ", \"seed\": " ).append( _seed ).append( "},\n" );
+
+		json.append( "  \"elapsedMillis\": " ).append( elapsed ).append( ",\n" );
+		json.append( "  \"documents\": " ).append( _documents.get() ).append( ",\n" );
+		json.append( "  \"characters\": " ).append( _characters.get() ).append( ",\n" );
+		json.append( "  \"errors\": " ).append( _errors.get() ).append( ",\n" );
+		json.append( "  \"clears\": " ).append( _clears.get() ).append( ",\n" );
+		json.append( "  \"documentsPerSecond\": " )
+				.append( format( _documents.get() / seconds ) ).append( ",\n" );
+		json.append( "  \"charactersPerSecond\": " )
+				.append( format( _characters.get() / seconds ) ).append( ",\n" );
+
+		json.append( "  \"latencyMicros\": {\n    \"all\": " );
+		appendLatency( json, getLatency() );
+		for( int i = 0; i < _SIZE_BUCKETS.length; i++ ) {
+			json.append( ",\n    \"" ).append( _SIZE_BUCKETS[i] ).append( "\": " );
+			appendLatency( json, _latencies[i] );
+		}
+		json.append( "\n  },\n" );
+
+		json.append( "  \"tableSizes\": " );
+		appendTableSizes( json );
+		json.append( ",\n  \"samples\": [\n" ).append( samples ).append( "\n  ]\n}\n" );
+
+		output.write( json.toString() );
+	}
+
+	/**
+	 * Gets the size bucket of a document.
+	 *
+	 * @param length the length of the document in characters
+	 * @return the index of the size bucket
+	 */
+	private static int getSizeBucket( int length ) {
+
+		int bucket = 0;
+		for( long limit = 1024; length >= limit && bucket < _SIZE_BUCKETS.length - 1; limit *= 4 ) {
+			bucket++;
+		}
+
+		return bucket;
+	}
+
+	/**
+	 * Gets the number of values held by the {@link TokenTable}.
+	 *
+	 * @param table the {@link TokenTable}
+	 * @return the number of values of all categories
+	 */
+	private static long getValueCount( TokenTable table ) {
+
+		long count = 0;
+		for( int category = 0; category < TokenTable._CATEGORY_COUNT; category++ ) {
+			count += table.getMap( category ).getSize();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Formats a number for the JSON output.
+	 *
+	 * @param value the number
+	 * @return the formatted number
+	 */
+	private static String format( double value ) {
+		return String.format( Locale.ROOT, "%.3f", value );
+	}
+
+	/**
+	 * Runs the benchmark from the command line. The options are:
+	 * <ul>
+	 * <li>--duration &lt;seconds&gt; (default 60)
+	 * <li>--sample &lt;seconds&gt; (default 1)
+	 * <li>--threads &lt;count&gt; (default 1)
+	 * <li>--corpus &lt;directory&gt; to replay recorded .java files instead of a synthetic corpus
+	 * <li>--suffix &lt;suffix&gt; of the recorded files (default .java)
+	 * <li>--output &lt;file&gt; of the JSON results (default soak-results.json)
+	 * <li>--private-tables to give each thread its own {@link TokenTable}
+	 * <li>--off-heap to store the literals and comments off the heap
+	 * <li>--drop-literals and --drop-comments to not map them
+	 * <li>--clear-values &lt;count&gt; and --clear-documents &lt;count&gt; as the clearing policy
+	 * <li>--seed &lt;seed&gt;
+	 * <li>--min-size &lt;characters&gt;, --max-size &lt;characters&gt; and --identifiers
+	 * &lt;count&gt; of the synthetic corpus
+	 * </ul>
+	 *
+	 * @param args the command line options
+	 * @throws Exception if the benchmark fails
+	 */
+	public static void main( String[] args ) throws Exception {
+
+		String corpusDirectory = null;
+		String suffix = ".java";
+		String output = "soak-results.json";
+		long duration = 60;
+		long sample = 1;
+		int threads = 1;
+		boolean sharedTable = true;
+		boolean offHeap = false;
+		boolean keepLiterals = true;
+		boolean keepComments = true;
+		long clearValues = 0;
+		long clearDocuments = 0;
+		long seed = 0;
+		int minSize = 256;
+		int maxSize = 64 * 1024;
+		int identifiers = 100000;
+
+		for( int i = 0; i < args.length; i++ ) {
+
+			String option = args[i];
+			if( option.equals( "--private-tables" ) ) {
+				sharedTable = false;
+			}
+			else if( option.equals( "--off-heap" ) ) {
+				offHeap = true;
+			}
+			else if( option.equals( "--drop-literals" ) ) {
+				keepLiterals = false;
+			}
+			else if( option.equals( "--drop-comments" ) ) {
+				keepComments = false;
+			}
+			else if( i + 1 >= args.length ) {
+				throw new IllegalArgumentException( "Missing or unknown option: " + option );
+			}
+			else if( option.equals( "--duration" ) ) {
+				duration = Long.parseLong( args[++i] );
+			}
+			else if( option.equals( "--sample" ) ) {
+				sample = Long.parseLong( args[++i] );
+			}
+			else if( option.equals( "--threads" ) ) {
+				threads = Integer.parseInt( args[++i] );
+			}
+			else if( option.equals( "--corpus" ) ) {
+				corpusDirectory = args[++i];
+			}
+			else if( option.equals( "--suffix" ) ) {
+				suffix = args[++i];
+			}
+			else if( option.equals( "--output" ) ) {
+				output = args[++i];
+			}
+			else if( option.equals( "--clear-values" ) ) {
+				clearValues = Long.parseLong( args[++i] );
+			}
+			else if( option.equals( "--clear-documents" ) ) {
+				clearDocuments = Long.parseLong( args[++i] );
+			}
+			else if( option.equals( "--seed" ) ) {
+				seed = Long.parseLong( args[++i] );
+			}
+			else if( option.equals( "--min-size" ) ) {
+				minSize = Integer.parseInt( args[++i] );
+			}
+			else if( option.equals( "--max-size" ) ) {
+				maxSize = Integer.parseInt( args[++i] );
+			}
+			else if( option.equals( "--identifiers" ) ) {
+				identifiers = Integer.parseInt( args[++i] );
+			}
+			else {
+				throw new IllegalArgumentException( "Unknown option: " + option );
+			}
+		}
+
+		Corpus corpus = null;
+		if( corpusDirectory != null ) {
+			corpus = new RecordedCorpus( Paths.get( corpusDirectory ), suffix,
+					Charset.forName( "UTF-8" ) );
+		}
+		else {
+			corpus = new SyntheticCorpus( minSize, maxSize, identifiers, 0.2 );
+		}
+
+		SoakBenchmark benchmark = new SoakBenchmark( JavaKeywords.getInstance(), corpus );
+		benchmark.setDuration( duration * 1000 );
+		benchmark.setSampleInterval( sample * 1000 );
+		benchmark.setThreads( threads );
+		benchmark.setSharedTable( sharedTable );
+		benchmark.setOffHeap( offHeap );
+		benchmark.setKeep( keepLiterals, keepComments );
+		benchmark.setClearPolicy( clearValues, clearDocuments );
+		benchmark.setSeed( seed );
+
+		Path path = Paths.get( output );
+		Writer writer = Files.newBufferedWriter( path, Charset.forName( "UTF-8" ) );
+		try {
+			benchmark.run( writer );
+		}
+		finally {
+			writer.close();
+		}
+
+		System.out.println( "Results written to " + path.toAbsolutePath() );
+	}
+}
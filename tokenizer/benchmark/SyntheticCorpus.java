@@ -0,0 +1,249 @@
+package ca.tokenizing_parser.tokenizer.benchmark;
+
+import java.util.Random;
+
+/**
+ * A {@link Corpus} of generated Java styled documents. The identifiers are drawn from a large
+ * space with a skewed (log-uniform) distribution, and a fraction of the literals and comments are
+ * unique, so that the dictionaries of a {@link ca.tokenizing_parser.tokenizer.TokenTable} keep
+ * growing the way they do over a real corpus.
+ *
+ * @author Kevin Jalbert
+ */
+public class SyntheticCorpus implements Corpus {
+
+	/** The types used for declarations. */
+	private final static String[]	_TYPES			= { "int", "long", "double", "boolean", "char",
+			"String", "Object", "List", "Map"		};
+
+	/** The binary operators used in expressions. */
+	private final static String[]	_OPERATORS		= { "+", "-", "*", "/", "%", "==", "!=", "<",
+			"<=", ">", ">=", "&&", "||", "&", "|", "^", "<<", ">>" };
+
+	/** The smallest size (in characters) of a document. */
+	private int						_minSize		= 256;
+
+	/** The largest size (in characters) of a document. */
+	private int						_maxSize		= 64 * 1024;
+
+	/** The number of distinct identifiers that can be used. */
+	private int						_identifierSpace	= 100000;
+
+	/** The fraction of the literals and comments that are unique. */
+	private double					_uniqueRate		= 0.2;
+
+	/**
+	 * Instantiates a new {@link SyntheticCorpus} using the default settings.
+	 */
+	public SyntheticCorpus() {
+	}
+
+	/**
+	 * Instantiates a new {@link SyntheticCorpus}.
+	 *
+	 * @param minSize the smallest size (in characters) of a document
+	 * @param maxSize the largest size (in characters) of a document
+	 * @param identifierSpace the number of distinct identifiers that can be used
+	 * @param uniqueRate the fraction (0 to 1) of the literals and comments that are unique
+	 */
+	public SyntheticCorpus( int minSize, int maxSize, int identifierSpace, double uniqueRate ) {
+
+		if( minSize < 1 || maxSize < minSize || identifierSpace < 1 ) {
+			throw new IllegalArgumentException( "Invalid corpus settings" );
+		}
+
+		_minSize = minSize;
+		_maxSize = maxSize;
+		_identifierSpace = identifierSpace;
+		_uniqueRate = uniqueRate;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The size of the document is log-uniform between the smallest and largest size.
+	 */
+	@Override
+	public String nextDocument( Random random ) {
+
+		int size = (int) ( _minSize * Math.pow( (double) _maxSize / _minSize, random.nextDouble() ) );
+		StringBuilder document = new StringBuilder( size + 256 );
+
+		document.append( "package " ).append( identifier( random ) ).append( ";\n\n" );
+		document.append( "public class " ).append( identifier( random ) ).append( " {\n" );
+
+		// Add methods till the document is large enough
+		while( document.length() < size ) {
+			appendMethod( document, random, size );
+		}
+
+		document.append( "}\n" );
+
+		return document.toString();
+	}
+
+	/**
+	 * Appends a method of random statements to the document.
+	 *
+	 * @param document the document being generated
+	 * @param random the {@link Random} of the calling thread
+	 * @param size the size the document is being generated to
+	 */
+	private void appendMethod( StringBuilder document, Random random, int size ) {
+
+		if( random.nextInt( 3 ) == 0 ) {
+			appendComment( document, random, "\t" );
+		}
+
+		document.append( "\tpublic " ).append( type( random ) ).append( ' ' );
+		document.append( identifier( random ) ).append( "( " );
+		document.append( type( random ) ).append( ' ' ).append( identifier( random ) );
+		document.append( " ) {\n" );
+
+		int statements = 1 + random.nextInt( 20 );
+		for( int i = 0; i < statements && document.length() < size; i++ ) {
+			appendStatement( document, random );
+		}
+
+		document.append( "\t\treturn " ).append( expression( random ) ).append( ";\n\t}\n\n" );
+	}
+
+	/**
+	 * Appends a random statement to the document.
+	 *
+	 * @param document the document being generated
+	 * @param random the {@link Random} of the calling thread
+	 */
+	private void appendStatement( StringBuilder document, Random random ) {
+
+		switch( random.nextInt( 6 ) ) {
+			case 0: // Declaration
+				document.append( "\t\t" ).append( type( random ) ).append( ' ' );
+				document.append( identifier( random ) ).append( " = " );
+				document.append( expression( random ) ).append( ";\n" );
+				break;
+			case 1: // Method call on an object
+				document.append( "\t\t" ).append( identifier( random ) ).append( '.' );
+				document.append( identifier( random ) ).append( "( " );
+				document.append( expression( random ) ).append( " );\n" );
+				break;
+			case 2: // Condition
+				document.append( "\t\tif( " ).append( expression( random ) ).append( " ) {\n\t\t\t" );
+				document.append( identifier( random ) ).append( "++;\n\t\t}\n" );
+				break;
+			case 3: // Loop
+				document.append( "\t\tfor( int i = 0; i < " ).append( identifier( random ) );
+				document.append( ".length; i++ ) {\n\t\t\t" ).append( identifier( random ) );
+				document.append( " += " ).append( expression( random ) ).append( ";\n\t\t}\n" );
+				break;
+			case 4: // Comment
+				appendComment( document, random, "\t\t" );
+				break;
+			default: // Assignment of a literal
+				document.append( "\t\t" ).append( identifier( random ) ).append( " = " );
+				document.append( literal( random ) ).append( ";\n" );
+				break;
+		}
+	}
+
+	/**
+	 * Appends a random line or block comment to the document.
+	 *
+	 * @param document the document being generated
+	 * @param random the {@link Random} of the calling thread
+	 * @param indent the indentation of the comment
+	 */
+	private void appendComment( StringBuilder document, Random random, String indent ) {
+
+		String text = random.nextDouble() < _uniqueRate ? "Note " + random.nextLong()
+				: "Handles the " + identifier( random );
+
+		if( random.nextBoolean() ) {
+			document.append( indent ).append( "// " ).append( text ).append( '\n' );
+		}
+		else {
+			document.append( indent ).append( "/*\n" ).append( indent ).append( " * " );
+			document.append( text ).append( "\n" ).append( indent ).append( " */\n" );
+		}
+	}
+
+	/**
+	 * Generates a random expression.
+	 *
+	 * @param random the {@link Random} of the calling thread
+	 * @return the expression
+	 */
+	private String expression( Random random ) {
+
+		StringBuilder expression = new StringBuilder( operand( random ) );
+
+		int operators = random.nextInt( 4 );
+		for( int i = 0; i < operators; i++ ) {
+			expression.append( ' ' ).append( _OPERATORS[random.nextInt( _OPERATORS.length )] );
+			expression.append( ' ' ).append( operand( random ) );
+		}
+
+		return expression.toString();
+	}
+
+	/**
+	 * Generates a random operand of an expression.
+	 *
+	 * @param random the {@link Random} of the calling thread
+	 * @return the operand
+	 */
+	private String operand( Random random ) {
+
+		switch( random.nextInt( 5 ) ) {
+			case 0:
+				return String.valueOf( random.nextInt( 1000 ) );
+			case 1:
+				return random.nextInt( 100 ) + "." + random.nextInt( 100 );
+			case 2:
+				return literal( random );
+			case 3:
+				return identifier( random ) + "." + identifier( random ) + "()";
+			default:
+				return identifier( random );
+		}
+	}
+
+	/**
+	 * Generates a random string or character literal.
+	 *
+	 * @param random the {@link Random} of the calling thread
+	 * @return the literal
+	 */
+	private String literal( Random random ) {
+
+		if( random.nextInt( 4 ) == 0 ) {
+			return "'" + (char) ( 'a' + random.nextInt( 26 ) ) + "'";
+		}
+
+		if( random.nextDouble() < _uniqueRate ) {
+			return "\"value " + random.nextLong() + "\"";
+		}
+
+		return "\"" + identifier( random ) + " \\\"quoted\\\"\"";
+	}
+
+	/**
+	 * Generates a random identifier, where lower numbered identifiers are far more likely.
+	 *
+	 * @param random the {@link Random} of the calling thread
+	 * @return the identifier
+	 */
+	private String identifier( Random random ) {
+		return "id" + (int) Math.pow( _identifierSpace, random.nextDouble() );
+	}
+
+	/**
+	 * Picks a random type.
+	 *
+	 * @param random the {@link Random} of the calling thread
+	 * @return the type
+	 */
+	private static String type( Random random ) {
+		return _TYPES[random.nextInt( _TYPES.length )];
+	}
+}
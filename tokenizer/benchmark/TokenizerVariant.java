@@ -0,0 +1,50 @@
+package ca.tokenizing_parser.tokenizer.benchmark;
+
+import java.util.ArrayList;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+import ca.tokenizing_parser.tokenizer.TokenizerEngine;
+
+/**
+ * An implementation of the tokenization and literal and comment replacement that is compared
+ * against the reference implementation by a {@link DifferentialFuzzer}. An alternative engine only
+ * has to produce the same identifiers, replaced inputs and {@link TokenTable} contents as the
+ * reference for every input (including the exceptions it throws).
+ *
+ * @author Kevin Jalbert
+ */
+public interface TokenizerVariant {
+
+	/**
+	 * Gets the name of the variant used in the reports.
+	 *
+	 * @return the name of the variant
+	 */
+	String getName();
+
+	/**
+	 * Tokenizes the input into identifiers, like
+	 * {@link TokenizerEngine#tokenizeInputWithMapping(String, boolean, boolean, TokenTable)}.
+	 *
+	 * @param input the input {@link String} to be tokenized
+	 * @param keepLiterals if true then the literals will be mapped as well
+	 * @param keepComments if true then the comments will be mapped as well
+	 * @param tokenTable the {@link TokenTable} to map the tokens with
+	 * @return an {@link ArrayList} of {@link String} identifiers of the input
+	 */
+	ArrayList<String> tokenizeInputWithMapping( String input, boolean keepLiterals,
+			boolean keepComments, TokenTable tokenTable );
+
+	/**
+	 * Replaces or removes the literals and comments of the input, like
+	 * {@link TokenTable#replaceRemoveLiteralsAndComments(String, boolean, boolean)}.
+	 *
+	 * @param input the input {@link String}
+	 * @param replaceLiterals if true the literals are replaced with identifiers, otherwise removed
+	 * @param replaceComments if true the comments are replaced with identifiers, otherwise removed
+	 * @param tokenTable the {@link TokenTable} to map the literals and comments with
+	 * @return the input with its literals and comments replaced or removed
+	 */
+	String replaceRemoveLiteralsAndComments( String input, boolean replaceLiterals,
+			boolean replaceComments, TokenTable tokenTable );
+}
@@ -0,0 +1,308 @@
+package ca.tokenizing_parser.tokenizer.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+
+/**
+ * Computes a shortest edit script between two token streams of the same {@link TokenTable} (ie:
+ * two versions of a document), comparing their token ids as <code>int</code>s.
+ * <p>
+ * The common prefix and suffix are trimmed first, and what remains is diffed with the linear space
+ * refinement of Myers' O(ND) algorithm, which finds the middle snake of an optimal path and
+ * recurses on both sides of it. The time is O((N + M) D) where D is the number of inserted and
+ * deleted tokens, so large documents with small changes are diffed in close to linear time, and
+ * the memory is O(N + M).
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenDiff {
+
+	/** The old token ids. */
+	private int[]		_old		= null;
+
+	/** The new token ids. */
+	private int[]		_new		= null;
+
+	/** If true the old token at the index is deleted. */
+	private boolean[]	_deleted	= null;
+
+	/** If true the new token at the index is inserted. */
+	private boolean[]	_inserted	= null;
+
+	/** The furthest reaching x of the forward paths, indexed by diagonal plus the offset. */
+	private int[]		_forward	= null;
+
+	/** The furthest reaching x of the reverse paths, indexed by diagonal plus the offset. */
+	private int[]		_reverse	= null;
+
+	/** The offset of diagonal 0 within the path arrays. */
+	private int			_offset		= 0;
+
+	/** The start and end (x, y, u, v) of the last middle snake, relative to its subproblem. */
+	private int[]		_snake		= new int[4];
+
+	/**
+	 * Instantiates a new {@link TokenDiff} of two token streams.
+	 *
+	 * @param oldIds the old token ids
+	 * @param newIds the new token ids
+	 */
+	private TokenDiff( int[] oldIds, int[] newIds ) {
+		_old = oldIds;
+		_new = newIds;
+		_deleted = new boolean[oldIds.length];
+		_inserted = new boolean[newIds.length];
+	}
+
+	/**
+	 * Diffs two tokenized inputs (that have been mapped into identifiers with the same
+	 * {@link TokenTable}).
+	 *
+	 * @param oldInput the old {@link ArrayList} of {@link String} identifiers
+	 * @param newInput the new {@link ArrayList} of {@link String} identifiers
+	 * @param tokenTable the {@link TokenTable} that the identifiers belong to
+	 * @return the edit script from the old to the new tokenized input
+	 */
+	public static List<TokenEdit> diff( ArrayList<String> oldInput, ArrayList<String> newInput,
+			TokenTable tokenTable ) {
+		return diff( tokenTable.getTokenIds( oldInput ), tokenTable.getTokenIds( newInput ) );
+	}
+
+	/**
+	 * Diffs two token streams of token ids (see {@link TokenTable#getTokenIds(ArrayList)}).
+	 *
+	 * @param oldIds the old token ids
+	 * @param newIds the new token ids
+	 * @return the edit script from the old to the new token ids, as alternating runs of kept,
+	 *         deleted and inserted tokens
+	 */
+	public static List<TokenEdit> diff( int[] oldIds, int[] newIds ) {
+
+		TokenDiff diff = new TokenDiff( oldIds, newIds );
+		diff.compare( 0, oldIds.length, 0, newIds.length );
+
+		return diff.getEdits();
+	}
+
+	/**
+	 * Gets the number of deleted and inserted tokens of an edit script (the edit distance).
+	 *
+	 * @param edits the edit script
+	 * @return the number of deleted and inserted tokens
+	 */
+	public static int getDistance( List<TokenEdit> edits ) {
+
+		int distance = 0;
+		for( TokenEdit edit : edits ) {
+			if( edit.getType() != TokenEdit._KEEP ) {
+				distance += edit.getLength();
+			}
+		}
+
+		return distance;
+	}
+
+	/**
+	 * Marks the deleted and inserted tokens of a range of the old and new token ids.
+	 *
+	 * @param oldStart the start of the old range
+	 * @param oldEnd the end (exclusive) of the old range
+	 * @param newStart the start of the new range
+	 * @param newEnd the end (exclusive) of the new range
+	 */
+	private void compare( int oldStart, int oldEnd, int newStart, int newEnd ) {
+
+		int[] a = _old;
+		int[] b = _new;
+
+		// Trim the common prefix and suffix, which need no search
+		while( oldStart < oldEnd && newStart < newEnd && a[oldStart] == b[newStart] ) {
+			oldStart++;
+			newStart++;
+		}
+		while( oldStart < oldEnd && newStart < newEnd && a[oldEnd - 1] == b[newEnd - 1] ) {
+			oldEnd--;
+			newEnd--;
+		}
+
+		if( oldStart == oldEnd ) {
+			for( int j = newStart; j < newEnd; j++ ) {
+				_inserted[j] = true;
+			}
+			return;
+		}
+		if( newStart == newEnd ) {
+			for( int i = oldStart; i < oldEnd; i++ ) {
+				_deleted[i] = true;
+			}
+			return;
+		}
+
+		// Both sides have tokens left and differ at both ends, so the distance is at least 2 and
+		// each side of the middle snake is a smaller problem
+		findMiddleSnake( oldStart, oldEnd, newStart, newEnd );
+		int x = oldStart + _snake[0];
+		int y = newStart + _snake[1];
+		int u = oldStart + _snake[2];
+		int v = newStart + _snake[3];
+
+		compare( oldStart, x, newStart, y );
+		compare( u, oldEnd, v, newEnd );
+	}
+
+	/**
+	 * Finds the middle snake of an optimal path through a range, by running the forward and
+	 * reverse searches in turn till their furthest reaching paths overlap. The snake is left in
+	 * {@link TokenDiff#_snake}, relative to the start of the range.
+	 *
+	 * @param oldStart the start of the old range
+	 * @param oldEnd the end (exclusive) of the old range
+	 * @param newStart the start of the new range
+	 * @param newEnd the end (exclusive) of the new range
+	 */
+	private void findMiddleSnake( int oldStart, int oldEnd, int newStart, int newEnd ) {
+
+		int[] a = _old;
+		int[] b = _new;
+		int n = oldEnd - oldStart;
+		int m = newEnd - newStart;
+		int delta = n - m;
+		boolean odd = ( delta & 1 ) != 0;
+		int maxD = ( n + m + 1 ) / 2;
+
+		// The path arrays are sized for the whole diff and shared by every subproblem
+		if( _forward == null ) {
+			_offset = ( _old.length + _new.length + 1 ) / 2 + 1;
+			_forward = new int[2 * _offset + 1];
+			_reverse = new int[2 * _offset + 1];
+		}
+
+		int[] forward = _forward;
+		int[] reverse = _reverse;
+		int offset = _offset;
+		forward[offset + 1] = 0;
+		reverse[offset + 1] = 0;
+
+		for( int d = 0; d <= maxD; d++ ) {
+
+			// Extend the forward paths of distance d
+			for( int k = -d; k <= d; k += 2 ) {
+
+				int x;
+				if( k == -d || ( k != d && forward[offset + k - 1] < forward[offset + k + 1] ) ) {
+					x = forward[offset + k + 1]; // Down (an insert)
+				}
+				else {
+					x = forward[offset + k - 1] + 1; // Right (a delete)
+				}
+
+				int y = x - k;
+				int startX = x;
+				int startY = y;
+				while( x < n && y < m && a[oldStart + x] == b[newStart + y] ) {
+					x++;
+					y++;
+				}
+				forward[offset + k] = x;
+
+				// Check for overlap with the reverse paths of distance d - 1
+				int reverseK = delta - k;
+				if( odd && reverseK >= -( d - 1 ) && reverseK <= d - 1
+						&& x + reverse[offset + reverseK] >= n ) {
+					setSnake( startX, startY, x, y );
+					return;
+				}
+			}
+
+			// Extend the reverse paths of distance d (on the reversed ranges)
+			for( int k = -d; k <= d; k += 2 ) {
+
+				int x;
+				if( k == -d || ( k != d && reverse[offset + k - 1] < reverse[offset + k + 1] ) ) {
+					x = reverse[offset + k + 1];
+				}
+				else {
+					x = reverse[offset + k - 1] + 1;
+				}
+
+				int y = x - k;
+				int startX = x;
+				int startY = y;
+				while( x < n && y < m && a[oldEnd - 1 - x] == b[newEnd - 1 - y] ) {
+					x++;
+					y++;
+				}
+				reverse[offset + k] = x;
+
+				// Check for overlap with the forward paths of distance d
+				int forwardK = delta - k;
+				if( !odd && forwardK >= -d && forwardK <= d
+						&& forward[offset + forwardK] + x >= n ) {
+					setSnake( n - x, m - y, n - startX, m - startY );
+					return;
+				}
+			}
+		}
+
+		throw new IllegalStateException( "No middle snake was found" );
+	}
+
+	/**
+	 * Sets the middle snake.
+	 *
+	 * @param x the start of the snake within the old range
+	 * @param y the start of the snake within the new range
+	 * @param u the end of the snake within the old range
+	 * @param v the end of the snake within the new range
+	 */
+	private void setSnake( int x, int y, int u, int v ) {
+		_snake[0] = x;
+		_snake[1] = y;
+		_snake[2] = u;
+		_snake[3] = v;
+	}
+
+	/**
+	 * Builds the edit script from the marked tokens.
+	 *
+	 * @return the edit script
+	 */
+	private List<TokenEdit> getEdits() {
+
+		ArrayList<TokenEdit> edits = new ArrayList<TokenEdit>();
+		int n = _old.length;
+		int m = _new.length;
+		int i = 0;
+		int j = 0;
+
+		while( i < n || j < m ) {
+
+			int startI = i;
+			int startJ = j;
+
+			if( i < n && _deleted[i] ) {
+				while( i < n && _deleted[i] ) {
+					i++;
+				}
+				edits.add( new TokenEdit( TokenEdit._DELETE, startI, startJ, i - startI ) );
+			}
+			else if( j < m && _inserted[j] ) {
+				while( j < m && _inserted[j] ) {
+					j++;
+				}
+				edits.add( new TokenEdit( TokenEdit._INSERT, startI, startJ, j - startJ ) );
+			}
+			else {
+				while( i < n && j < m && !_deleted[i] && !_inserted[j] ) {
+					i++;
+					j++;
+				}
+				edits.add( new TokenEdit( TokenEdit._KEEP, startI, startJ, i - startI ) );
+			}
+		}
+
+		return edits;
+	}
+}
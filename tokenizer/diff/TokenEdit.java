@@ -0,0 +1,137 @@
+package ca.tokenizing_parser.tokenizer.diff;
+
+/**
+ * One range of an edit script produced by {@link TokenDiff}: a run of tokens that is kept, deleted
+ * from the old token stream or inserted from the new token stream. Applying the edits in order
+ * turns the old token stream into the new one.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenEdit {
+
+	/** The type of an edit that keeps tokens found in both token streams. */
+	public final static int		_KEEP	= 0;
+
+	/** The type of an edit that deletes tokens of the old token stream. */
+	public final static int		_DELETE	= 1;
+
+	/** The type of an edit that inserts tokens of the new token stream. */
+	public final static int		_INSERT	= 2;
+
+	/** The type of the edit (ie: {@link TokenEdit#_KEEP}). */
+	private final int			_type;
+
+	/** The position of the edit within the old token stream. */
+	private final int			_oldStart;
+
+	/** The position of the edit within the new token stream. */
+	private final int			_newStart;
+
+	/** The number of tokens of the edit. */
+	private final int			_length;
+
+	/**
+	 * Instantiates a new {@link TokenEdit}.
+	 *
+	 * @param type the type of the edit (ie: {@link TokenEdit#_KEEP})
+	 * @param oldStart the position of the edit within the old token stream
+	 * @param newStart the position of the edit within the new token stream
+	 * @param length the number of tokens of the edit
+	 */
+	public TokenEdit( int type, int oldStart, int newStart, int length ) {
+		_type = type;
+		_oldStart = oldStart;
+		_newStart = newStart;
+		_length = length;
+	}
+
+	/**
+	 * Gets the type of the edit.
+	 *
+	 * @return the type of the edit (ie: {@link TokenEdit#_KEEP})
+	 */
+	public int getType() {
+		return _type;
+	}
+
+	/**
+	 * Gets the position of the edit within the old token stream. For an insert this is where the
+	 * tokens are inserted.
+	 *
+	 * @return the position within the old token stream
+	 */
+	public int getOldStart() {
+		return _oldStart;
+	}
+
+	/**
+	 * Gets the position of the edit within the new token stream. For a delete this is where the
+	 * tokens were deleted.
+	 *
+	 * @return the position within the new token stream
+	 */
+	public int getNewStart() {
+		return _newStart;
+	}
+
+	/**
+	 * Gets the number of tokens of the edit.
+	 *
+	 * @return the number of tokens
+	 */
+	public int getLength() {
+		return _length;
+	}
+
+	/**
+	 * Gets the end (exclusive) of the edit's range within the old token stream.
+	 *
+	 * @return the end within the old token stream
+	 */
+	public int getOldEnd() {
+		return _type == _INSERT ? _oldStart : _oldStart + _length;
+	}
+
+	/**
+	 * Gets the end (exclusive) of the edit's range within the new token stream.
+	 *
+	 * @return the end within the new token stream
+	 */
+	public int getNewEnd() {
+		return _type == _DELETE ? _newStart : _newStart + _length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals( Object other ) {
+
+		if( !( other instanceof TokenEdit ) ) {
+			return false;
+		}
+
+		TokenEdit edit = (TokenEdit) other;
+		return _type == edit._type && _oldStart == edit._oldStart && _newStart == edit._newStart
+				&& _length == edit._length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return ( ( _type * 31 + _oldStart ) * 31 + _newStart ) * 31 + _length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+
+		String type = _type == _KEEP ? "keep" : _type == _DELETE ? "delete" : "insert";
+		return type + " old[" + _oldStart + "," + getOldEnd() + ") new[" + _newStart + ","
+				+ getNewEnd() + ")";
+	}
+}
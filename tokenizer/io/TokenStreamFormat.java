@@ -0,0 +1,164 @@
+package ca.tokenizing_parser.tokenizer.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+
+/**
+ * The constants and shared encoding routines of the binary token stream format, which is written
+ * by {@link TokenStreamWriter} and read by {@link TokenStreamReader}. All fixed-size fields are
+ * big-endian.
+ * <p>
+ * A stream is laid out as follows:
+ * <ul>
+ * <li>header: magic <code>TKS1</code>, version byte, 3 reserved bytes
+ * <li>blocks: payload length, document count, CRC32 of the payload, then the payload of whole
+ * documents
+ * <li>index: the stream offset and first document number of each block, then the CRC32 of the
+ * index
+ * <li>footer: index offset, document count, block count, magic <code>TKSI</code>
+ * </ul>
+ * <p>
+ * A document is an encoding byte and the number of tokens (a varint), followed by the tokens. In
+ * the plain encoding each token id (see {@link TokenTable#getTokenId(String)}) is a varint that
+ * holds the category in its low {@link TokenTable#_CATEGORY_BITS} bits and the zigzag encoded
+ * difference to the previous key id of the same category in the remaining bits, so nearby ids
+ * take one or two bytes. In the ranked encoding the distinct token ids of the document are first
+ * written as a dictionary (plain encoded) in order of decreasing frequency, and each token is
+ * then the varint rank of its id within the dictionary.
+ *
+ * @author Kevin Jalbert
+ */
+final class TokenStreamFormat {
+
+	/** The magic number at the start of a stream ("TKS1"). */
+	final static int	_MAGIC				= 0x544B5331;
+
+	/** The magic number at the end of a stream ("TKSI"). */
+	final static int	_INDEX_MAGIC		= 0x544B5349;
+
+	/** The version of the format. */
+	final static byte	_VERSION			= 1;
+
+	/** The size of the stream header in bytes. */
+	final static int	_HEADER_SIZE		= 8;
+
+	/** The size of a block header in bytes (payload length, document count, CRC32). */
+	final static int	_BLOCK_HEADER_SIZE	= 12;
+
+	/** The size of an index entry in bytes (block offset, first document). */
+	final static int	_INDEX_ENTRY_SIZE	= 16;
+
+	/** The size of the footer in bytes (index offset, document count, block count, magic). */
+	final static int	_FOOTER_SIZE		= 24;
+
+	/** The encoding byte of a plain encoded document. */
+	final static int	_PLAIN				= 0;
+
+	/** The encoding byte of a ranked encoded document. */
+	final static int	_RANKED				= 1;
+
+	/** The maximum size of a varint in bytes. */
+	final static int	_MAX_VARINT_SIZE	= 5;
+
+	/**
+	 * Prevents the instantiation of the {@link TokenStreamFormat}.
+	 */
+	private TokenStreamFormat() {
+	}
+
+	/**
+	 * Writes the value as an unsigned varint (7 bits per byte, least significant group first).
+	 *
+	 * @param buffer the array to write to, which must have room for
+	 *            {@link TokenStreamFormat#_MAX_VARINT_SIZE} bytes
+	 * @param position the position to write at
+	 * @param value the value (treated as unsigned)
+	 * @return the position after the varint
+	 */
+	static int writeVarInt( byte[] buffer, int position, int value ) {
+
+		while( ( value & ~0x7F ) != 0 ) {
+			buffer[position++] = (byte) ( ( value & 0x7F ) | 0x80 );
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+
+		return position;
+	}
+
+	/**
+	 * Encodes a token id as a category-tagged delta of the previous key id of its category, and
+	 * updates the previous key id.
+	 *
+	 * @param tokenId the token id
+	 * @param previous the previous key id of each category
+	 * @return the value to be written as a varint
+	 */
+	static int encodeTokenId( int tokenId, int[] previous ) {
+
+		int category = tokenId & TokenTable._CATEGORY_MASK;
+		int id = tokenId >>> TokenTable._CATEGORY_BITS;
+		int delta = id - previous[category];
+		previous[category] = id;
+
+		return ( ( ( delta << 1 ) ^ ( delta >> 31 ) ) << TokenTable._CATEGORY_BITS ) | category;
+	}
+
+	/**
+	 * Decodes a value of {@link TokenStreamFormat#encodeTokenId(int, int[])} back into a token id,
+	 * and updates the previous key id.
+	 *
+	 * @param value the value that was read as a varint
+	 * @param previous the previous key id of each category
+	 * @return the token id
+	 */
+	static int decodeTokenId( int value, int[] previous ) {
+
+		int category = value & TokenTable._CATEGORY_MASK;
+		int zigzag = value >>> TokenTable._CATEGORY_BITS;
+		int id = previous[category] + ( ( zigzag >>> 1 ) ^ -( zigzag & 1 ) );
+		previous[category] = id;
+
+		return ( id << TokenTable._CATEGORY_BITS ) | category;
+	}
+
+	/**
+	 * Writes the whole buffer to the channel at the position.
+	 *
+	 * @param channel the {@link FileChannel} to write to
+	 * @param buffer the {@link ByteBuffer} to be written (from its position to its limit)
+	 * @param position the position within the channel to write at
+	 * @throws IOException if the write fails
+	 */
+	static void writeFully( FileChannel channel, ByteBuffer buffer, long position )
+			throws IOException {
+
+		while( buffer.hasRemaining() ) {
+			position += channel.write( buffer, position );
+		}
+	}
+
+	/**
+	 * Reads the channel from the position until the buffer is full.
+	 *
+	 * @param channel the {@link FileChannel} to read from
+	 * @param buffer the {@link ByteBuffer} to be filled (from its position to its limit)
+	 * @param position the position within the channel to read from
+	 * @throws IOException if the read fails or the end of the channel is reached
+	 */
+	static void readFully( FileChannel channel, ByteBuffer buffer, long position )
+			throws IOException {
+
+		while( buffer.hasRemaining() ) {
+
+			int read = channel.read( buffer, position );
+			if( read < 0 ) {
+				throw new IOException( "Corrupt token stream: unexpected end at " + position );
+			}
+			position += read;
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package ca.tokenizing_parser.tokenizer.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+
+/**
+ * A reader of mapped token streams in the binary format of {@link TokenStreamFormat}, as written by
+ * {@link TokenStreamWriter}. The block index is read when the reader is created, so any document
+ * can be read by seeking straight to its block. Blocks are read whole, checked against their
+ * CRC32 and decoded in bulk from a byte array; the last decoded block is kept, so reading the
+ * documents in order decodes each block once.
+ * <p>
+ * The stream must end the file. A {@link TokenStreamReader} is not thread-safe.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenStreamReader {
+
+	/** The {@link FileChannel} to read from. */
+	private FileChannel	_channel			= null;
+
+	/** The position of the start of the stream within the channel. */
+	private long		_start				= 0;
+
+	/** The number of documents of the stream. */
+	private long		_documents			= 0;
+
+	/** The stream offset of each block. */
+	private long[]		_blockOffsets		= null;
+
+	/** The first document number of each block. */
+	private long[]		_blockFirstDocuments	= null;
+
+	/** The index of the decoded block; -1 if there is none. */
+	private int			_block				= -1;
+
+	/** The decoded documents of the decoded block. */
+	private int[][]		_blockDocuments		= null;
+
+	/** The payload of the last read block (reused between blocks). */
+	private byte[]		_payload			= new byte[0];
+
+	/** The next document of {@link TokenStreamReader#nextDocument()}. */
+	private long		_next				= 0;
+
+	/** The previous key id of each category, used while decoding. */
+	private int[]		_previous			= new int[TokenTable._UNMAPPED_CATEGORY + 1];
+
+	/**
+	 * Instantiates a new {@link TokenStreamReader}, reading the footer and block index of the
+	 * stream at the end of the channel.
+	 *
+	 * @param channel the {@link FileChannel} to read the stream from
+	 * @throws IOException if the stream cannot be read or is corrupt
+	 */
+	public TokenStreamReader( FileChannel channel ) throws IOException {
+
+		_channel = channel;
+		long size = channel.size();
+		if( size < TokenStreamFormat._HEADER_SIZE + 4 + TokenStreamFormat._FOOTER_SIZE ) {
+			throw new IOException( "Corrupt token stream: too short" );
+		}
+
+		// Read the footer
+		ByteBuffer footer = ByteBuffer.allocate( TokenStreamFormat._FOOTER_SIZE );
+		TokenStreamFormat.readFully( channel, footer, size - TokenStreamFormat._FOOTER_SIZE );
+		footer.flip();
+
+		long indexOffset = footer.getLong();
+		_documents = footer.getLong();
+		int blocks = footer.getInt();
+		if( footer.getInt() != TokenStreamFormat._INDEX_MAGIC || blocks < 0 ) {
+			throw new IOException( "Corrupt token stream: bad footer" );
+		}
+
+		// Locate the start of the stream from the size of the index
+		int indexSize = blocks * TokenStreamFormat._INDEX_ENTRY_SIZE;
+		_start = size - TokenStreamFormat._FOOTER_SIZE - 4 - indexSize - indexOffset;
+		if( _start < 0 || indexOffset < TokenStreamFormat._HEADER_SIZE ) {
+			throw new IOException( "Corrupt token stream: bad index offset" );
+		}
+
+		ByteBuffer header = ByteBuffer.allocate( TokenStreamFormat._HEADER_SIZE );
+		TokenStreamFormat.readFully( channel, header, _start );
+		header.flip();
+		if( header.getInt() != TokenStreamFormat._MAGIC ) {
+			throw new IOException( "Corrupt token stream: bad magic" );
+		}
+		if( header.get() != TokenStreamFormat._VERSION ) {
+			throw new IOException( "Unsupported token stream version" );
+		}
+
+		// Read and check the index
+		ByteBuffer index = ByteBuffer.allocate( indexSize + 4 );
+		TokenStreamFormat.readFully( channel, index, _start + indexOffset );
+		CRC32 crc = new CRC32();
+		crc.update( index.array(), 0, indexSize );
+		index.flip();
+
+		_blockOffsets = new long[blocks];
+		_blockFirstDocuments = new long[blocks];
+		for( int i = 0; i < blocks; i++ ) {
+			_blockOffsets[i] = index.getLong();
+			_blockFirstDocuments[i] = index.getLong();
+		}
+
+		if( index.getInt() != (int) crc.getValue() ) {
+			throw new IOException( "Corrupt token stream: bad index checksum" );
+		}
+	}
+
+	/**
+	 * Gets the number of documents of the stream.
+	 *
+	 * @return the number of documents
+	 */
+	public long getDocumentCount() {
+		return _documents;
+	}
+
+	/**
+	 * Gets the number of blocks of the stream.
+	 *
+	 * @return the number of blocks
+	 */
+	public int getBlockCount() {
+		return _blockOffsets.length;
+	}
+
+	/**
+	 * Gets the number of the first document of the block.
+	 *
+	 * @param block the index of the block
+	 * @return the number of the block's first document
+	 */
+	public long getFirstDocument( int block ) {
+		return _blockFirstDocuments[block];
+	}
+
+	/**
+	 * Reads the token ids (see {@link TokenTable#getTokenId(String)}) of a document, seeking to its
+	 * block.
+	 *
+	 * @param document the number of the document (from 0)
+	 * @return the token ids of the document
+	 * @throws IOException if the block cannot be read or is corrupt
+	 */
+	public int[] readDocument( long document ) throws IOException {
+
+		if( document < 0 || document >= _documents ) {
+			throw new IndexOutOfBoundsException( "Document: " + document + ", Count: "
+					+ _documents );
+		}
+
+		// Find the last block whose first document is not after the document
+		int block = Arrays.binarySearch( _blockFirstDocuments, document );
+		if( block < 0 ) {
+			block = -block - 2;
+		}
+
+		int[][] documents = readBlock( block );
+		return documents[(int) ( document - _blockFirstDocuments[block] )];
+	}
+
+	/**
+	 * Reads a document as identifiers of the {@link TokenTable} that the stream was written with.
+	 *
+	 * @param document the number of the document (from 0)
+	 * @param tokenTable the {@link TokenTable} that the token ids belong to
+	 * @return an {@link ArrayList} of {@link String} identifiers of the document
+	 * @throws IOException if the block cannot be read or is corrupt
+	 */
+	public ArrayList<String> readDocument( long document, TokenTable tokenTable )
+			throws IOException {
+
+		int[] tokenIds = readDocument( document );
+
+		ArrayList<String> tokenizedInput = new ArrayList<String>( tokenIds.length );
+		for( int tokenId : tokenIds ) {
+			tokenizedInput.add( tokenTable.getTokenKey( tokenId ) );
+		}
+
+		return tokenizedInput;
+	}
+
+	/**
+	 * Reads the next document in order, starting from the first document or the one set by
+	 * {@link TokenStreamReader#seek(long)}.
+	 *
+	 * @return the token ids of the next document; null if there are no more documents
+	 * @throws IOException if the block cannot be read or is corrupt
+	 */
+	public int[] nextDocument() throws IOException {
+
+		if( _next >= _documents ) {
+			return null;
+		}
+
+		return readDocument( _next++ );
+	}
+
+	/**
+	 * Sets the document that {@link TokenStreamReader#nextDocument()} reads next.
+	 *
+	 * @param document the number of the document (from 0)
+	 */
+	public void seek( long document ) {
+		_next = document;
+	}
+
+	/**
+	 * Reads and decodes all the documents of a block.
+	 *
+	 * @param block the index of the block
+	 * @return the token ids of each document of the block
+	 * @throws IOException if the block cannot be read or is corrupt
+	 */
+	public int[][] readBlock( int block ) throws IOException {
+
+		if( block == _block ) {
+			return _blockDocuments;
+		}
+
+		// Read the block header and payload
+		long offset = _start + _blockOffsets[block];
+		ByteBuffer header = ByteBuffer.allocate( TokenStreamFormat._BLOCK_HEADER_SIZE );
+		TokenStreamFormat.readFully( _channel, header, offset );
+		header.flip();
+
+		int payloadSize = header.getInt();
+		int documentCount = header.getInt();
+		int checksum = header.getInt();
+
+		long expectedDocuments = ( block + 1 < _blockOffsets.length
+				? _blockFirstDocuments[block + 1] : _documents ) - _blockFirstDocuments[block];
+		if( payloadSize < 0 || documentCount != expectedDocuments ) {
+			throw new IOException( "Corrupt token stream: bad header of block " + block );
+		}
+
+		if( _payload.length < payloadSize ) {
+			_payload = new byte[payloadSize];
+		}
+		TokenStreamFormat.readFully( _channel, ByteBuffer.wrap( _payload, 0, payloadSize ), offset
+				+ TokenStreamFormat._BLOCK_HEADER_SIZE );
+
+		CRC32 crc = new CRC32();
+		crc.update( _payload, 0, payloadSize );
+		if( (int) crc.getValue() != checksum ) {
+			throw new IOException( "Corrupt token stream: bad checksum of block " + block );
+		}
+
+		// Decode the documents
+		int[][] documents = new int[documentCount][];
+		try {
+			int position = 0;
+			for( int i = 0; i < documentCount; i++ ) {
+				position = decodeDocument( _payload, position, documents, i );
+			}
+
+			if( position != payloadSize ) {
+				throw new IOException( "Corrupt token stream: bad payload of block " + block );
+			}
+		}
+		catch( ArrayIndexOutOfBoundsException e ) {
+			throw new IOException( "Corrupt token stream: bad payload of block " + block );
+		}
+
+		_block = block;
+		_blockDocuments = documents;
+
+		return documents;
+	}
+
+	/**
+	 * Decodes a document from the payload.
+	 *
+	 * @param payload the payload of the block
+	 * @param position the position of the document within the payload
+	 * @param documents the array to store the decoded document in
+	 * @param document the index of the document within the array
+	 * @return the position after the document
+	 * @throws IOException if the document is corrupt
+	 */
+	private int decodeDocument( byte[] payload, int position, int[][] documents, int document )
+			throws IOException {
+
+		int[] previous = _previous;
+		Arrays.fill( previous, 0 );
+
+		int encoding = payload[position++];
+		int count = 0;
+
+		// Read the token count (an inlined varint like all the reads below)
+		int shift = 0;
+		byte b;
+		do {
+			b = payload[position++];
+			count |= ( b & 0x7F ) << shift;
+			shift += 7;
+		} while( b < 0 );
+
+		if( count < 0 || count > payload.length ) {
+			throw new IOException( "Corrupt token stream: bad token count" );
+		}
+
+		int[] tokenIds = new int[count];
+		documents[document] = tokenIds;
+
+		if( encoding == TokenStreamFormat._PLAIN ) {
+
+			for( int i = 0; i < count; i++ ) {
+
+				int value = 0;
+				shift = 0;
+				do {
+					b = payload[position++];
+					value |= ( b & 0x7F ) << shift;
+					shift += 7;
+				} while( b < 0 );
+
+				tokenIds[i] = TokenStreamFormat.decodeTokenId( value, previous );
+			}
+		}
+		else if( encoding == TokenStreamFormat._RANKED ) {
+
+			int distinct = 0;
+			shift = 0;
+			do {
+				b = payload[position++];
+				distinct |= ( b & 0x7F ) << shift;
+				shift += 7;
+			} while( b < 0 );
+
+			if( distinct < 0 || distinct > count ) {
+				throw new IOException( "Corrupt token stream: bad dictionary size" );
+			}
+
+			int[] dictionary = new int[distinct];
+			for( int rank = 0; rank < distinct; rank++ ) {
+
+				int value = 0;
+				shift = 0;
+				do {
+					b = payload[position++];
+					value |= ( b & 0x7F ) << shift;
+					shift += 7;
+				} while( b < 0 );
+
+				dictionary[rank] = TokenStreamFormat.decodeTokenId( value, previous );
+			}
+
+			for( int i = 0; i < count; i++ ) {
+
+				int rank = 0;
+				shift = 0;
+				do {
+					b = payload[position++];
+					rank |= ( b & 0x7F ) << shift;
+					shift += 7;
+				} while( b < 0 );
+
+				tokenIds[i] = dictionary[rank];
+			}
+		}
+		else {
+			throw new IOException( "Corrupt token stream: unknown document encoding " + encoding );
+		}
+
+		return position;
+	}
+}
@@ -0,0 +1,399 @@
+package ca.tokenizing_parser.tokenizer.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+
+/**
+ * A streaming writer of mapped token streams in the binary format of {@link TokenStreamFormat}.
+ * Documents are encoded into a block in memory, and each block is written to the
+ * {@link FileChannel} with its CRC32 once it is full, so any number of documents can be written
+ * with a bounded amount of memory. Closing the writer writes the block index and footer that
+ * {@link TokenStreamReader} seeks with.
+ * <p>
+ * The stream is written from the channel's position at the time the writer is created, and must
+ * end the file. The channel is not closed by the writer.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenStreamWriter implements Closeable {
+
+	/** The default number of payload bytes after which a block is written. */
+	public final static int	_DEFAULT_BLOCK_SIZE	= 64 * 1024;
+
+	/** The {@link FileChannel} to write to. */
+	private FileChannel		_channel			= null;
+
+	/** The position of the start of the stream within the channel. */
+	private long			_start				= 0;
+
+	/** The offset (from the start of the stream) that the next block is written at. */
+	private long			_offset				= 0;
+
+	/** The number of payload bytes after which a block is written. */
+	private int				_blockSize			= _DEFAULT_BLOCK_SIZE;
+
+	/** If true documents use the ranked encoding whenever it is smaller. */
+	private boolean			_reranking			= false;
+
+	/** The payload of the current block. */
+	private byte[]			_payload			= new byte[_DEFAULT_BLOCK_SIZE];
+
+	/** The number of bytes in the payload of the current block. */
+	private int				_payloadSize		= 0;
+
+	/** The number of documents in the current block. */
+	private int				_blockDocuments		= 0;
+
+	/** The number of documents written. */
+	private long			_documents			= 0;
+
+	/** The stream offset of each written block. */
+	private long[]			_blockOffsets		= new long[64];
+
+	/** The first document number of each written block. */
+	private long[]			_blockFirstDocuments	= new long[64];
+
+	/** The number of written blocks. */
+	private int				_blocks				= 0;
+
+	/** The previous key id of each category, used while encoding. */
+	private int[]			_previous			= new int[TokenTable._UNMAPPED_CATEGORY + 1];
+
+	/** The scratch array used to rank the token ids of a document. */
+	private int[]			_sorted				= new int[0];
+
+	/** The scratch array of frequency and token id pairs used to rank a document. */
+	private long[]			_ranking			= new long[0];
+
+	/** If true the writer has been closed. */
+	private boolean			_closed				= false;
+
+	/**
+	 * Instantiates a new {@link TokenStreamWriter}, writing the stream header at the channel's
+	 * position.
+	 *
+	 * @param channel the {@link FileChannel} to write the stream to
+	 * @throws IOException if the header cannot be written
+	 */
+	public TokenStreamWriter( FileChannel channel ) throws IOException {
+
+		_channel = channel;
+		_start = channel.position();
+
+		ByteBuffer header = ByteBuffer.allocate( TokenStreamFormat._HEADER_SIZE );
+		header.putInt( TokenStreamFormat._MAGIC );
+		header.put( TokenStreamFormat._VERSION );
+		header.flip();
+
+		TokenStreamFormat.writeFully( _channel, header, _start );
+		_offset = TokenStreamFormat._HEADER_SIZE;
+	}
+
+	/**
+	 * Sets the number of payload bytes after which a block is written. Smaller blocks allow finer
+	 * seeking, while larger blocks have less overhead. A document is never split over blocks.
+	 *
+	 * @param blockSize the block size in bytes
+	 */
+	public void setBlockSize( int blockSize ) {
+
+		if( blockSize < 1 ) {
+			throw new IllegalArgumentException( "The block size must be positive: " + blockSize );
+		}
+
+		_blockSize = blockSize;
+	}
+
+	/**
+	 * Gets the number of payload bytes after which a block is written.
+	 *
+	 * @return the block size in bytes
+	 */
+	public int getBlockSize() {
+		return _blockSize;
+	}
+
+	/**
+	 * Sets whether each document is re-ranked, where its distinct token ids are numbered in order
+	 * of decreasing frequency so the frequent tokens take a single byte. The ranked encoding is
+	 * only used for the documents where it is smaller than the plain encoding.
+	 *
+	 * @param reranking if true documents are re-ranked when that makes them smaller
+	 */
+	public void setReranking( boolean reranking ) {
+		_reranking = reranking;
+	}
+
+	/**
+	 * Checks to see if documents are re-ranked when that makes them smaller.
+	 *
+	 * @return true if documents are re-ranked
+	 */
+	public boolean isReranking() {
+		return _reranking;
+	}
+
+	/**
+	 * Gets the number of documents written.
+	 *
+	 * @return the number of documents
+	 */
+	public long getDocumentCount() {
+		return _documents;
+	}
+
+	/**
+	 * Writes a tokenized input (that has been mapped into identifiers) as a document, converting
+	 * its identifiers into token ids with the {@link TokenTable}.
+	 *
+	 * @param tokenizedInput the {@link ArrayList} of {@link String} identifiers
+	 * @param tokenTable the {@link TokenTable} that the identifiers belong to
+	 * @throws IOException if a block cannot be written
+	 */
+	public void writeDocument( ArrayList<String> tokenizedInput, TokenTable tokenTable )
+			throws IOException {
+		writeDocument( tokenTable.getTokenIds( tokenizedInput ) );
+	}
+
+	/**
+	 * Writes the token ids (see {@link TokenTable#getTokenId(String)}) as a document.
+	 *
+	 * @param tokenIds the token ids of the document
+	 * @throws IOException if a block cannot be written
+	 */
+	public void writeDocument( int[] tokenIds ) throws IOException {
+		writeDocument( tokenIds, 0, tokenIds.length );
+	}
+
+	/**
+	 * Writes a range of the token ids as a document.
+	 *
+	 * @param tokenIds the token ids
+	 * @param start the start of the range
+	 * @param end the end (exclusive) of the range
+	 * @throws IOException if a block cannot be written
+	 */
+	public void writeDocument( int[] tokenIds, int start, int end ) throws IOException {
+
+		if( _closed ) {
+			throw new IOException( "The token stream has been closed" );
+		}
+
+		// The plain encoding needs at most one byte, a count and a varint per token
+		int count = end - start;
+		ensureCapacity( 1 + TokenStreamFormat._MAX_VARINT_SIZE * ( count + 1 ) );
+
+		int documentStart = _payloadSize;
+		int plainEnd = encodePlain( tokenIds, start, end, documentStart );
+
+		// Encode the ranked version after the plain one, and keep it if it is smaller
+		if( _reranking && count > 0 ) {
+
+			ensureCapacity( plainEnd - documentStart + 1 + TokenStreamFormat._MAX_VARINT_SIZE
+					* ( 2 * count + 2 ) );
+
+			int rankedEnd = encodeRanked( tokenIds, start, end, plainEnd );
+			if( rankedEnd - plainEnd < plainEnd - documentStart ) {
+				System.arraycopy( _payload, plainEnd, _payload, documentStart, rankedEnd - plainEnd );
+				plainEnd = documentStart + rankedEnd - plainEnd;
+			}
+		}
+
+		_payloadSize = plainEnd;
+		_blockDocuments++;
+		_documents++;
+
+		if( _payloadSize >= _blockSize ) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the current block (if it holds any documents) to the channel.
+	 *
+	 * @throws IOException if the block cannot be written
+	 */
+	public void flush() throws IOException {
+
+		if( _blockDocuments == 0 ) {
+			return;
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update( _payload, 0, _payloadSize );
+
+		ByteBuffer header = ByteBuffer.allocate( TokenStreamFormat._BLOCK_HEADER_SIZE );
+		header.putInt( _payloadSize );
+		header.putInt( _blockDocuments );
+		header.putInt( (int) crc.getValue() );
+		header.flip();
+
+		TokenStreamFormat.writeFully( _channel, header, _start + _offset );
+		TokenStreamFormat.writeFully( _channel, ByteBuffer.wrap( _payload, 0, _payloadSize ),
+				_start + _offset + TokenStreamFormat._BLOCK_HEADER_SIZE );
+
+		// Keep the block in the index
+		if( _blocks == _blockOffsets.length ) {
+			_blockOffsets = Arrays.copyOf( _blockOffsets, _blocks * 2 );
+			_blockFirstDocuments = Arrays.copyOf( _blockFirstDocuments, _blocks * 2 );
+		}
+		_blockOffsets[_blocks] = _offset;
+		_blockFirstDocuments[_blocks] = _documents - _blockDocuments;
+		_blocks++;
+
+		_offset += TokenStreamFormat._BLOCK_HEADER_SIZE + _payloadSize;
+		_payloadSize = 0;
+		_blockDocuments = 0;
+	}
+
+	/**
+	 * Writes the last block, the block index and the footer, then positions the channel at the end
+	 * of the stream. The channel itself is left open.
+	 *
+	 * @throws IOException if the stream cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+
+		if( _closed ) {
+			return;
+		}
+
+		flush();
+		_closed = true;
+
+		ByteBuffer index = ByteBuffer.allocate( _blocks * TokenStreamFormat._INDEX_ENTRY_SIZE + 4
+				+ TokenStreamFormat._FOOTER_SIZE );
+		for( int i = 0; i < _blocks; i++ ) {
+			index.putLong( _blockOffsets[i] );
+			index.putLong( _blockFirstDocuments[i] );
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update( index.array(), 0, index.position() );
+		index.putInt( (int) crc.getValue() );
+
+		index.putLong( _offset );
+		index.putLong( _documents );
+		index.putInt( _blocks );
+		index.putInt( TokenStreamFormat._INDEX_MAGIC );
+		index.flip();
+
+		TokenStreamFormat.writeFully( _channel, index, _start + _offset );
+		_channel.position( _start + _offset + index.capacity() );
+	}
+
+	/**
+	 * Encodes a document with the plain encoding.
+	 *
+	 * @param tokenIds the token ids
+	 * @param start the start of the range
+	 * @param end the end (exclusive) of the range
+	 * @param position the position within the payload to encode at
+	 * @return the position after the document
+	 */
+	private int encodePlain( int[] tokenIds, int start, int end, int position ) {
+
+		byte[] payload = _payload;
+		int[] previous = _previous;
+		Arrays.fill( previous, 0 );
+
+		payload[position++] = TokenStreamFormat._PLAIN;
+		position = TokenStreamFormat.writeVarInt( payload, position, end - start );
+
+		for( int i = start; i < end; i++ ) {
+			int value = TokenStreamFormat.encodeTokenId( tokenIds[i], previous );
+			position = TokenStreamFormat.writeVarInt( payload, position, value );
+		}
+
+		return position;
+	}
+
+	/**
+	 * Encodes a document with the ranked encoding.
+	 *
+	 * @param tokenIds the token ids
+	 * @param start the start of the range
+	 * @param end the end (exclusive) of the range
+	 * @param position the position within the payload to encode at
+	 * @return the position after the document
+	 */
+	private int encodeRanked( int[] tokenIds, int start, int end, int position ) {
+
+		int count = end - start;
+		if( _sorted.length < count ) {
+			_sorted = new int[count];
+			_ranking = new long[count];
+		}
+
+		// Count the distinct token ids by sorting them
+		int[] sorted = _sorted;
+		System.arraycopy( tokenIds, start, sorted, 0, count );
+		Arrays.sort( sorted, 0, count );
+
+		int distinct = 0;
+		for( int i = 0; i < count; ) {
+
+			int j = i + 1;
+			while( j < count && sorted[j] == sorted[i] ) {
+				j++;
+			}
+
+			// Decreasing frequency then increasing id sorts as increasing (inverted frequency, id)
+			_ranking[distinct++] = ( (long) ( Integer.MAX_VALUE - ( j - i ) ) << 32 ) | sorted[i];
+			i = j;
+		}
+		Arrays.sort( _ranking, 0, distinct );
+
+		// Write the dictionary, and keep the rank of each distinct id next to it in sorted order
+		byte[] payload = _payload;
+		int[] previous = _previous;
+		Arrays.fill( previous, 0 );
+
+		payload[position++] = TokenStreamFormat._RANKED;
+		position = TokenStreamFormat.writeVarInt( payload, position, count );
+		position = TokenStreamFormat.writeVarInt( payload, position, distinct );
+
+		for( int rank = 0; rank < distinct; rank++ ) {
+
+			int tokenId = (int) _ranking[rank];
+			int value = TokenStreamFormat.encodeTokenId( tokenId, previous );
+			position = TokenStreamFormat.writeVarInt( payload, position, value );
+
+			sorted[rank] = tokenId;
+			_ranking[rank] = ( (long) tokenId << 32 ) | rank;
+		}
+		Arrays.sort( _ranking, 0, distinct );
+		for( int rank = 0; rank < distinct; rank++ ) {
+			sorted[rank] = (int) ( _ranking[rank] >>> 32 );
+		}
+
+		// Write the rank of each token, found by binary search on the sorted distinct ids
+		for( int i = start; i < end; i++ ) {
+			int rank = (int) _ranking[Arrays.binarySearch( sorted, 0, distinct, tokenIds[i] )];
+			position = TokenStreamFormat.writeVarInt( payload, position, rank );
+		}
+
+		return position;
+	}
+
+	/**
+	 * Makes sure the payload has room for the number of additional bytes.
+	 *
+	 * @param additional the number of additional bytes
+	 */
+	private void ensureCapacity( int additional ) {
+
+		if( _payloadSize + additional > _payload.length ) {
+			int capacity = Math.max( _payload.length * 2, _payloadSize + additional );
+			_payload = Arrays.copyOf( _payload, capacity );
+		}
+	}
+}
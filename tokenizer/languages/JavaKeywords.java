@@ -1,10 +1,8 @@
 package ca.tokenizing_parser.tokenizer.languages;
 
-import java.util.HashSet;
-
 /**
  * A data class to represent of all Java Keywords (1.2, 1.4 and 5.0 Java) as well as the possible
- * delimiters. The keywords and delimiters are stored within separate {@link HashSet} which are
+ * delimiters. The keywords and delimiters are stored within separate collections which are
  * inherited from {@link LanguageKeywords}. This class is also implemented in a singleton design
  * pattern.
  * 
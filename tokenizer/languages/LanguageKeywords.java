@@ -1,5 +1,7 @@
 package ca.tokenizing_parser.tokenizer.languages;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 
 import ca.tokenizing_parser.tokenizer.TokenTable;
@@ -8,25 +10,35 @@ import ca.tokenizing_parser.tokenizer.TokenTable;
  * This abstract class is used to conform languages to work in conjunction with the
  * {@link TokenTable} class. Various languages can extend this class to work in the
  * {@link TokenTable} class.
+ * <p>
+ * Each keyword and delimiter is given a fixed id in the order that it was added when the language
+ * was populated. This allows a {@link TokenTable} to map keywords and delimiters to the same
+ * identifiers for every input, without interning them.
  * 
  * @author Kevin Jalbert
  */
 public abstract class LanguageKeywords {
 
-	/** The reserved keywords. */
-	private HashSet<String>	_keywords			= new HashSet<String>();
+	/** The reserved keywords, mapped to their fixed ids. */
+	private HashMap<String, Integer>	_keywords			= new HashMap<String, Integer>();
 
-	/** The delimiters (including symbols). */
-	private HashSet<String>	_delimiters			= new HashSet<String>();
+	/** The reserved keywords, indexed by their fixed ids. */
+	private ArrayList<String>			_keywordValues		= new ArrayList<String>();
+
+	/** The delimiters (including symbols), mapped to their fixed ids. */
+	private HashMap<String, Integer>	_delimiters			= new HashMap<String, Integer>();
+
+	/** The delimiters (including symbols), indexed by their fixed ids. */
+	private ArrayList<String>			_delimiterValues	= new ArrayList<String>();
 
 	/** The delimiters that are used for spacing. */
-	private HashSet<String>	_spaceDelimiters	= new HashSet<String>();
+	private HashSet<String>				_spaceDelimiters	= new HashSet<String>();
 
 	/** The delimiters that represent method calls. */
-	private HashSet<String>	_methodCalls		= new HashSet<String>();
+	private HashSet<String>				_methodCalls		= new HashSet<String>();
 
 	/** The look ahead number for the language (based on the longest delimiter). */
-	private int				_lookAheadNumber	= -1;
+	private int							_lookAheadNumber	= -1;
 
 	/**
 	 * Default constructor for the {@link LanguageKeywords} class.
@@ -35,23 +47,83 @@ public abstract class LanguageKeywords {
 	}
 
 	/**
-	 * The passed string is checked to see if it resides in the keyword {@link HashSet}.
+	 * The passed string is checked to see if it resides in the keyword {@link HashMap}.
 	 * 
-	 * @param keyword the keyword to be checked against the keyword {@link HashSet}
-	 * @return true if the keyword resides in the keyword {@link HashSet}
+	 * @param keyword the keyword to be checked against the keyword {@link HashMap}
+	 * @return true if the keyword resides in the keyword {@link HashMap}
 	 */
 	public boolean isKeyword( String keyword ) {
-		return _keywords.contains( keyword );
+		return _keywords.containsKey( keyword );
 	}
 
 	/**
-	 * The passed string is checked to see if it resides in the delimiter {@link HashSet}.
+	 * The passed string is checked to see if it resides in the delimiter {@link HashMap}.
 	 * 
-	 * @param delimiter the delimiter to be checked against the delimiter {@link HashSet}
-	 * @return true if the delimiter resides in the delimiter {@link HashSet}
+	 * @param delimiter the delimiter to be checked against the delimiter {@link HashMap}
+	 * @return true if the delimiter resides in the delimiter {@link HashMap}
 	 */
 	public boolean isDelimiter( String delimiter ) {
-		return _delimiters.contains( delimiter );
+		return _delimiters.containsKey( delimiter );
+	}
+
+	/**
+	 * Gets the fixed id of the keyword.
+	 * 
+	 * @param keyword the keyword
+	 * @return the fixed id of the keyword; -1 if it is not a keyword
+	 */
+	public int getKeywordId( String keyword ) {
+		Integer id = _keywords.get( keyword );
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Gets the keyword with the fixed id.
+	 * 
+	 * @param id the fixed id of the keyword
+	 * @return the keyword
+	 */
+	public String getKeyword( int id ) {
+		return _keywordValues.get( id );
+	}
+
+	/**
+	 * Gets the number of keywords (ie: the fixed ids range from 0 to this count - 1).
+	 * 
+	 * @return the number of keywords
+	 */
+	public int getKeywordCount() {
+		return _keywordValues.size();
+	}
+
+	/**
+	 * Gets the fixed id of the delimiter.
+	 * 
+	 * @param delimiter the delimiter
+	 * @return the fixed id of the delimiter; -1 if it is not a delimiter
+	 */
+	public int getDelimiterId( String delimiter ) {
+		Integer id = _delimiters.get( delimiter );
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Gets the delimiter with the fixed id.
+	 * 
+	 * @param id the fixed id of the delimiter
+	 * @return the delimiter
+	 */
+	public String getDelimiter( int id ) {
+		return _delimiterValues.get( id );
+	}
+
+	/**
+	 * Gets the number of delimiters (ie: the fixed ids range from 0 to this count - 1).
+	 * 
+	 * @return the number of delimiters
+	 */
+	public int getDelimiterCount() {
+		return _delimiterValues.size();
 	}
 
 	/**
@@ -75,40 +147,50 @@ public abstract class LanguageKeywords {
 	}
 
 	/**
-	 * Adds a keyword to the keyword {@link HashSet}.
+	 * Adds a keyword to the keyword {@link HashMap}, giving it the next fixed id if it wasn't
+	 * already added.
 	 * 
 	 * @param keyword the keyword
 	 */
 	protected void addKeyword( String keyword ) {
-		_keywords.add( keyword );
+		if( !_keywords.containsKey( keyword ) ) {
+			_keywords.put( keyword, _keywordValues.size() );
+			_keywordValues.add( keyword );
+		}
 	}
 
 	/**
-	 * Adds a delimiter to the delimiter {@link HashSet}.
+	 * Adds a delimiter to the delimiter {@link HashMap}, giving it the next fixed id if it wasn't
+	 * already added.
 	 * 
 	 * @param delimiter the delimiter
 	 */
 	protected void addDelimiter( String delimiter ) {
-		_delimiters.add( delimiter );
+		if( !_delimiters.containsKey( delimiter ) ) {
+			_delimiters.put( delimiter, _delimiterValues.size() );
+			_delimiterValues.add( delimiter );
+		}
 	}
 
 	/**
-	 * Adds a space delimiter to both the space delimiter and the delimiter {@link HashSet}.
+	 * Adds a space delimiter to both the space delimiter {@link HashSet} and the delimiter
+	 * {@link HashMap}.
 	 * 
 	 * @param spaceDelimiter the delimiter
 	 */
 	protected void addSpaceDelimiter( String spaceDelimiter ) {
-		_delimiters.add( spaceDelimiter );
+		addDelimiter( spaceDelimiter );
 		_spaceDelimiters.add( spaceDelimiter );
 	}
 
 	/**
-	 * Adds a method call delimiter to both the method call and the delimiter {@link HashSet}.
+	 * Adds a method call delimiter to both the method call {@link HashSet} and the delimiter
+	 * {@link HashMap}.
 	 * 
 	 * @param methodCall the method call delimiter
 	 */
 	protected void addMethodCall( String methodCall ) {
-		_delimiters.add( methodCall );
+		addDelimiter( methodCall );
 		_methodCalls.add( methodCall );
 	}
 
@@ -127,7 +209,7 @@ public abstract class LanguageKeywords {
 		if( _lookAheadNumber == -1 ) {
 
 			// Iterate through all the delimiters
-			for( String delimiter : _delimiters ) {
+			for( String delimiter : _delimiterValues ) {
 
 				// Take the largest delimiter
 				if( delimiter.length() > _lookAheadNumber ) {
@@ -140,8 +222,9 @@ public abstract class LanguageKeywords {
 	}
 
 	/**
-	 * The method used to populate the {@link HashSet}s of the keywords, delimiters, space
-	 * delimiters and method calls for the language.
+	 * The method used to populate the keywords, delimiters, space delimiters and method calls for
+	 * the language. The order that the keywords and delimiters are added in determines their fixed
+	 * ids, so languages should only ever append to this method.
 	 */
 	protected abstract void populate();
 }
@@ -0,0 +1,737 @@
+package ca.tokenizing_parser.tokenizer.search;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+import ca.tokenizing_parser.tokenizer.TokenizedBatch;
+
+/**
+ * An inverted index from token ids (see {@link TokenTable#getTokenId(String)}) to the documents
+ * and token offsets they occur at, which answers which documents use an identifier (ie: an object
+ * such as <code>System.out.println</code>) and where, without scanning the corpus. By default the
+ * object and keyword categories are indexed.
+ * <p>
+ * Each token id has a postings list of (document, offset) pairs in ascending order, compressed as
+ * varints: the delta of the document from the previous posting, then the offset within the
+ * document (as a delta of the previous offset when the document is the same). Every
+ * {@link InvertedIndex#_SKIP_INTERVAL} documents of a list a skip entry is kept, so that
+ * intersecting the lists of several identifiers can jump over the documents that cannot match.
+ * <p>
+ * The documents must be added in ascending order of their document ids. The index is not thread
+ * safe, so adding documents and querying must be guarded by the caller.
+ *
+ * @author Kevin Jalbert
+ */
+public class InvertedIndex {
+
+	/** The number of documents of a postings list between two skip entries. */
+	public final static int		_SKIP_INTERVAL	= 64;
+
+	/** The magic number that starts an inverted index file. */
+	private final static int	_MAGIC			= 0x544B4949;
+
+	/** The version of the inverted index file format. */
+	private final static int	_VERSION		= 1;
+
+	/** The postings list of each key id, indexed by category then key id (null if none). */
+	private PostingsList[][]	_postings		=
+			new PostingsList[TokenTable._UNMAPPED_CATEGORY + 1][];
+
+	/** Whether each category is indexed. */
+	private boolean[]			_indexed		= new boolean[TokenTable._UNMAPPED_CATEGORY + 1];
+
+	/** The number of documents added. */
+	private int					_documentCount	= 0;
+
+	/** The id of the last document added; -1 if none. */
+	private int					_lastDocument	= -1;
+
+	/**
+	 * Instantiates a new, empty {@link InvertedIndex} of the object and keyword categories.
+	 */
+	public InvertedIndex() {
+
+		for( int category = 0; category < _postings.length; category++ ) {
+			_postings[category] = new PostingsList[0];
+		}
+
+		_indexed[TokenTable._OBJECT_CATEGORY] = true;
+		_indexed[TokenTable._KEYWORD_CATEGORY] = true;
+	}
+
+	/**
+	 * Sets whether the token ids of the category are indexed by the documents added from now on.
+	 *
+	 * @param category the token category (ie: {@link TokenTable#_OBJECT_CATEGORY})
+	 * @param indexed if true then the category is indexed
+	 */
+	public void setIndexed( int category, boolean indexed ) {
+		_indexed[category] = indexed;
+	}
+
+	/**
+	 * Checks to see if the token ids of the category are indexed.
+	 *
+	 * @param category the token category
+	 * @return true if the category is indexed
+	 */
+	public boolean isIndexed( int category ) {
+		return _indexed[category];
+	}
+
+	/**
+	 * Adds a document of token ids to the index.
+	 *
+	 * @param document the id of the document, which must be greater than the last one added
+	 * @param tokenIds the token ids of the document
+	 */
+	public void addDocument( int document, int[] tokenIds ) {
+		addDocument( document, tokenIds, 0, tokenIds.length );
+	}
+
+	/**
+	 * Adds a document of token ids to the index, where the token ids are a range of the array (the
+	 * offsets of the document are relative to the start of the range).
+	 *
+	 * @param document the id of the document, which must be greater than the last one added
+	 * @param tokenIds the token ids
+	 * @param start the start of the range of the document
+	 * @param end the end (exclusive) of the range of the document
+	 */
+	public void addDocument( int document, int[] tokenIds, int start, int end ) {
+
+		if( document <= _lastDocument ) {
+			throw new IllegalArgumentException( "Documents must be added in ascending order: "
+					+ document + " after " + _lastDocument );
+		}
+
+		for( int i = start; i < end; i++ ) {
+
+			// A negative token id (ie: one without a value after a remap) has no category
+			int category = TokenTable.getCategory( tokenIds[i] );
+			if( tokenIds[i] >= 0 && category < _indexed.length && _indexed[category] ) {
+				findPostings( category, TokenTable.getKeyId( tokenIds[i] ), true ).add( document,
+						i - start );
+			}
+		}
+
+		_lastDocument = document;
+		_documentCount++;
+	}
+
+	/**
+	 * Adds the inputs of a {@link TokenizedBatch} as documents, numbered from the first document
+	 * id in the order of the inputs. The inputs that failed are skipped (their ids are not used).
+	 *
+	 * @param batch the {@link TokenizedBatch} whose inputs are added
+	 * @param firstDocument the document id of the first input of the batch
+	 */
+	public void addBatch( TokenizedBatch batch, int firstDocument ) {
+
+		for( int i = 0; i < batch.getInputCount(); i++ ) {
+			if( !batch.isFailed( i ) ) {
+				addDocument( firstDocument + i, batch.getTokenIds(), batch.getStart( i ),
+						batch.getEnd( i ) );
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of documents added.
+	 *
+	 * @return the number of documents
+	 */
+	public int getDocumentCount() {
+		return _documentCount;
+	}
+
+	/**
+	 * Gets the number of documents the token id occurs in.
+	 *
+	 * @param tokenId the token id
+	 * @return the number of documents of the token id
+	 */
+	public int getDocumentFrequency( int tokenId ) {
+
+		PostingsList postings = findPostings( tokenId );
+		return postings == null ? 0 : postings._documentCount;
+	}
+
+	/**
+	 * Gets the number of times the token id occurs across all the documents.
+	 *
+	 * @param tokenId the token id
+	 * @return the number of postings of the token id
+	 */
+	public int getPostingsCount( int tokenId ) {
+
+		PostingsList postings = findPostings( tokenId );
+		return postings == null ? 0 : postings._count;
+	}
+
+	/**
+	 * Gets the size of all the compressed postings lists in bytes.
+	 *
+	 * @return the size of the postings in bytes
+	 */
+	public long getPostingsSize() {
+
+		long size = 0;
+		for( PostingsList[] lists : _postings ) {
+			for( PostingsList postings : lists ) {
+				size += postings == null ? 0 : postings._length;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Gets the documents that the token id occurs in, in ascending order.
+	 *
+	 * @param tokenId the token id
+	 * @return the document ids of the token id
+	 */
+	public int[] getDocuments( int tokenId ) {
+		return findDocuments( new int[] { tokenId } );
+	}
+
+	/**
+	 * Gets the offsets that the token id occurs at within the document, in ascending order.
+	 *
+	 * @param tokenId the token id
+	 * @param document the id of the document
+	 * @return the token offsets within the document
+	 */
+	public int[] getOffsets( int tokenId, int document ) {
+
+		PostingsList postings = findPostings( tokenId );
+		if( postings == null ) {
+			return new int[0];
+		}
+
+		PostingsCursor cursor = new PostingsCursor( postings );
+		if( cursor.advanceTo( document ) != document ) {
+			return new int[0];
+		}
+
+		int[] offsets = new int[8];
+		int count = 0;
+		while( cursor._document == document ) {
+
+			if( count == offsets.length ) {
+				offsets = Arrays.copyOf( offsets, count * 2 );
+			}
+			offsets[count++] = cursor._offset;
+			cursor.next();
+		}
+
+		return Arrays.copyOf( offsets, count );
+	}
+
+	/**
+	 * Gets all the postings of the token id as pairs of document id and token offset, in
+	 * ascending order.
+	 *
+	 * @param tokenId the token id
+	 * @return an {@link ArrayList} of the (document, offset) pairs of the token id
+	 */
+	public ArrayList<int[]> getPostings( int tokenId ) {
+
+		ArrayList<int[]> pairs = new ArrayList<int[]>();
+
+		PostingsList postings = findPostings( tokenId );
+		if( postings != null ) {
+			PostingsCursor cursor = new PostingsCursor( postings );
+			for( cursor.next(); cursor._document != Integer.MAX_VALUE; cursor.next() ) {
+				pairs.add( new int[] { cursor._document, cursor._offset } );
+			}
+		}
+
+		return pairs;
+	}
+
+	/**
+	 * Finds the documents that all of the token ids occur in, in ascending order. The postings
+	 * lists are intersected starting from the one with the fewest documents, and the other lists
+	 * jump ahead using their skip entries, so the time taken depends mostly on the rarest token
+	 * id.
+	 *
+	 * @param tokenIds the token ids that must all occur
+	 * @return the ids of the documents that contain all the token ids
+	 */
+	public int[] findDocuments( int[] tokenIds ) {
+
+		if( tokenIds.length == 0 ) {
+			return new int[0];
+		}
+
+		// A token id without postings can't match any document
+		PostingsCursor[] cursors = new PostingsCursor[tokenIds.length];
+		for( int i = 0; i < tokenIds.length; i++ ) {
+
+			PostingsList postings = findPostings( tokenIds[i] );
+			if( postings == null ) {
+				return new int[0];
+			}
+			cursors[i] = new PostingsCursor( postings );
+		}
+
+		// Order the lists by their number of documents (rarest first), there are only a few
+		for( int i = 1; i < cursors.length; i++ ) {
+
+			PostingsCursor cursor = cursors[i];
+			int j = i;
+			int documentCount = cursor._postings._documentCount;
+			while( j > 0 && cursors[j - 1]._postings._documentCount > documentCount ) {
+				cursors[j] = cursors[j - 1];
+				j--;
+			}
+			cursors[j] = cursor;
+		}
+
+		int[] documents = new int[Math.min( cursors[0]._postings._documentCount, 1024 )];
+		int count = 0;
+
+		int candidate = cursors[0].nextDocument();
+		while( candidate != Integer.MAX_VALUE ) {
+
+			// Move every other list to the candidate, or find the next candidate past it
+			int next = candidate;
+			for( int i = 1; i < cursors.length && next == candidate; i++ ) {
+				next = cursors[i].advanceTo( candidate );
+			}
+
+			if( next == candidate ) {
+				if( count == documents.length ) {
+					documents = Arrays.copyOf( documents, count * 2 );
+				}
+				documents[count++] = candidate;
+				candidate = cursors[0].nextDocument();
+			}
+			else {
+				candidate = cursors[0].advanceTo( next );
+			}
+		}
+
+		return Arrays.copyOf( documents, count );
+	}
+
+	/**
+	 * Writes the index (the compressed postings lists as they are) to the output, so that it can be
+	 * read back using {@link InvertedIndex#read(DataInput)}.
+	 *
+	 * @param output the {@link DataOutput} to write to
+	 * @throws IOException if the output cannot be written
+	 */
+	public void write( DataOutput output ) throws IOException {
+
+		output.writeInt( _MAGIC );
+		output.writeInt( _VERSION );
+		output.writeInt( _documentCount );
+		output.writeInt( _lastDocument );
+
+		for( int category = 0; category < _postings.length; category++ ) {
+
+			output.writeBoolean( _indexed[category] );
+
+			int lists = 0;
+			for( PostingsList postings : _postings[category] ) {
+				lists += postings == null ? 0 : 1;
+			}
+			output.writeInt( lists );
+
+			for( int id = 0; id < _postings[category].length; id++ ) {
+
+				PostingsList postings = _postings[category][id];
+				if( postings != null ) {
+					output.writeInt( id );
+					output.writeInt( postings._length );
+					output.write( postings._bytes, 0, postings._length );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an index that was written using {@link InvertedIndex#write(DataOutput)}. The counts
+	 * and skip entries of each postings list are rebuilt in a single pass over it.
+	 *
+	 * @param input the {@link DataInput} to read from
+	 * @return the {@link InvertedIndex} that was read
+	 * @throws IOException if the input cannot be read or is not an inverted index
+	 */
+	public static InvertedIndex read( DataInput input ) throws IOException {
+
+		if( input.readInt() != _MAGIC || input.readInt() != _VERSION ) {
+			throw new IOException( "Not an inverted index file" );
+		}
+
+		InvertedIndex index = new InvertedIndex();
+		index._documentCount = input.readInt();
+		index._lastDocument = input.readInt();
+
+		for( int category = 0; category < index._postings.length; category++ ) {
+
+			index._indexed[category] = input.readBoolean();
+
+			int lists = input.readInt();
+			for( int i = 0; i < lists; i++ ) {
+
+				int id = input.readInt();
+				byte[] bytes = new byte[input.readInt()];
+				input.readFully( bytes );
+
+				index.findPostings( category, id, true ).load( bytes );
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Gets the postings list of the token id.
+	 *
+	 * @param tokenId the token id
+	 * @return the {@link PostingsList} of the token id; null if it has none
+	 */
+	private PostingsList findPostings( int tokenId ) {
+
+		int category = TokenTable.getCategory( tokenId );
+		if( tokenId < 0 || category >= _postings.length ) {
+			return null;
+		}
+
+		return findPostings( category, TokenTable.getKeyId( tokenId ), false );
+	}
+
+	/**
+	 * Gets the postings list of the key id of the category, creating it if asked to.
+	 *
+	 * @param category the token category
+	 * @param id the numeric key id
+	 * @param create if true then a missing postings list is created
+	 * @return the {@link PostingsList}; null if it doesn't exist and wasn't created
+	 */
+	private PostingsList findPostings( int category, int id, boolean create ) {
+
+		PostingsList[] lists = _postings[category];
+		if( id >= lists.length ) {
+
+			if( !create ) {
+				return null;
+			}
+			lists = Arrays.copyOf( lists, Math.max( id + 1, lists.length * 2 ) );
+			_postings[category] = lists;
+		}
+
+		if( lists[id] == null && create ) {
+			lists[id] = new PostingsList();
+		}
+
+		return lists[id];
+	}
+
+	/**
+	 * The compressed postings of a single token id, with the skip entries over its documents.
+	 *
+	 * @author Kevin Jalbert
+	 */
+	private static class PostingsList {
+
+		/** The varint encoded postings. */
+		byte[]	_bytes				= new byte[8];
+
+		/** The number of bytes used. */
+		int		_length				= 0;
+
+		/** The number of postings. */
+		int		_count				= 0;
+
+		/** The number of documents. */
+		int		_documentCount		= 0;
+
+		/** The document of the last posting; -1 if none. */
+		int		_lastDocument		= -1;
+
+		/** The offset of the last posting. */
+		int		_lastOffset			= 0;
+
+		/** The number of skip entries. */
+		int		_skipCount			= 0;
+
+		/** The first document of each skip entry. */
+		int[]	_skipDocuments		= new int[1];
+
+		/** The document before the first document of each skip entry (-1 for none). */
+		int[]	_skipPrevious		= new int[1];
+
+		/** The byte position of each skip entry. */
+		int[]	_skipPositions		= new int[1];
+
+		/**
+		 * Adds a posting, which must come after the last posting.
+		 *
+		 * @param document the document id
+		 * @param offset the token offset within the document
+		 */
+		void add( int document, int offset ) {
+
+			ensureCapacity( 10 );
+
+			if( document != _lastDocument ) {
+
+				// Every so many documents the position is kept for skipping to it
+				if( _documentCount % _SKIP_INTERVAL == 0 ) {
+					addSkip( document, _length );
+				}
+
+				_length = writeVarInt( _bytes, _length, document - _lastDocument );
+				_length = writeVarInt( _bytes, _length, offset );
+				_documentCount++;
+			}
+			else {
+				_length = writeVarInt( _bytes, _length, 0 );
+				_length = writeVarInt( _bytes, _length, offset - _lastOffset );
+			}
+
+			_lastDocument = document;
+			_lastOffset = offset;
+			_count++;
+		}
+
+		/**
+		 * Loads the encoded postings, rebuilding the counts and skip entries.
+		 *
+		 * @param bytes the varint encoded postings
+		 */
+		void load( byte[] bytes ) {
+
+			_bytes = bytes;
+			_length = bytes.length;
+
+			int position = 0;
+			while( position < _length ) {
+
+				int start = position;
+				int delta = readVarInt( _bytes, position );
+				position = skipVarInt( _bytes, position );
+				int offset = readVarInt( _bytes, position );
+				position = skipVarInt( _bytes, position );
+
+				if( delta != 0 ) {
+					if( _documentCount % _SKIP_INTERVAL == 0 ) {
+						addSkip( _lastDocument + delta, start );
+					}
+					_lastDocument += delta;
+					_lastOffset = offset;
+					_documentCount++;
+				}
+				else {
+					_lastOffset += offset;
+				}
+				_count++;
+			}
+		}
+
+		/**
+		 * Adds a skip entry, which follows the postings of the last document.
+		 *
+		 * @param document the document of the posting that starts at the skip entry
+		 * @param position the byte position of the posting
+		 */
+		private void addSkip( int document, int position ) {
+
+			if( _skipCount == _skipDocuments.length ) {
+				_skipDocuments = Arrays.copyOf( _skipDocuments, _skipCount * 2 );
+				_skipPrevious = Arrays.copyOf( _skipPrevious, _skipCount * 2 );
+				_skipPositions = Arrays.copyOf( _skipPositions, _skipCount * 2 );
+			}
+
+			_skipDocuments[_skipCount] = document;
+			_skipPrevious[_skipCount] = _lastDocument;
+			_skipPositions[_skipCount] = position;
+			_skipCount++;
+		}
+
+		/**
+		 * Ensures there is room for more bytes.
+		 *
+		 * @param more the number of bytes needed
+		 */
+		private void ensureCapacity( int more ) {
+			if( _length + more > _bytes.length ) {
+				_bytes = Arrays.copyOf( _bytes, Math.max( _length + more, _bytes.length * 2 ) );
+			}
+		}
+	}
+
+	/**
+	 * A position within a {@link PostingsList} that decodes the postings one at a time.
+	 *
+	 * @author Kevin Jalbert
+	 */
+	private static class PostingsCursor {
+
+		/** The postings list being decoded. */
+		PostingsList	_postings	= null;
+
+		/** The byte position of the next posting. */
+		int				_position	= 0;
+
+		/** The document of the current posting (-1 before the first; MAX_VALUE after the last). */
+		int				_document	= -1;
+
+		/** The token offset of the current posting. */
+		int				_offset		= 0;
+
+		/**
+		 * Instantiates a new {@link PostingsCursor} before the first posting.
+		 *
+		 * @param postings the {@link PostingsList} to be decoded
+		 */
+		PostingsCursor( PostingsList postings ) {
+			_postings = postings;
+		}
+
+		/**
+		 * Moves to the next posting.
+		 */
+		void next() {
+
+			if( _position >= _postings._length ) {
+				_document = Integer.MAX_VALUE;
+				return;
+			}
+
+			byte[] bytes = _postings._bytes;
+			int delta = readVarInt( bytes, _position );
+			_position = skipVarInt( bytes, _position );
+			int offset = readVarInt( bytes, _position );
+			_position = skipVarInt( bytes, _position );
+
+			if( delta != 0 ) {
+				_document += delta;
+				_offset = offset;
+			}
+			else {
+				_offset += offset;
+			}
+		}
+
+		/**
+		 * Moves to the first posting of the next document.
+		 *
+		 * @return the next document; {@link Integer#MAX_VALUE} if there is none
+		 */
+		int nextDocument() {
+
+			int document = _document;
+			while( _document == document && document != Integer.MAX_VALUE ) {
+				next();
+			}
+
+			return _document;
+		}
+
+		/**
+		 * Moves to the first posting of the first document at or after the target, jumping to the
+		 * last skip entry before the target when it is ahead.
+		 *
+		 * @param target the target document
+		 * @return the document moved to; {@link Integer#MAX_VALUE} if there is none
+		 */
+		int advanceTo( int target ) {
+
+			if( _document >= target ) {
+				return _document;
+			}
+
+			// Binary search for the last skip entry at or before the target
+			PostingsList postings = _postings;
+			int low = 0;
+			int high = postings._skipCount - 1;
+			while( low <= high ) {
+
+				int middle = ( low + high ) >>> 1;
+				if( postings._skipDocuments[middle] <= target ) {
+					low = middle + 1;
+				}
+				else {
+					high = middle - 1;
+				}
+			}
+
+			// Only jump forward, as the cursor may already be past the skip entry
+			if( high >= 0 && postings._skipPositions[high] > _position ) {
+				_position = postings._skipPositions[high];
+				_document = postings._skipPrevious[high];
+			}
+
+			while( _document < target ) {
+				nextDocument();
+			}
+
+			return _document;
+		}
+	}
+
+	/**
+	 * Writes the value as a varint (7 bits per byte, least significant first).
+	 *
+	 * @param bytes the array to write to
+	 * @param position the position to write at
+	 * @param value the value to be written (treated as unsigned)
+	 * @return the position after the varint
+	 */
+	private static int writeVarInt( byte[] bytes, int position, int value ) {
+
+		while( ( value & ~0x7F ) != 0 ) {
+			bytes[position++] = (byte) ( ( value & 0x7F ) | 0x80 );
+			value >>>= 7;
+		}
+		bytes[position++] = (byte) value;
+
+		return position;
+	}
+
+	/**
+	 * Reads the varint at the position.
+	 *
+	 * @param bytes the array to read from
+	 * @param position the position of the varint
+	 * @return the value of the varint
+	 */
+	private static int readVarInt( byte[] bytes, int position ) {
+
+		int value = 0;
+		for( int shift = 0;; shift += 7 ) {
+
+			byte b = bytes[position++];
+			value |= ( b & 0x7F ) << shift;
+			if( b >= 0 ) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Gets the position after the varint at the position.
+	 *
+	 * @param bytes the array the varint is in
+	 * @param position the position of the varint
+	 * @return the position after the varint
+	 */
+	private static int skipVarInt( byte[] bytes, int position ) {
+
+		while( bytes[position++] < 0 ) {
+			// Continue past the bytes with the high bit set
+		}
+
+		return position;
+	}
+}
@@ -0,0 +1,749 @@
+package ca.tokenizing_parser.tokenizer.search;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.tokenizing_parser.tokenizer.TokenTable;
+
+/**
+ * A suffix array (with its LCP array) over a corpus of tokenized inputs, where each input has been
+ * converted into token ids using {@link TokenTable#getTokenIds(ArrayList)}. The inputs are
+ * concatenated into a single text with a separator after each input, so that no match can span two
+ * inputs.
+ * <p>
+ * The suffix array is built in linear time using the SA-IS algorithm, and the LCP array is built in
+ * linear time using Kasai's algorithm. Searching for a pattern of <i>m</i> tokens takes
+ * O(<i>m</i> log <i>n</i>) time.
+ * <p>
+ * The text, suffix array and LCP array are held in {@link IntBuffer}s so that a suffix array that
+ * was written to disk using {@link TokenSuffixArray#write(FileChannel)} can be memory mapped using
+ * {@link TokenSuffixArray#map(FileChannel)} instead of being read into the heap.
+ *
+ * @author Kevin Jalbert
+ */
+public class TokenSuffixArray {
+
+	/** The separator placed after each input within the text. */
+	public final static int		_SEPARATOR	= -1;
+
+	/** The magic number that starts a suffix array file. */
+	private final static int	_MAGIC		= 0x544B5341;
+
+	/** The version of the suffix array file format. */
+	private final static int	_VERSION	= 1;
+
+	/** The size in bytes of the suffix array file header. */
+	private final static int	_HEADER		= 16;
+
+	/** The starting position of each input within the text. */
+	private int[]				_inputStarts	= null;
+
+	/** The concatenated token ids of all the inputs (with separators). */
+	private IntBuffer			_text		= null;
+
+	/** The suffix array, the starting positions of the suffixes of the text in sorted order. */
+	private IntBuffer			_suffixArray	= null;
+
+	/** The LCP array, the longest common prefix of each suffix with the previous sorted suffix. */
+	private IntBuffer			_lcp			= null;
+
+	/**
+	 * Instantiates a {@link TokenSuffixArray} from already built parts.
+	 *
+	 * @param inputStarts the starting position of each input within the text
+	 * @param text the concatenated token ids of all the inputs
+	 * @param suffixArray the suffix array of the text
+	 * @param lcp the LCP array of the text
+	 */
+	private TokenSuffixArray( int[] inputStarts, IntBuffer text, IntBuffer suffixArray,
+			IntBuffer lcp ) {
+		_inputStarts = inputStarts;
+		_text = text;
+		_suffixArray = suffixArray;
+		_lcp = lcp;
+	}
+
+	/**
+	 * Builds a {@link TokenSuffixArray} over the specified inputs of token ids. The token ids must
+	 * not be negative.
+	 *
+	 * @param inputs the inputs of token ids (see {@link TokenTable#getTokenIds(ArrayList)})
+	 * @return the {@link TokenSuffixArray} over all the inputs
+	 */
+	public static TokenSuffixArray build( List<int[]> inputs ) {
+
+		// Concatenate the inputs with a separator after each
+		int length = 0;
+		for( int[] input : inputs ) {
+			length += input.length + 1;
+		}
+
+		int[] text = new int[length];
+		int[] inputStarts = new int[inputs.size()];
+		int position = 0;
+		for( int i = 0; i < inputs.size(); i++ ) {
+
+			int[] input = inputs.get( i );
+			for( int tokenId : input ) {
+				if( tokenId < 0 ) {
+					throw new IllegalArgumentException( "Token ids must not be negative: " + tokenId );
+				}
+			}
+
+			inputStarts[i] = position;
+			System.arraycopy( input, 0, text, position, input.length );
+			position += input.length;
+			text[position++] = _SEPARATOR;
+		}
+
+		int[] suffixArray = buildSuffixArray( text );
+		int[] lcp = buildLcp( text, suffixArray );
+
+		return new TokenSuffixArray( inputStarts, IntBuffer.wrap( text ),
+				IntBuffer.wrap( suffixArray ), IntBuffer.wrap( lcp ) );
+	}
+
+	/**
+	 * Memory maps a {@link TokenSuffixArray} that was written using
+	 * {@link TokenSuffixArray#write(FileChannel)}, starting at the channel's current position. The
+	 * mapping remains valid after the channel is closed.
+	 *
+	 * @param channel the {@link FileChannel} to map the suffix array from
+	 * @return the mapped {@link TokenSuffixArray}
+	 * @throws IOException if the channel could not be read or mapped
+	 */
+	public static TokenSuffixArray map( FileChannel channel ) throws IOException {
+
+		// Read the header
+		long offset = channel.position();
+		ByteBuffer header = ByteBuffer.allocate( _HEADER );
+		while( header.hasRemaining() ) {
+			if( channel.read( header, offset + header.position() ) < 0 ) {
+				throw new IOException( "Unexpected end of suffix array file" );
+			}
+		}
+		header.flip();
+
+		if( header.getInt() != _MAGIC || header.getInt() != _VERSION ) {
+			throw new IOException( "Not a suffix array file" );
+		}
+		int length = header.getInt();
+		int inputCount = header.getInt();
+
+		// The input starts are small, so they are read into the heap
+		offset += _HEADER;
+		int[] inputStarts = new int[inputCount];
+		channel.map( FileChannel.MapMode.READ_ONLY, offset, inputCount * 4L ).asIntBuffer()
+				.get( inputStarts );
+		offset += inputCount * 4L;
+
+		// Map each of the arrays separately
+		IntBuffer text = channel.map( FileChannel.MapMode.READ_ONLY, offset, length * 4L )
+				.asIntBuffer();
+		offset += length * 4L;
+		IntBuffer suffixArray = channel.map( FileChannel.MapMode.READ_ONLY, offset, length * 4L )
+				.asIntBuffer();
+		offset += length * 4L;
+		IntBuffer lcp = channel.map( FileChannel.MapMode.READ_ONLY, offset, length * 4L )
+				.asIntBuffer();
+
+		return new TokenSuffixArray( inputStarts, text, suffixArray, lcp );
+	}
+
+	/**
+	 * Writes this {@link TokenSuffixArray} to the channel (starting at the channel's current
+	 * position), so that it can later be loaded using {@link TokenSuffixArray#map(FileChannel)}.
+	 *
+	 * @param channel the {@link FileChannel} to write the suffix array to
+	 * @throws IOException if the channel could not be written to
+	 */
+	public void write( FileChannel channel ) throws IOException {
+
+		ByteBuffer header = ByteBuffer.allocate( _HEADER + _inputStarts.length * 4 );
+		header.putInt( _MAGIC ).putInt( _VERSION ).putInt( getLength() );
+		header.putInt( _inputStarts.length );
+		header.asIntBuffer().put( _inputStarts );
+		header.rewind();
+		writeFully( channel, header );
+
+		writeInts( channel, _text );
+		writeInts( channel, _suffixArray );
+		writeInts( channel, _lcp );
+	}
+
+	/**
+	 * Gets the length of the text (all the token ids of the inputs including the separators).
+	 *
+	 * @return the length of the text
+	 */
+	public int getLength() {
+		return _text.limit();
+	}
+
+	/**
+	 * Gets the number of inputs within this {@link TokenSuffixArray}.
+	 *
+	 * @return the number of inputs
+	 */
+	public int getInputCount() {
+		return _inputStarts.length;
+	}
+
+	/**
+	 * Gets the token id at the position of the text.
+	 *
+	 * @param position the position within the text
+	 * @return the token id at the position (or {@link TokenSuffixArray#_SEPARATOR})
+	 */
+	public int getTokenId( int position ) {
+		return _text.get( position );
+	}
+
+	/**
+	 * Gets the starting position of the suffix with the specified rank (its index in sorted order).
+	 *
+	 * @param rank the rank of the suffix
+	 * @return the starting position of the suffix within the text
+	 */
+	public int getSuffix( int rank ) {
+		return _suffixArray.get( rank );
+	}
+
+	/**
+	 * Gets the length of the longest common prefix between the suffix with the specified rank and
+	 * the suffix ranked directly before it. Separators are never counted as part of a common prefix.
+	 *
+	 * @param rank the rank of the suffix
+	 * @return the longest common prefix length; 0 for the first ranked suffix
+	 */
+	public int getLcp( int rank ) {
+		return _lcp.get( rank );
+	}
+
+	/**
+	 * Gets the index of the input that the position of the text belongs to.
+	 *
+	 * @param position the position within the text
+	 * @return the index of the input (in the order given to {@link TokenSuffixArray#build(List)})
+	 */
+	public int getInput( int position ) {
+
+		int index = Arrays.binarySearch( _inputStarts, position );
+		if( index < 0 ) {
+			index = -index - 2;
+		}
+
+		return index;
+	}
+
+	/**
+	 * Gets the offset of the position of the text relative to the start of the input it belongs to.
+	 *
+	 * @param position the position within the text
+	 * @return the token offset within its input
+	 */
+	public int getInputOffset( int position ) {
+		return position - _inputStarts[getInput( position )];
+	}
+
+	/**
+	 * Counts the number of occurrences of the pattern of token ids within the corpus.
+	 *
+	 * @param pattern the pattern of token ids
+	 * @return the number of occurrences of the pattern
+	 */
+	public int count( int[] pattern ) {
+		return upperBound( pattern, pattern.length ) - lowerBound( pattern, pattern.length );
+	}
+
+	/**
+	 * Finds all the positions of the text where the pattern of token ids occurs. The positions can
+	 * be converted into an input and offset using {@link TokenSuffixArray#getInput(int)} and
+	 * {@link TokenSuffixArray#getInputOffset(int)}.
+	 *
+	 * @param pattern the pattern of token ids
+	 * @return the sorted positions where the pattern occurs
+	 */
+	public int[] find( int[] pattern ) {
+
+		int lower = lowerBound( pattern, pattern.length );
+		int upper = upperBound( pattern, pattern.length );
+
+		int[] positions = new int[upper - lower];
+		for( int i = lower; i < upper; i++ ) {
+			positions[i - lower] = _suffixArray.get( i );
+		}
+		Arrays.sort( positions );
+
+		return positions;
+	}
+
+	/**
+	 * Finds the longest prefix of the pattern that occurs within the corpus, by narrowing the range
+	 * of matching suffixes one token at a time. The suffixes of the range already share the
+	 * prefix, so each narrowing only compares the token after it.
+	 *
+	 * @param pattern the pattern of token ids
+	 * @return the length of the longest prefix of the pattern found within the corpus
+	 */
+	public int longestPrefixMatch( int[] pattern ) {
+
+		int lower = 0;
+		int upper = getLength();
+		int length = 0;
+
+		while( length < pattern.length ) {
+
+			int nextLower = lowerBound( pattern, length, length + 1, lower, upper );
+			int nextUpper = upperBound( pattern, length, length + 1, nextLower, upper );
+
+			// Stop once the longer prefix doesn't occur anymore
+			if( nextLower >= nextUpper ) {
+				break;
+			}
+
+			lower = nextLower;
+			upper = nextUpper;
+			length++;
+		}
+
+		return length;
+	}
+
+	/**
+	 * Finds all runs of tokens that are repeated within the corpus that are at least the minimum
+	 * length long (ie: clones). Each run is reported as the range of suffix ranks that share the run
+	 * and the run's length.
+	 *
+	 * @param minimumLength the minimum length of a repeated run
+	 * @return a {@link List} of runs as <code>{firstRank, lastRank, length}</code>
+	 */
+	public List<int[]> findRepeatedRuns( int minimumLength ) {
+
+		List<int[]> runs = new ArrayList<int[]>();
+		int length = getLength();
+		int rank = 1;
+
+		while( rank < length ) {
+
+			// Skip suffixes that don't share enough with the previous suffix
+			if( _lcp.get( rank ) < minimumLength ) {
+				rank++;
+				continue;
+			}
+
+			// Extend the range for as long as the common prefix is long enough
+			int first = rank - 1;
+			int runLength = _lcp.get( rank );
+			while( rank < length && _lcp.get( rank ) >= minimumLength ) {
+				runLength = Math.min( runLength, _lcp.get( rank ) );
+				rank++;
+			}
+
+			runs.add( new int[] { first, rank - 1, runLength } );
+		}
+
+		return runs;
+	}
+
+	/**
+	 * Finds the first suffix rank whose first tokens are not less than the pattern's prefix.
+	 *
+	 * @param pattern the pattern of token ids
+	 * @param length the length of the pattern's prefix to use
+	 * @return the first rank of the matching range
+	 */
+	private int lowerBound( int[] pattern, int length ) {
+		return lowerBound( pattern, 0, length, 0, getLength() );
+	}
+
+	/**
+	 * Finds the first suffix rank after the ranks whose first tokens are equal to the pattern's
+	 * prefix.
+	 *
+	 * @param pattern the pattern of token ids
+	 * @param length the length of the pattern's prefix to use
+	 * @return the last rank (exclusive) of the matching range
+	 */
+	private int upperBound( int[] pattern, int length ) {
+		return upperBound( pattern, 0, length, 0, getLength() );
+	}
+
+	/**
+	 * Binary search for the lower bound within the range of suffix ranks.
+	 *
+	 * @param pattern the pattern of token ids
+	 * @param offset the number of the pattern's first tokens that every suffix of the range shares
+	 * @param length the length of the pattern's prefix to use
+	 * @param lower the first rank of the range to search
+	 * @param upper the last rank (exclusive) of the range to search
+	 * @return the first rank not less than the pattern's prefix
+	 */
+	private int lowerBound( int[] pattern, int offset, int length, int lower, int upper ) {
+
+		while( lower < upper ) {
+			int middle = ( lower + upper ) >>> 1;
+			if( compare( _suffixArray.get( middle ), pattern, offset, length ) < 0 ) {
+				lower = middle + 1;
+			}
+			else {
+				upper = middle;
+			}
+		}
+
+		return lower;
+	}
+
+	/**
+	 * Binary search for the upper bound within the range of suffix ranks.
+	 *
+	 * @param pattern the pattern of token ids
+	 * @param offset the number of the pattern's first tokens that every suffix of the range shares
+	 * @param length the length of the pattern's prefix to use
+	 * @param lower the first rank of the range to search
+	 * @param upper the last rank (exclusive) of the range to search
+	 * @return the first rank greater than the pattern's prefix
+	 */
+	private int upperBound( int[] pattern, int offset, int length, int lower, int upper ) {
+
+		while( lower < upper ) {
+			int middle = ( lower + upper ) >>> 1;
+			if( compare( _suffixArray.get( middle ), pattern, offset, length ) <= 0 ) {
+				lower = middle + 1;
+			}
+			else {
+				upper = middle;
+			}
+		}
+
+		return lower;
+	}
+
+	/**
+	 * Compares the first tokens of the suffix against the pattern's prefix, skipping the tokens
+	 * that the suffix is already known to share with the pattern.
+	 *
+	 * @param suffix the starting position of the suffix
+	 * @param pattern the pattern of token ids
+	 * @param offset the number of the pattern's first tokens that the suffix shares
+	 * @param length the length of the pattern's prefix to use
+	 * @return negative if the suffix is less, 0 if the suffix starts with the prefix, otherwise
+	 *         positive
+	 */
+	private int compare( int suffix, int[] pattern, int offset, int length ) {
+
+		int textLength = getLength();
+		for( int i = offset; i < length; i++ ) {
+
+			// The end of the text is less than any token
+			if( suffix + i >= textLength ) {
+				return -1;
+			}
+
+			int tokenId = _text.get( suffix + i );
+			if( tokenId != pattern[i] ) {
+				return tokenId < pattern[i] ? -1 : 1;
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Builds the suffix array of the text by ranking the token ids into a dense alphabet (with a
+	 * sentinel) then using the SA-IS algorithm.
+	 *
+	 * @param text the concatenated token ids of all the inputs
+	 * @return the suffix array of the text
+	 */
+	private static int[] buildSuffixArray( int[] text ) {
+
+		int length = text.length;
+		if( length == 0 ) {
+			return new int[0];
+		}
+
+		// Rank the distinct token ids, leaving 0 for the sentinel (separators are the smallest)
+		int[] distinct = text.clone();
+		Arrays.sort( distinct );
+		int distinctCount = 0;
+		for( int i = 0; i < distinct.length; i++ ) {
+			if( i == 0 || distinct[i] != distinct[i - 1] ) {
+				distinct[distinctCount++] = distinct[i];
+			}
+		}
+
+		int[] ranked = new int[length + 1];
+		for( int i = 0; i < length; i++ ) {
+			ranked[i] = Arrays.binarySearch( distinct, 0, distinctCount, text[i] ) + 1;
+		}
+		ranked[length] = 0;
+
+		// Build the suffix array, then drop the sentinel's suffix (always ranked first)
+		int[] suffixArray = new int[length + 1];
+		sais( ranked, suffixArray, length + 1, distinctCount );
+
+		return Arrays.copyOfRange( suffixArray, 1, length + 1 );
+	}
+
+	/**
+	 * Builds the LCP array using Kasai's algorithm. Separators never match each other so that a
+	 * common prefix never spans two inputs.
+	 *
+	 * @param text the concatenated token ids of all the inputs
+	 * @param suffixArray the suffix array of the text
+	 * @return the LCP array of the text
+	 */
+	private static int[] buildLcp( int[] text, int[] suffixArray ) {
+
+		int length = text.length;
+		int[] rank = new int[length];
+		for( int i = 0; i < length; i++ ) {
+			rank[suffixArray[i]] = i;
+		}
+
+		int[] lcp = new int[length];
+		int common = 0;
+		for( int i = 0; i < length; i++ ) {
+
+			if( rank[i] > 0 ) {
+
+				int previous = suffixArray[rank[i] - 1];
+				while( i + common < length && previous + common < length
+						&& text[i + common] == text[previous + common]
+						&& text[i + common] != _SEPARATOR ) {
+					common++;
+				}
+
+				lcp[rank[i]] = common;
+				if( common > 0 ) {
+					common--;
+				}
+			}
+			else {
+				common = 0;
+			}
+		}
+
+		return lcp;
+	}
+
+	/**
+	 * The SA-IS algorithm (Nong, Zhang and Chan) for building a suffix array in linear time. The
+	 * last character of the text must be a unique sentinel that is smaller than every other
+	 * character.
+	 *
+	 * @param text the text, with characters within [0, alphabetSize]
+	 * @param suffixArray the array that is filled with the suffix array
+	 * @param length the length of the text
+	 * @param alphabetSize the largest character of the text
+	 */
+	private static void sais( int[] text, int[] suffixArray, int length, int alphabetSize ) {
+
+		if( length == 1 ) {
+			suffixArray[0] = 0;
+			return;
+		}
+
+		// Classify each suffix as S-type (true) or L-type (false)
+		boolean[] types = new boolean[length];
+		types[length - 1] = true;
+		types[length - 2] = false;
+		for( int i = length - 3; i >= 0; i-- ) {
+			types[i] = text[i] < text[i + 1] || ( text[i] == text[i + 1] && types[i + 1] );
+		}
+
+		int[] buckets = new int[alphabetSize + 1];
+
+		// Place the LMS suffixes at the ends of their buckets, then induce the sort
+		getBuckets( text, buckets, length, alphabetSize, true );
+		Arrays.fill( suffixArray, 0, length, -1 );
+		for( int i = 1; i < length; i++ ) {
+			if( isLms( types, i ) ) {
+				suffixArray[--buckets[text[i]]] = i;
+			}
+		}
+		induceL( types, suffixArray, text, buckets, length, alphabetSize );
+		induceS( types, suffixArray, text, buckets, length, alphabetSize );
+
+		// Compact the sorted LMS substrings into the front of the suffix array
+		int lmsCount = 0;
+		for( int i = 0; i < length; i++ ) {
+			if( isLms( types, suffixArray[i] ) ) {
+				suffixArray[lmsCount++] = suffixArray[i];
+			}
+		}
+
+		// Name the LMS substrings, equal substrings sharing the same name
+		Arrays.fill( suffixArray, lmsCount, length, -1 );
+		int name = 0;
+		int previous = -1;
+		for( int i = 0; i < lmsCount; i++ ) {
+
+			int position = suffixArray[i];
+			boolean different = false;
+			for( int d = 0; d < length; d++ ) {
+				if( previous == -1 || text[position + d] != text[previous + d]
+						|| types[position + d] != types[previous + d] ) {
+					different = true;
+					break;
+				}
+				else if( d > 0 && ( isLms( types, position + d ) || isLms( types, previous + d ) ) ) {
+					break;
+				}
+			}
+
+			if( different ) {
+				name++;
+				previous = position;
+			}
+			suffixArray[lmsCount + position / 2] = name - 1;
+		}
+
+		// Gather the reduced text from the names
+		int[] reduced = new int[lmsCount];
+		for( int i = length - 1, j = lmsCount - 1; i >= lmsCount; i-- ) {
+			if( suffixArray[i] >= 0 ) {
+				reduced[j--] = suffixArray[i];
+			}
+		}
+
+		// Sort the reduced text, recursively if the names are not yet unique
+		int[] reducedSuffixArray = new int[lmsCount];
+		if( name < lmsCount ) {
+			sais( reduced, reducedSuffixArray, lmsCount, name - 1 );
+		}
+		else {
+			for( int i = 0; i < lmsCount; i++ ) {
+				reducedSuffixArray[reduced[i]] = i;
+			}
+		}
+
+		// Map the sorted reduced suffixes back to the LMS positions
+		for( int i = 1, j = 0; i < length; i++ ) {
+			if( isLms( types, i ) ) {
+				reduced[j++] = i;
+			}
+		}
+		for( int i = 0; i < lmsCount; i++ ) {
+			reducedSuffixArray[i] = reduced[reducedSuffixArray[i]];
+		}
+
+		// Place the sorted LMS suffixes at the ends of their buckets, then induce the final sort
+		Arrays.fill( suffixArray, 0, length, -1 );
+		getBuckets( text, buckets, length, alphabetSize, true );
+		for( int i = lmsCount - 1; i >= 0; i-- ) {
+			int position = reducedSuffixArray[i];
+			suffixArray[--buckets[text[position]]] = position;
+		}
+		induceL( types, suffixArray, text, buckets, length, alphabetSize );
+		induceS( types, suffixArray, text, buckets, length, alphabetSize );
+	}
+
+	/**
+	 * Checks to see if the position is a leftmost S-type position.
+	 *
+	 * @param types the S-type (true) and L-type (false) classification of each position
+	 * @param position the position to check
+	 * @return true if the position is a leftmost S-type position
+	 */
+	private static boolean isLms( boolean[] types, int position ) {
+		return position > 0 && types[position] && !types[position - 1];
+	}
+
+	/**
+	 * Computes the start (or end) of each character's bucket in the suffix array.
+	 *
+	 * @param text the text
+	 * @param buckets the array to be filled with the bucket positions
+	 * @param length the length of the text
+	 * @param alphabetSize the largest character of the text
+	 * @param end if true the bucket ends are computed, otherwise the bucket starts
+	 */
+	private static void getBuckets( int[] text, int[] buckets, int length, int alphabetSize,
+			boolean end ) {
+
+		Arrays.fill( buckets, 0 );
+		for( int i = 0; i < length; i++ ) {
+			buckets[text[i]]++;
+		}
+
+		int sum = 0;
+		for( int i = 0; i <= alphabetSize; i++ ) {
+			sum += buckets[i];
+			buckets[i] = end ? sum : sum - buckets[i];
+		}
+	}
+
+	/**
+	 * Induces the sort of the L-type suffixes from the sorted suffixes.
+	 */
+	private static void induceL( boolean[] types, int[] suffixArray, int[] text, int[] buckets,
+			int length, int alphabetSize ) {
+
+		getBuckets( text, buckets, length, alphabetSize, false );
+		for( int i = 0; i < length; i++ ) {
+			int j = suffixArray[i] - 1;
+			if( j >= 0 && !types[j] ) {
+				suffixArray[buckets[text[j]]++] = j;
+			}
+		}
+	}
+
+	/**
+	 * Induces the sort of the S-type suffixes from the sorted suffixes.
+	 */
+	private static void induceS( boolean[] types, int[] suffixArray, int[] text, int[] buckets,
+			int length, int alphabetSize ) {
+
+		getBuckets( text, buckets, length, alphabetSize, true );
+		for( int i = length - 1; i >= 0; i-- ) {
+			int j = suffixArray[i] - 1;
+			if( j >= 0 && types[j] ) {
+				suffixArray[--buckets[text[j]]] = j;
+			}
+		}
+	}
+
+	/**
+	 * Writes all the ints of the buffer to the channel.
+	 *
+	 * @param channel the {@link FileChannel} to write to
+	 * @param ints the {@link IntBuffer} to be written
+	 * @throws IOException if the channel could not be written to
+	 */
+	private static void writeInts( FileChannel channel, IntBuffer ints ) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate( 64 * 1024 );
+		for( int i = 0; i < ints.limit(); i++ ) {
+
+			buffer.putInt( ints.get( i ) );
+			if( !buffer.hasRemaining() ) {
+				buffer.flip();
+				writeFully( channel, buffer );
+				buffer.clear();
+			}
+		}
+
+		buffer.flip();
+		writeFully( channel, buffer );
+	}
+
+	/**
+	 * Writes all the remaining bytes of the buffer to the channel.
+	 *
+	 * @param channel the {@link FileChannel} to write to
+	 * @param buffer the {@link ByteBuffer} to be written
+	 * @throws IOException if the channel could not be written to
+	 */
+	private static void writeFully( FileChannel channel, ByteBuffer buffer ) throws IOException {
+		while( buffer.hasRemaining() ) {
+			channel.write( buffer );
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package ca.tokenizing_parser.tokenizer.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Count-Min sketch of the approximate frequencies of values (ie: the literals or objects of a
+ * {@link ca.tokenizing_parser.tokenizer.TokenTable}) in a fixed amount of memory, however many
+ * distinct values there are. Each value is counted in one counter of each of the
+ * {@link CountMinSketch#getDepth()} rows, and its estimate is the smallest of its counters, which
+ * is never below its true frequency. With a width of <i>w</i> the estimate exceeds the true
+ * frequency by more than <i>e</i>/<i>w</i> of the total count with a probability of at most
+ * <i>e</i><sup>-depth</sup>.
+ * <p>
+ * Values can be counted by any number of threads without locking, and without allocating, while
+ * the sketch is being queried. Sketches of the same dimensions can be merged, which gives the
+ * sketch of the combined counts.
+ *
+ * @author Kevin Jalbert
+ */
+public class CountMinSketch {
+
+	/** The number of counters of each row (a power of two). */
+	private int				_width		= 0;
+
+	/** The number of rows. */
+	private int				_depth		= 0;
+
+	/** The counters of all the rows, row by row. */
+	private AtomicLongArray	_counters	= null;
+
+	/** The total count of all the values. */
+	private AtomicLong		_total		= new AtomicLong();
+
+	/**
+	 * Instantiates a new, empty {@link CountMinSketch}, which holds width * depth counters.
+	 *
+	 * @param width the number of counters of each row (rounded up to a power of two)
+	 * @param depth the number of rows (ie: 4)
+	 */
+	public CountMinSketch( int width, int depth ) {
+
+		if( width < 1 || depth < 1 || (long) width * depth > 1 << 30 ) {
+			throw new IllegalArgumentException( "Invalid dimensions: " + width + "x" + depth );
+		}
+
+		_width = width == 1 ? 1 : Integer.highestOneBit( width - 1 ) << 1;
+		_depth = depth;
+		_counters = new AtomicLongArray( _width * _depth );
+	}
+
+	/**
+	 * Gets the number of counters of each row.
+	 *
+	 * @return the width of the sketch
+	 */
+	public int getWidth() {
+		return _width;
+	}
+
+	/**
+	 * Gets the number of rows.
+	 *
+	 * @return the depth of the sketch
+	 */
+	public int getDepth() {
+		return _depth;
+	}
+
+	/**
+	 * Gets the total count of all the values.
+	 *
+	 * @return the total count
+	 */
+	public long getTotal() {
+		return _total.get();
+	}
+
+	/**
+	 * Counts an occurrence of the value.
+	 *
+	 * @param value the characters of the value
+	 */
+	public void add( CharSequence value ) {
+		add( value, 1 );
+	}
+
+	/**
+	 * Counts a number of occurrences of the value.
+	 *
+	 * @param value the characters of the value
+	 * @param count the number of occurrences (must not be negative)
+	 */
+	public void add( CharSequence value, long count ) {
+
+		long hash = hash( value );
+		int first = (int) hash;
+		int second = (int) ( hash >>> 32 ) | 1;
+
+		for( int row = 0; row < _depth; row++ ) {
+			_counters.addAndGet( row * _width + ( ( first + row * second ) & ( _width - 1 ) ),
+					count );
+		}
+		_total.addAndGet( count );
+	}
+
+	/**
+	 * Gets the estimated frequency of the value, which is at least its true frequency.
+	 *
+	 * @param value the characters of the value
+	 * @return the estimated frequency of the value
+	 */
+	public long estimate( CharSequence value ) {
+
+		long hash = hash( value );
+		int first = (int) hash;
+		int second = (int) ( hash >>> 32 ) | 1;
+
+		long estimate = Long.MAX_VALUE;
+		for( int row = 0; row < _depth; row++ ) {
+			estimate = Math.min( estimate, _counters.get( row * _width
+					+ ( ( first + row * second ) & ( _width - 1 ) ) ) );
+		}
+
+		return estimate;
+	}
+
+	/**
+	 * Adds the counts of another {@link CountMinSketch} of the same dimensions (ie: of another
+	 * thread or shard) to this one.
+	 *
+	 * @param other the {@link CountMinSketch} whose counts are added
+	 */
+	public void merge( CountMinSketch other ) {
+
+		if( other._width != _width || other._depth != _depth ) {
+			throw new IllegalArgumentException(
+					"Only sketches of the same dimensions can be merged" );
+		}
+
+		for( int i = 0; i < _counters.length(); i++ ) {
+			long count = other._counters.get( i );
+			if( count != 0 ) {
+				_counters.addAndGet( i, count );
+			}
+		}
+		_total.addAndGet( other._total.get() );
+	}
+
+	/**
+	 * Copies the {@link CountMinSketch}. The copy is consistent per counter while values are still
+	 * being counted.
+	 *
+	 * @return a copy of the sketch
+	 */
+	public CountMinSketch copy() {
+
+		CountMinSketch copy = new CountMinSketch( _width, _depth );
+		copy.merge( this );
+
+		return copy;
+	}
+
+	/**
+	 * Gets a 64 bit hash of the characters of the value (FNV-1a with a final mix), which is the
+	 * same for any {@link CharSequence} with the same characters.
+	 *
+	 * @param value the characters of the value
+	 * @return the hash of the value
+	 */
+	static long hash( CharSequence value ) {
+
+		long hash = 0xCBF29CE484222325L;
+		for( int i = 0; i < value.length(); i++ ) {
+			hash ^= value.charAt( i );
+			hash *= 0x100000001B3L;
+		}
+
+		// Mix the bits so that both halves of the hash are usable
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+
+		return hash;
+	}
+}
@@ -0,0 +1,219 @@
+package ca.tokenizing_parser.tokenizer.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies (or any non-negative <code>long</code> values) with a bounded relative
+ * error, from which percentiles can be acquired. Values are counted in log-linear buckets: each
+ * power of two is split into {@link LatencyHistogram#_SUB_BUCKETS} equal buckets, so the value
+ * reported for a percentile is within about 3% of the recorded value.
+ * <p>
+ * Values can be recorded by any number of threads without locking. A histogram can be copied and
+ * subtracted from another, which allows the latencies of an interval to be acquired from two copies
+ * of a running histogram.
+ *
+ * @author Kevin Jalbert
+ */
+public class LatencyHistogram {
+
+	/** The number of bits of a value that select the bucket within a power of two. */
+	private final static int	_SUB_BUCKET_BITS	= 5;
+
+	/** The number of buckets within each power of two. */
+	private final static int	_SUB_BUCKETS		= 1 << _SUB_BUCKET_BITS;
+
+	/** The total number of buckets, covering every non-negative <code>long</code>. */
+	private final static int	_BUCKETS			= ( 65 - _SUB_BUCKET_BITS ) * _SUB_BUCKETS;
+
+	/** The count of the recorded values in each bucket. */
+	private AtomicLongArray		_counts				= new AtomicLongArray( _BUCKETS );
+
+	/** The number of recorded values. */
+	private AtomicLong			_count				= new AtomicLong();
+
+	/** The sum of the recorded values. */
+	private AtomicLong			_sum				= new AtomicLong();
+
+	/** The largest recorded value. */
+	private AtomicLong			_max				= new AtomicLong();
+
+	/**
+	 * Records a value; negative values are recorded as 0.
+	 *
+	 * @param value the value to be recorded
+	 */
+	public void recordValue( long value ) {
+
+		if( value < 0 ) {
+			value = 0;
+		}
+
+		_counts.incrementAndGet( getBucket( value ) );
+		_count.incrementAndGet();
+		_sum.addAndGet( value );
+
+		// Raise the max unless another thread recorded a larger value
+		long max = _max.get();
+		while( value > max && !_max.compareAndSet( max, value ) ) {
+			max = _max.get();
+		}
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 *
+	 * @return the number of recorded values
+	 */
+	public long getCount() {
+		return _count.get();
+	}
+
+	/**
+	 * Gets the largest recorded value.
+	 *
+	 * @return the largest recorded value; 0 if none were recorded
+	 */
+	public long getMax() {
+		return _max.get();
+	}
+
+	/**
+	 * Gets the mean of the recorded values.
+	 *
+	 * @return the mean of the recorded values; 0 if none were recorded
+	 */
+	public double getMean() {
+
+		long count = _count.get();
+		return count == 0 ? 0 : (double) _sum.get() / count;
+	}
+
+	/**
+	 * Gets the value at the specified percentile, which is the highest value of the bucket holding
+	 * the recorded value of that rank (capped at the largest recorded value).
+	 *
+	 * @param percentile the percentile (ie: 99.9) between 0 and 100
+	 * @return the value at the percentile; 0 if none were recorded
+	 */
+	public long getValueAtPercentile( double percentile ) {
+
+		long count = _count.get();
+		if( count == 0 ) {
+			return 0;
+		}
+
+		// The rank of the value at the percentile (at least the first value)
+		long rank = Math.max( 1, (long) Math.ceil( percentile / 100 * count ) );
+
+		long seen = 0;
+		for( int bucket = 0; bucket < _BUCKETS; bucket++ ) {
+			seen += _counts.get( bucket );
+			if( seen >= rank ) {
+				return Math.min( getHighestValue( bucket ), _max.get() );
+			}
+		}
+
+		return _max.get();
+	}
+
+	/**
+	 * Adds the recorded values of another histogram to this histogram.
+	 *
+	 * @param other the {@link LatencyHistogram} to be added
+	 */
+	public void add( LatencyHistogram other ) {
+
+		for( int bucket = 0; bucket < _BUCKETS; bucket++ ) {
+			long count = other._counts.get( bucket );
+			if( count != 0 ) {
+				_counts.addAndGet( bucket, count );
+			}
+		}
+
+		_count.addAndGet( other._count.get() );
+		_sum.addAndGet( other._sum.get() );
+
+		long max = _max.get();
+		long otherMax = other._max.get();
+		while( otherMax > max && !_max.compareAndSet( max, otherMax ) ) {
+			max = _max.get();
+		}
+	}
+
+	/**
+	 * Removes the recorded values of an earlier copy of this histogram, leaving the values that
+	 * were recorded since the copy was made. The largest value is recomputed from the remaining
+	 * buckets, so it is only as precise as a bucket.
+	 *
+	 * @param earlier an earlier copy of this {@link LatencyHistogram}
+	 */
+	public void subtract( LatencyHistogram earlier ) {
+
+		long max = 0;
+		for( int bucket = 0; bucket < _BUCKETS; bucket++ ) {
+			long count = _counts.addAndGet( bucket, -earlier._counts.get( bucket ) );
+			if( count > 0 ) {
+				max = getHighestValue( bucket );
+			}
+		}
+
+		_count.addAndGet( -earlier._count.get() );
+		_sum.addAndGet( -earlier._sum.get() );
+		_max.set( Math.min( max, _max.get() ) );
+	}
+
+	/**
+	 * Makes a copy of this histogram. Values that are recorded while the copy is made may only be
+	 * partially included in the copy.
+	 *
+	 * @return the copy of this {@link LatencyHistogram}
+	 */
+	public LatencyHistogram copy() {
+
+		LatencyHistogram copy = new LatencyHistogram();
+		copy.add( this );
+
+		return copy;
+	}
+
+	/**
+	 * Gets the bucket that the value is counted in.
+	 *
+	 * @param value the non-negative value
+	 * @return the bucket of the value
+	 */
+	private static int getBucket( long value ) {
+
+		// Small values have a bucket each
+		if( value < _SUB_BUCKETS ) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros( value );
+		int subBucket = (int) ( value >>> ( exponent - _SUB_BUCKET_BITS ) ) & ( _SUB_BUCKETS - 1 );
+
+		return ( exponent - _SUB_BUCKET_BITS + 1 ) * _SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Gets the highest value that is counted in the bucket.
+	 *
+	 * @param bucket the bucket
+	 * @return the highest value of the bucket
+	 */
+	private static long getHighestValue( int bucket ) {
+
+		if( bucket < _SUB_BUCKETS ) {
+			return bucket;
+		}
+
+		int exponent = bucket / _SUB_BUCKETS + _SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % _SUB_BUCKETS;
+		long width = 1L << ( exponent - _SUB_BUCKET_BITS );
+
+		// The last bucket ends at the largest long
+		long highest = ( ( _SUB_BUCKETS + subBucket ) * width ) + width - 1;
+		return highest < 0 ? Long.MAX_VALUE : highest;
+	}
+}
@@ -0,0 +1,508 @@
+package ca.tokenizing_parser.tokenizer.stats;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A Space-Saving sketch of the most frequent values (the heavy hitters) of a stream, which keeps
+ * a fixed number of counters however many distinct values there are. A value that isn't tracked
+ * replaces the tracked value with the smallest count, and inherits that count as its error, so
+ * the count of a tracked value is never below its true frequency and exceeds it by at most its
+ * error. Every value whose frequency is above the total count divided by the capacity is tracked.
+ * <p>
+ * The characters of each tracked value are copied into a buffer of its counter that is reused,
+ * and the counters are kept in a min-heap and an open addressing table, so counting a value does
+ * not allocate (once the buffers have grown to the length of the values). The sketch is
+ * synchronized, so it can be shared by several threads and queried while values are counted.
+ * Sketches can be merged (ie: those of separate threads or shards), which keeps the same
+ * guarantees for the combined stream.
+ *
+ * @author Kevin Jalbert
+ */
+public class SpaceSavingSketch {
+
+	/** The maximum number of values tracked. */
+	private int			_capacity		= 0;
+
+	/** The number of values tracked. */
+	private int			_size			= 0;
+
+	/** The total count of all the values. */
+	private long		_total			= 0;
+
+	/** The characters of the value of each counter. */
+	private char[][]	_chars			= null;
+
+	/** The number of characters of the value of each counter. */
+	private int[]		_lengths		= null;
+
+	/** The hash of the value of each counter. */
+	private long[]		_hashes			= null;
+
+	/** The count of each counter. */
+	private long[]		_counts			= null;
+
+	/** The error (the count it inherited) of each counter. */
+	private long[]		_errors			= null;
+
+	/** The counters ordered as a min-heap of their counts. */
+	private int[]		_heap			= null;
+
+	/** The position of each counter within the heap. */
+	private int[]		_heapPositions	= null;
+
+	/** The open addressing table of the counters by hash (the counter plus one; 0 if empty). */
+	private int[]		_table			= null;
+
+	/**
+	 * Instantiates a new, empty {@link SpaceSavingSketch}.
+	 *
+	 * @param capacity the maximum number of values tracked (ie: a few times the top k wanted)
+	 */
+	public SpaceSavingSketch( int capacity ) {
+
+		if( capacity < 1 || capacity > 1 << 28 ) {
+			throw new IllegalArgumentException( "Invalid capacity: " + capacity );
+		}
+
+		_capacity = capacity;
+		_chars = new char[capacity][];
+		_lengths = new int[capacity];
+		_hashes = new long[capacity];
+		_counts = new long[capacity];
+		_errors = new long[capacity];
+		_heap = new int[capacity];
+		_heapPositions = new int[capacity];
+		_table = new int[Integer.highestOneBit( capacity ) << 2];
+	}
+
+	/**
+	 * Gets the maximum number of values tracked.
+	 *
+	 * @return the capacity of the sketch
+	 */
+	public int getCapacity() {
+		return _capacity;
+	}
+
+	/**
+	 * Gets the number of values tracked.
+	 *
+	 * @return the number of tracked values
+	 */
+	public synchronized int getSize() {
+		return _size;
+	}
+
+	/**
+	 * Gets the total count of all the values.
+	 *
+	 * @return the total count
+	 */
+	public synchronized long getTotal() {
+		return _total;
+	}
+
+	/**
+	 * Counts an occurrence of the value.
+	 *
+	 * @param value the characters of the value
+	 */
+	public void add( CharSequence value ) {
+		add( value, 1 );
+	}
+
+	/**
+	 * Counts a number of occurrences of the value.
+	 *
+	 * @param value the characters of the value
+	 * @param count the number of occurrences (must not be negative)
+	 */
+	public synchronized void add( CharSequence value, long count ) {
+		add( value, CountMinSketch.hash( value ), count, 0 );
+	}
+
+	/**
+	 * Gets the count of the value, which is at least its true frequency if it is tracked.
+	 *
+	 * @param value the characters of the value
+	 * @return the count of the value; 0 if it isn't tracked
+	 */
+	public synchronized long getCount( CharSequence value ) {
+
+		int counter = find( value, CountMinSketch.hash( value ) );
+		return counter == -1 ? 0 : _counts[counter];
+	}
+
+	/**
+	 * Gets the error of the count of the value, the most that the count can exceed its true
+	 * frequency.
+	 *
+	 * @param value the characters of the value
+	 * @return the error of the value's count; 0 if it isn't tracked
+	 */
+	public synchronized long getError( CharSequence value ) {
+
+		int counter = find( value, CountMinSketch.hash( value ) );
+		return counter == -1 ? 0 : _errors[counter];
+	}
+
+	/**
+	 * Gets the tracked values with the highest counts, in descending order of count (ties go to
+	 * the value with the smaller error).
+	 *
+	 * @param k the number of values to be acquired
+	 * @return the values with the highest counts (at most k)
+	 */
+	public synchronized String[] getTopValues( int k ) {
+
+		int[] counters = getCountersByCount();
+
+		String[] top = new String[Math.max( 0, Math.min( k, _size ) )];
+		for( int i = 0; i < top.length; i++ ) {
+			top[i] = new String( _chars[counters[i]], 0, _lengths[counters[i]] );
+		}
+
+		return top;
+	}
+
+	/**
+	 * Adds the values of another {@link SpaceSavingSketch} (ie: of another thread or shard) to this
+	 * one. A value that is only tracked by one of the sketches is counted in the other as that
+	 * sketch's smallest count (if it is full), which keeps the counts at or above the true
+	 * frequencies of the combined stream; then the values with the highest counts are kept.
+	 *
+	 * @param other the {@link SpaceSavingSketch} whose values are added
+	 */
+	public void merge( SpaceSavingSketch other ) {
+
+		if( other == this ) {
+			throw new IllegalArgumentException( "A sketch cannot be merged into itself" );
+		}
+
+		// Copy the other sketch under its own lock, so the two locks are never held together
+		SpaceSavingSketch copy = other.copy();
+
+		synchronized( this ) {
+
+			long thisMinimum = getMinimum();
+			long otherMinimum = copy.getMinimum();
+
+			// Gather the combined counts of the values of both sketches
+			SpaceSavingSketch combined = new SpaceSavingSketch( Math.max( _size + copy._size, 1 ) );
+			for( int counter = 0; counter < _size; counter++ ) {
+
+				CharSequence value = CharBuffer.wrap( _chars[counter], 0,
+						_lengths[counter] );
+				int match = copy.find( value, _hashes[counter] );
+
+				long count = match == -1 ? otherMinimum : copy._counts[match];
+				long error = match == -1 ? otherMinimum : copy._errors[match];
+				combined.add( value, _hashes[counter], _counts[counter] + count,
+						_errors[counter] + error );
+			}
+			for( int counter = 0; counter < copy._size; counter++ ) {
+
+				CharSequence value = CharBuffer.wrap( copy._chars[counter], 0,
+						copy._lengths[counter] );
+				if( find( value, copy._hashes[counter] ) == -1 ) {
+					combined.add( value, copy._hashes[counter], copy._counts[counter]
+							+ thisMinimum, copy._errors[counter] + thisMinimum );
+				}
+			}
+
+			// Keep the values with the highest combined counts
+			long total = _total + copy._total;
+			clear();
+			int[] counters = combined.getCountersByCount();
+			for( int i = 0; i < counters.length && i < _capacity; i++ ) {
+
+				int counter = counters[i];
+				add( CharBuffer.wrap( combined._chars[counter], 0,
+						combined._lengths[counter] ), combined._hashes[counter],
+						combined._counts[counter], combined._errors[counter] );
+			}
+			_total = total;
+		}
+	}
+
+	/**
+	 * Copies the {@link SpaceSavingSketch}.
+	 *
+	 * @return a copy of the sketch
+	 */
+	public synchronized SpaceSavingSketch copy() {
+
+		SpaceSavingSketch copy = new SpaceSavingSketch( _capacity );
+		for( int counter = 0; counter < _size; counter++ ) {
+			copy.add( CharBuffer.wrap( _chars[counter], 0, _lengths[counter] ),
+					_hashes[counter], _counts[counter], _errors[counter] );
+		}
+		copy._total = _total;
+
+		return copy;
+	}
+
+	/**
+	 * Clears all the counters (their buffers are kept for reuse).
+	 */
+	public synchronized void clear() {
+		Arrays.fill( _table, 0 );
+		_size = 0;
+		_total = 0;
+	}
+
+	/**
+	 * Counts the value with its hash, adding to the error as well.
+	 *
+	 * @param value the characters of the value
+	 * @param hash the hash of the value (see {@link CountMinSketch#hash(CharSequence)})
+	 * @param count the number of occurrences
+	 * @param error the error of the count
+	 */
+	private void add( CharSequence value, long hash, long count, long error ) {
+
+		_total += count;
+
+		// A tracked value is counted, and moves down the heap as its count grew
+		int counter = find( value, hash );
+		if( counter != -1 ) {
+			_counts[counter] += count;
+			_errors[counter] += error;
+			siftDown( _heapPositions[counter] );
+			return;
+		}
+
+		// An untracked value takes a free counter, or replaces the value with the smallest count
+		long inherited = 0;
+		if( _size < _capacity ) {
+			counter = _size++;
+			_heap[counter] = counter;
+			_heapPositions[counter] = counter;
+		}
+		else {
+			counter = _heap[0];
+			inherited = _counts[counter];
+			remove( counter );
+		}
+
+		store( counter, value, hash );
+		_counts[counter] = inherited + count;
+		_errors[counter] = inherited + error;
+		insert( counter );
+
+		siftUp( _heapPositions[counter] );
+		siftDown( _heapPositions[counter] );
+	}
+
+	/**
+	 * Gets the smallest count, which any untracked value may have had when the sketch is full.
+	 *
+	 * @return the smallest count; 0 if the sketch isn't full
+	 */
+	private long getMinimum() {
+		return _size < _capacity ? 0 : _counts[_heap[0]];
+	}
+
+	/**
+	 * Gets the tracked counters in descending order of count (ties go to the smaller error).
+	 *
+	 * @return the tracked counters by count
+	 */
+	private int[] getCountersByCount() {
+
+		// Sort the counts and errors packed with the counter, as most counts are small
+		long[][] keys = new long[_size][];
+		for( int counter = 0; counter < _size; counter++ ) {
+			keys[counter] = new long[] { -_counts[counter], _errors[counter], counter };
+		}
+		Arrays.sort( keys, new Comparator<long[]>() {
+
+			@Override
+			public int compare( long[] first, long[] second ) {
+				for( int i = 0; i < first.length; i++ ) {
+					if( first[i] != second[i] ) {
+						return first[i] < second[i] ? -1 : 1;
+					}
+				}
+				return 0;
+			}
+		} );
+
+		int[] counters = new int[_size];
+		for( int i = 0; i < counters.length; i++ ) {
+			counters[i] = (int) keys[i][2];
+		}
+
+		return counters;
+	}
+
+	/**
+	 * Copies the characters of the value into the counter's buffer, growing it if needed.
+	 *
+	 * @param counter the counter
+	 * @param value the characters of the value
+	 * @param hash the hash of the value
+	 */
+	private void store( int counter, CharSequence value, long hash ) {
+
+		int length = value.length();
+		if( _chars[counter] == null || _chars[counter].length < length ) {
+			_chars[counter] = new char[Math.max( length, 16 )];
+		}
+
+		char[] chars = _chars[counter];
+		for( int i = 0; i < length; i++ ) {
+			chars[i] = value.charAt( i );
+		}
+		_lengths[counter] = length;
+		_hashes[counter] = hash;
+	}
+
+	/**
+	 * Finds the counter of the value.
+	 *
+	 * @param value the characters of the value
+	 * @param hash the hash of the value
+	 * @return the counter of the value; -1 if it isn't tracked
+	 */
+	private int find( CharSequence value, long hash ) {
+
+		int mask = _table.length - 1;
+		for( int slot = (int) hash & mask; _table[slot] != 0; slot = ( slot + 1 ) & mask ) {
+
+			int counter = _table[slot] - 1;
+			if( _hashes[counter] == hash && matches( counter, value ) ) {
+				return counter;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Checks to see if the counter's value has the same characters as the value.
+	 *
+	 * @param counter the counter
+	 * @param value the characters of the value
+	 * @return true if the characters are the same
+	 */
+	private boolean matches( int counter, CharSequence value ) {
+
+		if( _lengths[counter] != value.length() ) {
+			return false;
+		}
+
+		char[] chars = _chars[counter];
+		for( int i = 0; i < _lengths[counter]; i++ ) {
+			if( chars[i] != value.charAt( i ) ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Inserts the counter into the table by the hash of its value.
+	 *
+	 * @param counter the counter
+	 */
+	private void insert( int counter ) {
+
+		int mask = _table.length - 1;
+		int slot = (int) _hashes[counter] & mask;
+		while( _table[slot] != 0 ) {
+			slot = ( slot + 1 ) & mask;
+		}
+		_table[slot] = counter + 1;
+	}
+
+	/**
+	 * Removes the counter from the table, shifting back the counters that probed past it so that
+	 * no tombstones are needed.
+	 *
+	 * @param counter the counter
+	 */
+	private void remove( int counter ) {
+
+		int mask = _table.length - 1;
+		int slot = (int) _hashes[counter] & mask;
+		while( _table[slot] != counter + 1 ) {
+			slot = ( slot + 1 ) & mask;
+		}
+
+		// Move each following counter of the cluster back if its home is at or before the hole
+		int hole = slot;
+		for( slot = ( slot + 1 ) & mask; _table[slot] != 0; slot = ( slot + 1 ) & mask ) {
+
+			int home = (int) _hashes[_table[slot] - 1] & mask;
+			if( ( ( slot - home ) & mask ) >= ( ( slot - hole ) & mask ) ) {
+				_table[hole] = _table[slot];
+				hole = slot;
+			}
+		}
+		_table[hole] = 0;
+	}
+
+	/**
+	 * Moves the counter at the heap position up while its count is below its parent's.
+	 *
+	 * @param position the heap position
+	 */
+	private void siftUp( int position ) {
+
+		while( position > 0 ) {
+
+			int parent = ( position - 1 ) >>> 1;
+			if( _counts[_heap[parent]] <= _counts[_heap[position]] ) {
+				break;
+			}
+			swap( position, parent );
+			position = parent;
+		}
+	}
+
+	/**
+	 * Moves the counter at the heap position down while its count is above a child's.
+	 *
+	 * @param position the heap position
+	 */
+	private void siftDown( int position ) {
+
+		while( true ) {
+
+			int smallest = position;
+			int left = position * 2 + 1;
+			if( left < _size && _counts[_heap[left]] < _counts[_heap[smallest]] ) {
+				smallest = left;
+			}
+			if( left + 1 < _size && _counts[_heap[left + 1]] < _counts[_heap[smallest]] ) {
+				smallest = left + 1;
+			}
+			if( smallest == position ) {
+				return;
+			}
+
+			swap( position, smallest );
+			position = smallest;
+		}
+	}
+
+	/**
+	 * Swaps two positions of the heap.
+	 *
+	 * @param first the first heap position
+	 * @param second the second heap position
+	 */
+	private void swap( int first, int second ) {
+
+		int counter = _heap[first];
+		_heap[first] = _heap[second];
+		_heap[second] = counter;
+
+		_heapPositions[_heap[first]] = first;
+		_heapPositions[_heap[second]] = second;
+	}
+}